@@ -5,6 +5,8 @@ package com.yahoo.egads;
 import java.util.Properties;
 import java.io.FileInputStream;
 import java.io.InputStream;
+import com.yahoo.egads.data.ForecastCache;
+import com.yahoo.egads.data.ModelCache;
 import com.yahoo.egads.utilities.*;
 import java.io.File;
 
@@ -27,7 +29,7 @@ public class Egads {
     public static void main(String[] args) throws Exception {
 
         if (args.length == 0) {
-            System.err.println("Usage: java Egads config.ini (input [STDIN,CSV])");
+            System.err.println("Usage: java Egads config.ini (input [STDIN,CSV,HTTP])");
             System.exit(1);
         }
 
@@ -49,11 +51,21 @@ public class Egads {
         InputProcessor ip = null;
         if (p.getProperty("INPUT") == null || p.getProperty("INPUT").equals("CSV")) {
             ip = new FileInputProcessor(args[1]);
+        } else if (p.getProperty("INPUT").equals("HTTP")) {
+            ip = new HttpInputProcessor();
         } else {
             ip = new StdinProcessor();
         }
         
-        // Process the input the we received (either STDIN or as a file).
+        // Process the input the we received (either STDIN, as a file or over HTTP).
         ip.processInput(p);
+
+        // Keep the cached models for the next run.
+        if (ModelCache.isEnabled(p)) {
+            ModelCache.getInstance(p).flush();
+        }
+        if (ForecastCache.isEnabled(p)) {
+            System.err.println(ForecastCache.getInstance(p));
+        }
     }
 }
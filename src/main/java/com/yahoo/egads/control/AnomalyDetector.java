@@ -14,12 +14,12 @@
  * Inputs:
  *      1. The 'metric' time series
  *          - Either an explicit TimeSeries object
- *          - or the String name of the time series which would require the AnomalyDetector to connect to ModelDB to load
- *            the appropriate anomaly detection models into the memory (under construction)
+ *          - or the String name of the metric and the config, which makes the AnomalyDetector load the anomaly
+ *            detection models tuned on the metric with that config from the ModelCache
  *      
  *      2. The model(s)
  *          - Either an explicit AnomalyDetectionModel object via addModel()
- *          - or implicitly loaded from ModelDB when the metric name is provided (under construction)
+ *          - or implicitly loaded from a ModelStore via setModelStore() or when the name of the metric is provided
  *          
  * Features:
  *      1. Resetting all the added anomaly detection models via reset()
@@ -38,9 +38,15 @@
 package com.yahoo.egads.control;
 
 import java.util.ArrayList;
+import java.util.Properties;
 
 import com.yahoo.egads.data.Anomaly;
 import com.yahoo.egads.data.Anomaly.IntervalSequence;
+import com.yahoo.egads.data.DataWatermark;
+import com.yahoo.egads.data.Model;
+import com.yahoo.egads.data.ModelBundle;
+import com.yahoo.egads.data.ModelCache;
+import com.yahoo.egads.data.ModelStore;
 import com.yahoo.egads.data.TimeSeries;
 import com.yahoo.egads.models.adm.AnomalyDetectionModel;
 
@@ -51,6 +57,13 @@ public class AnomalyDetector {
     protected ArrayList<Boolean> isTuned = new ArrayList<Boolean>();
     protected long firstTimeStamp = 0;
     protected long period;
+    // Where the tuned models are saved, if anywhere.
+    protected ModelStore store = null;
+    protected String tag = null;
+    // The data the models were tuned on.
+    protected DataWatermark watermark = new DataWatermark();
+
+    private static final String STORE_SUFFIX = "_adm";
 
     // Construction ////////////////////////////////////////////////////////////////////////////////
 
@@ -78,18 +91,11 @@ public class AnomalyDetector {
         }
     }
 
-    public AnomalyDetector(String theMetric, long period) throws Exception {
-        this.period = period;
-        // TODO:
-        // 1 - load the models related to theMetric from ModelDB
-        // 2 - push the loaded models into 'models'
-        // 3 - create a new TimeSeries for theMetric and set 'metric'
-        // 4 - set 'firstTimeStamp'
-
-        int modelNum = models.size();
-        for (int i = 0; i < modelNum; ++i) {
-            isTuned.set(i, true);
-        }
+    // Loads the tuned models of the metric named theMetric from the model cache of the config (see
+    // ModelCache.getInstance()), which reloads them from MODEL_STORE_PATH in a new process.
+    // Throws an exception if no tuned models of the metric were saved with the same config.
+    public AnomalyDetector(String theMetric, long period, Properties config) throws Exception {
+        setMetric(theMetric, period, config);
     }
 
     // Configuration Methods ////////////////////////////////////////////////////////////////
@@ -112,22 +118,56 @@ public class AnomalyDetector {
         reset();
     }
 
-    public void setMetric(String theMetric, long period) {
+    // As the constructor of the same arguments.
+    public void setMetric(String theMetric, long period, Properties config) throws Exception {
         this.period = period;
         firstTimeStamp = 0;
         models.clear();
         isTuned.clear();
+        metric = new TimeSeries();
+        metric.meta.name = theMetric;
+        if (!setModelStore(ModelCache.getInstance(config), ModelCache.tag(theMetric, config))) {
+            throw new Exception("No tuned models of " + theMetric + " were saved with this config.");
+        }
+    }
 
-        // TODO:
-        // 1 - load the models related to theMetric from ModelDB
-        // 2 - push the loaded models into 'models'
-        // 3 - create a new TimeSeries for theMetric and set 'metric'
-        // 4 - set 'firstTimeStamp'
+    // Saves the models in the store under the tag each time they are tuned, and
+    // loads the models already saved under the tag, replacing the current ones.
+    // Returns true if tuned models were loaded. The models tuned on other data than
+    // the metric (if it has any), including the beginning of the metric only, are not
+    // loaded: the thresholds depend on all the points, so they are tuned again.
+    public boolean setModelStore(ModelStore store, String tag) {
+        this.store = store;
+        this.tag = tag;
+
+        Model saved = store.retrieveModel(tag + STORE_SUFFIX);
+        if (!(saved instanceof ModelBundle)) {
+            return false;
+        }
+        DataWatermark tuned = ((ModelBundle) saved).getWatermark();
+        if (!metric.data.isEmpty() && (!tuned.matches(metric.data) || tuned.getLastTime() < metric.lastTime())) {
+            return false;
+        }
+        loadBundle((ModelBundle) saved);
+        return true;
+    }
 
-        int modelNum = models.size();
-        for (int i = 0; i < modelNum; ++i) {
-            isTuned.set(i, true);
+    // Replaces the current models with the tuned models of the bundle.
+    public void loadBundle(ModelBundle bundle) {
+        models.clear();
+        isTuned.clear();
+        for (Model m : bundle.models) {
+            models.add((AnomalyDetectionModel) m);
+            isTuned.add(true);
         }
+        firstTimeStamp = bundle.firstTimeStamp;
+        period = bundle.period;
+        watermark = bundle.getWatermark();
+    }
+
+    // Returns the current models along with their logical indexing.
+    public ModelBundle toBundle() {
+        return new ModelBundle(models, firstTimeStamp, period, watermark);
     }
 
     public void addModel(AnomalyDetectionModel model) {
@@ -136,6 +176,11 @@ public class AnomalyDetector {
         isTuned.add(false);
     }
 
+    // Returns true if there are models and all of them are tuned.
+    public boolean isTuned() {
+        return !models.isEmpty() && !isTuned.contains(false);
+    }
+
     // Algorithmic Methods ////////////////////////////////////////////////////////////////////
 
     public void reset() {
@@ -149,6 +194,7 @@ public class AnomalyDetector {
 
     public void tune(TimeSeries.DataSequence expectedValues) throws Exception {
         int i = 0;
+        boolean tuned = false;
 
         metric.data.setLogicalIndices(firstTimeStamp, period);
 
@@ -156,9 +202,18 @@ public class AnomalyDetector {
             if (!isTuned.get(i)) {
                 model.tune(metric.data, expectedValues);
                 isTuned.set(i, true);
+                tuned = true;
             }
             i++;
         }
+
+        if (tuned) {
+            watermark = new DataWatermark();
+            watermark.add(metric.data);
+        }
+        if (tuned && store != null) {
+            store.storeModel(tag + STORE_SUFFIX, toBundle());
+        }
     }
 
     public ArrayList<Anomaly> detect(TimeSeries observedSeries,
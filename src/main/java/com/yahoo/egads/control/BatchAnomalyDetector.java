@@ -0,0 +1,311 @@
+/*
+ * Copyright 2016, Yahoo Inc.
+ * Copyrights licensed under the GPL License.
+ * See the accompanying LICENSE file for terms.
+ */
+
+/*
+ * Description: BatchAnomalyDetector scores many aligned time-series (same time-stamps, e.g. one metric per host)
+ * at once with the KSigmaModel rules. Instead of one TimeSeries at a time, it takes a matrix of observed and
+ * expected values:
+ *
+ *      observed[t][j] = value of the series j at times[t]
+ *
+ * Details:
+ *      1. The errors (mapee, mae, smape, mape, mase) and their thresholds are computed for all the series of a row
+ *         in plain loops over primitive arrays, which the JIT can unroll and vectorize. The cost grows with the
+ *         number of cells, not with the number of series.
+ *      2. tune() sets, for every series, the threshold of every error that THRESHOLD does not fix to
+ *         mean + AUTO_SENSITIVITY_SD * sd of the error, as KSigmaModel.tune() does.
+ *      3. detect() returns one Anomaly per series, with the same intervals as AnomalyDetector with a KSigmaModel.
+ *         Rows outside of the detection window are skipped for all the series at once.
+ *      4. No memory is allocated per cell, only per anomaly.
+ */
+
+package com.yahoo.egads.control;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+import com.yahoo.egads.data.Anomaly;
+import com.yahoo.egads.data.Anomaly.Interval;
+import com.yahoo.egads.data.AnomalyErrorStorage;
+import com.yahoo.egads.data.MetricMeta;
+import com.yahoo.egads.data.TimeSeries;
+
+public class BatchAnomalyDetector {
+
+    private static final String MODEL_NAME = "KSigmaModel";
+    private static final int ERRORS = 5;
+
+    // Fixed thresholds of the errors, indexed as in AnomalyErrorStorage. Null if not fixed.
+    private final Float[] fixed = new Float[ERRORS];
+    private float sDAutoSensitivity = 3;
+    private final int maxHrsAgo;
+    private final long windowStart;
+    private long period = -1;
+
+    // Per series: the MASE denominator and the absolute threshold of every error.
+    private float[] maseDenom = null;
+    private float[][] thresholds = null;
+
+    // Construction ////////////////////////////////////////////////////////////////////
+
+    public BatchAnomalyDetector(Properties config) {
+        if (config.getProperty("MAX_ANOMALY_TIME_AGO") == null) {
+            throw new IllegalArgumentException("MAX_ANOMALY_TIME_AGO is NULL");
+        }
+        maxHrsAgo = new Integer(config.getProperty("MAX_ANOMALY_TIME_AGO"));
+        windowStart = new Long(config.getProperty("DETECTION_WINDOW_START_TIME"));
+        if (config.getProperty("AUTO_SENSITIVITY_SD") != null) {
+            sDAutoSensitivity = new Float(config.getProperty("AUTO_SENSITIVITY_SD"));
+        }
+        if (config.getProperty("PERIOD") != null) {
+            period = new Long(config.getProperty("PERIOD"));
+        }
+
+        Map<String, Integer> errorToIndex = new AnomalyErrorStorage().getErrorToIndex();
+        if (config.getProperty("THRESHOLD") != null) {
+            for (String pair : config.getProperty("THRESHOLD").split(",")) {
+                String[] keyValue = pair.split("#");
+                if (keyValue.length != 2) {
+                    throw new IllegalArgumentException("THRESHOLD PARSE ERROR");
+                }
+                Integer e = errorToIndex.get(keyValue[0]);
+                if (e != null) {
+                    fixed[e] = Float.valueOf(keyValue[1]);
+                }
+            }
+        }
+    }
+
+    // Methods ////////////////////////////////////////////////////////////////////
+
+    // Builds the [time][series] matrix of the values of aligned sequences.
+    public static float[][] toMatrix(List<TimeSeries.DataSequence> columns) throws Exception {
+        if (columns.isEmpty()) {
+            throw new Exception("No sequence to batch.");
+        }
+        int n = columns.get(0).size();
+        float[][] matrix = new float[n][columns.size()];
+        for (int j = 0; j < columns.size(); j++) {
+            TimeSeries.DataSequence column = columns.get(j);
+            if (column.size() != n) {
+                throw new Exception("The sequences are not aligned.");
+            }
+            for (int t = 0; t < n; t++) {
+                if (column.get(t).time != columns.get(0).get(t).time) {
+                    throw new Exception("The sequences are not aligned.");
+                }
+                matrix[t][j] = column.get(t).value;
+            }
+        }
+        return matrix;
+    }
+
+    // Number of series the detector is tuned for, 0 if not tuned.
+    public int width() {
+        return maseDenom == null ? 0 : maseDenom.length;
+    }
+
+    public void tune(float[][] observed, float[][] expected) throws Exception {
+        int n = check(observed, expected);
+        int w = observed[0].length;
+
+        // MASE denominators: mean absolute difference of consecutive observations.
+        maseDenom = new float[w];
+        for (int t = 1; t < n; t++) {
+            float[] o = observed[t];
+            float[] p = observed[t - 1];
+            for (int j = 0; j < w; j++) {
+                maseDenom[j] += Math.abs(o[j] - p[j]);
+            }
+        }
+        for (int j = 0; j < w; j++) {
+            maseDenom[j] = maseDenom[j] / (n - 1);
+        }
+
+        // Mean of every error, then its standard deviation around the mean.
+        float[][] errors = new float[ERRORS][w];
+        float[][] mean = new float[ERRORS][w];
+        float[][] sd = new float[ERRORS][w];
+        for (int t = 0; t < n; t++) {
+            computeErrors(observed[t], expected[t], errors);
+            for (int e = 0; e < ERRORS; e++) {
+                float[] err = errors[e];
+                float[] sum = mean[e];
+                for (int j = 0; j < w; j++) {
+                    sum[j] += err[j];
+                }
+            }
+        }
+        for (int e = 0; e < ERRORS; e++) {
+            for (int j = 0; j < w; j++) {
+                mean[e][j] = mean[e][j] / n;
+            }
+        }
+        for (int t = 0; t < n; t++) {
+            computeErrors(observed[t], expected[t], errors);
+            for (int e = 0; e < ERRORS; e++) {
+                float[] err = errors[e];
+                float[] m = mean[e];
+                float[] sum = sd[e];
+                for (int j = 0; j < w; j++) {
+                    sum[j] += (m[j] - err[j]) * (m[j] - err[j]);
+                }
+            }
+        }
+
+        thresholds = new float[ERRORS][w];
+        for (int e = 0; e < ERRORS; e++) {
+            for (int j = 0; j < w; j++) {
+                float auto = mean[e][j] + ((float) Math.sqrt(sd[e][j] / n) * sDAutoSensitivity);
+                thresholds[e][j] = Math.abs(fixed[e] != null ? fixed[e] : auto);
+            }
+        }
+    }
+
+    // Returns the anomalies of every series, in the order of the columns.
+    public ArrayList<Anomaly> detect(String[] names, long[] times, float[][] observed, float[][] expected)
+        throws Exception {
+        int n = check(observed, expected);
+        int w = observed[0].length;
+        if (thresholds == null) {
+            throw new Exception("The detector needs to be tuned before detection.");
+        }
+        if (w != width() || names.length != w || times.length != n) {
+            throw new Exception("The batch does not match the tuned series.");
+        }
+
+        long firstTimeStamp = times[0];
+        long p = period;
+        if (p == 0) {
+            p = n > 1 ? times[1] - times[0] : 1;
+        }
+
+        ArrayList<Anomaly> result = new ArrayList<Anomaly>(w);
+        Float[][] thresholdScores = new Float[w][];
+        for (int j = 0; j < w; j++) {
+            MetricMeta meta = new MetricMeta();
+            meta.name = names[j];
+            meta.fileName = names[j];
+            Anomaly anomaly = new Anomaly(names[j], meta);
+            anomaly.modelName = MODEL_NAME;
+            anomaly.type = "point_outlier";
+            anomaly.intervals = new Anomaly.IntervalSequence();
+            result.add(anomaly);
+        }
+
+        // At detection time, the anomaly thresholds shouldn't all be 0.
+        boolean[] enabled = new boolean[w];
+        for (int j = 0; j < w; j++) {
+            float sum = 0;
+            for (int e = 0; e < ERRORS; e++) {
+                sum += thresholds[e][j];
+            }
+            enabled[j] = sum > 0;
+        }
+
+        float[][] errors = new float[ERRORS][w];
+        boolean[] flags = new boolean[w];
+        long now = System.currentTimeMillis() / 1000L;
+        for (int t = 0; t < n; t++) {
+            if (!isDetectionWindowPoint(times[t], firstTimeStamp, now) && !(maxHrsAgo == 0 && t == n - 1)) {
+                continue;
+            }
+            float[] o = observed[t];
+            float[] x = expected[t];
+            computeErrors(o, x, errors);
+
+            int count = 0;
+            for (int j = 0; j < w; j++) {
+                boolean anomalous = errors[0][j] >= thresholds[0][j] || errors[1][j] >= thresholds[1][j]
+                    || errors[2][j] >= thresholds[2][j] || errors[3][j] >= thresholds[3][j]
+                    || errors[4][j] >= thresholds[4][j];
+                flags[j] = anomalous && enabled[j] && o[j] != x[j];
+                count += flags[j] ? 1 : 0;
+            }
+            if (count == 0) {
+                continue;
+            }
+
+            for (int j = 0; j < w; j++) {
+                if (!flags[j]) {
+                    continue;
+                }
+                if (thresholdScores[j] == null) {
+                    thresholdScores[j] = new Float[ERRORS];
+                    for (int e = 0; e < ERRORS; e++) {
+                        thresholdScores[j][e] = thresholds[e][j];
+                    }
+                }
+                Float[] score = new Float[ERRORS];
+                for (int e = 0; e < ERRORS; e++) {
+                    score[e] = errors[e][j];
+                }
+                result.get(j).intervals.add(new Interval(times[t], t, score, thresholdScores[j], o[j], x[j]));
+            }
+        }
+
+        for (Anomaly anomaly : result) {
+            anomaly.intervals.setLogicalIndices(firstTimeStamp, p);
+            anomaly.intervals.setTimeStamps(firstTimeStamp, p);
+        }
+        return result;
+    }
+
+    // Computes the errors of a row for every series, as AnomalyErrorStorage.computeErrorMetrics() does.
+    private void computeErrors(float[] actual, float[] expected, float[][] errors) {
+        float[] mapee = errors[0];
+        float[] mae = errors[1];
+        float[] smape = errors[2];
+        float[] mape = errors[3];
+        float[] mase = errors[4];
+        int w = actual.length;
+
+        for (int j = 0; j < w; j++) {
+            mae[j] = Math.abs(actual[j] - expected[j]);
+        }
+        for (int j = 0; j < w; j++) {
+            float sum = Math.abs(actual[j]) + Math.abs(expected[j]);
+            smape[j] = (200 * mae[j]) / (sum == 0 ? (float) 1.0 : sum);
+        }
+        for (int j = 0; j < w; j++) {
+            mape[j] = Math.abs(actual[j]) == 0 ? (float) 0.0 : ((100 * mae[j]) / Math.abs(actual[j]));
+        }
+        for (int j = 0; j < w; j++) {
+            mase[j] = Math.abs(maseDenom[j]) == 0.0 ? (float) 0.0 : mae[j] / Math.abs(maseDenom[j]);
+        }
+        for (int j = 0; j < w; j++) {
+            float div = expected[j] == (float) 0.0 ? (float) 0.0000000001 : expected[j];
+            mapee[j] = expected[j] == actual[j] ? (float) 0.0 : Math.abs(100 * ((actual[j] / div) - 1));
+        }
+    }
+
+    // Same rule as AnomalyDetectionAbstractModel.isDetectionWindowPoint().
+    private boolean isDetectionWindowPoint(long anomalyTime, long startTime, long unixTime) {
+        if (windowStart >= startTime) {
+            return (anomalyTime - windowStart) > 0;
+        }
+        return ((unixTime - anomalyTime) / 3600) < maxHrsAgo;
+    }
+
+    // Checks the shapes of the matrices and returns their number of rows.
+    private static int check(float[][] observed, float[][] expected) throws Exception {
+        if (observed == null || expected == null || observed.length == 0) {
+            throw new Exception("The input matrices are empty.");
+        }
+        if (observed.length != expected.length) {
+            throw new Exception("The observed and expected matrices have different numbers of rows.");
+        }
+        int w = observed[0].length;
+        for (int t = 0; t < observed.length; t++) {
+            if (observed[t].length != w || expected[t].length != w) {
+                throw new Exception("The rows of the matrices have different widths.");
+            }
+        }
+        return observed.length;
+    }
+}
@@ -15,11 +15,15 @@ import com.yahoo.egads.data.TimeSeries;
 import com.yahoo.egads.utilities.GUIUtils;
 import java.util.Properties;
 
-public class DetectAnomalyProcessable implements ProcessableObject {
-    private ModelAdapter ma;
-    private AnomalyDetector ad;
-    private Properties config;
-    private ArrayList<Anomaly> anomalyList;
+public class DetectAnomalyProcessable implements StagedProcessable {
+    protected ModelAdapter ma;
+    protected AnomalyDetector ad;
+    protected Properties config;
+    protected ArrayList<Anomaly> anomalyList;
+    // The expected values of each model, null when detect() forecasts them one model at a time,
+    // and the anomalies detected on them.
+    protected ArrayList<TimeSeries.DataSequence> expectedList;
+    protected ArrayList<ArrayList<Anomaly>> anomalyLists;
 
     public ArrayList<Anomaly> getAnomalyList() {
         return anomalyList;
@@ -31,50 +35,97 @@ public class DetectAnomalyProcessable implements ProcessableObject {
         this.ad = ad;
         this.config = config;
         anomalyList = new ArrayList<>();
+        anomalyLists = new ArrayList<>();
     }
 
     public void process() throws Exception {
+        train();
+        detect();
+        output();
+    }
 
-        // Resetting the models
-        ma.reset();
+    public void train() throws Exception {
+        // A series scored before with the same data and config has the same expected values.
+        long from = ma.metric.startTime();
+        long to = ma.metric.lastTime();
+        expectedList = ma.cachedForecast(from, to);
+        if (expectedList != null) {
+            return;
+        }
 
-        // Training the model with the whole metric
-        ma.train();
+        // Models loaded from the model cache are already trained, on the beginning of the metric.
+        if (!ma.isTrained()) {
+            // Resetting the models
+            ma.reset();
 
-        // Finding the expected values
-        ArrayList<TimeSeries.DataSequence> list = ma.forecast(
-            ma.metric.startTime(), ma.metric.lastTime());
+            // Training the model with the whole metric
+            ma.train();
+        } else {
+            // Folding in the points after the ones they were trained on
+            ma.refresh();
+        }
 
-        // For each model's prediction in the ModelAdapter
-        for (TimeSeries.DataSequence ds : list) {
-            // Reseting the anomaly detectors
-            ad.reset();
+        // The expected values of all the models are only kept to be cached or plotted,
+        // otherwise detect() forecasts them one model at a time.
+        if (ma.forecastCache != null || "GUI".equals(config.getProperty("OUTPUT"))) {
+            expectedList = ma.forecast(from, to);
+            ma.cacheForecast(from, to, expectedList);
+        }
+    }
 
-            // Unsupervised tuning of the anomaly detectors
-            ad.tune(ds);
+    public void detect() throws Exception {
+        anomalyLists.clear();
+
+        // Models loaded from the model cache are already tuned, unless they
+        // have to be tuned again on the predictions of several models.
+        boolean tuned = ad.isTuned() && ma.getModelCount() == 1;
+
+        // For each model's prediction in the ModelAdapter
+        for (int i = 0; i < ma.getModelCount(); i++) {
+            TimeSeries.DataSequence ds = expectedList != null
+                ? expectedList.get(i) : ma.forecast(i, ma.metric.startTime(), ma.metric.lastTime());
+            if (!tuned) {
+                // Reseting the anomaly detectors
+                ad.reset();
+
+                // Unsupervised tuning of the anomaly detectors
+                ad.tune(ds);
+            }
 
             // Detecting anomalies for each anomaly detection model in anomaly detector
             anomalyList = ad.detect(ad.metric, ds);
+            anomalyLists.add(anomalyList);
+        }
+    }
+
+    public void output() throws Exception {
+        for (int i = 0; i < anomalyLists.size(); i++) {
+            ArrayList<Anomaly> anomalies = anomalyLists.get(i);
 
             // Writing the anomalies to AnomalyDB
             if (config.getProperty("OUTPUT") != null && config.getProperty("OUTPUT").equals("ANOMALY_DB")) {
-                for (Anomaly anomaly : anomalyList) {
+                for (Anomaly anomaly : anomalies) {
                     // TODO: Batch Anomaly Process.
                 }
             } else if (config.getProperty("OUTPUT") != null && config.getProperty("OUTPUT").equals("GUI")) {
-                GUIUtils.plotResults(ma.metric.data, ds, anomalyList, config);
+                GUIUtils.plotResults(observedData(), expectedList.get(i), anomalies, config);
             } else if (config.getProperty("OUTPUT") != null && config.getProperty("OUTPUT").equals("PLOT")) {
-                for (Anomaly anomaly : anomalyList) {
+                for (Anomaly anomaly : anomalies) {
                     System.out.print(anomaly.toPlotString());
                 }
             } else {
-                for (Anomaly anomaly : anomalyList) {
+                for (Anomaly anomaly : anomalies) {
                     System.out.print(anomaly.toPerlString());
                 }
             }
         }
     }
 
+    // The observed values the expected values were computed for.
+    protected TimeSeries.DataSequence observedData() {
+        return ma.metric.data;
+    }
+
     public ArrayList<Anomaly> result() throws Exception {
         return getAnomalyList();
     }
@@ -0,0 +1,135 @@
+/*
+ * Copyright 2016, Yahoo Inc.
+ * Copyrights licensed under the GPL License.
+ * See the accompanying LICENSE file for terms.
+ */
+
+/*
+ * Description: A template for detecting anomalies on the new points of a metric only (OP_TYPE DETECT_TAIL).
+ * The trained time-series models, the tuned anomaly detection models and the time-stamp of the last scored point
+ * are kept in a ModelCheckpoint in a ModelStore. A run loads the checkpoint, forecasts only the points after the
+ * last scored one and scores only those, so its cost grows with the number of new points instead of the history.
+ * This only holds for the models that forecast arbitrary time-stamps (e.g. OlympicModel2 or the smoothing and
+ * regression models): the ones that only replay their training range, as the default OlympicModel and NullModel,
+ * are retrained on the whole metric on every run, see 1.
+ *
+ * Details:
+ *      1. The models are fully retrained and retuned on the whole metric when there is no checkpoint yet, when
+ *         RETRAIN_INTERVAL seconds (default 86400) passed between the last point the models were trained on and the
+ *         last point of the metric, or when a model cannot forecast arbitrary time-stamps, which is logged as a
+ *         warning. Only the anomalies found after the last scored point are reported in that case too.
+ *      2. The checkpoint is kept in the ModelCache when MODEL_CACHE_SIZE is set, otherwise in a FileModelStore
+ *         under MODEL_STORE_PATH.
+ */
+
+package com.yahoo.egads.control;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.Properties;
+
+import com.yahoo.egads.data.Anomaly;
+import com.yahoo.egads.data.Model;
+import com.yahoo.egads.data.ModelStore;
+import com.yahoo.egads.data.TimeSeries;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+public class DetectTailProcessable extends DetectAnomalyProcessable {
+    private static final Logger logger = LoggerFactory.getLogger(DetectTailProcessable.class);
+
+    private ModelStore store;
+    private String tag;
+    private long retrainInterval = 86400;
+    private ModelCheckpoint checkpoint;
+    // The points after the last scored one.
+    private TimeSeries tail;
+    private boolean retrained;
+
+    DetectTailProcessable(ModelAdapter ma, AnomalyDetector ad, ModelStore store, String tag, Properties config) {
+        super(ma, ad, config);
+        this.store = store;
+        this.tag = tag;
+        if (config.getProperty("RETRAIN_INTERVAL") != null) {
+            retrainInterval = new Long(config.getProperty("RETRAIN_INTERVAL"));
+        }
+    }
+
+    public void train() throws Exception {
+        Model saved = store.retrieveModel(tag);
+        checkpoint = (saved instanceof ModelCheckpoint) ? (ModelCheckpoint) saved : null;
+
+        tail = new TimeSeries();
+        tail.meta = ma.metric.meta;
+        for (TimeSeries.Entry e : ma.metric.data) {
+            if (checkpoint == null || e.time > checkpoint.lastScored) {
+                tail.data.add(new TimeSeries.Entry(e));
+            }
+        }
+
+        retrained = checkpoint == null || ma.metric.lastTime() - checkpoint.trainedAt >= retrainInterval;
+        if (!retrained) {
+            ma.loadBundle(checkpoint.forecastModels);
+            try {
+                // Forecasting the new points only
+                expectedList = ma.forecast(tail.data);
+                return;
+            } catch (Exception e) {
+                // The model only replays its training range, retrain it on the whole metric.
+                logger.warn(ma.metric.meta.name + ": " + e.getMessage() + " Retraining on the whole metric.");
+                retrained = true;
+            }
+        }
+
+        // Training the model with the whole metric
+        ma.reset();
+        ma.train();
+        expectedList = ma.forecast(ma.metric.startTime(), ma.metric.lastTime());
+    }
+
+    public void detect() throws Exception {
+        anomalyLists.clear();
+
+        if (!retrained) {
+            ad.loadBundle(checkpoint.anomalyModels);
+        }
+
+        for (TimeSeries.DataSequence ds : expectedList) {
+            if (retrained) {
+                ad.reset();
+                ad.tune(ds);
+                anomalyList = ad.detect(ad.metric, ds);
+                if (checkpoint != null) {
+                    dropScored(anomalyList, checkpoint.lastScored);
+                }
+            } else {
+                anomalyList = ad.detect(tail, ds);
+            }
+            anomalyLists.add(anomalyList);
+        }
+
+        long last = ma.metric.lastTime();
+        store.storeModel(tag, new ModelCheckpoint(retrained ? ma.toBundle() : checkpoint.forecastModels,
+                                                  ad.toBundle(),
+                                                  retrained ? last : checkpoint.trainedAt,
+                                                  last));
+    }
+
+    protected TimeSeries.DataSequence observedData() {
+        return retrained ? ma.metric.data : tail.data;
+    }
+
+    // Removes the anomalies reported by a previous run.
+    private static void dropScored(ArrayList<Anomaly> anomalies, long lastScored) {
+        for (Anomaly a : anomalies) {
+            Iterator<Anomaly.Interval> it = a.intervals.iterator();
+            while (it.hasNext()) {
+                Anomaly.Interval interval = it.next();
+                if (interval.utime != null && interval.utime <= lastScored) {
+                    it.remove();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,291 @@
+/*
+ * Copyright 2016, Yahoo Inc.
+ * Copyrights licensed under the GPL License.
+ * See the accompanying LICENSE file for terms.
+ */
+
+/*
+ * Description: DetectionScheduler separates the continuous scoring of new points from the periodic retraining of the
+ * models. For each metric it tracks when its models were last trained and the time-stamp of its last scored point.
+ *
+ * Details:
+ *      1. Detections run on a pool of high priority threads (SCHEDULER_DETECT_THREADS, default: number of processors)
+ *         and only forecast and score the points after the last scored one.
+ *      2. Once RETRAIN_INTERVAL seconds (default 86400) passed since the last training of a metric, a detection queues
+ *         a retrain on a pool of low priority threads (SCHEDULER_RETRAIN_THREADS, default 1). The retrain builds new
+ *         models on the whole metric and swaps them in atomically; detections keep using the previous models
+ *         meanwhile and never wait for it.
+ *      3. Detections never train. The first detection on a metric has no models yet: it queues their training and
+ *         reports no anomalies, leaving its points to be scored once they are trained. The points up to the end of
+ *         the training range are scored from the forecast made at training time, the ones after it from forecasts
+ *         of their time-stamps only. Models that can only replay their training range (see
+ *         TimeSeriesModel.forecastsTimeStamps()) leave the points after it to the retrain, which is queued as soon as
+ *         the metric advances past the range.
+ *      4. The models are trained once per retrain and reused by every detection until the next one.
+ *      5. scheduleDetection() polls a source of a metric at a fixed rate.
+ */
+
+package com.yahoo.egads.control;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import com.yahoo.egads.data.Anomaly;
+import com.yahoo.egads.data.ModelCache;
+import com.yahoo.egads.data.TimeSeries;
+
+public class DetectionScheduler {
+
+    // Receives the anomalies of the scheduled detections.
+    public interface AnomalyListener {
+        void onAnomalies(TimeSeries metric, List<Anomaly> anomalies);
+    }
+
+    // The models of a metric, trained once and used by all the detections until the next retrain.
+    private static class TrainedModels {
+        final ModelAdapter ma;
+        final AnomalyDetector ad;
+        // Time-stamp of the last point the models were trained on.
+        final long trainedAt;
+        // The forecast of the training range the detectors were tuned on.
+        final TimeSeries.DataSequence expected;
+        final boolean forecastsTimeStamps;
+
+        TrainedModels(ModelAdapter ma, AnomalyDetector ad, long trainedAt, TimeSeries.DataSequence expected) {
+            this.ma = ma;
+            this.ad = ad;
+            this.trainedAt = trainedAt;
+            this.expected = expected;
+            this.forecastsTimeStamps = ma.forecastsTimeStamps();
+        }
+    }
+
+    // The scheduling state of a metric.
+    private static class MetricState {
+        final AtomicReference<TrainedModels> models = new AtomicReference<TrainedModels>();
+        final AtomicBoolean retraining = new AtomicBoolean(false);
+        // Wall clock time of the last training in milliseconds.
+        volatile long lastTrained = 0;
+        volatile long lastScored = Long.MIN_VALUE;
+    }
+
+    private final Properties config;
+    private final long retrainIntervalMillis;
+    private final ExecutorService detectPool;
+    private final ExecutorService retrainPool;
+    private final ScheduledExecutorService timer;
+    private final ConcurrentHashMap<String, MetricState> states = new ConcurrentHashMap<String, MetricState>();
+
+    // Construction ////////////////////////////////////////////////////////////////////
+
+    public DetectionScheduler(Properties config) {
+        this.config = config;
+        long retrainInterval = 86400;
+        if (config.getProperty("RETRAIN_INTERVAL") != null) {
+            retrainInterval = new Long(config.getProperty("RETRAIN_INTERVAL"));
+        }
+        retrainIntervalMillis = retrainInterval * 1000;
+        int detectThreads = Runtime.getRuntime().availableProcessors();
+        if (config.getProperty("SCHEDULER_DETECT_THREADS") != null) {
+            detectThreads = new Integer(config.getProperty("SCHEDULER_DETECT_THREADS"));
+        }
+        int retrainThreads = 1;
+        if (config.getProperty("SCHEDULER_RETRAIN_THREADS") != null) {
+            retrainThreads = new Integer(config.getProperty("SCHEDULER_RETRAIN_THREADS"));
+        }
+        detectPool = Executors.newFixedThreadPool(detectThreads, threads("detect", Thread.MAX_PRIORITY));
+        retrainPool = Executors.newFixedThreadPool(retrainThreads, threads("retrain", Thread.MIN_PRIORITY));
+        timer = Executors.newSingleThreadScheduledExecutor(threads("timer", Thread.NORM_PRIORITY));
+    }
+
+    // Methods ////////////////////////////////////////////////////////////////////
+
+    // Queues a detection on the points of the metric that were not scored yet.
+    public Future<List<Anomaly>> detect(final TimeSeries metric) {
+        return detectPool.submit(new Callable<List<Anomaly>>() {
+            public List<Anomaly> call() throws Exception {
+                return runDetection(metric);
+            }
+        });
+    }
+
+    // Detects on the metric returned by the source every periodSeconds and hands
+    // the anomalies to the listener. Cancel the returned future to stop.
+    public ScheduledFuture<?> scheduleDetection(final Callable<TimeSeries> source, long periodSeconds,
+                                                final AnomalyListener listener) {
+        return timer.scheduleAtFixedRate(new Runnable() {
+            public void run() {
+                try {
+                    TimeSeries metric = source.call();
+                    listener.onAnomalies(metric, detect(metric).get());
+                } catch (Exception e) {
+                    e.printStackTrace();
+                }
+            }
+        }, 0, periodSeconds, TimeUnit.SECONDS);
+    }
+
+    // Wall clock time in milliseconds of the last training of the metric, 0 if never trained.
+    public long getLastTrained(String metric) {
+        MetricState state = states.get(ModelCache.tag(metric, config));
+        return state == null ? 0 : state.lastTrained;
+    }
+
+    // Time-stamp of the last scored point of the metric, Long.MIN_VALUE if none.
+    public long getLastScored(String metric) {
+        MetricState state = states.get(ModelCache.tag(metric, config));
+        return state == null ? Long.MIN_VALUE : state.lastScored;
+    }
+
+    // Returns true while a retrain of the metric is queued or running.
+    public boolean isRetraining(String metric) {
+        MetricState state = states.get(ModelCache.tag(metric, config));
+        return state != null && state.retraining.get();
+    }
+
+    public void shutdown() {
+        timer.shutdownNow();
+        detectPool.shutdown();
+        retrainPool.shutdownNow();
+    }
+
+    // Wall clock time in milliseconds.
+    protected long now() {
+        return System.currentTimeMillis();
+    }
+
+    private List<Anomaly> runDetection(TimeSeries metric) throws Exception {
+        MetricState state = stateOf(metric);
+        // Detections of the same metric are serialized to keep lastScored consistent.
+        synchronized (state) {
+            TrainedModels models = state.models.get();
+            if (models == null) {
+                // Not ready: the points are scored by the first detection after the training.
+                retrain(metric, state);
+                return new ArrayList<Anomaly>();
+            }
+            List<Anomaly> anomalies = detect(metric, models, state.lastScored);
+            if (metric.size() > 0) {
+                long scored = models.forecastsTimeStamps ? metric.lastTime()
+                                                         : Math.min(metric.lastTime(), models.trainedAt);
+                state.lastScored = Math.max(state.lastScored, scored);
+            }
+            if ((metric.size() > 0 && metric.lastTime() > state.lastScored)
+                || now() - state.lastTrained >= retrainIntervalMillis) {
+                retrain(metric, state);
+            }
+            return anomalies;
+        }
+    }
+
+    // Queues a training on the low priority pool unless one is already pending.
+    private void retrain(TimeSeries metric, final MetricState state) {
+        if (!state.retraining.compareAndSet(false, true)) {
+            return;
+        }
+        // The detections keep using the metric while it is retrained.
+        final TimeSeries copy = new TimeSeries();
+        copy.meta = metric.meta;
+        for (TimeSeries.Entry e : metric.data) {
+            copy.data.add(new TimeSeries.Entry(e));
+        }
+        retrainPool.submit(new Runnable() {
+            public void run() {
+                try {
+                    TrainedModels models = train(copy);
+                    // Swapping the models in, detections pick them up on their next run.
+                    state.models.set(models);
+                    state.lastTrained = now();
+                } catch (Exception e) {
+                    e.printStackTrace();
+                } finally {
+                    state.retraining.set(false);
+                }
+            }
+        });
+    }
+
+    // Trains new models on the whole metric.
+    private TrainedModels train(TimeSeries metric) throws Exception {
+        ModelAdapter ma = ProcessableObjectFactory.buildTSModel(metric, config);
+        AnomalyDetector ad = ProcessableObjectFactory.buildAnomalyModel(metric, config);
+        ma.reset();
+        ma.train();
+        TimeSeries.DataSequence expected = ma.forecast(metric.startTime(), metric.lastTime()).get(0);
+        ad.reset();
+        ad.tune(expected);
+        return new TrainedModels(ma, ad, metric.lastTime(), expected);
+    }
+
+    // Scores the points after lastScored: the ones of the training range against its forecast,
+    // the ones after it against forecasts of their time-stamps if the models can make them.
+    private List<Anomaly> detect(TimeSeries metric, TrainedModels models, long lastScored) throws Exception {
+        TimeSeries scored = new TimeSeries();
+        scored.meta = metric.meta;
+        TimeSeries.DataSequence expected = new TimeSeries.DataSequence();
+        TimeSeries.DataSequence tail = new TimeSeries.DataSequence();
+        // Both sequences are sorted by time.
+        int j = 0;
+        for (TimeSeries.Entry e : metric.data) {
+            if (e.time <= lastScored) {
+                continue;
+            }
+            if (e.time > models.trainedAt) {
+                if (models.forecastsTimeStamps) {
+                    tail.add(new TimeSeries.Entry(e));
+                }
+                continue;
+            }
+            while (j < models.expected.size() && models.expected.get(j).time < e.time) {
+                j++;
+            }
+            if (j < models.expected.size() && models.expected.get(j).time == e.time) {
+                scored.data.add(new TimeSeries.Entry(e));
+                expected.add(new TimeSeries.Entry(models.expected.get(j)));
+            }
+        }
+        if (!tail.isEmpty()) {
+            scored.data.addAll(tail);
+            expected.addAll(models.ma.forecast(tail).get(0));
+        }
+        if (scored.size() == 0) {
+            return new ArrayList<Anomaly>();
+        }
+        return models.ad.detect(scored, expected);
+    }
+
+    private MetricState stateOf(TimeSeries metric) {
+        String tag = ModelCache.tag(metric.meta.name, config);
+        MetricState state = states.get(tag);
+        if (state == null) {
+            states.putIfAbsent(tag, new MetricState());
+            state = states.get(tag);
+        }
+        return state;
+    }
+
+    private static ThreadFactory threads(final String name, final int priority) {
+        final AtomicInteger count = new AtomicInteger();
+        return new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "egads-scheduler-" + name + "-" + count.getAndIncrement());
+                t.setDaemon(true);
+                t.setPriority(priority);
+                return t;
+            }
+        };
+    }
+}
@@ -0,0 +1,148 @@
+/*
+ * Copyright 2016, Yahoo Inc.
+ * Copyrights licensed under the GPL License.
+ * See the accompanying LICENSE file for terms.
+ */
+
+/*
+ * Description: ForecastCursor streams the forecasts of one model of a ModelAdapter into the primitive buffers of the
+ * caller, a chunk at a time, so that a consumer holds no more than a chunk of expected values instead of the whole
+ * expected series of every model (see ModelAdapter.cursor()).
+ *
+ * Details:
+ *      1. The time-stamps are computed on demand: from, from + period, ... up to to, or the ones of the metric when the
+ *         period is -1, as in ModelAdapter.forecast().
+ *      2. Each read() reuses the entries of a single chunk sequence, whose time-stamps the model predicts.
+ *      3. A model that cannot forecast a chunk, i.e. that replays its training range from the first entry of the
+ *         sequence instead of honoring its time-stamps (see TimeSeriesModel.forecastsTimeStamps()), is predicted
+ *         once over the whole range and the cursor reads from that sequence instead, so the values are always the
+ *         ones of ModelAdapter.forecast().
+ */
+
+package com.yahoo.egads.control;
+
+import com.yahoo.egads.data.TimeSeries;
+import com.yahoo.egads.models.tsmm.TimeSeriesModel;
+
+public class ForecastCursor {
+
+    // The length of the chunks the consumers read by default.
+    public static final int CHUNK_SIZE = 4096;
+
+    private final TimeSeriesModel model;
+    // The metric, whose time-stamps are the forecast ones when the period is -1.
+    private final TimeSeries.DataSequence observed;
+    private final long from;
+    private final long period;
+    private final long firstTimeStamp;
+    private final int size;
+    private int position = 0;
+
+    // The reused entries passed to the model.
+    private final TimeSeries.DataSequence chunk = new TimeSeries.DataSequence();
+    // The whole forecast, for the models that cannot forecast a chunk only.
+    private TimeSeries.DataSequence replayed = null;
+
+    ForecastCursor(TimeSeriesModel model, TimeSeries.DataSequence observed, long from, long to, long period,
+                   long firstTimeStamp) throws Exception {
+        this.model = model;
+        this.observed = observed;
+        this.from = from;
+        this.period = period;
+        this.firstTimeStamp = firstTimeStamp;
+        if (period == -1) {
+            size = observed.size();
+        } else {
+            if (to < from) {
+                throw new Exception("The start time should be before the end time.");
+            }
+            size = (int) ((to - from) / period + 1);
+        }
+    }
+
+    // The number of forecasts of the cursor.
+    public int size() {
+        return size;
+    }
+
+    // The number of forecasts read so far.
+    public int position() {
+        return position;
+    }
+
+    public boolean hasNext() {
+        return position < size;
+    }
+
+    /**
+     * Reads the next forecasts.
+     * @param times Receives the time-stamps of the forecasts, may be null.
+     * @param values Receives the forecasts.
+     * @param offset The index of the first forecast in the buffers.
+     * @param length The maximum number of forecasts to read.
+     * @return The number of forecasts read, 0 once all of them are.
+     */
+    public int read(long[] times, float[] values, int offset, int length) throws Exception {
+        int n = Math.min(length, size - position);
+        if (n <= 0) {
+            return 0;
+        }
+        if (replayed == null) {
+            if (model.forecastsTimeStamps()) {
+                predict(n);
+            } else {
+                replay();
+            }
+        }
+        for (int k = 0; k < n; k++) {
+            TimeSeries.Entry e = replayed == null ? chunk.get(k) : replayed.get(position + k);
+            if (times != null) {
+                times[offset + k] = e.time;
+            }
+            values[offset + k] = e.value;
+        }
+        position += n;
+        return n;
+    }
+
+    // Predicts the next n entries in the chunk.
+    private void predict(int n) throws Exception {
+        while (chunk.size() > n) {
+            chunk.remove(chunk.size() - 1);
+        }
+        while (chunk.size() < n) {
+            chunk.add(new TimeSeries.Entry());
+        }
+        for (int k = 0; k < n; k++) {
+            TimeSeries.Entry e = chunk.get(k);
+            e.time = time(position + k);
+            // As in ModelAdapter.forecast(), the values of the metric are the initial ones when the period is -1.
+            e.value = period == -1 ? observed.get(position + k).value : 0;
+            e.logicalIndex = period == -1 ? 0 : (e.time - firstTimeStamp) / period;
+        }
+        model.predict(chunk);
+        boolean honored = chunk.size() == n;
+        for (int k = 0; honored && k < n; k++) {
+            honored = chunk.get(k).time == time(position + k);
+        }
+        if (!honored) {
+            throw new Exception(model.getModelName() + " did not forecast the requested time-stamps.");
+        }
+    }
+
+    private void replay() throws Exception {
+        replayed = new TimeSeries.DataSequence(size);
+        for (int i = 0; i < size; i++) {
+            TimeSeries.Entry e = new TimeSeries.Entry(time(i), period == -1 ? observed.get(i).value : 0);
+            if (period != -1) {
+                e.logicalIndex = (e.time - firstTimeStamp) / period;
+            }
+            replayed.add(e);
+        }
+        model.predict(replayed);
+    }
+
+    private long time(int i) {
+        return period == -1 ? observed.get(i).time : from + i * period;
+    }
+}
@@ -10,16 +10,16 @@
  * application of a certain algorithm (model) on a given time series should be carried out via a ModelAdapter object.
  * The direct application of models on time series is discouraged in EGADS unless for test purposes.
  * 
- * Inputs: 1. The 'metric' time series - Either an explicit TimeSeries object - or the String name of the time series
- * which would require the ModelAdapter to connect to ModelDB to load the appropriate models into the memory (under
- * construction)
+ * Inputs: 1. The 'metric' time series - Either an explicit TimeSeries object - or the String name of the metric and the
+ * config, which makes the ModelAdapter load the models trained on the metric with that config from the ModelCache
  * 
- * 2. The model(s) - Either an explicit TimeSeriesModel object via addModel() - or implicitly loaded from ModelDB when
- * the metric name is provided (under construction)
+ * 2. The model(s) - Either an explicit TimeSeriesModel object via addModel() - or implicitly loaded from a ModelStore
+ * via setModelStore() or when the name of the metric is provided
  * 
  * Features: 1. Resetting all the added models via reset() 2. Training all the added models on the 'metric' via train()
  * 3. Updating all the added models for a new time series sequence via update() 4. Forecasting the value of the time
- * series according to all the added models for a given time period via forecast()
+ * series according to all the added models for a given time period via forecast() 5. Streaming the forecasts of a model
+ * into primitive buffers, a chunk at a time, via cursor()
  * 
  * Details: 1. The time units for interfacing with a ModelAdapter object is the standard UNIX timestamp; however,
  * ModelAdapter automatically performs logical indexing conversion for the abstract algorithms so that the actual models
@@ -31,8 +31,16 @@
 package com.yahoo.egads.control;
 
 import java.util.ArrayList;
-
+import java.util.Properties;
+
+import com.yahoo.egads.data.ForecastCache;
+import com.yahoo.egads.data.DataWatermark;
+import com.yahoo.egads.data.Model;
+import com.yahoo.egads.data.ModelBundle;
+import com.yahoo.egads.data.ModelCache;
+import com.yahoo.egads.data.ModelStore;
 import com.yahoo.egads.data.TimeSeries;
+import com.yahoo.egads.models.tsmm.TimeSeriesAbstractModel;
 import com.yahoo.egads.models.tsmm.TimeSeriesModel;
 
 public class ModelAdapter { // Encapsulates a metric and the models operating on it
@@ -42,6 +50,17 @@ public class ModelAdapter { // Encapsulates a metric and the models operating on
     protected ArrayList<Boolean> isTrained = new ArrayList<Boolean>();
     protected long firstTimeStamp = 0;
     protected long period;
+    // Where the trained models are saved, if anywhere.
+    protected ModelStore store = null;
+    protected String tag = null;
+    // The data the models were trained on.
+    protected DataWatermark watermark = new DataWatermark();
+
+    // Where the forecasts are cached by content, if anywhere, and the fingerprint of the config.
+    protected ForecastCache forecastCache = null;
+    protected long fingerprint = 0;
+
+    private static final String STORE_SUFFIX = "_tsmm";
 
     // Construction ///////////////////////////////////////////////////////////
 
@@ -68,18 +87,11 @@ public class ModelAdapter { // Encapsulates a metric and the models operating on
         }
     }
 
-    public ModelAdapter(String theMetric, long period) throws Exception {
-        this.period = period;
-        // TODO:
-        // 1 - load the models related to theMetric from ModelDB
-        // 2 - push the loaded models into 'models'
-        // 3 - create a new TimeSeries for theMetric and set 'metric'
-        // 4 - set 'firstTimeStamp'
-
-        int modelNum = models.size();
-        for (int i = 0; i < modelNum; ++i) {
-            isTrained.set(i, true);
-        }
+    // Loads the trained models of the metric named theMetric from the model cache of the config (see
+    // ModelCache.getInstance()), which reloads them from MODEL_STORE_PATH in a new process.
+    // Throws an exception if no trained models of the metric were saved with the same config.
+    public ModelAdapter(String theMetric, long period, Properties config) throws Exception {
+        setMetric(theMetric, period, config);
     }
 
     // Configuration Methods ////////////////////////////////////////////////////////////////
@@ -102,22 +114,58 @@ public class ModelAdapter { // Encapsulates a metric and the models operating on
         reset();
     }
 
-    public void setMetric(String theMetric, long period) {
+    // As the constructor of the same arguments.
+    public void setMetric(String theMetric, long period, Properties config) throws Exception {
         this.period = period;
         firstTimeStamp = 0;
         models.clear();
         isTrained.clear();
+        metric = new TimeSeries();
+        metric.meta.name = theMetric;
+        if (!setModelStore(ModelCache.getInstance(config), ModelCache.tag(theMetric, config))) {
+            throw new Exception("No trained models of " + theMetric + " were saved with this config.");
+        }
+    }
 
-        // TODO:
-        // 1 - load the models related to theMetric from ModelDB
-        // 2 - push the loaded models into 'models'
-        // 3 - create a new TimeSeries for theMetric and set 'metric'
-        // 4 - set 'firstTimeStamp'
+    // Saves the models in the store under the tag each time they are trained, and
+    // loads the models already saved under the tag, replacing the current ones.
+    // Returns true if trained models were loaded. The models trained on other data than
+    // the beginning of the metric (if it has any) are not loaded, they are trained again.
+    public boolean setModelStore(ModelStore store, String tag) {
+        this.store = store;
+        this.tag = tag;
+
+        Model saved = store.retrieveModel(tag + STORE_SUFFIX);
+        if (!(saved instanceof ModelBundle)
+            || (!metric.data.isEmpty() && !((ModelBundle) saved).getWatermark().matches(metric.data))) {
+            return false;
+        }
+        loadBundle((ModelBundle) saved);
+        return true;
+    }
+
+    // Caches the forecasts of cacheForecast() under the content of the metric, see ForecastCache.
+    public void setForecastCache(ForecastCache cache, long fingerprint) {
+        this.forecastCache = cache;
+        this.fingerprint = fingerprint;
+    }
 
-        int modelNum = models.size();
-        for (int i = 0; i < modelNum; ++i) {
-            isTrained.set(i, true);
+    // Replaces the current models with the trained models of the bundle.
+    public void loadBundle(ModelBundle bundle) {
+        models.clear();
+        isTrained.clear();
+        for (Model m : bundle.models) {
+            models.add((TimeSeriesModel) m);
+            isTrained.add(true);
         }
+        firstTimeStamp = bundle.firstTimeStamp;
+        period = bundle.period;
+        watermark = bundle.getWatermark();
+    }
+
+    // Returns the current models along with their logical indexing.
+    public ModelBundle toBundle() {
+        return new ModelBundle(models, firstTimeStamp, period, watermark);
     }
 
     public void addModel(TimeSeriesModel model) {
@@ -126,6 +174,26 @@ public class ModelAdapter { // Encapsulates a metric and the models operating on
         isTrained.add(false);
     }
 
+    // Returns true if there are models and all of them are trained.
+    public boolean isTrained() {
+        return !models.isEmpty() && !isTrained.contains(false);
+    }
+
+    // Returns true if all the models forecast arbitrary time-stamps (see TimeSeriesModel.forecastsTimeStamps()),
+    // so that forecast(DataSequence) can forecast the points after the training range.
+    public boolean forecastsTimeStamps() {
+        for (TimeSeriesModel model : models) {
+            if (!model.forecastsTimeStamps()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public int getModelCount() {
+        return models.size();
+    }
+
     public String[] getModelNames() {
         String[] names = new String[models.size()];
         for (int i = 0; i < models.size(); ++i) {
@@ -148,6 +216,7 @@ public class ModelAdapter { // Encapsulates a metric and the models operating on
 
     public void train() throws Exception {
         int i = 0;
+        boolean trained = false;
 
         metric.data.setLogicalIndices(firstTimeStamp, period);
 
@@ -155,9 +224,18 @@ public class ModelAdapter { // Encapsulates a metric and the models operating on
             if (!isTrained.get(i)) {
                 model.train(metric.data);
                 isTrained.set(i, true);
+                trained = true;
             }
             i++;
         }
+
+        if (trained) {
+            watermark = new DataWatermark();
+            watermark.add(metric.data);
+        }
+        if (trained && store != null) {
+            store.storeModel(tag + STORE_SUFFIX, toBundle());
+        }
     }
 
     public void update(TimeSeries.DataSequence newData) throws Exception {
@@ -177,10 +255,98 @@ public class ModelAdapter { // Encapsulates a metric and the models operating on
             for (TimeSeriesModel model : models) {
                 model.update(newData);
             }
+            watermark.add(newData);
+
+            // The updated state replaces the saved one, so a restart resumes from it.
+            if (store != null) {
+                store.storeModel(tag + STORE_SUFFIX, toBundle());
+            }
         }
     }
 
+    // Brings the models loaded from a store up to date with the points of the metric after the ones they were
+    // trained on: updates them if all of them are incremental (see TimeSeriesAbstractModel.isIncremental()),
+    // else trains them again on the whole metric. Returns true if there were such points.
+    public boolean refresh() throws Exception {
+        if (!isTrained() || metric.data.isEmpty() || metric.lastTime() <= watermark.getLastTime()) {
+            return false;
+        }
+        boolean incremental = true;
+        for (TimeSeriesModel model : models) {
+            incremental &= model instanceof TimeSeriesAbstractModel
+                           && ((TimeSeriesAbstractModel) model).isIncremental();
+        }
+        if (incremental) {
+            TimeSeries.DataSequence newData = new TimeSeries.DataSequence();
+            for (TimeSeries.Entry e : metric.data) {
+                if (e.time > watermark.getLastTime()) {
+                    newData.add(new TimeSeries.Entry(e));
+                }
+            }
+            update(newData);
+        } else {
+            reset();
+            train();
+        }
+        return true;
+    }
+
     public ArrayList<TimeSeries.DataSequence> forecast(long from, long to) throws Exception {
+        ArrayList<TimeSeries.DataSequence> result = new ArrayList<TimeSeries.DataSequence>();
+
+        for (int i = 0; i < models.size(); i++) {
+            result.add(forecast(i, from, to));
+        }
+        return result;
+    }
+
+    // Returns the forecasts of a single model between from and to, read from its cursor().
+    public TimeSeries.DataSequence forecast(int model, long from, long to) throws Exception {
+        ForecastCursor cursor = cursor(model, from, to);
+        TimeSeries.DataSequence sequence = new TimeSeries.DataSequence(cursor.size());
+        long[] times = new long[Math.min(cursor.size(), ForecastCursor.CHUNK_SIZE)];
+        float[] values = new float[times.length];
+        int n;
+        while ((n = cursor.read(times, values, 0, times.length)) > 0) {
+            for (int k = 0; k < n; k++) {
+                sequence.add(new TimeSeries.Entry(times[k], values[k]));
+            }
+        }
+        if (period != -1) {
+            sequence.setLogicalIndices(firstTimeStamp, period);
+        }
+        return sequence;
+    }
+
+    // Streams the forecasts of a single model between from and to, a chunk at a time, see ForecastCursor.
+    // With a period of -1 the forecasts are the ones of the time-stamps of the metric.
+    public ForecastCursor cursor(int model, long from, long to) throws Exception {
+        if (!isTrained.get(model)) {
+            throw new Exception("All the models need to be trained before forecasting.");
+        }
+        return new ForecastCursor(models.get(model), metric.data, from, to, period, firstTimeStamp);
+    }
+
+    // Returns the forecasts of forecast(from, to) cached for the same data and config,
+    // without training the models. Returns null if there is no cache or no such forecasts.
+    public ArrayList<TimeSeries.DataSequence> cachedForecast(long from, long to) {
+        if (forecastCache == null) {
+            return null;
+        }
+        return forecastCache.get(ForecastCache.key(fingerprint, metric.data, from, to, period, firstTimeStamp));
+    }
+
+    // Caches the forecasts of forecast(from, to) for cachedForecast(), if there is a cache.
+    public void cacheForecast(long from, long to, ArrayList<TimeSeries.DataSequence> forecasts) {
+        if (forecastCache != null) {
+            forecastCache.put(ForecastCache.key(fingerprint, metric.data, from, to, period, firstTimeStamp),
+                              forecasts);
+        }
+    }
+
+    // Forecasts the values at the time-stamps of the given sequence only. Throws an exception
+    // if a model cannot honor the requested time-stamps (see TimeSeriesModel.forecastsTimeStamps()).
+    public ArrayList<TimeSeries.DataSequence> forecast(TimeSeries.DataSequence times) throws Exception {
         for (Boolean b : isTrained) {
             if (!b) {
                 throw new Exception("All the models need to be trained before forecasting.");
@@ -190,15 +356,24 @@ public class ModelAdapter { // Encapsulates a metric and the models operating on
         ArrayList<TimeSeries.DataSequence> result = new ArrayList<TimeSeries.DataSequence>();
 
         for (TimeSeriesModel model : models) {
-        	TimeSeries.DataSequence sequence = null;
-        	if (period != -1) {
-        		sequence = new TimeSeries.DataSequence(from, to, period);
-        		sequence.setLogicalIndices(firstTimeStamp, period);
-        	} else {
-        		sequence = new TimeSeries.DataSequence(metric.data.getTimes(), metric.data.getValues());
-        	}
-
-        	model.predict(sequence);
+            if (!model.forecastsTimeStamps()) {
+                throw new Exception(model.getModelName() + " cannot forecast the requested time-stamps.");
+            }
+            TimeSeries.DataSequence sequence = new TimeSeries.DataSequence(times.size());
+            for (TimeSeries.Entry e : times) {
+                sequence.add(new TimeSeries.Entry(e.time, 0));
+            }
+            sequence.setLogicalIndices(firstTimeStamp, period);
+
+            model.predict(sequence);
+
+            boolean honored = sequence.size() == times.size();
+            for (int i = 0; honored && i < times.size(); i++) {
+                honored = sequence.get(i).time == times.get(i).time;
+            }
+            if (!honored) {
+                throw new Exception(model.getModelName() + " cannot forecast the requested time-stamps.");
+            }
             result.add(sequence);
         }
         return result;
@@ -0,0 +1,56 @@
+/*
+ * Copyright 2016, Yahoo Inc.
+ * Copyrights licensed under the GPL License.
+ * See the accompanying LICENSE file for terms.
+ */
+
+// The state kept in a ModelStore between two detections on the tail of a metric:
+// the trained time-series models, the tuned anomaly detection models, the time-stamp
+// of the last point they were trained on and the time-stamp of the last scored point.
+
+package com.yahoo.egads.control;
+
+import com.yahoo.egads.data.JsonEncoder;
+import com.yahoo.egads.data.Model;
+import com.yahoo.egads.data.ModelBundle;
+
+import org.json.JSONObject;
+import org.json.JSONStringer;
+
+public class ModelCheckpoint implements Model {
+
+    private static final long serialVersionUID = 1L;
+
+    public ModelBundle forecastModels;
+    public ModelBundle anomalyModels;
+    public long trainedAt;
+    public long lastScored;
+
+    public ModelCheckpoint(ModelBundle forecastModels, ModelBundle anomalyModels, long trainedAt, long lastScored) {
+        this.forecastModels = forecastModels;
+        this.anomalyModels = anomalyModels;
+        this.trainedAt = trainedAt;
+        this.lastScored = lastScored;
+    }
+
+    public void reset() {
+        forecastModels.reset();
+        anomalyModels.reset();
+    }
+
+    public String getModelName() {
+        return "ModelCheckpoint";
+    }
+
+    public String getModelType() {
+        return "Checkpoint";
+    }
+
+    public void toJson(JSONStringer json_out) throws Exception {
+        JsonEncoder.toJson(this, json_out);
+    }
+
+    public void fromJson(JSONObject json_obj) throws Exception {
+        JsonEncoder.fromJson(this, json_obj);
+    }
+}
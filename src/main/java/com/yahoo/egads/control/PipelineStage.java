@@ -0,0 +1,177 @@
+/*
+ * Copyright 2016, Yahoo Inc.
+ * Copyrights licensed under the GPL License.
+ * See the accompanying LICENSE file for terms.
+ */
+
+/*
+ * Description: PipelineStage is one step of a ProcessingPipeline. A stage owns a bounded buffer and a fixed
+ * number of worker threads that take items from the buffer, apply the stage handler and hand the result to
+ * the downstream stage (if any). Stages are composed with then().
+ *
+ * Details:
+ *      1. Backpressure: submit() blocks while the buffer of the stage is full, so a slow stage throttles
+ *         every stage in front of it instead of letting work pile up in memory.
+ *      2. Ordering: with a parallelism of 1 the items leave the stage in the order they were submitted.
+ *         With a higher parallelism the order is not guaranteed.
+ *      3. Failures: the first exception or error thrown by any handler of the chain is recorded and re-thrown by
+ *         submit() and close(). Items still in flight after a failure are dropped, and the first submit() after it
+ *         closes the chain so that its threads stop.
+ *      4. A handler returning null does not forward anything downstream.
+ */
+
+package com.yahoo.egads.control;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class PipelineStage<I, O> {
+
+    // The work done by a stage on every item.
+    public interface Handler<I, O> {
+        O handle(I item) throws Exception;
+    }
+
+    // Marks the end of the input for one worker.
+    private static final Object END = new Object();
+
+    private final String name;
+    private final int bufferSize;
+    private final Handler<I, O> handler;
+    private final BlockingQueue<Object> buffer;
+    private final Thread[] workers;
+    private final CountDownLatch finished;
+    // Shared by all the stages of a chain.
+    private final AtomicReference<Throwable> failure;
+    private final AtomicBoolean closed = new AtomicBoolean(false);
+    private PipelineStage<O, ?> downstream = null;
+
+    // Construction ////////////////////////////////////////////////////////////////////
+
+    public PipelineStage(String name, int parallelism, int bufferSize, Handler<I, O> handler) {
+        this(name, parallelism, bufferSize, handler, new AtomicReference<Throwable>());
+    }
+
+    private PipelineStage(String name, int parallelism, int bufferSize, Handler<I, O> handler,
+                          AtomicReference<Throwable> failure) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("The parallelism of stage " + name + " must be at least 1.");
+        }
+        if (bufferSize < 1) {
+            throw new IllegalArgumentException("The buffer size of stage " + name + " must be at least 1.");
+        }
+        this.name = name;
+        this.bufferSize = bufferSize;
+        this.handler = handler;
+        this.failure = failure;
+        this.buffer = new ArrayBlockingQueue<Object>(bufferSize);
+        this.finished = new CountDownLatch(parallelism);
+        this.workers = new Thread[parallelism];
+        for (int i = 0; i < parallelism; i++) {
+            workers[i] = new Thread(new Worker(), "egads-" + name + "-" + i);
+            workers[i].setDaemon(true);
+            workers[i].start();
+        }
+    }
+
+    // Appends a new stage consuming the output of this one and returns it.
+    public <R> PipelineStage<O, R> then(String name, int parallelism, Handler<O, R> handler) {
+        if (downstream != null) {
+            throw new IllegalStateException("Stage " + this.name + " already has a downstream stage.");
+        }
+        PipelineStage<O, R> next = new PipelineStage<O, R>(name, parallelism, bufferSize, handler, failure);
+        downstream = next;
+        return next;
+    }
+
+    // Methods ////////////////////////////////////////////////////////////////////
+
+    public String getName() {
+        return name;
+    }
+
+    // Queues an item, blocking while the buffer is full. After a failure, closes
+    // the chain and re-throws the failure instead.
+    public void submit(I item) throws Exception {
+        if (failure.get() != null) {
+            close();
+        }
+        buffer.put(item);
+    }
+
+    // Signals the end of the input and waits until this stage and all the
+    // downstream stages have drained. Calling it again only re-throws the failure.
+    public void close() throws Exception {
+        if (closed.compareAndSet(false, true)) {
+            for (int i = 0; i < workers.length; i++) {
+                buffer.put(END);
+            }
+        }
+        finished.await();
+        PipelineStage<?, ?> stage = downstream;
+        while (stage != null) {
+            stage.finished.await();
+            stage = stage.downstream;
+        }
+        rethrowFailure();
+    }
+
+    private void rethrowFailure() throws Exception {
+        Throwable t = failure.get();
+        if (t instanceof Exception) {
+            throw (Exception) t;
+        }
+        if (t instanceof Error) {
+            throw (Error) t;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void work() throws InterruptedException {
+        while (true) {
+            Object item = buffer.take();
+            if (item == END) {
+                return;
+            }
+            if (failure.get() != null) {
+                // Keep draining so that upstream stages never block on us.
+                continue;
+            }
+            try {
+                O result = handler.handle((I) item);
+                if (result != null && downstream != null) {
+                    downstream.buffer.put(result);
+                }
+            } catch (Throwable t) {
+                // Errors too (e.g. an OutOfMemoryError), or the worker would die unnoticed.
+                failure.compareAndSet(null, t);
+            }
+        }
+    }
+
+    private class Worker implements Runnable {
+        public void run() {
+            try {
+                work();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                failure.compareAndSet(null, e);
+            } finally {
+                finished.countDown();
+                // The last worker to leave closes the downstream stage.
+                if (finished.getCount() == 0 && downstream != null) {
+                    for (int i = 0; i < downstream.workers.length; i++) {
+                        try {
+                            downstream.buffer.put(END);
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        }
+                    }
+                }
+            }
+        }
+    }
+}
@@ -8,6 +8,10 @@
 
 package com.yahoo.egads.control;
 
+import com.yahoo.egads.data.FileModelStore;
+import com.yahoo.egads.data.ForecastCache;
+import com.yahoo.egads.data.ModelCache;
+import com.yahoo.egads.data.ModelStore;
 import com.yahoo.egads.data.TimeSeries;
 
 import java.lang.reflect.Constructor;
@@ -32,6 +36,11 @@ public class ProcessableObjectFactory {
         } else if (config.getProperty("OP_TYPE").equals("TRANSFORM_INPUT")) {
             ModelAdapter ma = ProcessableObjectFactory.buildTSModel(ts, config);
             return (new TransformInputProcessable(ma, config));
+        } else if (config.getProperty("OP_TYPE").equals("DETECT_TAIL")) {
+            ModelAdapter ma = ProcessableObjectFactory.buildTSModel(ts, config);
+            AnomalyDetector ad = ProcessableObjectFactory.buildAnomalyModel(ts, config);
+            return (new DetectTailProcessable(ma, ad, ProcessableObjectFactory.buildModelStore(config),
+                                              ModelCache.tag(ts.meta.name, config) + "_checkpoint", config));
         }
         // Should not be here.
         System.err.println("Unknown OP_TYPE, returning UPDATE_MODEL ProcessableObject");
@@ -39,7 +48,18 @@ public class ProcessableObjectFactory {
         return (new UpdateModelProcessable(ma, ts.data, config));
     }
 
-    private static ModelAdapter buildTSModel(TimeSeries ts, Properties config) {
+    // The model cache when it is enabled, else a file store under MODEL_STORE_PATH.
+    private static ModelStore buildModelStore(Properties config) {
+        if (ModelCache.isEnabled(config)) {
+            return ModelCache.getInstance(config);
+        }
+        if (config.getProperty("MODEL_STORE_PATH") == null) {
+            throw new IllegalArgumentException("MODEL_STORE_PATH is NULL");
+        }
+        return new FileModelStore(config.getProperty("MODEL_STORE_PATH"));
+    }
+
+    static ModelAdapter buildTSModel(TimeSeries ts, Properties config) {
         ModelAdapter ma = null;
         try {
             Long period = (long) -1;
@@ -54,11 +74,28 @@ public class ProcessableObjectFactory {
               }
             }
             ma = new ModelAdapter(ts, period);
+            if (ForecastCache.isEnabled(config)) {
+                ma.setForecastCache(ForecastCache.getInstance(config), ForecastCache.fingerprint(config));
+            }
+            // Reuse the models trained on this metric with the same config.
+            if (ModelCache.isEnabled(config)
+                && ma.setModelStore(ModelCache.getInstance(config), ModelCache.tag(ts.meta.name, config))) {
+                return ma;
+            }
             String modelType = config.getProperty("TS_MODEL");
 
             Class<?> tsModelClass = Class.forName("com.yahoo.egads.models.tsmm." + modelType);
             Constructor<?> constructor = tsModelClass.getConstructor(Properties.class);
             TimeSeriesAbstractModel m = (TimeSeriesAbstractModel) constructor.newInstance(config);
+            // Start the tuning of the smoothing factors from the ones found for this metric before.
+            if (m instanceof TripleExponentialSmoothingModel && config.getProperty("TUNING_METHOD") != null
+                && (ModelCache.isEnabled(config) || config.getProperty("MODEL_STORE_PATH") != null)) {
+                ((TripleExponentialSmoothingModel) m).setParameterStore(buildModelStore(config),
+                                                                        ModelCache.tag(ts.meta.name, config) + "_hw");
+            }
+            if (m instanceof StlModel) {
+                ((StlModel) m).setSeasons(ts.meta.seasons);
+            }
             ma.addModel(m);
         } catch (Exception e) {
             e.printStackTrace();
@@ -66,7 +103,7 @@ public class ProcessableObjectFactory {
         return ma;
     }
 
-    private static AnomalyDetector buildAnomalyModel(TimeSeries ts, Properties config) {
+    static AnomalyDetector buildAnomalyModel(TimeSeries ts, Properties config) {
         AnomalyDetector ad = null;
         try {
             Long period = (long) -1;
@@ -81,6 +118,11 @@ public class ProcessableObjectFactory {
               }
             }
             ad = new AnomalyDetector(ts, period);
+            // Reuse the models tuned on this metric with the same config.
+            if (ModelCache.isEnabled(config)
+                && ad.setModelStore(ModelCache.getInstance(config), ModelCache.tag(ts.meta.name, config))) {
+                return ad;
+            }
             String modelType = config.getProperty("AD_MODEL");
 
             Class<?> tsModelClass = Class.forName("com.yahoo.egads.models.adm." + modelType);
@@ -0,0 +1,205 @@
+/*
+ * Copyright 2016, Yahoo Inc.
+ * Copyrights licensed under the GPL License.
+ * See the accompanying LICENSE file for terms.
+ */
+
+/*
+ * Description: ProcessingPipeline runs the processable objects of a stream of time-series through three
+ * bounded stages so that consecutive time-series overlap: while one series is being trained, the next one is
+ * parsed by the input processor, and while one is being written out the next one is being scored.
+ *
+ *      submit() -> [train] -> [detect] -> [output]
+ *
+ * Details:
+ *      1. Every stage has a buffer of PIPELINE_BUFFER_SIZE items. When a stage falls behind, the buffers fill
+ *         up and submit() blocks, which throttles the parsing of the input.
+ *      2. The number of worker threads of each stage is set by PIPELINE_TRAIN_THREADS,
+ *         PIPELINE_DETECT_THREADS and PIPELINE_OUTPUT_THREADS. With the default of one thread per stage the
+ *         results are written in the input order, exactly as with the sequential process().
+ *      3. Processable objects that are not staged are fully processed in the train stage.
+ *      4. SERIES_TIME_BUDGET (milliseconds, default: none) bounds the time spent on training and scoring one
+ *         time-series. The heavy model loops check the budget cooperatively (see ExecutionBudget). A time-series
+ *         running out of budget is handled according to BUDGET_FALLBACK:
+ *              SKIP        the time-series is left out of the output (default),
+ *              NULL_MODEL  the time-series is processed again, without budget, with NullModel and
+ *                          SimpleThresholdModel.
+ *         Either way it is reported in the run summary (see getSummary()).
+ */
+
+package com.yahoo.egads.control;
+
+import com.yahoo.egads.data.TimeSeries;
+import com.yahoo.egads.utilities.BudgetExceededException;
+import com.yahoo.egads.utilities.ExecutionBudget;
+
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+
+public class ProcessingPipeline {
+
+    private static final int DEFAULT_BUFFER_SIZE = 16;
+
+    // What is left of the budget of a time-series between the train and the detect stages.
+    private static class Budget {
+        final TimeSeries ts;
+        final long remaining;
+
+        Budget(TimeSeries ts, long remaining) {
+            this.ts = ts;
+            this.remaining = remaining;
+        }
+    }
+
+    private final PipelineStage<TimeSeries, ProcessableObject> head;
+    private final Properties config;
+    // Time budget of a time-series in milliseconds, 0 for none.
+    private final long budget;
+    private final String fallback;
+    private final RunSummary summary;
+    private final ConcurrentHashMap<ProcessableObject, Budget> budgets =
+        new ConcurrentHashMap<ProcessableObject, Budget>();
+
+    // Construction ////////////////////////////////////////////////////////////////////
+
+    public ProcessingPipeline(Properties config) {
+        this(config, new PipelineStage.Handler<ProcessableObject, ProcessableObject>() {
+            public ProcessableObject handle(ProcessableObject po) throws Exception {
+                if (po instanceof StagedProcessable) {
+                    ((StagedProcessable) po).output();
+                }
+                return null;
+            }
+        });
+    }
+
+    // The output handler receives every processable object once it has been
+    // trained and scored, in place of the default StagedProcessable.output().
+    public ProcessingPipeline(final Properties config,
+                              PipelineStage.Handler<ProcessableObject, ProcessableObject> output) {
+        this.config = config;
+        budget = config.getProperty("SERIES_TIME_BUDGET") == null
+            ? 0 : new Long(config.getProperty("SERIES_TIME_BUDGET").trim());
+        fallback = config.getProperty("BUDGET_FALLBACK") == null
+            ? "SKIP" : config.getProperty("BUDGET_FALLBACK").trim();
+        if (!fallback.equals("SKIP") && !fallback.equals("NULL_MODEL")) {
+            throw new IllegalArgumentException("Invalid BUDGET_FALLBACK value");
+        }
+        summary = new RunSummary(fallback);
+        int bufferSize = getInt(config, "PIPELINE_BUFFER_SIZE", DEFAULT_BUFFER_SIZE);
+
+        head = new PipelineStage<TimeSeries, ProcessableObject>("train",
+                getInt(config, "PIPELINE_TRAIN_THREADS", 1), bufferSize,
+                new PipelineStage.Handler<TimeSeries, ProcessableObject>() {
+                    public ProcessableObject handle(TimeSeries ts) throws Exception {
+                        return train(ts);
+                    }
+                });
+        head.then("detect", getInt(config, "PIPELINE_DETECT_THREADS", 1),
+                new PipelineStage.Handler<ProcessableObject, ProcessableObject>() {
+                    public ProcessableObject handle(ProcessableObject po) throws Exception {
+                        return detect(po);
+                    }
+                })
+            .then("output", getInt(config, "PIPELINE_OUTPUT_THREADS", 1), output);
+    }
+
+    // Methods ////////////////////////////////////////////////////////////////////
+
+    // Queues a time-series, blocking while the pipeline is full.
+    public void submit(TimeSeries ts) throws Exception {
+        head.submit(ts);
+    }
+
+    // Waits until every submitted time-series went through all the stages.
+    // Re-throws the first failure of any stage.
+    public void close() throws Exception {
+        head.close();
+    }
+
+    // The time-series processed so far and the ones that timed out.
+    public RunSummary getSummary() {
+        return summary;
+    }
+
+    private ProcessableObject train(TimeSeries ts) throws Exception {
+        ProcessableObject po = ProcessableObjectFactory.create(ts, config);
+        if (budget > 0) {
+            ExecutionBudget.start(budget);
+        }
+        try {
+            if (po instanceof StagedProcessable) {
+                ((StagedProcessable) po).train();
+            } else {
+                po.process();
+            }
+            if (budget > 0) {
+                budgets.put(po, new Budget(ts, ExecutionBudget.remaining()));
+            }
+            return po;
+        } catch (BudgetExceededException e) {
+            if (budget == 0) {
+                // Interrupted, not timed out.
+                throw e;
+            }
+            // Trained only, the detect stage scores it.
+            return fallback(ts, false);
+        } finally {
+            ExecutionBudget.clear();
+        }
+    }
+
+    private ProcessableObject detect(ProcessableObject po) throws Exception {
+        Budget left = budgets.remove(po);
+        if (left != null) {
+            ExecutionBudget.start(left.remaining);
+        }
+        try {
+            if (po instanceof StagedProcessable) {
+                ((StagedProcessable) po).detect();
+            }
+            summary.recordProcessed();
+            return po;
+        } catch (BudgetExceededException e) {
+            if (left == null) {
+                throw e;
+            }
+            return fallback(left.ts, true);
+        } finally {
+            ExecutionBudget.clear();
+        }
+    }
+
+    // Handles a time-series which ran out of budget. Returns the processable object to
+    // pass on, if any: fully processed when detect is set, only trained otherwise.
+    private ProcessableObject fallback(TimeSeries ts, boolean detect) throws Exception {
+        summary.recordTimedOut(ts.meta.name);
+        if (fallback.equals("SKIP")) {
+            return null;
+        }
+        Properties nullConfig = new Properties();
+        nullConfig.putAll(config);
+        nullConfig.setProperty("TS_MODEL", "NullModel");
+        nullConfig.setProperty("AD_MODEL", "SimpleThresholdModel");
+        ProcessableObject po = ProcessableObjectFactory.create(ts, nullConfig);
+        if (po instanceof StagedProcessable) {
+            ((StagedProcessable) po).train();
+            if (detect) {
+                ((StagedProcessable) po).detect();
+            }
+        } else {
+            po.process();
+        }
+        if (detect) {
+            summary.recordProcessed();
+        }
+        return po;
+    }
+
+    private static int getInt(Properties config, String key, int defaultValue) {
+        if (config.getProperty(key) == null) {
+            return defaultValue;
+        }
+        return new Integer(config.getProperty(key).trim());
+    }
+}
@@ -0,0 +1,54 @@
+/*
+ * Copyright 2016, Yahoo Inc.
+ * Copyrights licensed under the GPL License.
+ * See the accompanying LICENSE file for terms.
+ */
+
+// Counts the time-series processed by a run and lists the ones that ran out of their time budget.
+
+package com.yahoo.egads.control;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class RunSummary {
+
+    private int processed = 0;
+    private final List<String> timedOut = new ArrayList<String>();
+    private final String fallback;
+
+    public RunSummary(String fallback) {
+        this.fallback = fallback;
+    }
+
+    public synchronized void recordProcessed() {
+        processed++;
+    }
+
+    public synchronized void recordTimedOut(String metric) {
+        timedOut.add(metric);
+    }
+
+    // Number of time-series fully processed, including the ones processed by the fallback.
+    public synchronized int getProcessed() {
+        return processed;
+    }
+
+    // Names of the time-series that ran out of their time budget.
+    public synchronized List<String> getTimedOut() {
+        return new ArrayList<String>(timedOut);
+    }
+
+    public synchronized String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("Processed ").append(processed).append(" time-series, ");
+        sb.append(timedOut.size()).append(" timed out");
+        if (!timedOut.isEmpty()) {
+            sb.append(" (fallback ").append(fallback).append("):");
+            for (String metric : timedOut) {
+                sb.append(" ").append(metric);
+            }
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,23 @@
+/*
+ * Copyright 2016, Yahoo Inc.
+ * Copyrights licensed under the GPL License.
+ * See the accompanying LICENSE file for terms.
+ */
+
+// A processable object whose work is split into independent stages so that
+// a ProcessingPipeline can overlap the stages of consecutive time-series.
+// Calling train(), detect() and output() in order is equivalent to process().
+
+package com.yahoo.egads.control;
+
+public interface StagedProcessable extends ProcessableObject {
+
+    // Trains the time-series model(s) and computes the expected values.
+    public void train() throws Exception;
+
+    // Tunes the anomaly detection model(s) and detects the anomalies.
+    public void detect() throws Exception;
+
+    // Writes the results to the configured OUTPUT.
+    public void output() throws Exception;
+}
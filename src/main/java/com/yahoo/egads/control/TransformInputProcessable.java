@@ -13,47 +13,78 @@ import com.yahoo.egads.data.TimeSeries;
 import java.util.List;
 import java.util.Properties;
 
-public class TransformInputProcessable implements ProcessableObject {
+public class TransformInputProcessable implements StagedProcessable {
     private ModelAdapter ma;
     private Properties config;
     private List<TimeSeries.DataSequence> forecastDatapointList;
+    // Whether train() keeps the forecasts of all the models, output() streams them otherwise.
+    private boolean keepForecasts = false;
 
+    // The forecasts of all the models: the ones kept by train() after setKeepForecasts(true),
+    // or computed by result(). null otherwise.
     public List<TimeSeries.DataSequence> getForecastDatapointList() {
         return forecastDatapointList;
     }
 
+    // Makes the next train() keep the forecasts for getForecastDatapointList().
+    public void setKeepForecasts(boolean keepForecasts) {
+        this.keepForecasts = keepForecasts;
+    }
+
     TransformInputProcessable(ModelAdapter ma, Properties config) {
         this.ma = ma;
         this.config = config;
     }
 
     public void process() throws Exception {
+        train();
+        detect();
+        output();
+    }
 
-        // Reseting the models
-        ma.reset();
+    public void train() throws Exception {
+        // Models loaded from the model cache are already trained.
+        if (!ma.isTrained()) {
+            // Reseting the models
+            ma.reset();
+
+            // Training the model with the whole metric
+            ma.train();
+        }
 
-        // Training the model with the whole metric
-        ma.train();
+        if (keepForecasts) {
+            forecastDatapointList = ma.forecast(ma.metric.startTime(), ma.metric.lastTime());
+        }
+    }
 
-        // Finding the expected values
-        forecastDatapointList = ma.forecast(ma.metric.startTime(), ma.metric.lastTime());
+    public void detect() throws Exception {
+        // Nothing to detect, the input is only transformed.
+    }
 
+    public void output() throws Exception {
         String[] modelNames = ma.getModelNames();
+        long[] times = new long[ForecastCursor.CHUNK_SIZE];
+        float[] values = new float[ForecastCursor.CHUNK_SIZE];
 
-        int i = 0;
-        // For each model's prediction in the ModelAdapter
-        for (TimeSeries.DataSequence ds : forecastDatapointList) {
+        // For each model's prediction in the ModelAdapter, a chunk at a time
+        for (int i = 0; i < modelNames.length; i++) {
+            ForecastCursor cursor = ma.cursor(i, ma.metric.startTime(), ma.metric.lastTime());
             int j = 0;
-            for (TimeSeries.Entry e : ds) {
-                System.out.println(e.time + "," + ma.metric.meta.name + "," + ma.metric.meta.fileName + ","
-                                   + modelNames[i] + "," + e.value + "," + ma.metric.data.get(j).value + ",0");
-                j++;
+            int n;
+            while ((n = cursor.read(times, values, 0, times.length)) > 0) {
+                for (int k = 0; k < n; k++) {
+                    System.out.println(times[k] + "," + ma.metric.meta.name + "," + ma.metric.meta.fileName + ","
+                                       + modelNames[i] + "," + values[k] + "," + ma.metric.data.get(j).value + ",0");
+                    j++;
+                }
             }
-            i++;
         }
     }
 
     public Object result() throws Exception {
-        return getForecastDatapointList();
+        if (forecastDatapointList == null) {
+            forecastDatapointList = ma.forecast(ma.metric.startTime(), ma.metric.lastTime());
+        }
+        return forecastDatapointList;
     }
 }
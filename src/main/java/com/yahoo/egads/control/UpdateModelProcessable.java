@@ -11,7 +11,7 @@ package com.yahoo.egads.control;
 import com.yahoo.egads.data.TimeSeries;
 import java.util.Properties;
 
-public class UpdateModelProcessable implements ProcessableObject {
+public class UpdateModelProcessable implements StagedProcessable {
 
     private ModelAdapter ma;
     private TimeSeries.DataSequence newData;
@@ -24,10 +24,25 @@ public class UpdateModelProcessable implements ProcessableObject {
     }
 
     public void process() throws Exception {
+        train();
+        detect();
+        output();
+    }
+
+    public void train() throws Exception {
+        // Models loaded from a model store are already trained, update() then only folds in the new points.
         this.ma.train();
         this.ma.update(this.newData);
     }
 
+    public void detect() throws Exception {
+        // Nothing to detect, the models are only updated.
+    }
+
+    public void output() throws Exception {
+        // Nothing to write, the models are updated in place.
+    }
+
     public Object result() throws Exception {
         return "Updated";
     }
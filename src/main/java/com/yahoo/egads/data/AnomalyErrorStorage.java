@@ -7,11 +7,14 @@
 package com.yahoo.egads.data;
 
 import com.yahoo.egads.data.TimeSeries.DataSequence;
+import java.io.Serializable;
 import java.util.Map;
 import java.util.HashMap;
 import java.util.ArrayList;
 
-public class AnomalyErrorStorage {
+public class AnomalyErrorStorage implements Serializable {
+
+    private static final long serialVersionUID = 1L;
 
     // Denominator used in the MASE error metric.
     protected float maseDenom;
@@ -0,0 +1,66 @@
+/*
+ * Copyright 2016, Yahoo Inc.
+ * Copyrights licensed under the GPL License.
+ * See the accompanying LICENSE file for terms.
+ */
+
+// The data a set of models was trained or tuned on: the time-stamp of its last point and a
+// hash of its points, so that models saved for a metric are only used again on the same data
+// (possibly followed by new points), not on a reloaded series whose history changed.
+
+package com.yahoo.egads.data;
+
+import java.io.Serializable;
+
+public class DataWatermark implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private long lastTime = Long.MIN_VALUE;
+    private long hash = 0;
+    private long count = 0;
+
+    public DataWatermark() {
+    }
+
+    public DataWatermark(DataWatermark other) {
+        lastTime = other.lastTime;
+        hash = other.hash;
+        count = other.count;
+    }
+
+    // Folds in the points of the data after the last one seen so far.
+    public void add(TimeSeries.DataSequence data) {
+        for (TimeSeries.Entry e : data) {
+            add(e);
+        }
+    }
+
+    // Returns true if the data holds the points seen so far, followed by any new points,
+    // or if no point was seen.
+    public boolean matches(TimeSeries.DataSequence data) {
+        if (count == 0) {
+            return true;
+        }
+        DataWatermark prefix = new DataWatermark();
+        for (TimeSeries.Entry e : data) {
+            if (e.time > lastTime) {
+                break;
+            }
+            prefix.add(e);
+        }
+        return prefix.count == count && prefix.hash == hash;
+    }
+
+    private void add(TimeSeries.Entry e) {
+        if (e.time > lastTime) {
+            hash = ForecastCache.mix(ForecastCache.mix(hash, e.time), Float.floatToIntBits(e.value));
+            lastTime = e.time;
+            count++;
+        }
+    }
+
+    public long getLastTime() {
+        return lastTime;
+    }
+}
@@ -32,6 +32,9 @@ public class FileModelStore implements ModelStore {
 		String filename = tag.replaceAll("[^\\w_-]", "_");
 		String fqn = path + "/" + filename;
 		Model m = null;
+		if (!new File(fqn).exists()) {
+			return null;
+		}
 		try {
 			ObjectInputStream o = new ObjectInputStream(new FileInputStream(fqn));
 			m =  (Model) o.readObject();
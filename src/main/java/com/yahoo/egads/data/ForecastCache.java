@@ -0,0 +1,391 @@
+/*
+ * Copyright 2016, Yahoo Inc.
+ * Copyrights licensed under the GPL License.
+ * See the accompanying LICENSE file for terms.
+ */
+
+/*
+ * Description: ForecastCache keeps the expected values computed for a series by content, so that a series submitted
+ * again with the same data and config (e.g. overlapping STDIN batches or repeated runs) is neither trained nor
+ * forecast again. Unlike the ModelCache, whose models are reused on new data of the same metric, an entry is only
+ * returned for the exact same data.
+ *
+ * Details:
+ *      1. The key is a 64 bit hash of the time-stamps and values of the series, of the forecast interval and logical
+ *         indexing, and of the config entries that can change a forecast (see ModelCache.settings()), so TS_MODEL
+ *         and its parameters are part of it.
+ *      2. The least recently used entries are evicted once the cache holds more than FORECAST_CACHE_SIZE entries.
+ *      3. With FORECAST_CACHE_PATH every entry is also written to a file of that directory, named by its key, and
+ *         read back on a miss, so that the next runs of the process find it. The files are written and read outside
+ *         of the lock of the cache. A file is written under a temporary name and renamed, so readers never see a
+ *         partial one.
+ *      4. The directory keeps at most FORECAST_CACHE_FILES files (default: 10 times FORECAST_CACHE_SIZE). Past it,
+ *         the least recently written or read ones are deleted, down to three quarters of the limit.
+ *      5. The entries are copied in and out, so the callers can modify the sequences they get.
+ *      6. The cache is shared by the whole process, see getInstance(). It is thread-safe. Its hit rate is written on
+ *         STDERR at the end of a run and reported on the /stats endpoint of the server.
+ */
+
+package com.yahoo.egads.data;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.FilenameFilter;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+public class ForecastCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(ForecastCache.class);
+
+    // The suffix of the files being written.
+    private static final String TEMPORARY = ".tmp";
+
+    private static ForecastCache instance = null;
+    private static String instanceSettings = null;
+
+    private final int maxSize;
+    private final File directory;
+    private final int maxFiles;
+    // The number of files of the directory, as of the last pruning plus the files written since.
+    private int files;
+    // Guards files and the pruning, apart from the lock of the entries.
+    private final Object directoryLock = new Object();
+    // Access-ordered: the eldest entry is the least recently used one.
+    private final LinkedHashMap<String, ArrayList<TimeSeries.DataSequence>> entries =
+                    new LinkedHashMap<String, ArrayList<TimeSeries.DataSequence>>(16, 0.75f, true);
+
+    private long hits = 0;
+    private long diskHits = 0;
+    private long misses = 0;
+    private long evictions = 0;
+
+    // Construction ////////////////////////////////////////////////////////////////////
+
+    // directory may be null to keep the entries in memory only.
+    public ForecastCache(int maxSize, String directory) {
+        this(maxSize, directory, 10 * maxSize);
+    }
+
+    public ForecastCache(int maxSize, String directory, int maxFiles) {
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("The size of the forecast cache must be at least 1.");
+        }
+        if (maxFiles < 1) {
+            throw new IllegalArgumentException("Invalid FORECAST_CACHE_FILES value");
+        }
+        this.maxSize = maxSize;
+        this.maxFiles = maxFiles;
+        this.directory = directory == null ? null : new File(directory);
+        if (this.directory != null) {
+            this.directory.mkdirs();
+            prune();
+        }
+    }
+
+    public ForecastCache(Properties config) {
+        this(size(config), config.getProperty("FORECAST_CACHE_PATH"),
+             config.getProperty("FORECAST_CACHE_FILES") == null
+                 ? 10 * size(config) : new Integer(config.getProperty("FORECAST_CACHE_FILES").trim()));
+    }
+
+    private static int size(Properties config) {
+        return config.getProperty("FORECAST_CACHE_SIZE") == null
+            ? 1000 : new Integer(config.getProperty("FORECAST_CACHE_SIZE").trim());
+    }
+
+    // Returns the cache shared by the process, creating it from the config on the first call.
+    // Throws an IllegalArgumentException if the cache settings of the config differ from the
+    // ones it was created from.
+    public static synchronized ForecastCache getInstance(Properties config) {
+        String settings = cacheSettings(config);
+        if (instance == null) {
+            instance = new ForecastCache(config);
+            instanceSettings = settings;
+        } else if (!settings.equals(instanceSettings)) {
+            throw new IllegalArgumentException("The forecast cache was created with " + instanceSettings
+                                               + ", not " + settings);
+        }
+        return instance;
+    }
+
+    // The config entries of the cache itself.
+    private static String cacheSettings(Properties config) {
+        TreeMap<String, String> sorted = new TreeMap<String, String>();
+        for (String key : new String[] {"FORECAST_CACHE_SIZE", "FORECAST_CACHE_PATH", "FORECAST_CACHE_FILES"}) {
+            if (config.getProperty(key) != null) {
+                sorted.put(key, config.getProperty(key).trim());
+            }
+        }
+        return sorted.toString();
+    }
+
+    // Returns true when the config asks for the forecasts to be cached (FORECAST_CACHE_SIZE > 0).
+    public static boolean isEnabled(Properties config) {
+        return config.getProperty("FORECAST_CACHE_SIZE") != null
+            && new Integer(config.getProperty("FORECAST_CACHE_SIZE").trim()) > 0;
+    }
+
+    // The hash of the config entries that can change a forecast, the first part of the keys.
+    public static long fingerprint(Properties config) {
+        String settings = ModelCache.settings(config);
+        long h = 0;
+        for (int i = 0; i < settings.length(); i++) {
+            h = mix(h, settings.charAt(i));
+        }
+        return finish(h, settings.length());
+    }
+
+    /**
+     * The key of the forecasts of a series.
+     * @param fingerprint The fingerprint() of the config.
+     * @param data The series the models are trained on.
+     * @param from The first time-stamp of the forecast.
+     * @param to The last time-stamp of the forecast.
+     * @param period The period of the logical indices, -1 if there are none.
+     * @param firstTimeStamp The time-stamp of the logical index 0.
+     */
+    public static String key(long fingerprint, TimeSeries.DataSequence data, long from, long to, long period,
+                             long firstTimeStamp) {
+        long h = mix(mix(mix(mix(fingerprint, from), to), period), firstTimeStamp);
+        for (TimeSeries.Entry e : data) {
+            h = mix(mix(h, e.time), Float.floatToIntBits(e.value));
+        }
+        return String.format("%016x", finish(h, data.size()));
+    }
+
+    // Methods ////////////////////////////////////////////////////////////////////
+
+    // Returns a copy of the forecasts cached under the key, reading them from the
+    // directory when they are not in memory. Returns null if the key is unknown.
+    public ArrayList<TimeSeries.DataSequence> get(String key) {
+        synchronized (this) {
+            ArrayList<TimeSeries.DataSequence> forecasts = entries.get(key);
+            if (forecasts != null) {
+                hits++;
+                return copy(forecasts);
+            }
+        }
+        // Read outside of the lock, the cached entries are never modified.
+        ArrayList<TimeSeries.DataSequence> forecasts = read(key);
+        synchronized (this) {
+            if (forecasts == null) {
+                misses++;
+                return null;
+            }
+            hits++;
+            diskHits++;
+            entries.put(key, forecasts);
+            evict();
+            return copy(forecasts);
+        }
+    }
+
+    public void put(String key, List<TimeSeries.DataSequence> forecasts) {
+        ArrayList<TimeSeries.DataSequence> copy = copy(forecasts);
+        synchronized (this) {
+            entries.put(key, copy);
+            evict();
+        }
+        write(key, copy);
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    // Number of lookups answered from memory or from the directory.
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    // Number of the hits read from the directory.
+    public synchronized long getDiskHits() {
+        return diskHits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    // The share of the lookups that were hits, 0 before the first one.
+    public synchronized double getHitRate() {
+        return hits + misses == 0 ? 0 : (double) hits / (hits + misses);
+    }
+
+    public synchronized String toString() {
+        return String.format("Forecast cache: %d hits (%d from disk), %d misses, hit rate %.1f%%, %d evictions",
+                             hits, diskHits, misses, 100 * getHitRate(), evictions);
+    }
+
+    private void evict() {
+        Iterator<Map.Entry<String, ArrayList<TimeSeries.DataSequence>>> it = entries.entrySet().iterator();
+        while (entries.size() > maxSize && it.hasNext()) {
+            it.next();
+            it.remove();
+            evictions++;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private ArrayList<TimeSeries.DataSequence> read(String key) {
+        if (directory == null) {
+            return null;
+        }
+        File file = new File(directory, key);
+        try {
+            ObjectInputStream in = new ObjectInputStream(new FileInputStream(file));
+            try {
+                ArrayList<TimeSeries.DataSequence> forecasts = (ArrayList<TimeSeries.DataSequence>) in.readObject();
+                // Read recently, pruned last.
+                file.setLastModified(System.currentTimeMillis());
+                return forecasts;
+            } finally {
+                in.close();
+            }
+        } catch (FileNotFoundException e) {
+            return null;
+        } catch (Exception e) {
+            // An unreadable entry is a miss, it is written again.
+            logger.warn("Cannot read the cached forecasts " + file + ": " + e);
+            return null;
+        }
+    }
+
+    // Writes the entry to a temporary file renamed to the key, so that the readers never see a partial file.
+    private void write(String key, ArrayList<TimeSeries.DataSequence> forecasts) {
+        if (directory == null) {
+            return;
+        }
+        File file = new File(directory, key);
+        boolean added = !file.exists();
+        File temporary = null;
+        try {
+            temporary = File.createTempFile("." + key + ".", TEMPORARY, directory);
+            ObjectOutputStream out = new ObjectOutputStream(new FileOutputStream(temporary));
+            try {
+                out.writeObject(forecasts);
+            } finally {
+                out.close();
+            }
+            try {
+                Files.move(temporary.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temporary.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (Exception e) {
+            logger.warn("Cannot write the cached forecasts " + file + ": " + e);
+            if (temporary != null) {
+                temporary.delete();
+            }
+            return;
+        }
+        if (added) {
+            synchronized (directoryLock) {
+                if (++files > maxFiles) {
+                    prune();
+                }
+            }
+        }
+    }
+
+    // Deletes the least recently used files past three quarters of FORECAST_CACHE_FILES, and the temporary files
+    // left over by writes which did not complete.
+    private void prune() {
+        synchronized (directoryLock) {
+            File[] all = directory.listFiles(new FilenameFilter() {
+                public boolean accept(File dir, String name) {
+                    return !name.endsWith(TEMPORARY);
+                }
+            });
+            File[] stale = directory.listFiles(new FilenameFilter() {
+                public boolean accept(File dir, String name) {
+                    return name.endsWith(TEMPORARY);
+                }
+            });
+            if (all == null || stale == null) {
+                logger.warn("Cannot list the forecast cache directory " + directory);
+                return;
+            }
+            long hourAgo = System.currentTimeMillis() - 3600 * 1000L;
+            for (File f : stale) {
+                if (f.lastModified() < hourAgo) {
+                    f.delete();
+                }
+            }
+            files = all.length;
+            if (files <= maxFiles) {
+                return;
+            }
+            final long[] modified = new long[all.length];
+            Integer[] order = new Integer[all.length];
+            for (int i = 0; i < all.length; i++) {
+                modified[i] = all[i].lastModified();
+                order[i] = i;
+            }
+            Arrays.sort(order, new Comparator<Integer>() {
+                public int compare(Integer a, Integer b) {
+                    return Long.compare(modified[a], modified[b]);
+                }
+            });
+            int keep = Math.max(1, maxFiles - maxFiles / 4);
+            for (int i = 0; i < all.length - keep; i++) {
+                if (all[order[i]].delete()) {
+                    files--;
+                }
+            }
+        }
+    }
+
+    private static ArrayList<TimeSeries.DataSequence> copy(List<TimeSeries.DataSequence> forecasts) {
+        ArrayList<TimeSeries.DataSequence> copy = new ArrayList<TimeSeries.DataSequence>(forecasts.size());
+        for (TimeSeries.DataSequence sequence : forecasts) {
+            TimeSeries.DataSequence c = new TimeSeries.DataSequence(sequence.size());
+            for (TimeSeries.Entry e : sequence) {
+                c.add(new TimeSeries.Entry(e));
+            }
+            copy.add(c);
+        }
+        return copy;
+    }
+
+    // One round of MurmurHash3 (x64), over a 64 bit word.
+    static long mix(long h, long word) {
+        long k = word * 0x87c37b91114253d5L;
+        k = Long.rotateLeft(k, 31) * 0x4cf5ad432745937fL;
+        h ^= k;
+        return Long.rotateLeft(h, 27) * 5 + 0x52dce729;
+    }
+
+    // The finalization of MurmurHash3, which spreads every input bit over the hash.
+    static long finish(long h, long length) {
+        h ^= length;
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
@@ -21,6 +21,7 @@ public class MetricMeta implements JsonAble {
     public String fileName;
     public String source;
     public String smoothing;
+    // The lengths of the seasons of the metric in seconds (e.g. 86400 for a daily cycle), null if unknown.
     public long[] seasons;
 
     // construction ////////////////////////////////////////////////
@@ -0,0 +1,70 @@
+/*
+ * Copyright 2016, Yahoo Inc.
+ * Copyrights licensed under the GPL License.
+ * See the accompanying LICENSE file for terms.
+ */
+
+// The trained models of a ModelAdapter or an AnomalyDetector together with the
+// time-stamp and period used to compute their logical indices, and the watermark
+// of the data they were trained on, so that they can be saved in a ModelStore
+// and used again later on the same metric.
+
+package com.yahoo.egads.data;
+
+import java.util.ArrayList;
+
+import org.json.JSONObject;
+import org.json.JSONStringer;
+
+public class ModelBundle implements Model {
+
+    private static final long serialVersionUID = 1L;
+
+    public ArrayList<Model> models = new ArrayList<Model>();
+    public long firstTimeStamp = 0;
+    public long period = -1;
+    private DataWatermark watermark = new DataWatermark();
+
+    public ModelBundle() {
+    }
+
+    public ModelBundle(ArrayList<? extends Model> models, long firstTimeStamp, long period) {
+        this.models.addAll(models);
+        this.firstTimeStamp = firstTimeStamp;
+        this.period = period;
+    }
+
+    public ModelBundle(ArrayList<? extends Model> models, long firstTimeStamp, long period,
+                       DataWatermark watermark) {
+        this(models, firstTimeStamp, period);
+        this.watermark = new DataWatermark(watermark);
+    }
+
+    // The data the models were trained on, empty if unknown.
+    public DataWatermark getWatermark() {
+        // Bundles saved before the watermark existed have none.
+        return watermark == null ? new DataWatermark() : new DataWatermark(watermark);
+    }
+
+    public void reset() {
+        for (Model m : models) {
+            m.reset();
+        }
+    }
+
+    public String getModelName() {
+        return "ModelBundle";
+    }
+
+    public String getModelType() {
+        return "Bundle";
+    }
+
+    public void toJson(JSONStringer json_out) throws Exception {
+        JsonEncoder.toJson(this, json_out);
+    }
+
+    public void fromJson(JSONObject json_obj) throws Exception {
+        JsonEncoder.fromJson(this, json_obj);
+    }
+}
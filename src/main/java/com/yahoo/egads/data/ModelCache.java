@@ -0,0 +1,328 @@
+/*
+ * Copyright 2016, Yahoo Inc.
+ * Copyrights licensed under the GPL License.
+ * See the accompanying LICENSE file for terms.
+ */
+
+/*
+ * Description: ModelCache keeps the trained models of the most recently used metrics in memory so that repeated
+ * detections on the same metric do not retrain them. The models are keyed by a tag built from the metric name and a
+ * hash of the config (see tag()), so a change of the config never returns a stale model.
+ *
+ * Details:
+ *      1. Eviction: the least recently used entries are evicted once the cache holds more than MODEL_CACHE_SIZE
+ *         entries, and entries that were not used for MODEL_CACHE_MAX_AGE seconds are evicted as well (0 disables
+ *         the age limit).
+ *      2. Spill: evicted entries are written to the spill ModelStore (a FileModelStore under MODEL_STORE_PATH when
+ *         configured) and reloaded from it on the next miss.
+ *      3. The cache is shared by the whole process, see getInstance(). It is thread-safe. The spill store is read
+ *         and written outside of the lock of the cache, so that the hits never wait on its IO: the evicted entries
+ *         are still returned from memory until they are written.
+ *      4. The entries are serialized snapshots: every retrieveModel() returns a copy of its own, so the adapters and
+ *         threads that load the same tag never train, update or predict on the same model objects.
+ *      5. The tag does not depend on the data. The adapters check the watermark of a bundle (see DataWatermark)
+ *         before they use it, so a reloaded series whose history changed is trained again.
+ */
+
+package com.yahoo.egads.data;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+
+public class ModelCache implements ModelStore {
+
+    private static ModelCache instance = null;
+    // The cache settings of the config the instance was created from.
+    private static String instanceSettings = null;
+
+    private final int maxSize;
+    private final long maxAgeMillis;
+    private final ModelStore spill;
+    // Access-ordered: the eldest entry is the least recently used one.
+    private final LinkedHashMap<String, CacheEntry> entries = new LinkedHashMap<String, CacheEntry>(16, 0.75f, true);
+    // The serialized models waiting to be written to the spill store, by tag.
+    private final HashMap<String, byte[]> spilling = new HashMap<String, byte[]>();
+    // Held while reading or writing the spill store, apart from the lock of the cache.
+    private final Object spillLock = new Object();
+
+    private long hits = 0;
+    private long misses = 0;
+    private long evictions = 0;
+
+    private static class CacheEntry {
+        // The serialized model.
+        byte[] model;
+        long lastAccess;
+
+        CacheEntry(byte[] model, long lastAccess) {
+            this.model = model;
+            this.lastAccess = lastAccess;
+        }
+    }
+
+    // Construction ////////////////////////////////////////////////////////////////////
+
+    // maxAgeSeconds <= 0 disables the age limit, spill may be null.
+    public ModelCache(int maxSize, long maxAgeSeconds, ModelStore spill) {
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("The size of the model cache must be at least 1.");
+        }
+        this.maxSize = maxSize;
+        this.maxAgeMillis = maxAgeSeconds * 1000;
+        this.spill = spill;
+    }
+
+    public ModelCache(Properties config) {
+        this(config.getProperty("MODEL_CACHE_SIZE") == null
+                 ? 1000 : new Integer(config.getProperty("MODEL_CACHE_SIZE").trim()),
+             config.getProperty("MODEL_CACHE_MAX_AGE") == null
+                 ? 0 : new Long(config.getProperty("MODEL_CACHE_MAX_AGE").trim()),
+             config.getProperty("MODEL_STORE_PATH") == null
+                 ? null : new FileModelStore(config.getProperty("MODEL_STORE_PATH")));
+    }
+
+    // Returns the cache shared by the process, creating it from the config on the first call.
+    // Throws an IllegalArgumentException if the cache settings of the config differ from the
+    // ones it was created from.
+    public static synchronized ModelCache getInstance(Properties config) {
+        String settings = cacheSettings(config);
+        if (instance == null) {
+            instance = new ModelCache(config);
+            instanceSettings = settings;
+        } else if (!settings.equals(instanceSettings)) {
+            throw new IllegalArgumentException("The model cache was created with " + instanceSettings
+                                               + ", not " + settings);
+        }
+        return instance;
+    }
+
+    // Returns true when the config asks for the models to be cached (MODEL_CACHE_SIZE > 0).
+    public static boolean isEnabled(Properties config) {
+        return config.getProperty("MODEL_CACHE_SIZE") != null
+            && new Integer(config.getProperty("MODEL_CACHE_SIZE").trim()) > 0;
+    }
+
+    // The cache tag of a metric: its name followed by a hash of the config entries
+    // that can change a model.
+    public static String tag(String metric, Properties config) {
+        return metric + "_" + Integer.toHexString(settings(config).hashCode());
+    }
+
+    // The config entries that can change a model, sorted (input, output, pipeline and
+    // cache settings are left out).
+    static String settings(Properties config) {
+        TreeMap<String, String> sorted = new TreeMap<String, String>();
+        for (String key : config.stringPropertyNames()) {
+            if (key.equals("INPUT") || key.equals("OUTPUT") || key.startsWith("PIPELINE_")
+                || key.startsWith("SERVER_") || key.startsWith("MODEL_CACHE_") || key.startsWith("MODEL_STORE_")
+                || key.startsWith("FORECAST_CACHE_")) {
+                continue;
+            }
+            sorted.put(key, config.getProperty(key).trim());
+        }
+        return sorted.toString();
+    }
+
+    // The config entries of the cache itself.
+    private static String cacheSettings(Properties config) {
+        TreeMap<String, String> sorted = new TreeMap<String, String>();
+        for (String key : new String[] {"MODEL_CACHE_SIZE", "MODEL_CACHE_MAX_AGE", "MODEL_STORE_PATH"}) {
+            if (config.getProperty(key) != null) {
+                sorted.put(key, config.getProperty(key).trim());
+            }
+        }
+        return sorted.toString();
+    }
+
+    // ModelStore ////////////////////////////////////////////////////////////////////
+
+    // Stores a snapshot of the model, later changes of the model are not cached.
+    public void storeModel(String tag, Model m) {
+        // Serialized outside of the lock.
+        byte[] bytes = serialize(m);
+        Map<String, byte[]> evicted;
+        synchronized (this) {
+            long now = System.currentTimeMillis();
+            entries.put(tag, new CacheEntry(bytes, now));
+            evicted = evict(now);
+        }
+        spill(evicted);
+    }
+
+    // Returns a copy of the model cached under the tag, reloading it from the spill
+    // store when it is not in memory. Returns null if the tag is unknown.
+    public Model retrieveModel(String tag) {
+        byte[] bytes;
+        Map<String, byte[]> evicted;
+        synchronized (this) {
+            long now = System.currentTimeMillis();
+            evicted = evict(now);
+            CacheEntry e = entries.get(tag);
+            if (e != null) {
+                hits++;
+                e.lastAccess = now;
+                bytes = e.model;
+            } else {
+                misses++;
+                // Evicted, but not written yet.
+                bytes = spilling.get(tag);
+                if (bytes != null) {
+                    entries.put(tag, new CacheEntry(bytes, now));
+                    evicted.putAll(evict(now));
+                }
+            }
+        }
+        spill(evicted);
+        if (bytes == null) {
+            bytes = reload(tag);
+        }
+        return bytes == null ? null : deserialize(bytes);
+    }
+
+    // Methods ////////////////////////////////////////////////////////////////////
+
+    // Writes every entry held in memory to the spill store.
+    public void flush() {
+        Map<String, byte[]> all = new LinkedHashMap<String, byte[]>();
+        synchronized (this) {
+            if (spill == null) {
+                return;
+            }
+            for (Map.Entry<String, CacheEntry> e : entries.entrySet()) {
+                all.put(e.getKey(), e.getValue().model);
+            }
+            spilling.putAll(all);
+        }
+        spill(all);
+    }
+
+    // Drops every entry held in memory, spilling them first.
+    public void clear() {
+        flush();
+        synchronized (this) {
+            entries.clear();
+        }
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    // Evicts the expired and least recently used entries, and returns the ones to write to the
+    // spill store with spill() once the lock is released.
+    private Map<String, byte[]> evict(long now) {
+        Map<String, byte[]> evicted = new LinkedHashMap<String, byte[]>();
+        Iterator<Map.Entry<String, CacheEntry>> it = entries.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<String, CacheEntry> e = it.next();
+            boolean expired = maxAgeMillis > 0 && now - e.getValue().lastAccess > maxAgeMillis;
+            if (!expired && entries.size() <= maxSize) {
+                // The remaining entries were used more recently.
+                break;
+            }
+            if (spill != null) {
+                evicted.put(e.getKey(), e.getValue().model);
+                spilling.put(e.getKey(), e.getValue().model);
+            }
+            it.remove();
+            evictions++;
+        }
+        return evicted;
+    }
+
+    // Writes the evicted entries to the spill store, without the lock of the cache. An entry
+    // evicted again in the meantime is only written by the later eviction.
+    private void spill(Map<String, byte[]> evicted) {
+        for (Map.Entry<String, byte[]> e : evicted.entrySet()) {
+            synchronized (spillLock) {
+                synchronized (this) {
+                    if (spilling.get(e.getKey()) != e.getValue()) {
+                        continue;
+                    }
+                }
+                spill.storeModel(e.getKey(), deserialize(e.getValue()));
+                synchronized (this) {
+                    if (spilling.get(e.getKey()) == e.getValue()) {
+                        spilling.remove(e.getKey());
+                    }
+                }
+            }
+        }
+    }
+
+    // Reads a model missing from memory from the spill store, without the lock of the cache,
+    // and caches it again. Returns null if the tag is unknown.
+    private byte[] reload(String tag) {
+        if (spill == null) {
+            return null;
+        }
+        Model m;
+        synchronized (spillLock) {
+            m = spill.retrieveModel(tag);
+        }
+        byte[] bytes = m == null ? null : serialize(m);
+        Map<String, byte[]> evicted;
+        synchronized (this) {
+            // The tag may have been stored or evicted again while reading, the newer model wins.
+            long now = System.currentTimeMillis();
+            CacheEntry e = entries.get(tag);
+            if (e != null) {
+                bytes = e.model;
+            } else if (spilling.containsKey(tag)) {
+                bytes = spilling.get(tag);
+            }
+            if (bytes == null) {
+                return null;
+            }
+            entries.put(tag, new CacheEntry(bytes, now));
+            evicted = evict(now);
+        }
+        spill(evicted);
+        return bytes;
+    }
+
+    private static byte[] serialize(Model m) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            ObjectOutputStream out = new ObjectOutputStream(bytes);
+            out.writeObject(m);
+            out.close();
+            return bytes.toByteArray();
+        } catch (Exception e) {
+            throw new IllegalArgumentException("The model " + m.getModelName() + " cannot be cached: " + e);
+        }
+    }
+
+    private static Model deserialize(byte[] bytes) {
+        try {
+            ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes));
+            try {
+                return (Model) in.readObject();
+            } finally {
+                in.close();
+            }
+        } catch (Exception e) {
+            throw new IllegalStateException("A cached model cannot be read: " + e);
+        }
+    }
+}
@@ -8,11 +8,10 @@ package com.yahoo.egads.data;
 import java.util.Collections;
 import java.util.List;
 
-import com.google.common.collect.Lists;
-
 /**
  * Class for holding a weighted value that can then be aggregated when stored
- * in a list using various functions.
+ * in a list using various functions. See {@link WeightedValueBuffer} to 
+ * aggregate many sets of values without allocating.
  */
 public class WeightedValue implements Comparable<WeightedValue> {
     private final double value;
@@ -130,18 +129,17 @@ public class WeightedValue implements Comparable<WeightedValue> {
             }
             return ctr;
         } else if (agg.equals("MEDIAN")) {
-            final List<Double> sorted = Lists.newArrayList();
+            final double[] finite = new double[values.size()];
             for (final WeightedValue v : values) {
                 if (Double.isFinite(v.value)) {
-                    sorted.add(v.value);
-                    ++validCount;
+                    finite[validCount++] = v.value;
                 }
             }
             if (validCount < 1) {
                 return Double.NaN;
             }
-            Collections.sort(sorted);
-            return sorted.get(sorted.size() / 2);
+            return WeightedValueBuffer.select(finite, validCount, 
+                    validCount / 2);
         } else if (agg.equals("SUM")) {
             for (final WeightedValue v : values) {
                 if (Double.isFinite(v.value)) {
@@ -0,0 +1,236 @@
+/*
+ * Copyright 2016, Yahoo Inc.
+ * Copyrights licensed under the GPL License.
+ * See the accompanying LICENSE file for terms.
+ */
+package com.yahoo.egads.data;
+
+import java.util.Arrays;
+
+/**
+ * A reusable buffer of weighted values backed by primitive arrays. It drops
+ * and aggregates values as {@link WeightedValue#drop} and
+ * {@link WeightedValue#aggregate} do on a list, with the same results, but
+ * without boxing or allocating once it has grown to the number of values:
+ * the drops and MEDIAN use a quickselect over a scratch array and the other
+ * functions a single pass.
+ */
+public class WeightedValueBuffer {
+    private double[] values;
+    private int[] weights;
+    private double[] scratch;
+    private int size;
+
+    /**
+     * Default ctor.
+     * @param capacity The number of values expected, the buffer grows past it.
+     */
+    public WeightedValueBuffer(final int capacity) {
+        values = new double[Math.max(1, capacity)];
+        weights = new int[values.length];
+        scratch = new double[values.length];
+    }
+
+    /** Empties the buffer, keeping its arrays. */
+    public void clear() {
+        size = 0;
+    }
+
+    /**
+     * Appends a value.
+     * @param value The value of the data point.
+     * @param weight A weight for the data point.
+     */
+    public void add(final double value, final int weight) {
+        if (size == values.length) {
+            values = Arrays.copyOf(values, size * 2);
+            weights = Arrays.copyOf(weights, size * 2);
+            scratch = new double[size * 2];
+        }
+        values[size] = value;
+        weights[size] = weight;
+        size++;
+    }
+
+    /** @return The number of values in the buffer. */
+    public int size() {
+        return size;
+    }
+
+    /** @return The value at the given index, in the order added. */
+    public double getValue(final int index) {
+        return values[index];
+    }
+
+    /** @return The weight of the value at the given index. */
+    public int getWeight(final int index) {
+        return weights[index];
+    }
+
+    /**
+     * Drops as many of the highest or lowest values as possible, leaving
+     * at least one value in the buffer. Of equal values, the first ones added
+     * are dropped first and the others keep their order.
+     * @param count A count of 1 or more.
+     * @param highest Drop higher values == true or drop lower values == false.
+     */
+    public void drop(final int count, final boolean highest) {
+        final int toDrop = Math.min(count, size - 1);
+        if (toDrop < 1) {
+            return;
+        }
+        System.arraycopy(values, 0, scratch, 0, size);
+        // the last value to drop
+        final double pivot = select(scratch, size,
+                highest ? size - toDrop : toDrop - 1);
+        final int sign = highest ? 1 : -1;
+        int beyond = 0;
+        for (int i = 0; i < size; i++) {
+            if (Double.compare(values[i], pivot) * sign > 0) {
+                ++beyond;
+            }
+        }
+        int equals = toDrop - beyond;
+        int kept = 0;
+        for (int i = 0; i < size; i++) {
+            final int c = Double.compare(values[i], pivot) * sign;
+            if (c > 0) {
+                continue;
+            }
+            if (c == 0 && equals > 0) {
+                --equals;
+                continue;
+            }
+            values[kept] = values[i];
+            weights[kept] = weights[i];
+            ++kept;
+        }
+        size = kept;
+    }
+
+    /**
+     * Aggregates the values in the buffer using the given agg function.
+     * For all functions, NaNs are skipped so if the entire buffer is NaN'd or
+     * empty, the results will be a NaN.
+     * @param agg A non-null or empty aggregator function to use.
+     * @return An aggregated value or NaN.
+     * @throws IllegalArgumentException if agg was null or empty or we had an
+     * unimplemented agg function.
+     */
+    public double aggregate(final String agg) {
+        if (agg == null || agg.isEmpty()) {
+            throw new IllegalArgumentException("Aggregator cannot be null or empty");
+        }
+        if (size == 0) {
+            if (agg.equals("COUNT")) {
+                return 0;
+            }
+            return Double.NaN;
+        }
+
+        // temps.
+        int validCount = 0;
+        double accumulator = 0;
+
+        if (agg.equals("MAX")) {
+            // same start as WeightedValue.aggregate()
+            accumulator = Double.MIN_VALUE;
+            for (int i = 0; i < size; i++) {
+                if (Double.isFinite(values[i])) {
+                    if (values[i] > accumulator) {
+                        accumulator = values[i];
+                    }
+                    ++validCount;
+                }
+            }
+            return validCount < 1 ? Double.NaN : accumulator;
+        } else if (agg.equals("MIN")) {
+            accumulator = Double.MAX_VALUE;
+            for (int i = 0; i < size; i++) {
+                if (Double.isFinite(values[i])) {
+                    if (values[i] < accumulator) {
+                        accumulator = values[i];
+                    }
+                    ++validCount;
+                }
+            }
+            return validCount < 1 ? Double.NaN : accumulator;
+        } else if (agg.equals("COUNT")) {
+            for (int i = 0; i < size; i++) {
+                if (Double.isFinite(values[i])) {
+                    ++validCount;
+                }
+            }
+            return validCount;
+        } else if (agg.equals("MEDIAN")) {
+            for (int i = 0; i < size; i++) {
+                if (Double.isFinite(values[i])) {
+                    scratch[validCount++] = values[i];
+                }
+            }
+            if (validCount < 1) {
+                return Double.NaN;
+            }
+            return select(scratch, validCount, validCount / 2);
+        } else if (agg.equals("SUM") || agg.equals("AVG")) {
+            for (int i = 0; i < size; i++) {
+                if (Double.isFinite(values[i])) {
+                    accumulator += values[i];
+                    ++validCount;
+                }
+            }
+            if (validCount < 1) {
+                return Double.NaN;
+            }
+            return agg.equals("SUM") ? accumulator : accumulator / validCount;
+        } else if (agg.equals("WAVG")) {
+            for (int i = 0; i < size; i++) {
+                if (Double.isFinite(values[i])) {
+                    accumulator += weights[i] * values[i];
+                    validCount += weights[i];
+                }
+            }
+            return validCount < 1 ? Double.NaN : accumulator / validCount;
+        }
+
+        throw new IllegalArgumentException("Unimplemented aggregation "
+                + "function: " + agg);
+    }
+
+    /**
+     * Returns the k-th smallest of the first n values in the order of
+     * Double.compare(), partially reordering the array.
+     */
+    public static double select(final double[] a, final int n, final int k) {
+        int lo = 0;
+        int hi = n - 1;
+        while (lo < hi) {
+            final double pivot = a[(lo + hi) >>> 1];
+            int i = lo;
+            int j = hi;
+            while (i <= j) {
+                while (Double.compare(a[i], pivot) < 0) {
+                    ++i;
+                }
+                while (Double.compare(a[j], pivot) > 0) {
+                    --j;
+                }
+                if (i <= j) {
+                    final double t = a[i];
+                    a[i] = a[j];
+                    a[j] = t;
+                    ++i;
+                    --j;
+                }
+            }
+            if (k <= j) {
+                hi = j;
+            } else if (k >= i) {
+                lo = i;
+            } else {
+                return a[k];
+            }
+        }
+        return a[k];
+    }
+}
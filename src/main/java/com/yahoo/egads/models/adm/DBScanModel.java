@@ -19,6 +19,7 @@ import com.yahoo.egads.data.Anomaly.Interval;
 import com.yahoo.egads.data.AnomalyErrorStorage;
 import com.yahoo.egads.data.TimeSeries.DataSequence;
 import com.yahoo.egads.utilities.DBSCANClusterer;
+import com.yahoo.egads.utilities.ExecutionBudget;
 
 import org.apache.commons.math3.ml.clustering.Cluster;
 
@@ -38,7 +39,8 @@ public class DBScanModel extends AnomalyDetectionAbstractModel {
     // modelName.
     public String modelName = "DBScanModel";
     public AnomalyErrorStorage aes = new AnomalyErrorStorage();
-    private DBSCANClusterer<IdentifiedDoublePoint> dbscan = null;
+    // Built from eps and minPoints, again once the model was reloaded since it is not serializable.
+    private transient DBSCANClusterer<IdentifiedDoublePoint> dbscan = null;
     private int minPoints = 2;
     private double eps = 500;
     
@@ -102,6 +104,7 @@ public class DBScanModel extends AnomalyDetectionAbstractModel {
         double sum = 0.0;
         double count = 0.0;
         for (int i = 0; i < n; i++) {
+            ExecutionBudget.check();
             for (int j = 0; j < n; j++) {
                 sum += ed.compute(points.get(i).getPoint(), points.get(j).getPoint());
                 count++;
@@ -137,6 +140,9 @@ public class DBScanModel extends AnomalyDetectionAbstractModel {
             points.add(new IdentifiedDoublePoint(d, i));
         }
         
+        if (dbscan == null) {
+            dbscan = new DBSCANClusterer<IdentifiedDoublePoint>(eps, minPoints);
+        }
         List<Cluster<IdentifiedDoublePoint>> cluster = dbscan.cluster(points);
         for(Cluster<IdentifiedDoublePoint> c: cluster) {
             for (IdentifiedDoublePoint p : c.getPoints()) {
@@ -23,12 +23,23 @@
 package com.yahoo.egads.models.tsmm;
 
 import com.yahoo.egads.data.*;
+import com.yahoo.egads.utilities.ExecutionBudget;
 import org.json.JSONObject;
 import org.json.JSONStringer;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Properties;
 
-// Picks the best model from the available EGADS models.
+// Picks the best model from the available EGADS models. By default the models are compared on their
+// in-sample errors. With AUTO_SELECTION BACKTEST they are compared on the errors of their forecasts
+// on rolling origins instead, see Backtester, and only the selected model is trained on all the data.
 public class AutoForecastModel extends TimeSeriesAbstractModel {
+    // The models to pick from.
+    private static final List<String> MODELS = Arrays.asList("OlympicModel", "MovingAverageModel",
+                    "MultipleLinearRegressionModel", "NaiveForecastingModel", "PolynomialRegressionModel",
+                    "RegressionModel", "SimpleExponentialSmoothingModel", "TripleExponentialSmoothingModel",
+                    "WeightedMovingAverageModel", "DoubleExponentialSmoothingModel");
+
     // Stores the properties file to init other models.
     private Properties p;
     
@@ -45,7 +56,11 @@ public class AutoForecastModel extends TimeSeriesAbstractModel {
         // At this point, reset does nothing.
     }
     
-    public void train(TimeSeries.DataSequence data) {
+    public void train(TimeSeries.DataSequence data) throws Exception {
+        if ("BACKTEST".equals(p.getProperty("AUTO_SELECTION"))) {
+            trainBacktested(data);
+            return;
+        }
         // Init all.
         OlympicModel olympModel = new OlympicModel(p);
         MovingAverageModel movingAvg = new MovingAverageModel(p);
@@ -60,6 +75,7 @@ public class AutoForecastModel extends TimeSeriesAbstractModel {
         
         // Train all.
         olympModel.train(data);
+        ExecutionBudget.check();
         movingAvg.train(data);
         mlReg.train(data);
         naive.train(data);
@@ -69,6 +85,7 @@ public class AutoForecastModel extends TimeSeriesAbstractModel {
         tripleExp.train(data);
         weightAvg.train(data);
         doubleExp.train(data);
+        ExecutionBudget.check();
         
         // Pick best.
         if (betterThan(olympModel, myModel)) {
@@ -107,6 +124,19 @@ public class AutoForecastModel extends TimeSeriesAbstractModel {
         logger.debug(getBias() + "\t" + getMAD() + "\t" + getMAPE() + "\t" + getMSE() + "\t" + getSAE() + "\t" + 0 + "\t" + 0);
     }
 
+    private void trainBacktested(TimeSeries.DataSequence data) throws Exception {
+        Backtester backtester = new Backtester(p);
+        List<Backtester.Result> results = backtester.run(data, MODELS);
+        logger.debug("Backtest of the models:\n" + Backtester.table(results));
+        Backtester.Result selected = backtester.select(results);
+        if (selected == null) {
+            throw new IllegalStateException("No model could be backtested on " + data.size() + " points.");
+        }
+        myModel = Backtester.build(selected.model, p);
+        myModel.train(data);
+        initForecastErrors(myModel, data);
+    }
+
     public void update(TimeSeries.DataSequence data) {
 
     }
@@ -115,6 +145,11 @@ public class AutoForecastModel extends TimeSeriesAbstractModel {
         return modelName;
     }
 
+    public boolean forecastsTimeStamps() {
+        // The chosen model is only known once trained.
+        return myModel != null && myModel.forecastsTimeStamps();
+    }
+
     public void predict(TimeSeries.DataSequence sequence) throws Exception {
         myModel.predict(sequence);        
     }
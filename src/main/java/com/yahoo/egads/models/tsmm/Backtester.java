@@ -0,0 +1,340 @@
+/*
+ * Copyright 2016, Yahoo Inc.
+ * Copyrights licensed under the GPL License.
+ * See the accompanying LICENSE file for terms.
+ */
+
+// Evaluates forecasting models on rolling origins: each model is trained on the points before an origin and
+// forecasts the BACKTEST_HORIZON points after it, for BACKTEST_FOLDS origins that split the end of the series
+// (at most its second half) into consecutive blocks. Unlike the in-sample errors of the models, the errors are
+// those of forecasts of points the model did not see.
+//
+//      1. An incremental model (see TimeSeriesAbstractModel.isIncremental()) is trained once on the points before
+//         the first origin and updated with each block after forecasting it. The other models are trained again
+//         for each origin.
+//      2. The folds of the models that are trained again, and the models that are updated, are evaluated in
+//         parallel on BACKTEST_THREADS threads, each with what is left of the time budget of the caller.
+//      3. The result of a model holds its forecast errors over all the folds and the time spent training,
+//         updating and forecasting, see table(). select() picks the cheapest model among the ones whose error is
+//         within BACKTEST_TOLERANCE of the best one.
+//      4. A model that fails on a fold, e.g. one that only replays its training range as OlympicModel does, keeps
+//         the reason in its result and is never selected.
+
+package com.yahoo.egads.models.tsmm;
+
+import java.lang.reflect.Constructor;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.yahoo.egads.data.TimeSeries;
+import com.yahoo.egads.utilities.BudgetExceededException;
+import com.yahoo.egads.utilities.ExecutionBudget;
+
+public class Backtester {
+
+    private final Properties config;
+    private final int folds;
+    private final int horizon;
+    private final int threads;
+    private final double tolerance;
+
+    public Backtester(Properties config) {
+        this.config = config;
+        folds = new Integer(config.getProperty("BACKTEST_FOLDS", "4"));
+        horizon = new Integer(config.getProperty("BACKTEST_HORIZON", "24"));
+        threads = config.getProperty("BACKTEST_THREADS") == null ? Runtime.getRuntime().availableProcessors()
+                        : new Integer(config.getProperty("BACKTEST_THREADS"));
+        tolerance = new Double(config.getProperty("BACKTEST_TOLERANCE", "0"));
+        if (folds < 1 || horizon < 1 || threads < 1 || tolerance < 0) {
+            throw new IllegalArgumentException("BACKTEST_FOLDS, BACKTEST_HORIZON and BACKTEST_THREADS must be "
+                            + "positive, BACKTEST_TOLERANCE 0 or more");
+        }
+    }
+
+    // The errors and the running time of a model over the folds.
+    public static class Result {
+        public final String model;
+        public final boolean incremental;
+        public int folds;
+        public int points;
+        public double mae;
+        public double rmse;
+        // Over the points whose actual value is not 0, NaN if there is none.
+        public double mape;
+        public double trainMillis;
+        public double updateMillis;
+        public double predictMillis;
+        // Why the model could not be evaluated, null if it was.
+        public String failure;
+
+        private double sumAbs;
+        private double sumSquared;
+        private double sumPercent;
+        private int percentPoints;
+
+        Result(String model, boolean incremental) {
+            this.model = model;
+            this.incremental = incremental;
+        }
+
+        public double getMillis() {
+            return trainMillis + updateMillis + predictMillis;
+        }
+
+        private void add(TimeSeries.DataSequence actual, TimeSeries.DataSequence forecast) {
+            folds++;
+            for (int i = 0; i < actual.size(); i++) {
+                double error = forecast.get(i).value - actual.get(i).value;
+                sumAbs += Math.abs(error);
+                sumSquared += error * error;
+                if (actual.get(i).value != 0) {
+                    sumPercent += Math.abs(error / actual.get(i).value);
+                    percentPoints++;
+                }
+                points++;
+            }
+        }
+
+        private void merge(Result other) {
+            folds += other.folds;
+            points += other.points;
+            sumAbs += other.sumAbs;
+            sumSquared += other.sumSquared;
+            sumPercent += other.sumPercent;
+            percentPoints += other.percentPoints;
+            trainMillis += other.trainMillis;
+            updateMillis += other.updateMillis;
+            predictMillis += other.predictMillis;
+            if (failure == null) {
+                failure = other.failure;
+            }
+        }
+
+        private void finish() {
+            mae = sumAbs / points;
+            rmse = Math.sqrt(sumSquared / points);
+            mape = percentPoints == 0 ? Double.NaN : 100 * sumPercent / percentPoints;
+        }
+    }
+
+    /**
+     * Evaluates the models on the series.
+     * @param data The series, sorted by time.
+     * @param models The names of the models, classes of this package with a constructor taking the config.
+     * @return The results of the models, in the same order.
+     */
+    public List<Result> run(TimeSeries.DataSequence data, List<String> models) throws Exception {
+        // The origins split at most the second half of the series.
+        int n = data.size();
+        int h = Math.min(horizon, n / 2);
+        int k = h == 0 ? 0 : Math.min(folds, (n / 2) / h);
+        if (k == 0) {
+            throw new IllegalArgumentException("At least 2 data points are required to backtest, only " + n
+                            + " provided.");
+        }
+        final int[] origins = new int[k + 1];
+        for (int i = 0; i <= k; i++) {
+            origins[i] = n - (k - i) * h;
+        }
+
+        List<Result> results = new ArrayList<Result>();
+        List<Callable<Result>> tasks = new ArrayList<Callable<Result>>();
+        List<Result> owners = new ArrayList<Result>();
+        final long budget = ExecutionBudget.isActive() ? ExecutionBudget.remaining() : -1;
+        for (final String name : models) {
+            Result result = new Result(name, build(name, config).isIncremental());
+            results.add(result);
+            if (result.incremental) {
+                tasks.add(task(name, data, origins, 0, k, budget));
+                owners.add(result);
+            } else {
+                for (int i = 0; i < k; i++) {
+                    tasks.add(task(name, data, origins, i, i + 1, budget));
+                    owners.add(result);
+                }
+            }
+        }
+
+        List<Result> partials = execute(tasks);
+        for (int t = 0; t < partials.size(); t++) {
+            owners.get(t).merge(partials.get(t));
+        }
+        for (Result result : results) {
+            result.finish();
+        }
+        return results;
+    }
+
+    /**
+     * The cheapest model whose RMSE is within BACKTEST_TOLERANCE (relative) of the best one.
+     * @param results The results of run().
+     * @return The selected result, null if no model could be evaluated.
+     */
+    public Result select(List<Result> results) {
+        double best = Double.POSITIVE_INFINITY;
+        for (Result r : results) {
+            if (r.failure == null && r.rmse < best) {
+                best = r.rmse;
+            }
+        }
+        Result selected = null;
+        for (Result r : results) {
+            if (r.failure != null || !(r.rmse <= best * (1 + tolerance))) {
+                continue;
+            }
+            if (selected == null || r.getMillis() < selected.getMillis()
+                || (r.getMillis() == selected.getMillis() && r.rmse < selected.rmse)) {
+                selected = r;
+            }
+        }
+        return selected;
+    }
+
+    // The results as a tab separated table, one model per line.
+    public static String table(List<Result> results) {
+        StringBuilder table = new StringBuilder("model\tincremental\tfolds\tpoints\tMAE\tRMSE\tMAPE\t"
+                        + "train_ms\tupdate_ms\tpredict_ms\n");
+        for (Result r : results) {
+            table.append(r.model).append('\t').append(r.incremental).append('\t');
+            if (r.failure != null) {
+                table.append("failed: ").append(r.failure).append('\n');
+                continue;
+            }
+            table.append(String.format("%d\t%d\t%.4f\t%.4f\t%.4f\t%.3f\t%.3f\t%.3f\n", r.folds, r.points, r.mae,
+                            r.rmse, r.mape, r.trainMillis, r.updateMillis, r.predictMillis));
+        }
+        return table.toString();
+    }
+
+    // Builds a model of this package from its name.
+    static TimeSeriesAbstractModel build(String name, Properties config) throws Exception {
+        Class<?> tsModelClass = Class.forName("com.yahoo.egads.models.tsmm." + name);
+        Constructor<?> constructor = tsModelClass.getConstructor(Properties.class);
+        return (TimeSeriesAbstractModel) constructor.newInstance(config);
+    }
+
+    // Evaluates the folds [from, to) of a model: trained on the points before the first
+    // origin, then updated with each block after forecasting it.
+    private Callable<Result> task(final String name, final TimeSeries.DataSequence data, final int[] origins,
+                    final int from, final int to, final long budget) {
+        return new Callable<Result>() {
+            public Result call() throws Exception {
+                // a worker thread gets the budget of the caller, which evaluating inline keeps
+                boolean worker = budget >= 0 && !ExecutionBudget.isActive();
+                if (worker) {
+                    ExecutionBudget.start(budget);
+                }
+                TimeSeriesAbstractModel model = build(name, config);
+                Result result = new Result(name, model.isIncremental());
+                try {
+                    long start = System.nanoTime();
+                    model.train(copy(data, 0, origins[from], false));
+                    result.trainMillis = (System.nanoTime() - start) / 1e6;
+                    for (int i = from; i < to; i++) {
+                        if (i > from) {
+                            start = System.nanoTime();
+                            model.update(copy(data, origins[i - 1], origins[i], false));
+                            result.updateMillis += (System.nanoTime() - start) / 1e6;
+                        }
+                        ExecutionBudget.check();
+                        TimeSeries.DataSequence forecast = copy(data, origins[i], origins[i + 1], true);
+                        start = System.nanoTime();
+                        model.predict(forecast);
+                        result.predictMillis += (System.nanoTime() - start) / 1e6;
+                        result.add(copy(data, origins[i], origins[i + 1], false), forecast);
+                    }
+                } catch (BudgetExceededException e) {
+                    throw e;
+                } catch (Exception e) {
+                    result.failure = e.toString();
+                } finally {
+                    if (worker) {
+                        ExecutionBudget.clear();
+                    }
+                }
+                return result;
+            }
+        };
+    }
+
+    // The points [from, to), without their values for a sequence to forecast.
+    private static TimeSeries.DataSequence copy(TimeSeries.DataSequence data, int from, int to, boolean empty) {
+        TimeSeries.DataSequence copy = new TimeSeries.DataSequence(to - from);
+        for (int i = from; i < to; i++) {
+            TimeSeries.Entry e = new TimeSeries.Entry(data.get(i));
+            if (empty) {
+                e.value = 0;
+            }
+            copy.add(e);
+        }
+        return copy;
+    }
+
+    // The threads of all the backtests, created with the first parallel run and kept while in use.
+    private static class Pool {
+        static final ExecutorService THREADS = Executors.newCachedThreadPool(new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "egads-backtest-" + count.getAndIncrement());
+                t.setDaemon(true);
+                return t;
+            }
+        });
+    }
+
+    private List<Result> execute(final List<Callable<Result>> tasks) throws Exception {
+        final Result[] results = new Result[tasks.size()];
+        int workers = Math.min(threads, tasks.size());
+        if (workers == 1) {
+            for (int t = 0; t < results.length; t++) {
+                results[t] = tasks.get(t).call();
+            }
+            return Arrays.asList(results);
+        }
+        // every worker takes the next task until none is left, or one failed
+        final AtomicInteger next = new AtomicInteger();
+        List<Callable<Void>> calls = new ArrayList<Callable<Void>>(workers);
+        for (int w = 0; w < workers; w++) {
+            calls.add(new Callable<Void>() {
+                public Void call() throws Exception {
+                    int t;
+                    while ((t = next.getAndIncrement()) < results.length) {
+                        try {
+                            results[t] = tasks.get(t).call();
+                        } catch (Exception e) {
+                            next.set(results.length);
+                            throw e;
+                        }
+                    }
+                    return null;
+                }
+            });
+        }
+        try {
+            for (Future<Void> future : Pool.THREADS.invokeAll(calls)) {
+                try {
+                    future.get();
+                } catch (ExecutionException e) {
+                    if (e.getCause() instanceof Exception) {
+                        throw (Exception) e.getCause();
+                    }
+                    throw (Error) e.getCause();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new BudgetExceededException("Interrupted.");
+        }
+        return Arrays.asList(results);
+    }
+}
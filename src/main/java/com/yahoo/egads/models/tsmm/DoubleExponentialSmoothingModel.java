@@ -27,22 +27,26 @@ import com.yahoo.egads.data.TimeSeries.Entry;
 import org.json.JSONObject;
 import org.json.JSONStringer;
 import java.util.Properties;
-import net.sourceforge.openforecast.DataSet;
-import net.sourceforge.openforecast.ForecastingModel;
-import net.sourceforge.openforecast.DataPoint;
-import net.sourceforge.openforecast.Observation;
-import java.util.*;
 
 // Double exponential smoothing - also known as Holt exponential smoothing - is a refinement of the popular simple
 // exponential smoothing model but adds another component which takes into account any trend in the data.
+// The smoothing is computed in a single pass over the values, with the same recursions and accuracy indicators as
+// the OpenForecast DoubleExponentialSmoothingModel:
+//      F(t) = alpha * y(t) + (1 - alpha) * (F(t - 1) + S(t - 1))
+//      S(t) = gamma * (F(t) - F(t - 1)) + (1 - gamma) * S(t - 1)
+// starting from F(0) = y(0), F(1) = y(1) and S(1) = y(1) - y(0).
 public class DoubleExponentialSmoothingModel extends TimeSeriesAbstractModel {
     // methods ////////////////////////////////////////////////
 
-    // The model that will be used for forecasting.
-    private ForecastingModel forecaster;
-    
-    // Stores the historical values.
-    private TimeSeries.DataSequence data;
+    // TODO: Make weights configurable.
+    private static final double ALPHA = 0.75;
+    private static final double GAMMA = 0.1;
+
+    // The historical values and their smoothed values.
+    private ForecastHistory history;
+
+    // The slope at the last value.
+    private double slope;
 
     public DoubleExponentialSmoothingModel(Properties config) {
         super(config);
@@ -54,54 +58,66 @@ public class DoubleExponentialSmoothingModel extends TimeSeriesAbstractModel {
     }
     
     public void train(TimeSeries.DataSequence data) {
-        this.data = data;
         int n = data.size();
-        DataPoint dp = null;
-        DataSet observedData = new DataSet();
+        if (n < 2) {
+            throw new IllegalArgumentException("At least 2 data points are required, only " + n + " provided.");
+        }
+        double[] values = new double[n];
         for (int i = 0; i < n; i++) {
-            dp = new Observation(data.get(i).value);
-            dp.setIndependentValue("x", i);
-            observedData.add(dp);
+            values[i] = data.get(i).value;
         }
-        observedData.setTimeVariable("x"); 
-        
-        // TODO: Make weights configurable.
-        forecaster = new net.sourceforge.openforecast.models.DoubleExponentialSmoothingModel(0.75, 0.1);
-        forecaster.init(observedData);
-        initForecastErrors(forecaster, data);
+
+        double[] forecasts = new double[n];
+        double[] slopes = new double[n];
+        // The one step ahead predictions the accuracy is measured on.
+        double[] predictions = new double[n];
+        forecasts[0] = values[0];
+        forecasts[1] = values[1];
+        slopes[1] = values[1] - values[0];
+        for (int t = 2; t < n; t++) {
+            predictions[t] = forecasts[t - 1] + slopes[t - 1];
+            forecasts[t] = ALPHA * values[t] + (1 - ALPHA) * (forecasts[t - 1] + slopes[t - 1]);
+            slopes[t] = GAMMA * (forecasts[t] - forecasts[t - 1]) + (1 - GAMMA) * slopes[t - 1];
+        }
+        initForecastErrors(predictions, values, 2);
+        history = new ForecastHistory(data, forecasts);
+        slope = slopes[n - 1];
         
         logger.debug(getBias() + "\t" + getMAD() + "\t" + getMAPE() + "\t" + getMSE() + "\t" + getSAE() + "\t" + 0 + "\t" + 0);
     }
    
+    // Folds in the points after the last one seen, in O(1) each.
     public void update(TimeSeries.DataSequence data) {
-
+        if (history == null) {
+            throw new IllegalStateException("Model was empty. 'train()' may not have been called.");
+        }
+        for (Entry e : data) {
+            if (e.time <= history.lastTime()) {
+                continue;
+            }
+            double previous = history.forecast(history.size() - 1);
+            addForecastError(previous + slope, e.value);
+            double forecast = ALPHA * e.value + (1 - ALPHA) * (previous + slope);
+            slope = GAMMA * (forecast - previous) + (1 - GAMMA) * slope;
+            history.append(e.time, e.value, forecast);
+        }
     }
 
     public String getModelName() {
         return modelName;
     }
 
+    public boolean isIncremental() {
+        return true;
+    }
+
     public void predict(TimeSeries.DataSequence sequence) throws Exception {
-          int n = data.size();
-          DataSet requiredDataPoints = new DataSet();
-          DataPoint dp;
-
-          for (int count = 0; count < n; count++) {
-              dp = new Observation(0.0);
-              dp.setIndependentValue("x", count);
-              requiredDataPoints.add(dp);
-          }
-          forecaster.forecast(requiredDataPoints);
-
-          // Output the results
-          Iterator<DataPoint> it = requiredDataPoints.iterator();
-          int i = 0;
-          while (it.hasNext()) {
-              DataPoint pnt = ((DataPoint) it.next());
-              logger.info(data.get(i).time + "," + data.get(i).value + "," + pnt.getDependentValue());
-              sequence.set(i, (new Entry(data.get(i).time, (float) pnt.getDependentValue())));
-              i++;
-          }
+        // The smoothed value of the last point followed along the slope.
+        history.predict(sequence, new ForecastHistory.Horizon() {
+            public double forecast(int steps) {
+                return history.forecast(history.size() - 1) + steps * slope;
+            }
+        });
     }
 
     public void toJson(JSONStringer json_out) {
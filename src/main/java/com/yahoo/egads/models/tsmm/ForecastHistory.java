@@ -0,0 +1,188 @@
+/*
+ * Copyright 2016, Yahoo Inc.
+ * Copyrights licensed under the GPL License.
+ * See the accompanying LICENSE file for terms.
+ */
+
+// The time-stamps, values and forecasts of the points a model has seen, in growable primitive
+// arrays so that the points folded in by update() are appended in amortized O(1). The forecasts
+// are computed once when the model is trained or updated, and predict() looks up those of the
+// requested time-stamps, asking the model for the ones after its last point.
+// At most MAX_SIZE points are kept: once full, the oldest quarter is dropped. The indices stay
+// those of all the points seen, and the time-stamps before the oldest kept point get its forecast.
+
+package com.yahoo.egads.models.tsmm;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.Iterator;
+
+import net.sourceforge.openforecast.DataPoint;
+import net.sourceforge.openforecast.DataSet;
+import net.sourceforge.openforecast.ForecastingModel;
+import net.sourceforge.openforecast.Observation;
+
+import com.yahoo.egads.data.TimeSeries;
+import com.yahoo.egads.data.TimeSeries.Entry;
+
+class ForecastHistory implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    // The default maximum number of points kept.
+    static final int MAX_SIZE = 1 << 20;
+
+    // The forecasts of a model after its last point.
+    interface Horizon {
+        // The forecast of the point 'steps' sampling intervals after the last one, steps >= 1.
+        double forecast(int steps);
+    }
+
+    private long[] times;
+    private float[] values;
+    private double[] forecasts;
+    // The number of points kept, and of the older ones dropped.
+    private int size;
+    private int dropped;
+    private int capacity;
+    // The median interval between the training points, to count the steps of a horizon.
+    private long step;
+
+    // The training points and their forecasts.
+    ForecastHistory(TimeSeries.DataSequence data, double[] forecasts) {
+        this(data, forecasts, MAX_SIZE);
+    }
+
+    ForecastHistory(TimeSeries.DataSequence data, double[] forecasts, int capacity) {
+        init(data, forecasts, capacity);
+    }
+
+    // The training points and the forecasts of an OpenForecast model trained on their indices.
+    ForecastHistory(TimeSeries.DataSequence data, ForecastingModel forecaster) {
+        DataSet requiredDataPoints = new DataSet();
+        for (int i = 0; i < data.size(); i++) {
+            DataPoint dp = new Observation(0.0);
+            dp.setIndependentValue("x", i);
+            requiredDataPoints.add(dp);
+        }
+        forecaster.forecast(requiredDataPoints);
+        double[] forecasts = new double[data.size()];
+        int i = 0;
+        for (Iterator<DataPoint> it = requiredDataPoints.iterator(); it.hasNext(); i++) {
+            forecasts[i] = it.next().getDependentValue();
+        }
+        init(data, forecasts, MAX_SIZE);
+    }
+
+    // The kept points, indexed as all the points seen, to train an OpenForecast model again
+    // once a model holding one was reloaded (the OpenForecast models are not serializable).
+    DataSet observed() {
+        DataSet observedData = new DataSet();
+        for (int i = 0; i < size; i++) {
+            DataPoint dp = new Observation(values[i]);
+            dp.setIndependentValue("x", dropped + i);
+            observedData.add(dp);
+        }
+        observedData.setTimeVariable("x");
+        return observedData;
+    }
+
+    private void init(TimeSeries.DataSequence data, double[] forecasts, int capacity) {
+        this.capacity = Math.max(1, capacity);
+        int n = data.size();
+        dropped = Math.max(0, n - this.capacity);
+        size = n - dropped;
+        times = new long[size];
+        values = new float[size];
+        for (int i = 0; i < size; i++) {
+            times[i] = data.get(dropped + i).time;
+            values[i] = data.get(dropped + i).value;
+        }
+        this.forecasts = dropped == 0 ? forecasts : Arrays.copyOfRange(forecasts, dropped, n);
+        step = medianStep(times, size);
+    }
+
+    private static long medianStep(long[] times, int size) {
+        if (size < 2) {
+            return 1;
+        }
+        long[] steps = new long[size - 1];
+        for (int i = 1; i < size; i++) {
+            steps[i - 1] = times[i] - times[i - 1];
+        }
+        Arrays.sort(steps);
+        return Math.max(1, steps[steps.length / 2]);
+    }
+
+    void append(long time, float value, double forecast) {
+        if (size == capacity) {
+            // Drops the oldest quarter, in amortized O(1) per point.
+            int n = Math.max(1, capacity >> 2);
+            System.arraycopy(times, n, times, 0, size - n);
+            System.arraycopy(values, n, values, 0, size - n);
+            System.arraycopy(forecasts, n, forecasts, 0, size - n);
+            size -= n;
+            dropped += n;
+        }
+        if (size == times.length) {
+            int length = Math.min(capacity, Math.max(16, size + (size >> 1)));
+            times = Arrays.copyOf(times, length);
+            values = Arrays.copyOf(values, length);
+            forecasts = Arrays.copyOf(forecasts, length);
+        }
+        times[size] = time;
+        values[size] = value;
+        forecasts[size] = forecast;
+        size++;
+    }
+
+    // The number of points seen, kept or not.
+    int size() {
+        return dropped + size;
+    }
+
+    long lastTime() {
+        return times[size - 1];
+    }
+
+    // The forecast of the i-th point seen, or of the oldest kept one if it was dropped.
+    double forecast(int i) {
+        return forecasts[Math.max(0, i - dropped)];
+    }
+
+    // Sets the forecast of the i-th point seen, if it is kept.
+    void setForecast(int i, double forecast) {
+        if (i >= dropped) {
+            forecasts[i - dropped] = forecast;
+        }
+    }
+
+    // As predict(sequence, horizon), forecasting the indices after the last point with the
+    // OpenForecast model of the training points.
+    void predict(TimeSeries.DataSequence sequence, final ForecastingModel forecaster) {
+        predict(sequence, new Horizon() {
+            public double forecast(int steps) {
+                DataPoint dp = new Observation(0.0);
+                dp.setIndependentValue("x", size() - 1 + (double) steps);
+                return forecaster.forecast(dp);
+            }
+        });
+    }
+
+    // Writes the forecasts of the time-stamps of the sequence: the one of the point at the
+    // time-stamp or of the last one before it, and from the horizon after the last point.
+    void predict(TimeSeries.DataSequence sequence, Horizon horizon) {
+        long last = times[size - 1];
+        for (Entry e : sequence) {
+            double forecast;
+            if (e.time > last) {
+                long steps = Math.max(1, Math.round((double) (e.time - last) / Math.max(1, step)));
+                forecast = horizon.forecast((int) Math.min(steps, Integer.MAX_VALUE));
+            } else {
+                int i = Arrays.binarySearch(times, 0, size, e.time);
+                forecast = forecasts[i >= 0 ? i : Math.max(0, -i - 2)];
+            }
+            e.value = (float) forecast;
+        }
+    }
+}
@@ -0,0 +1,384 @@
+/*
+ * Copyright 2016, Yahoo Inc.
+ * Copyrights licensed under the GPL License.
+ * See the accompanying LICENSE file for terms.
+ */
+
+// Searches the ALPHA, BETA and GAMMA of the triple exponential smoothing of a series that minimize the squared
+// error of its one step ahead forecasts F(t) = (B(t - 1) + T(t - 1)) * I(t - period).
+//
+//      1. GRID evaluates a grid of 4 values per parameter in the box [0, 1]^3, then again in the cell around the best
+//         point found so far, 4 times smaller, and so on while the budget lasts.
+//      2. NELDER_MEAD runs a Nelder-Mead simplex search, clamped to the box, from the warm start parameters. Each
+//         iteration evaluates the reflected, expanded and both contracted points at once, then keeps the one the
+//         sequential algorithm would have kept.
+//      3. The candidates of a grid level or of an iteration are evaluated in parallel by up to TUNING_THREADS tasks on
+//         a pool shared by all the searches. Each task gets what is left of the time budget of the caller.
+//      4. Every candidate starts from the same state: the initialization seasons, computed once by the model, and
+//         with TUNING_WINDOW the state the warm start parameters reach before the last TUNING_WINDOW points, so that
+//         a candidate only walks those points instead of the whole history.
+//      5. TUNING_BUDGET bounds the number of candidates evaluated.
+
+package com.yahoo.egads.models.tsmm;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.yahoo.egads.utilities.BudgetExceededException;
+import com.yahoo.egads.utilities.ExecutionBudget;
+
+class HoltWintersTuner implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    enum Method {
+        GRID, NELDER_MEAD
+    }
+
+    // The number of values per parameter of a grid level.
+    private static final int GRID_POINTS = 4;
+    // The size of the initial simplex, from the configured parameters or from cached ones.
+    private static final double STEP = 0.2;
+    private static final double WARM_STEP = 0.05;
+    private static final double TOLERANCE = 1e-6;
+
+    // The threads of all the searches, created on demand and kept while in use.
+    private static final ExecutorService POOL = Executors.newCachedThreadPool(new ThreadFactory() {
+        private final AtomicInteger count = new AtomicInteger();
+
+        public Thread newThread(Runnable r) {
+            Thread t = new Thread(r, "egads-tuning-" + count.getAndIncrement());
+            t.setDaemon(true);
+            return t;
+        }
+    });
+
+    private final Method method;
+    private final int budget;
+    private final int window;
+    private final int threads;
+
+    private int evaluations;
+
+    HoltWintersTuner(Method method, int budget, int window, int threads) {
+        this.method = method;
+        this.budget = budget;
+        this.window = window;
+        this.threads = threads;
+    }
+
+    // The tuner of the config, null when TUNING_METHOD is missing or NONE.
+    static HoltWintersTuner fromConfig(Properties config) {
+        String method = config.getProperty("TUNING_METHOD", "NONE");
+        if (method.equals("NONE")) {
+            return null;
+        }
+        int budget = new Integer(config.getProperty("TUNING_BUDGET", "200"));
+        int window = new Integer(config.getProperty("TUNING_WINDOW", "0"));
+        int threads = config.getProperty("TUNING_THREADS") == null ? Runtime.getRuntime().availableProcessors()
+                        : new Integer(config.getProperty("TUNING_THREADS"));
+        if (budget < 1 || window < 0 || threads < 1) {
+            throw new IllegalArgumentException("TUNING_BUDGET and TUNING_THREADS must be positive, "
+                            + "TUNING_WINDOW 0 or more");
+        }
+        return new HoltWintersTuner(Method.valueOf(method), budget, window, threads);
+    }
+
+    // The number of candidates evaluated by the last search.
+    int getEvaluations() {
+        return evaluations;
+    }
+
+    /**
+     * Searches the best parameters.
+     * @param values The series.
+     * @param period The number of points of a season.
+     * @param start The first point after the initialization seasons.
+     * @param base The base at start - 1.
+     * @param trend The trend at start - 1.
+     * @param indices The seasonal indices of the season before start, at t % period.
+     * @param warm The parameters to start from, ALPHA, BETA and GAMMA.
+     * @param cached Whether the warm parameters won a previous search, which narrows the first steps around them.
+     * @return The best parameters found, ALPHA, BETA and GAMMA.
+     */
+    double[] tune(double[] values, int period, int start, double base, double trend, double[] indices,
+                    double[] warm, boolean cached) {
+        evaluations = 0;
+        Objective objective = new Objective(values, period, start, base, trend, indices);
+        if (window > 0 && values.length - window > start) {
+            objective.advance(warm, values.length - window);
+        }
+        Search search = new Search(objective);
+        if (method == Method.GRID) {
+            grid(search, warm, cached);
+        } else {
+            nelderMead(search, warm, cached);
+        }
+        return search.best;
+    }
+
+    private void grid(Search search, double[] warm, boolean cached) {
+        double[] lo = {0, 0, 0};
+        double[] hi = {1, 1, 1};
+        search.evaluate(new double[][] {warm});
+        if (cached) {
+            // the cell the cached parameters were found in, at the second level
+            for (int d = 0; d < 3; d++) {
+                lo[d] = Math.max(0, warm[d] - 0.5 / GRID_POINTS);
+                hi[d] = Math.min(1, warm[d] + 0.5 / GRID_POINTS);
+            }
+        }
+        int level = GRID_POINTS * GRID_POINTS * GRID_POINTS;
+        while (evaluations + level <= budget) {
+            double[][] candidates = new double[level][];
+            int c = 0;
+            for (int i = 0; i < GRID_POINTS; i++) {
+                for (int j = 0; j < GRID_POINTS; j++) {
+                    for (int k = 0; k < GRID_POINTS; k++) {
+                        candidates[c++] = new double[] {cell(lo[0], hi[0], i), cell(lo[1], hi[1], j),
+                                cell(lo[2], hi[2], k)};
+                    }
+                }
+            }
+            search.evaluate(candidates);
+            for (int d = 0; d < 3; d++) {
+                double half = (hi[d] - lo[d]) / GRID_POINTS / 2;
+                lo[d] = Math.max(0, search.best[d] - half);
+                hi[d] = Math.min(1, search.best[d] + half);
+            }
+        }
+    }
+
+    private static double cell(double lo, double hi, int i) {
+        return lo + (i + 0.5) * (hi - lo) / GRID_POINTS;
+    }
+
+    private void nelderMead(Search search, double[] warm, boolean cached) {
+        double step = cached ? WARM_STEP : STEP;
+        double[][] simplex = new double[4][];
+        simplex[0] = warm.clone();
+        for (int d = 0; d < 3; d++) {
+            simplex[d + 1] = warm.clone();
+            simplex[d + 1][d] += warm[d] + step <= 1 ? step : -step;
+        }
+        double[] f = search.evaluate(simplex);
+
+        while (evaluations + 4 <= budget) {
+            sort(simplex, f);
+            if (f[3] - f[0] <= TOLERANCE * Math.abs(f[0]) && size(simplex) <= TOLERANCE) {
+                break;
+            }
+            double[] centroid = new double[3];
+            for (int v = 0; v < 3; v++) {
+                for (int d = 0; d < 3; d++) {
+                    centroid[d] += simplex[v][d] / 3;
+                }
+            }
+            double[][] candidates = {move(centroid, simplex[3], 1), move(centroid, simplex[3], 2),
+                    move(centroid, simplex[3], 0.5), move(centroid, simplex[3], -0.5)};
+            double[] fc = search.evaluate(candidates);
+            double fr = fc[0];
+            if (fr < f[0]) {
+                int e = fc[1] < fr ? 1 : 0;
+                simplex[3] = candidates[e];
+                f[3] = fc[e];
+            } else if (fr < f[2]) {
+                simplex[3] = candidates[0];
+                f[3] = fr;
+            } else {
+                int c = fr < f[3] ? 2 : 3;
+                if (fc[c] < Math.min(fr, f[3])) {
+                    simplex[3] = candidates[c];
+                    f[3] = fc[c];
+                } else if (evaluations + 3 <= budget) {
+                    // shrink towards the best point
+                    double[][] shrunk = new double[3][];
+                    for (int v = 1; v < 4; v++) {
+                        shrunk[v - 1] = move(simplex[0], simplex[v], -0.5);
+                    }
+                    double[] fs = search.evaluate(shrunk);
+                    for (int v = 1; v < 4; v++) {
+                        simplex[v] = shrunk[v - 1];
+                        f[v] = fs[v - 1];
+                    }
+                } else {
+                    break;
+                }
+            }
+        }
+    }
+
+    // centroid + coefficient * (centroid - worst), clamped to the box.
+    private static double[] move(double[] centroid, double[] worst, double coefficient) {
+        double[] p = new double[3];
+        for (int d = 0; d < 3; d++) {
+            p[d] = Math.min(1, Math.max(0, centroid[d] + coefficient * (centroid[d] - worst[d])));
+        }
+        return p;
+    }
+
+    private static void sort(double[][] simplex, double[] f) {
+        for (int i = 1; i < f.length; i++) {
+            for (int j = i; j > 0 && f[j] < f[j - 1]; j--) {
+                double t = f[j];
+                f[j] = f[j - 1];
+                f[j - 1] = t;
+                double[] p = simplex[j];
+                simplex[j] = simplex[j - 1];
+                simplex[j - 1] = p;
+            }
+        }
+    }
+
+    private static double size(double[][] simplex) {
+        double size = 0;
+        for (int v = 1; v < simplex.length; v++) {
+            for (int d = 0; d < 3; d++) {
+                size = Math.max(size, Math.abs(simplex[v][d] - simplex[0][d]));
+            }
+        }
+        return size;
+    }
+
+    // Evaluates the candidates and keeps the best one.
+    private class Search {
+        private final Objective objective;
+        private double[] best;
+        private double bestError = Double.POSITIVE_INFINITY;
+
+        Search(Objective objective) {
+            this.objective = objective;
+        }
+
+        double[] evaluate(double[][] candidates) {
+            ExecutionBudget.check();
+            double[] errors = new double[candidates.length];
+            int tasks = Math.min(threads, candidates.length);
+            if (tasks == 1) {
+                evaluate(candidates, errors, 0, 1);
+            } else {
+                // every task evaluates one candidate out of 'tasks'
+                final long budget = ExecutionBudget.isActive() ? ExecutionBudget.remaining() : -1;
+                List<Callable<Void>> calls = new ArrayList<Callable<Void>>(tasks);
+                for (int k = 0; k < tasks; k++) {
+                    calls.add(task(candidates, errors, k, tasks, budget));
+                }
+                try {
+                    for (Future<Void> result : POOL.invokeAll(calls)) {
+                        result.get();
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new BudgetExceededException("Interrupted.");
+                } catch (ExecutionException e) {
+                    if (e.getCause() instanceof RuntimeException) {
+                        throw (RuntimeException) e.getCause();
+                    }
+                    throw (Error) e.getCause();
+                }
+            }
+            evaluations += candidates.length;
+            for (int c = 0; c < candidates.length; c++) {
+                // NaN errors, e.g. from zero values, never win
+                if (errors[c] < bestError) {
+                    bestError = errors[c];
+                    best = candidates[c];
+                }
+            }
+            if (best == null) {
+                best = candidates[0];
+            }
+            return errors;
+        }
+
+        // Evaluates the candidates from, from + step, ...
+        private void evaluate(double[][] candidates, double[] errors, int from, int step) {
+            for (int c = from; c < candidates.length; c += step) {
+                ExecutionBudget.check();
+                errors[c] = objective.error(candidates[c]);
+            }
+        }
+
+        // Evaluates the candidates from, from + step, ... on a thread of the pool, with the budget of the caller.
+        private Callable<Void> task(final double[][] candidates, final double[] errors, final int from,
+                        final int step, final long budget) {
+            return new Callable<Void>() {
+                public Void call() {
+                    if (budget >= 0) {
+                        ExecutionBudget.start(budget);
+                    }
+                    try {
+                        evaluate(candidates, errors, from, step);
+                    } finally {
+                        ExecutionBudget.clear();
+                    }
+                    return null;
+                }
+            };
+        }
+    }
+
+    // The squared error of the forecasts from a shared starting state. Thread-safe once advanced.
+    private static class Objective {
+        private final double[] values;
+        private final int period;
+        private int start;
+        private double base;
+        private double trend;
+        private double[] indices;
+
+        Objective(double[] values, int period, int start, double base, double trend, double[] indices) {
+            this.values = values;
+            this.period = period;
+            this.start = start;
+            this.base = base;
+            this.trend = trend;
+            this.indices = indices.clone();
+        }
+
+        // Moves the starting state to 'to', smoothing the points before it with the parameters.
+        void advance(double[] parameters, int to) {
+            double[] state = {base, trend};
+            smooth(parameters, start, to, state, indices);
+            base = state[0];
+            trend = state[1];
+            start = to;
+        }
+
+        double error(double[] parameters) {
+            return smooth(parameters, start, values.length, new double[] {base, trend}, indices.clone());
+        }
+
+        // Smooths the points in [from, to), updating the state, and returns the squared error of their forecasts.
+        private double smooth(double[] parameters, int from, int to, double[] state, double[] seasons) {
+            double alpha = parameters[0];
+            double beta = parameters[1];
+            double gamma = parameters[2];
+            double b = state[0];
+            double t = state[1];
+            double error = 0;
+            for (int i = from; i < to; i++) {
+                int k = i % period;
+                double season = seasons[k];
+                double forecast = (b + t) * season;
+                double nextBase = alpha * (values[i] / season) + (1 - alpha) * (b + t);
+                t = beta * (nextBase - b) + (1 - beta) * t;
+                b = nextBase;
+                seasons[k] = gamma * (values[i] / forecast) + (1 - gamma) * season;
+                error += (forecast - values[i]) * (forecast - values[i]);
+            }
+            state[0] = b;
+            state[1] = t;
+            return error;
+        }
+    }
+}
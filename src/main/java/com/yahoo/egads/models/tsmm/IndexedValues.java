@@ -0,0 +1,105 @@
+/*
+ * Copyright 2016, Yahoo Inc.
+ * Copyrights licensed under the GPL License.
+ * See the accompanying LICENSE file for terms.
+ */
+
+// Float values keyed by the logical index of their points. The indices of a sequence are dense and contiguous, so
+// they are kept in a primitive array from the smallest index on, grown as values are put before or after it. Only
+// the indices too far from that range to grow it without wasting most of the array go to a sparse map. Not
+// synchronized: a model is trained and used by one thread at a time.
+
+package com.yahoo.egads.models.tsmm;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+class IndexedValues implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    // The range the array may always grow by, whatever its length.
+    private static final int MIN_GROWTH = 1024;
+
+    // values[i] holds index offset + i, for i < length. The indices in range that were never put are 0.
+    private float[] values = new float[16];
+    private long offset;
+    private int length;
+    private HashMap<Long, Float> sparse;
+
+    void clear() {
+        length = 0;
+        sparse = null;
+    }
+
+    void put(long index, float value) {
+        if (length == 0) {
+            offset = index;
+            length = 1;
+            values[0] = value;
+            return;
+        }
+
+        long from = Math.min(offset, index);
+        long to = Math.max(offset + length, index + 1);
+        long growth = to - from - length;
+        if (growth > Math.max(MIN_GROWTH, length) || to - from > Integer.MAX_VALUE - 8) {
+            if (sparse == null) {
+                sparse = new HashMap<Long, Float>();
+            }
+            sparse.put(index, value);
+            return;
+        }
+
+        if (growth > 0) {
+            grow(from, (int) (to - from));
+        }
+        values[(int) (index - offset)] = value;
+    }
+
+    // The value put at the index, or 0 if there is none.
+    float get(long index) {
+        if (index >= offset && index - offset < length) {
+            return values[(int) (index - offset)];
+        }
+        if (sparse != null) {
+            Float value = sparse.get(index);
+            if (value != null) {
+                return value;
+            }
+        }
+        return 0;
+    }
+
+    // Extends the array to the indices [from, from + newLength), moving in the sparse values of the new range.
+    private void grow(long from, int newLength) {
+        int shift = (int) (offset - from);
+        if (newLength > values.length || shift > 0) {
+            float[] grown = newLength > values.length
+                            ? new float[(int) Math.min(Integer.MAX_VALUE - 8, Math.max(newLength, 2L * values.length))]
+                            : values;
+            System.arraycopy(values, 0, grown, shift, length);
+            if (grown == values) {
+                Arrays.fill(grown, 0, shift, 0);
+            } else {
+                values = grown;
+            }
+        }
+        Arrays.fill(values, shift + length, newLength, 0);
+        offset = from;
+        length = newLength;
+
+        if (sparse != null) {
+            for (Iterator<Map.Entry<Long, Float>> it = sparse.entrySet().iterator(); it.hasNext();) {
+                Map.Entry<Long, Float> e = it.next();
+                if (e.getKey() >= from && e.getKey() - from < newLength) {
+                    values[(int) (e.getKey() - from)] = e.getValue();
+                    it.remove();
+                }
+            }
+        }
+    }
+}
@@ -10,7 +10,6 @@
 package com.yahoo.egads.models.tsmm;
 
 import com.yahoo.egads.data.*;
-import com.yahoo.egads.data.TimeSeries.Entry;
 import org.json.JSONObject;
 import org.json.JSONStringer;
 import java.util.Properties;
@@ -18,17 +17,17 @@ import net.sourceforge.openforecast.DataSet;
 import net.sourceforge.openforecast.ForecastingModel;
 import net.sourceforge.openforecast.DataPoint;
 import net.sourceforge.openforecast.Observation;
-import java.util.*;
 
 // A naive forecasting model is a special case of the moving average forecasting model where the number of periods used for smoothing is 1.
 public class NaiveForecastingModel extends TimeSeriesAbstractModel {
     // methods ////////////////////////////////////////////////
 
-    // The model that will be used for forecasting.
-    private ForecastingModel forecaster;
+    // The model that will be used for forecasting. It is not serializable: a reloaded
+    // model trains it again on its history, see forecaster().
+    private transient ForecastingModel forecaster;
     
-    // Stores the historical values.
-    private TimeSeries.DataSequence data;
+    // The training values and their forecasts.
+    private ForecastHistory history;
 
     public NaiveForecastingModel(Properties config) {
         super(config);
@@ -40,7 +39,6 @@ public class NaiveForecastingModel extends TimeSeriesAbstractModel {
     }
       
     public void train(TimeSeries.DataSequence data) {
-        this.data = data;
         int n = data.size();
         DataPoint dp = null;
         DataSet observedData = new DataSet();
@@ -51,9 +49,10 @@ public class NaiveForecastingModel extends TimeSeriesAbstractModel {
         }
         observedData.setTimeVariable("x"); 
         
-        forecaster = new net.sourceforge.openforecast.models.NaiveForecastingModel();
+        forecaster = newForecaster();
         forecaster.init(observedData);
         initForecastErrors(forecaster, data);
+        history = new ForecastHistory(data, forecaster);
         
         logger.debug(getBias() + "\t" + getMAD() + "\t" + getMAPE() + "\t" + getMSE() + "\t" + getSAE() + "\t" + 0 + "\t" + 0);
     }
@@ -67,26 +66,19 @@ public class NaiveForecastingModel extends TimeSeriesAbstractModel {
     }
 
     public void predict(TimeSeries.DataSequence sequence) throws Exception {
-          int n = data.size();
-          DataSet requiredDataPoints = new DataSet();
-          DataPoint dp;
-
-          for (int count = 0; count < n; count++) {
-              dp = new Observation(0.0);
-              dp.setIndependentValue("x", count);
-              requiredDataPoints.add(dp);
-          }
-          forecaster.forecast(requiredDataPoints);
-
-          // Output the results
-          Iterator<DataPoint> it = requiredDataPoints.iterator();
-          int i = 0;
-          while (it.hasNext()) {
-              DataPoint pnt = ((DataPoint) it.next());
-              logger.info(data.get(i).time + "," + data.get(i).value + "," + pnt.getDependentValue());
-              sequence.set(i, (new Entry(data.get(i).time, (float) pnt.getDependentValue())));
-              i++;
-          }
+        history.predict(sequence, forecaster());
+    }
+
+    private static ForecastingModel newForecaster() {
+        return new net.sourceforge.openforecast.models.NaiveForecastingModel();
+    }
+
+    private ForecastingModel forecaster() {
+        if (forecaster == null) {
+            forecaster = newForecaster();
+            forecaster.init(history.observed());
+        }
+        return forecaster;
     }
 
     public void toJson(JSONStringer json_out) {
@@ -38,6 +38,11 @@ public class NullModel extends TimeSeriesAbstractModel {
     public void update(TimeSeries.DataSequence data) {
     }
 
+    public boolean forecastsTimeStamps() {
+        // It only replays its training range.
+        return false;
+    }
+
     public String getModelName() {
         return "NullModel";
     }
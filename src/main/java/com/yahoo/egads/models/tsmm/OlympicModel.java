@@ -14,9 +14,10 @@ import com.yahoo.egads.data.TimeSeries.Entry;
 
 import java.util.Properties;
 import java.util.ArrayList;
-import java.util.Collections;
 
+import com.yahoo.egads.utilities.ExecutionBudget;
 import com.yahoo.egads.utilities.FileUtils;
+import com.yahoo.egads.utilities.Periodogram;
 
 public class OlympicModel extends TimeSeriesAbstractModel {
     // methods ////////////////////////////////////////////////
@@ -62,6 +63,17 @@ public class OlympicModel extends TimeSeriesAbstractModel {
     
     // The actual model that stores the expectations.
     protected ArrayList<Float> model;
+
+    // With BASE_WINDOWS AUTO, the windows are the dominant periods of the training data, at most
+    // maxBaseWindows of them, and the time-shifts the configured ones shorter than half of the shortest window.
+    private boolean autoWindows;
+    private int maxBaseWindows = 3;
+    private int[] configuredShifts;
+
+    // Buffers of train(): the historical values and the values of the past
+    // weeks of a point, kept sorted.
+    private transient float[] values;
+    private transient float[] window;
     
     public OlympicModel(Properties config) {
         super(config);
@@ -82,32 +94,56 @@ public class OlympicModel extends TimeSeriesAbstractModel {
         this.numWeeks = new Integer(config.getProperty("NUM_WEEKS"));
         this.numToDrop = new Integer(config.getProperty("NUM_TO_DROP"));
         this.timeShifts = FileUtils.splitInts(config.getProperty("TIME_SHIFTS"));
-        this.baseWindows = FileUtils.splitInts(config.getProperty("BASE_WINDOWS"));
+        this.configuredShifts = this.timeShifts;
+        if (config.getProperty("BASE_WINDOWS").trim().equals("AUTO")) {
+            autoWindows = true;
+            if (config.getProperty("MAX_BASE_WINDOWS") != null) {
+                maxBaseWindows = new Integer(config.getProperty("MAX_BASE_WINDOWS"));
+                if (maxBaseWindows < 1) {
+                    throw new IllegalArgumentException("Invalid MAX_BASE_WINDOWS value");
+                }
+            }
+        } else {
+            this.baseWindows = FileUtils.splitInts(config.getProperty("BASE_WINDOWS"));
+        }
         model = new ArrayList<Float>();
     }
 
     public void reset() {
-        // At this point, reset does nothing.
+        model.clear();
     }
 
     public void train(TimeSeries.DataSequence data) {
         this.data = data;
+        // Trained again, e.g. on a longer series.
+        model.clear();
         
         int n = data.size();
+        if (autoWindows) {
+            detectWindows(data);
+        }
         
         java.util.Arrays.sort(baseWindows);
         java.util.Arrays.sort(timeShifts);
         float precision = (float) 0.000001;
+
+        values = new float[n];
+        for (int i = 0; i < n; i++) {
+            values[i] = data.get(i).value;
+        }
+        window = new float[Math.max(numWeeks, 0)];
         
         for (int i = 0; i < n; i++) {
+            ExecutionBudget.check();
             float baseVal = Float.POSITIVE_INFINITY;
             float tmpbase = (float) 0.0;
+            float value = values[i];
             
             // Cannot compute the expected value if the time-series
             // is too short preventing us form getting the reference
             // window.
             if ((i - baseWindows[0]) < 0) {
-                model.add(data.get(i).value);
+                model.add(value);
                 continue;
             }
             
@@ -116,19 +152,19 @@ public class OlympicModel extends TimeSeriesAbstractModel {
                 for (int j = 0; j < timeShifts.length; j++) {
                     if (timeShifts[j] == 0) {
                         tmpbase = computeExpected(i, baseWindows[w]);
-                        if ((Math.abs(tmpbase - data.get(i).value) - Math.abs(baseVal - data.get(i).value)) < precision) {
+                        if ((Math.abs(tmpbase - value) - Math.abs(baseVal - value)) < precision) {
                             baseVal = tmpbase;
                         }
                     } else {
                         if (i + timeShifts[j] < n) {
                             tmpbase = computeExpected(i + timeShifts[j], baseWindows[w]);
-                            if ((Math.abs(tmpbase - data.get(i).value) - Math.abs(baseVal - data.get(i).value)) < precision) {
+                            if ((Math.abs(tmpbase - value) - Math.abs(baseVal - value)) < precision) {
                                 baseVal = tmpbase;
                             }
                         }
                         if (i - timeShifts[j] >= 0) {
                             tmpbase = computeExpected(i - timeShifts[j], baseWindows[w]);
-                            if ((Math.abs(tmpbase - data.get(i).value) - Math.abs(baseVal - data.get(i).value)) < precision) {
+                            if ((Math.abs(tmpbase - value) - Math.abs(baseVal - value)) < precision) {
                                 baseVal = tmpbase;
                             }
                         }
@@ -137,6 +173,8 @@ public class OlympicModel extends TimeSeriesAbstractModel {
             }
             model.add(baseVal);
         }
+        values = null;
+        window = null;
         
         initForecastErrors(model, data);
         
@@ -147,55 +185,89 @@ public class OlympicModel extends TimeSeriesAbstractModel {
 
     }
 
+    // Keeps the periods the training data covers at least 3 times as the base windows, or a window of 1 (the
+    // average of the last NUM_WEEKS points) if it has none, and drops the time-shifts that would reach the
+    // other half of the cycle of the shortest window.
+    private void detectWindows(TimeSeries.DataSequence data) {
+        double[] series = new double[data.size()];
+        for (int i = 0; i < series.length; i++) {
+            series[i] = data.get(i).value;
+        }
+        baseWindows = Periodogram.periods(series, maxBaseWindows, 3);
+        if (baseWindows.length == 0) {
+            baseWindows = new int[] {1};
+        }
+        int kept = 0;
+        int[] shifts = new int[configuredShifts.length];
+        for (int shift : configuredShifts) {
+            if (shift == 0 || 2 * Math.abs(shift) < baseWindows[0]) {
+                shifts[kept++] = shift;
+            }
+        }
+        timeShifts = kept == 0 ? new int[] {0} : java.util.Arrays.copyOf(shifts, kept);
+        logger.debug("Base windows " + java.util.Arrays.toString(baseWindows) + ", time-shifts "
+                        + java.util.Arrays.toString(timeShifts));
+    }
+
+    public boolean forecastsTimeStamps() {
+        // It only replays its training range.
+        return false;
+    }
+
     public String getModelName() {
         return "OlympicModel";
     }
 
-    private Float sum(ArrayList<Float> list) {
-        float sum = 0;
-        for (float i : list) {
-            sum = sum + i;
-        }
-        return sum;
-    }
-    
+    // The average of the values of the past weeks of the i-th point, dropping the numToDrop
+    // lowest and highest ones. The values are inserted in order in the window buffer, so that
+    // the kept ones are summed in ascending order without allocating or sorting a list.
     private float computeExpected(int i, int pl) {
-        ArrayList<Float> vals = new ArrayList<Float>();
         float precision = (float) 0.000001;
+        float actual = values[i];
         
         int j = 1;
 
         if ((i - pl * j) < 0) {
             return Float.POSITIVE_INFINITY;
         }
+        // Running sum of the window, in insertion order.
+        float sum = 0;
+        int size = 0;
         while (j <= this.numWeeks && (i - pl * j) >= 0) {
-            float lastWeeksVal = data.get(i - pl * j).value;
+            float lastWeeksVal = values[i - pl * j];
             // If dynamic parameters are turned on,
             // then we check if our error improved from last time,
             // if not, then we stop and use the old result.
-            if (dynamicParameters == 1 && vals.size() > 0) {
-                float withNewVal = (sum(vals) + lastWeeksVal) / (vals.size() + 1);
-                float withoutNewVal = (sum(vals)) / (vals.size());
-                if ((Math.abs(withNewVal - data.get(i).value) - Math.abs(withoutNewVal - data.get(i).value)) > precision) {
+            if (dynamicParameters == 1 && size > 0) {
+                float withNewVal = (sum + lastWeeksVal) / (size + 1);
+                float withoutNewVal = sum / size;
+                if ((Math.abs(withNewVal - actual) - Math.abs(withoutNewVal - actual)) > precision) {
                     break;
                 }
             }
-            vals.add(lastWeeksVal);
+            int k = size;
+            while (k > 0 && Float.compare(window[k - 1], lastWeeksVal) > 0) {
+                window[k] = window[k - 1];
+                k--;
+            }
+            window[k] = lastWeeksVal;
+            sum = sum + lastWeeksVal;
+            size++;
             j++;
         }
 
-        Collections.sort(vals);
-        j = 0;
+        int from = 0;
+        int to = size;
+        if (this.numToDrop > 0 && size > (2 * this.numToDrop)) {
+            from = this.numToDrop;
+            to = size - this.numToDrop;
+        }
 
-        if (vals.size() > (2 * this.numToDrop)) {
-            while (j < this.numToDrop) {
-                vals.remove(vals.size() - 1);
-                vals.remove(0);
-                j++;
-            }
+        float kept = 0;
+        for (int k = from; k < to; k++) {
+            kept = kept + window[k];
         }
-                
-        float baseVal = sum(vals) / vals.size();
+        float baseVal = kept / (to - from);
         return baseVal;
     }
     
@@ -9,16 +9,16 @@ import java.time.Instant;
 import java.time.ZoneId;
 import java.time.ZonedDateTime;
 import java.time.temporal.ChronoUnit;
+import java.util.AbstractMap.SimpleImmutableEntry;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Properties;
 
-import org.apache.commons.lang.NotImplementedException;
-import org.apache.commons.math3.util.Pair;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.yahoo.egads.data.TimeSeries.Entry;
-import com.yahoo.egads.data.WeightedValue;
+import com.yahoo.egads.data.WeightedValueBuffer;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.collect.Lists;
 import com.yahoo.egads.data.TimeSeries.DataSequence;
@@ -138,13 +138,29 @@ public class OlympicModel2 extends TimeSeriesAbstractModel {
     protected final int drop_lowest;
 
     /** Contains the model data points generated after train() has been called. */
-    protected final List<Pair<Long, Double>> model;
+    protected final List<SimpleImmutableEntry<Long, Double>> model;
     
     /** An array of timestamps for each period of training data. */
     protected final ZonedDateTime[] windowTimes;
     
     /** An array of indices into the DataSequence object when training. */
     protected final int[] indices;
+    
+    /** The first timestamp of the model, rolled forward by update(). */
+    private long start;
+    
+    /** The points the historical windows still need, from the oldest. */
+    private long[] times;
+    private float[] values;
+    private int size;
+    
+    /** Per future window: the index of the next point and the end of the 
+     * last interval of each historical window, the last timestamp of the
+     * model and how many model data points it has. */
+    private int[][] cursors;
+    private long[][] windowEnds;
+    private long[] lastSlots;
+    private int[] slotCounts;
 
     /**
      * Default Ctor
@@ -241,89 +257,290 @@ public class OlympicModel2 extends TimeSeriesAbstractModel {
     public void train(final DataSequence data) throws Exception {
         initializeIndices(data, modelStartEpoch);
         
-        final long size = data.size();
+        size = data.size();
+        times = new long[size];
+        values = new float[size];
+        for (int i = 0; i < size; i++) {
+            times[i] = data.get(i).time;
+            values[i] = data.get(i).value;
+        }
+        start = modelStartEpoch;
+        cursors = new int[futureWindows][];
+        windowEnds = new long[futureWindows][];
+        lastSlots = new long[futureWindows];
+        slotCounts = new int[futureWindows];
+        
         ZonedDateTime model_ts = Instant.ofEpochSecond(modelStartEpoch)
                 .atZone(zone);
-        ZonedDateTime end_ts = model_ts.plus(windowSize, windowUnits);
-        int prediction_index = 0;
-        final List<WeightedValue> accumulator = Lists.newArrayList();
+        final WeightedValueBuffer accumulator = 
+                new WeightedValueBuffer(pastWindows);
         
-        // start the loop and break once we've filled the model.
-        while (true) {
-            accumulator.clear();
-            for (int i = 0; i < windowTimes.length; i++) {
-                if (indices[i] < 0 || indices[i] >= size) {
-                    continue;
-                }
-                
-                // advance
-                windowTimes[i] = windowTimes[i].plus(interval,
-                        intervalUnits);
-                long interval_end = windowTimes[i].toEpochSecond();
-                final List<Double> doubles = Lists.newArrayList();
-                long first_ts = -1;
-                while (indices[i] < size
-                        && data.get(indices[i]).time < interval_end) {
-                    if (Double.isFinite(data.get(indices[i]).value)) {
-                        doubles.add((double) data.get(indices[i]).value);
-                    }
-                    if (first_ts < 0) {
-                        first_ts = data.get(indices[i]).time;
-                    }
-                    indices[i]++;
-                }
-
-                if (!doubles.isEmpty()) {
-                    // TODO - for DST if we jumped back then we may have a
-                    // period
-                    // with more than we expect. In that case, depending on the
-                    // aggregator, we may need to use only part of the data.
-                    // TODO - potentially other aggregations.
-                    double sum = 0;
-                    for (final Double v : doubles) {
-                        sum += v;
-                    }
-                    accumulator.add(
-                            new WeightedValue((sum / doubles.size()), i + 1));
-                }
-            }
-
-            if (drop_lowest > 0 || drop_highest > 0) {
-                if (drop_highest > drop_lowest) {
-                    WeightedValue.drop(accumulator, drop_highest, true);
-                    WeightedValue.drop(accumulator, drop_lowest, false);
-                } else {
-                    WeightedValue.drop(accumulator, drop_lowest, false);
-                    WeightedValue.drop(accumulator, drop_highest, true);
-                }
-            }
-            
-            model.add(new Pair<Long, Double>(model_ts.toEpochSecond(),
-                    WeightedValue.aggregate(accumulator, windowAggregator)));
-
-            model_ts = model_ts.plus(interval, intervalUnits);
-            if (model_ts.toEpochSecond() > end_ts.toEpochSecond()) {
-                prediction_index++;
-                if (prediction_index >= futureWindows) {
-                    break;
-                }
+        for (int prediction_index = 0; prediction_index < futureWindows; 
+                prediction_index++) {
+            if (prediction_index > 0) {
                 model_ts = Instant.ofEpochSecond(modelStartEpoch).atZone(zone);
                 model_ts = model_ts.plus(
                         (windowDistanceInterval * prediction_index), 
                         windowDistanceIntervalUnits);
-                end_ts = model_ts.plus(windowSize, windowUnits);
                 for (int i = 0; i < windowTimes.length; i++) {
                     windowTimes[i] = null;
                     indices[i] = 0;
                 }
                 initializeIndices(data, model_ts.toEpochSecond());
             }
+            
+            // The time-stamps of the model and, for each window, the end of
+            // every interval, so the loop below only compares longs.
+            final long[] model_times = modelTimes(model_ts, 
+                    model_ts.plus(windowSize, windowUnits).toEpochSecond());
+            final long[][] interval_ends = new long[windowTimes.length][];
+            final int[] cursor = new int[windowTimes.length];
+            final long[] starts = new long[windowTimes.length];
+            final long[] ends = new long[windowTimes.length];
+            for (int i = 0; i < windowTimes.length; i++) {
+                interval_ends[i] = epochSteps(windowTimes[i], 
+                        model_times.length);
+                // a window without data until now waits for update()
+                cursor[i] = indices[i] < 0 ? size : indices[i];
+                ends[i] = windowTimes[i].toEpochSecond();
+            }
+            
+            for (int k = 0; k < model_times.length; k++) {
+                for (int i = 0; i < windowTimes.length; i++) {
+                    starts[i] = ends[i];
+                    ends[i] = interval_ends[i][k];
+                }
+                model.add(new SimpleImmutableEntry<Long, Double>(model_times[k],
+                        aggregate(cursor, starts, ends, accumulator)));
+            }
+            
+            cursors[prediction_index] = cursor;
+            windowEnds[prediction_index] = ends;
+            lastSlots[prediction_index] = model_times[model_times.length - 1];
+            slotCounts[prediction_index] = model_times.length;
         }
+        evict();
     }
 
+    /**
+     * Rolls the model forward over the points newer than the ones it has seen.
+     * The model then starts at the first interval after the newest point: the
+     * slots before it are dropped and the slots entering the end of each 
+     * prediction window are computed from the next interval of every 
+     * historical window. The other slots are kept as they are, so a new 
+     * interval costs O(HISTORICAL_WINDOWS) whatever the length of the history.
+     * <p>
+     * Only the points the historical windows still need are retained. The
+     * slots kept over a DST transition keep the boundaries they were computed
+     * with until the model is trained again.
+     * @param data A non-null data sequence, sorted by time.
+     * @throws IllegalArgumentException if the data object was null.
+     * @throws IllegalStateException if the model was not trained.
+     */
     @Override
     public void update(final DataSequence data) throws Exception {
-        throw new NotImplementedException();
+        if (data == null) {
+            throw new IllegalArgumentException("DataSequence cannot be null.");
+        }
+        if (cursors == null) {
+            throw new IllegalStateException("Model was empty. 'train()' may "
+                    + "not have been called.");
+        }
+        for (int i = 0; i < data.size(); i++) {
+            if (size > 0 && data.get(i).time <= times[size - 1]) {
+                continue;
+            }
+            if (size == times.length) {
+                final int capacity = Math.max(16, size + (size >> 1));
+                times = Arrays.copyOf(times, capacity);
+                values = Arrays.copyOf(values, capacity);
+            }
+            times[size] = data.get(i).time;
+            values[size] = data.get(i).value;
+            size++;
+        }
+        if (size < 1 || start > times[size - 1]) {
+            return;
+        }
+        while (start <= times[size - 1]) {
+            start = next(start);
+        }
+        
+        final WeightedValueBuffer accumulator = 
+                new WeightedValueBuffer(pastWindows);
+        int block_start = model.size();
+        // from the last prediction window so the earlier ones keep their
+        // offsets in the model
+        for (int p = futureWindows - 1; p >= 0; p--) {
+            block_start -= slotCounts[p];
+            final ZonedDateTime window_start = Instant.ofEpochSecond(start)
+                    .atZone(zone).plus((windowDistanceInterval * p), 
+                            windowDistanceIntervalUnits);
+            final long first_slot = window_start.toEpochSecond();
+            final long last_slot = window_start.plus(windowSize, windowUnits)
+                    .toEpochSecond();
+            
+            final List<SimpleImmutableEntry<Long, Double>> slots = Lists.newArrayList();
+            long[] ends = new long[windowEnds[p].length];
+            for (long slot = next(lastSlots[p]); slot <= last_slot; 
+                    slot = next(slot)) {
+                for (int i = 0; i < ends.length; i++) {
+                    ends[i] = next(windowEnds[p][i]);
+                }
+                final double value = aggregate(cursors[p], windowEnds[p], 
+                        ends, accumulator);
+                if (slot >= first_slot) {
+                    slots.add(new SimpleImmutableEntry<Long, Double>(slot, value));
+                }
+                final long[] swap = windowEnds[p];
+                windowEnds[p] = ends;
+                ends = swap;
+                lastSlots[p] = slot;
+            }
+            
+            int expired = 0;
+            while (expired < slotCounts[p] && model.get(block_start + expired)
+                    .getKey() < first_slot) {
+                expired++;
+            }
+            model.addAll(block_start + slotCounts[p], slots);
+            model.subList(block_start, block_start + expired).clear();
+            slotCounts[p] += slots.size() - expired;
+        }
+        evict();
+    }
+
+    /**
+     * Aggregates an interval of every historical window into a model value,
+     * moving the cursors past the points of the intervals.
+     * @param cursor The index of the next point of each window.
+     * @param starts The start of the interval of each window, inclusive.
+     * @param ends The end of the interval of each window, exclusive.
+     * @param accumulator A buffer to reuse for the values of the windows.
+     * @return The aggregated value, NaN if no window had data.
+     */
+    private double aggregate(final int[] cursor, final long[] starts, 
+            final long[] ends, final WeightedValueBuffer accumulator) {
+        accumulator.clear();
+        for (int i = 0; i < cursor.length; i++) {
+            int idx = cursor[i];
+            // points which arrived after their interval was aggregated
+            while (idx < size && times[idx] < starts[i]) {
+                idx++;
+            }
+            
+            double sum = 0;
+            int count = 0;
+            while (idx < size && times[idx] < ends[i]) {
+                if (Double.isFinite(values[idx])) {
+                    sum += values[idx];
+                    count++;
+                }
+                idx++;
+            }
+            cursor[i] = idx;
+
+            if (count > 0) {
+                // TODO - for DST if we jumped back then we may have a
+                // period
+                // with more than we expect. In that case, depending on the
+                // aggregator, we may need to use only part of the data.
+                // TODO - potentially other aggregations.
+                accumulator.add((sum / count), i + 1);
+            }
+        }
+
+        if (drop_lowest > 0 || drop_highest > 0) {
+            if (drop_highest > drop_lowest) {
+                accumulator.drop(drop_highest, true);
+                accumulator.drop(drop_lowest, false);
+            } else {
+                accumulator.drop(drop_lowest, false);
+                accumulator.drop(drop_highest, true);
+            }
+        }
+        return accumulator.aggregate(windowAggregator);
+    }
+    
+    /**
+     * Drops the retained points before the oldest cursor once they take
+     * half of the buffer.
+     */
+    private void evict() {
+        int oldest = size;
+        for (final int[] cursor : cursors) {
+            for (final int idx : cursor) {
+                oldest = Math.min(oldest, idx);
+            }
+        }
+        if (oldest < 16 || oldest < (times.length >> 1)) {
+            return;
+        }
+        size -= oldest;
+        System.arraycopy(times, oldest, times, 0, size);
+        System.arraycopy(values, oldest, values, 0, size);
+        for (final int[] cursor : cursors) {
+            for (int i = 0; i < cursor.length; i++) {
+                cursor[i] -= oldest;
+            }
+        }
+    }
+
+    /**
+     * Returns the epoch seconds of the model time-stamps of a prediction 
+     * window: the start advanced by the interval as long as it does not pass
+     * the end of the window.
+     * @param start The first time-stamp of the window.
+     * @param end The end of the window in Unix epoch seconds.
+     * @return A non-empty array of epoch seconds.
+     */
+    @VisibleForTesting
+    long[] modelTimes(final ZonedDateTime start, final long end) {
+        long[] steps = new long[16];
+        steps[0] = start.toEpochSecond();
+        int count = 1;
+        for (long next = next(steps[0]); next <= end; next = next(next)) {
+            if (count == steps.length) {
+                steps = Arrays.copyOf(steps, count * 2);
+            }
+            steps[count++] = next;
+        }
+        return Arrays.copyOf(steps, count);
+    }
+    
+    /**
+     * Returns the epoch seconds of the given time advanced by the interval 
+     * 1 to count times, i.e. the ends of the successive intervals of a window.
+     * @param from The start of the first interval.
+     * @param count The number of intervals.
+     * @return An array of count epoch seconds.
+     */
+    @VisibleForTesting
+    long[] epochSteps(final ZonedDateTime from, final int count) {
+        final long[] steps = new long[count];
+        long ts = from.toEpochSecond();
+        for (int k = 0; k < count; k++) {
+            ts = next(ts);
+            steps[k] = ts;
+        }
+        return steps;
+    }
+    
+    /**
+     * Returns the epoch seconds of the given time advanced by the interval, 
+     * as ZonedDateTime.plus() in the zone of the model. Time based units of 
+     * whole seconds are added to the instant whatever the zone. Date based
+     * units follow the DST transitions of the zone, which only depend on the 
+     * instant, so the result is the same as repeated calls to plus().
+     */
+    private long next(final long epoch) {
+        if (intervalUnits.isTimeBased() 
+                && intervalUnits.getDuration().getNano() == 0
+                && intervalUnits.getDuration().getSeconds() >= 1) {
+            return epoch + interval * intervalUnits.getDuration().getSeconds();
+        }
+        return Instant.ofEpochSecond(epoch).atZone(zone)
+                .plus(interval, intervalUnits).toEpochSecond();
     }
 
     @Override
@@ -343,16 +560,28 @@ public class OlympicModel2 extends TimeSeriesAbstractModel {
                 break;
             }
             if (sequence.get(i).time == model.get(x).getKey()) {
-                final Pair<Long, Double> dp = model.get(x++);
+                final SimpleImmutableEntry<Long, Double> dp = model.get(x++);
                 sequence.set(i,
                         new Entry(dp.getKey(), (float) (double) dp.getValue()));
             }
         }
     }
 
+    @Override
+    public boolean isIncremental() {
+        return true;
+    }
+
     @Override
     public void reset() {
         model.clear();
+        times = null;
+        values = null;
+        size = 0;
+        cursors = null;
+        windowEnds = null;
+        lastSlots = null;
+        slotCounts = null;
         for (int i = 0; i < windowTimes.length; i++) {
             windowTimes[i] = null;
             indices[i] = 0;
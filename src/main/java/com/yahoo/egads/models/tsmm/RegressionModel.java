@@ -23,25 +23,20 @@
 package com.yahoo.egads.models.tsmm;
 
 import com.yahoo.egads.data.*;
-import com.yahoo.egads.data.TimeSeries.Entry;
 import org.json.JSONObject;
 import org.json.JSONStringer;
+import com.yahoo.egads.data.TimeSeries.Entry;
 import java.util.Properties;
-import net.sourceforge.openforecast.DataSet;
-import net.sourceforge.openforecast.ForecastingModel;
-import net.sourceforge.openforecast.DataPoint;
-import net.sourceforge.openforecast.Observation;
-import java.util.*;
 
 // Implements a single variable linear regression model using the variable named in the constructor as the independent variable.
 public class RegressionModel extends TimeSeriesAbstractModel {
     // methods ////////////////////////////////////////////////
 
-    // The model that will be used for forecasting.
-    private ForecastingModel forecaster;
+    // The sufficient statistics of the regression on the index of the points.
+    private RegressionStatistics statistics;
     
-    // Stores the historical values.
-    private TimeSeries.DataSequence data;
+    // The training values and their forecasts.
+    private ForecastHistory history;
 
     public RegressionModel(Properties config) {
         super(config);
@@ -53,26 +48,47 @@ public class RegressionModel extends TimeSeriesAbstractModel {
     }
     
     public void train(TimeSeries.DataSequence data) {
-        this.data = data;
         int n = data.size();
-        DataPoint dp = null;
-        DataSet observedData = new DataSet();
+        double[] values = new double[n];
         for (int i = 0; i < n; i++) {
-            dp = new Observation(data.get(i).value);
-            dp.setIndependentValue("x", i);
-            observedData.add(dp);
+            values[i] = data.get(i).value;
         }
-        observedData.setTimeVariable("x"); 
-        
-        forecaster = new net.sourceforge.openforecast.models.RegressionModel("x");
-        forecaster.init(observedData);
-        initForecastErrors(forecaster, data);
+        statistics = RegressionStatistics.of(2, values, 0, n);
+        double[] forecasts = new double[n];
+        for (int i = 0; i < n; i++) {
+            forecasts[i] = statistics.forecast(i);
+        }
+        initForecastErrors(forecasts, values, 0);
+        history = new ForecastHistory(data, forecasts);
         
         logger.debug(getBias() + "\t" + getMAD() + "\t" + getMAPE() + "\t" + getMSE() + "\t" + getSAE() + "\t" + 0 + "\t" + 0);
     }
 
+    // Folds in the points after the last one seen, in O(1) each, forecasting them with the fit
+    // of the points seen before the update, and fits again once.
     public void update(TimeSeries.DataSequence data) {
+        if (history == null) {
+            throw new IllegalStateException("Model was empty. 'train()' may not have been called.");
+        }
+        int added = 0;
+        for (Entry e : data) {
+            if (e.time <= history.lastTime()) {
+                continue;
+            }
+            int x = history.size();
+            double forecast = statistics.forecast(x);
+            addForecastError(forecast, e.value);
+            history.append(e.time, e.value, forecast);
+            statistics.add(x, e.value);
+            added++;
+        }
+        if (added > 0) {
+            statistics.fit();
+        }
+    }
 
+    public boolean isIncremental() {
+        return true;
     }
 
     public String getModelName() {
@@ -80,26 +96,12 @@ public class RegressionModel extends TimeSeriesAbstractModel {
     }
 
     public void predict(TimeSeries.DataSequence sequence) throws Exception {
-          int n = data.size();
-          DataSet requiredDataPoints = new DataSet();
-          DataPoint dp;
-
-          for (int count = 0; count < n; count++) {
-              dp = new Observation(0.0);
-              dp.setIndependentValue("x", count);
-              requiredDataPoints.add(dp);
-          }
-          forecaster.forecast(requiredDataPoints);
-
-          // Output the results
-          Iterator<DataPoint> it = requiredDataPoints.iterator();
-          int i = 0;
-          while (it.hasNext()) {
-              DataPoint pnt = ((DataPoint) it.next());
-              logger.info(data.get(i).time + "," + data.get(i).value + "," + pnt.getDependentValue());
-              sequence.set(i, (new Entry(data.get(i).time, (float) pnt.getDependentValue())));
-              i++;
-          }
+        // The fit at the indices after the last point.
+        history.predict(sequence, new ForecastHistory.Horizon() {
+            public double forecast(int steps) {
+                return statistics.forecast(history.size() - 1 + (double) steps);
+            }
+        });
     }
 
     public void toJson(JSONStringer json_out) {
@@ -0,0 +1,146 @@
+/*
+ * Copyright 2016, Yahoo Inc.
+ * Copyrights licensed under the GPL License.
+ * See the accompanying LICENSE file for terms.
+ */
+
+// The sufficient statistics of a least squares regression of the values on a polynomial of their index x, so
+// that the regression models fold in a point in O(p) and fit in O(p^3) for p coefficients, whatever the number
+// of points, instead of solving again over all of them.
+//
+//      1. The basis is 1, t, ..., t^(p-1) of t = (x - center) / scale, the center and the scale being fixed when
+//         the statistics are created so that the normal equations stay well conditioned.
+//      2. The entries of X'X are the power sums of t, sum(t^(i+j)), and the ones of X'y the sums of t^i * y.
+//      3. The statistics of the partitions of a series add up to the ones of the series, see merge(), so that the
+//         partitions can be summed in parallel.
+
+package com.yahoo.egads.models.tsmm;
+
+import java.io.Serializable;
+
+class RegressionStatistics implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final int p;
+    private final double center;
+    private final double scale;
+    // sum(t^k) for k < 2p - 1, and sum(t^k * y) for k < p.
+    private final double[] powers;
+    private final double[] products;
+    private long count;
+    private double[] coefficients;
+
+    /**
+     * @param p The number of coefficients, 2 for a line.
+     * @param center The index mapped to t = 0.
+     * @param scale The index interval mapped to t = 1.
+     */
+    RegressionStatistics(int p, double center, double scale) {
+        if (p < 1 || !(scale > 0)) {
+            throw new IllegalArgumentException("Invalid regression basis");
+        }
+        this.p = p;
+        this.center = center;
+        this.scale = scale;
+        powers = new double[2 * p - 1];
+        products = new double[p];
+        coefficients = new double[p];
+    }
+
+    // The statistics of the points (i, values[i]) for i in [from, to), a basis centered on them.
+    static RegressionStatistics of(int p, double[] values, int from, int to) {
+        RegressionStatistics statistics = new RegressionStatistics(p, (from + to - 1) / 2.0,
+                        Math.max(1, (to - from) / 2.0));
+        for (int i = from; i < to; i++) {
+            statistics.add(i, values[i]);
+        }
+        statistics.fit();
+        return statistics;
+    }
+
+    void add(double x, double y) {
+        double t = (x - center) / scale;
+        double power = 1;
+        for (int k = 0; k < powers.length; k++) {
+            powers[k] += power;
+            if (k < p) {
+                products[k] += power * y;
+            }
+            power *= t;
+        }
+        count++;
+    }
+
+    /**
+     * Adds the statistics of other points, e.g. of another partition of the series.
+     * @throws IllegalArgumentException if the bases differ.
+     */
+    void merge(RegressionStatistics other) {
+        if (other.p != p || other.center != center || other.scale != scale) {
+            throw new IllegalArgumentException("The statistics have different bases");
+        }
+        for (int k = 0; k < powers.length; k++) {
+            powers[k] += other.powers[k];
+        }
+        for (int k = 0; k < p; k++) {
+            products[k] += other.products[k];
+        }
+        count += other.count;
+    }
+
+    long count() {
+        return count;
+    }
+
+    /**
+     * Solves the normal equations for the coefficients of the points added so far. A coefficient the points do not
+     * determine, e.g. the slope of a single point, is 0.
+     */
+    void fit() {
+        double[][] a = new double[p][p];
+        double[] b = products.clone();
+        for (int i = 0; i < p; i++) {
+            for (int j = 0; j < p; j++) {
+                a[i][j] = powers[i + j];
+            }
+        }
+        // Gaussian elimination of the symmetric positive semi-definite X'X, skipping the degenerate pivots.
+        boolean[] degenerate = new boolean[p];
+        for (int k = 0; k < p; k++) {
+            if (!(a[k][k] > 1e-10 * powers[2 * k])) {
+                degenerate[k] = true;
+                continue;
+            }
+            for (int i = k + 1; i < p; i++) {
+                double f = a[i][k] / a[k][k];
+                for (int j = k; j < p; j++) {
+                    a[i][j] -= f * a[k][j];
+                }
+                b[i] -= f * b[k];
+            }
+        }
+        double[] c = new double[p];
+        for (int k = p - 1; k >= 0; k--) {
+            if (degenerate[k]) {
+                continue;
+            }
+            double sum = b[k];
+            for (int j = k + 1; j < p; j++) {
+                sum -= a[k][j] * c[j];
+            }
+            c[k] = sum / a[k][k];
+        }
+        coefficients = c;
+    }
+
+    // The value of the fitted polynomial at the index x.
+    double forecast(double x) {
+        double t = (x - center) / scale;
+        double forecast = 0;
+        for (int k = p - 1; k >= 0; k--) {
+            forecast = forecast * t + coefficients[k];
+        }
+        return forecast;
+    }
+}
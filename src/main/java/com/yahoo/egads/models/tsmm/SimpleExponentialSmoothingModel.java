@@ -14,21 +14,21 @@ import com.yahoo.egads.data.TimeSeries.Entry;
 import org.json.JSONObject;
 import org.json.JSONStringer;
 import java.util.Properties;
-import net.sourceforge.openforecast.DataSet;
-import net.sourceforge.openforecast.ForecastingModel;
-import net.sourceforge.openforecast.DataPoint;
-import net.sourceforge.openforecast.Observation;
-import java.util.*;
 
 // A simple exponential smoothing forecast model is a very popular model used to produce a smoothed Time Series.
+// The smoothing is computed in a single pass over the values, with the same recursion and accuracy indicators as
+// the OpenForecast SimpleExponentialSmoothingModel: F(0) = y(0), F(t) = alpha * y(t - 1) + (1 - alpha) * F(t - 1).
 public class SimpleExponentialSmoothingModel extends TimeSeriesAbstractModel {
     // methods ////////////////////////////////////////////////
 
-    // The model that will be used for forecasting.
-    private ForecastingModel forecaster;
-    
-    // Stores the historical values.
-    private TimeSeries.DataSequence data;
+    // TODO: Make weights configurable.
+    private static final double ALPHA = 0.75;
+
+    // The historical values and their forecasts.
+    private ForecastHistory history;
+
+    // The forecast of the next value.
+    private double nextForecast;
 
     public SimpleExponentialSmoothingModel(Properties config) {
         super(config);
@@ -40,54 +40,58 @@ public class SimpleExponentialSmoothingModel extends TimeSeriesAbstractModel {
     }
     
     public void train(TimeSeries.DataSequence data) {
-        this.data = data;
         int n = data.size();
-        DataPoint dp = null;
-        DataSet observedData = new DataSet();
+        if (n < 2) {
+            throw new IllegalArgumentException("At least 2 data points are required, only " + n + " provided.");
+        }
+        double[] values = new double[n];
         for (int i = 0; i < n; i++) {
-            dp = new Observation(data.get(i).value);
-            dp.setIndependentValue("x", i);
-            observedData.add(dp);
+            values[i] = data.get(i).value;
         }
-        observedData.setTimeVariable("x"); 
-        
-        // TODO: Make weights configurable.
-        forecaster = new net.sourceforge.openforecast.models.SimpleExponentialSmoothingModel(0.75);
-        forecaster.init(observedData);
-        initForecastErrors(forecaster, data);
+
+        double[] forecasts = new double[n];
+        forecasts[0] = values[0];
+        for (int t = 1; t < n; t++) {
+            forecasts[t] = ALPHA * values[t - 1] + (1 - ALPHA) * forecasts[t - 1];
+        }
+        initForecastErrors(forecasts, values, 1);
+        history = new ForecastHistory(data, forecasts);
+        nextForecast = ALPHA * values[n - 1] + (1 - ALPHA) * forecasts[n - 1];
         
         logger.debug(getBias() + "\t" + getMAD() + "\t" + getMAPE() + "\t" + getMSE() + "\t" + getSAE() + "\t" + 0 + "\t" + 0);
     }
 
+    // Folds in the points after the last one seen, in O(1) each.
     public void update(TimeSeries.DataSequence data) {
-
+        if (history == null) {
+            throw new IllegalStateException("Model was empty. 'train()' may not have been called.");
+        }
+        for (Entry e : data) {
+            if (e.time <= history.lastTime()) {
+                continue;
+            }
+            double forecast = nextForecast;
+            addForecastError(forecast, e.value);
+            history.append(e.time, e.value, forecast);
+            nextForecast = ALPHA * e.value + (1 - ALPHA) * forecast;
+        }
     }
 
     public String getModelName() {
         return modelName;
     }
 
+    public boolean isIncremental() {
+        return true;
+    }
+
     public void predict(TimeSeries.DataSequence sequence) throws Exception {
-          int n = data.size();
-          DataSet requiredDataPoints = new DataSet();
-          DataPoint dp;
-
-          for (int count = 0; count < n; count++) {
-              dp = new Observation(0.0);
-              dp.setIndependentValue("x", count);
-              requiredDataPoints.add(dp);
-          }
-          forecaster.forecast(requiredDataPoints);
-
-          // Output the results
-          Iterator<DataPoint> it = requiredDataPoints.iterator();
-          int i = 0;
-          while (it.hasNext()) {
-              DataPoint pnt = ((DataPoint) it.next());
-              logger.info(data.get(i).time + "," + data.get(i).value + "," + pnt.getDependentValue());
-              sequence.set(i, (new Entry(data.get(i).time, (float) pnt.getDependentValue())));
-              i++;
-          }
+        // The forecast is flat after the last point.
+        history.predict(sequence, new ForecastHistory.Horizon() {
+            public double forecast(int steps) {
+                return nextForecast;
+            }
+        });
     }
 
     public void toJson(JSONStringer json_out) {
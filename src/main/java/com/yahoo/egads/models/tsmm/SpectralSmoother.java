@@ -7,12 +7,13 @@
 package com.yahoo.egads.models.tsmm;
 
 import java.util.Properties;
-import java.util.Hashtable;
 
 import com.yahoo.egads.data.TimeSeries.Entry;
 import com.yahoo.egads.data.TimeSeries.DataSequence;
+import com.yahoo.egads.utilities.IncrementalSSA;
 import com.yahoo.egads.utilities.SpectralMethods;
 import com.yahoo.egads.utilities.SpectralMethods.FilteringMethod;
+import com.yahoo.egads.utilities.SpectralMethods.SvdMethod;
 
 /**
  * SpectralSmoother implements the smoothing technique based on the Singular Value Decomposition (SVD) of the input time-series' Hankel matrix.
@@ -26,6 +27,14 @@ import com.yahoo.egads.utilities.SpectralMethods.FilteringMethod;
  *          Refer to utilities/SpectralMethods.java documentation for more details.
  *      3. 'FILTERING_PARAM' determines the tuning parameter for the specified filtering method.
  *          Refer to utilities/SpectralMethods.java documentation for more details.  
+ *      4. 'SVD_METHOD' FULL (default) decomposes the whole Hankel matrix. RANDOMIZED only computes its leading singular
+ *          triplets for the VARIANCE, K_GAP and EXPLICIT filtering methods, which is much faster for large windows.
+ *      5. 'SVD_POWER_ITERATIONS' the number of power iterations of the RANDOMIZED decomposition, more is more
+ *          accurate when the spectrum decays slowly. Default 2.
+ *      6. 'UPDATE_METHOD' BATCH (default) filters the sequence given to update() from scratch. INCREMENTAL keeps the
+ *          leading singular subspace of the training data and folds the new points of each update into it, see
+ *          utilities/IncrementalSSA.java, so a point costs O(WINDOW_SIZE * rank^2 + rank^3) instead of a
+ *          decomposition. The training then always uses the FULL decomposition.
  *          
  * @author amizadeh
  *
@@ -33,10 +42,19 @@ import com.yahoo.egads.utilities.SpectralMethods.FilteringMethod;
 
 public class SpectralSmoother extends TimeSeriesAbstractModel {
 
-    protected Hashtable<Long, Float> map = new Hashtable<Long, Float>();
+    // The smoothed values by logical index.
+    private IndexedValues smoothed = new IndexedValues();
     protected int windowSize;
     protected FilteringMethod method;
     protected double methodParameter;
+    protected SvdMethod svdMethod = SvdMethod.FULL;
+    protected int powerIterations = 2;
+    protected boolean incremental = false;
+    // The state of the INCREMENTAL updates: the decomposition, and the last time and the logical indices of the
+    // points it refines, oldest first.
+    private IncrementalSSA ssa;
+    private long lastTime;
+    private long[] recent;
 
     public SpectralSmoother(Properties config) {
         super(config);
@@ -83,30 +101,99 @@ public class SpectralSmoother extends TimeSeriesAbstractModel {
         } else {
             this.methodParameter = new Double(config.getProperty("FILTERING_PARAM"));
         }
+
+        if (config.getProperty("SVD_METHOD") != null) {
+            this.svdMethod = SvdMethod.valueOf(config.getProperty("SVD_METHOD"));
+        }
+        if (config.getProperty("SVD_POWER_ITERATIONS") != null) {
+            this.powerIterations = new Integer(config.getProperty("SVD_POWER_ITERATIONS"));
+        }
+        if (config.getProperty("UPDATE_METHOD") != null) {
+            String updateMethod = config.getProperty("UPDATE_METHOD");
+            if (updateMethod.equals("INCREMENTAL")) {
+                this.incremental = true;
+            } else if (!updateMethod.equals("BATCH")) {
+                throw new IllegalArgumentException("Invalid UPDATE_METHOD value");
+            }
+        }
     }
 
     @Override
     public void reset() {
-        map.clear();
+        smoothed.clear();
+        ssa = null;
+        recent = null;
     }
 
     @Override
     public void train(DataSequence data) throws Exception {
         this.reset();
-        DataSequence smoothedData = SpectralMethods.mFilter(data, windowSize, method, methodParameter);
+        if (incremental) {
+            trainIncremental(data);
+            return;
+        }
+        DataSequence smoothedData = SpectralMethods.mFilter(data, windowSize, method, methodParameter, svdMethod,
+                        powerIterations);
 
         for (Entry e : smoothedData) {
-            map.put(e.logicalIndex, e.value);
+            smoothed.put(e.logicalIndex, e.value);
         }
     }
 
+    private void trainIncremental(DataSequence data) {
+        double[] values = new double[data.size()];
+        for (int i = 0; i < values.length; ++i) {
+            values[i] = data.get(i).value;
+        }
+        ssa = new IncrementalSSA(values, windowSize, method, methodParameter);
+        double[] initial = ssa.getInitial();
+        for (int i = 0; i < values.length; ++i) {
+            smoothed.put(data.get(i).logicalIndex, (float) initial[i]);
+        }
+        recent = new long[windowSize];
+        for (int j = 0; j < windowSize; ++j) {
+            recent[j] = data.get(values.length - windowSize + j).logicalIndex;
+        }
+        lastTime = data.get(values.length - 1).time;
+    }
+
+    /**
+     * With UPDATE_METHOD INCREMENTAL, folds the points of the sequence newer than the last one seen into the
+     * decomposition and refines the smoothed values of the last WINDOW_SIZE points.
+     * @throws IllegalStateException if the model was not trained with INCREMENTAL updates.
+     */
     @Override
     public void update(DataSequence data) throws Exception {
+        if (!incremental) {
+            DataSequence smoothedData = SpectralMethods.mFilter(data, windowSize, method, methodParameter,
+                            svdMethod, powerIterations);
 
-        DataSequence smoothedData = SpectralMethods.mFilter(data, windowSize, method, methodParameter);
+            for (Entry e : smoothedData) {
+                smoothed.put(e.logicalIndex, e.value);
+            }
+            return;
+        }
+        if (ssa == null) {
+            throw new IllegalStateException("Model was empty. 'train()' may not have been called.");
+        }
 
-        for (Entry e : smoothedData) {
-            map.put(e.logicalIndex, e.value);
+        boolean added = false;
+        for (Entry e : data) {
+            if (e.time <= lastTime) {
+                continue;
+            }
+            ssa.add(e.value);
+            System.arraycopy(recent, 1, recent, 0, windowSize - 1);
+            recent[windowSize - 1] = e.logicalIndex;
+            lastTime = e.time;
+            added = true;
+            // the oldest point is final, the others are refined by the next points
+            smoothed.put(recent[0], (float) ssa.getSmoothed(windowSize - 1));
+        }
+        if (added) {
+            for (int j = 1; j < windowSize; ++j) {
+                smoothed.put(recent[j], (float) ssa.getSmoothed(windowSize - 1 - j));
+            }
         }
     }
 
@@ -114,14 +201,23 @@ public class SpectralSmoother extends TimeSeriesAbstractModel {
     public void predict(DataSequence sequence) throws Exception {
 
         for (Entry e : sequence) {
-            Float val = map.get(e.logicalIndex);
-            e.value = (val == null) ? 0 : val;
+            e.value = smoothed.get(e.logicalIndex);
         }
     }
 
     @Override
+    public boolean forecastsTimeStamps() {
+        // It only knows the smoothed values of the points it was trained or updated on.
+        return false;
+    }
+
     public String getModelName() {
         return "SpectralSmoother";
     }
 
+    @Override
+    public boolean isIncremental() {
+        return incremental;
+    }
+
 }
@@ -0,0 +1,406 @@
+/*
+ * Copyright 2016, Yahoo Inc.
+ * Copyrights licensed under the GPL License.
+ * See the accompanying LICENSE file for terms.
+ */
+
+package com.yahoo.egads.models.tsmm;
+
+import java.util.Arrays;
+import java.util.Properties;
+
+import com.yahoo.egads.data.TimeSeries.DataSequence;
+import com.yahoo.egads.data.WeightedValueBuffer;
+import com.yahoo.egads.data.TimeSeries.Entry;
+import com.yahoo.egads.utilities.ExecutionBudget;
+
+/**
+ * StlModel decomposes the time-series into a trend, one seasonal component per seasonal period and a residual, as
+ * STL (Cleveland et al., "STL: A Seasonal-Trend Decomposition Procedure Based on Loess", 1990) does, and forecasts
+ * each point with its trend plus its seasonal components. The anomaly detection models then score the residual.
+ *
+ * The smoothers are box kernel regressions computed from prefix sums, so that the decomposition runs in O(n) for any
+ * window, instead of the tricube loess of STL:
+ *      1. The seasonal component of a period is the weighted mean of the points of the same phase over
+ *         STL_SEASONAL_CYCLES cycles, minus its low-pass filter (moving averages over a period, a period and 3
+ *         points, of the means extended by a cycle at both ends). With several periods (e.g. daily and weekly), each is extracted from the series minus the trend
+ *         and the others, from the shortest to the longest, twice.
+ *      2. The trend is the weighted local linear regression of the deseasonalized series over the smallest odd
+ *         window of at least 1.5 * period / (1 - 1.5 / STL_SEASONAL_CYCLES) points for the longest period.
+ *      3. STL_ROBUST_ITERATIONS times, the decomposition is computed again with the bisquare weights of the
+ *         residuals over 6 times their median absolute value, so that outliers (the anomalies) do not bend it.
+ *      4. The points after the training data are forecast along the slope of the trend at the last point, with the
+ *         seasonal components of the last cycle.
+ *
+ * The input parameters:
+ *      1. 'SEASONAL_PERIODS' the comma separated numbers of points of the seasonal periods, 24 by default. The seasons
+ *         of the metric (MetricMeta.seasons, in seconds) take precedence when they are set, see setSeasons(). A
+ *         period the training data does not cover twice is ignored.
+ *      2. 'STL_SEASONAL_CYCLES' the number of cycles the seasonal components are averaged over, 7 by default.
+ *      3. 'STL_ROBUST_ITERATIONS' the number of robustness iterations, 0 to weigh all the points the same. 2 by
+ *         default.
+ *      4. 'STL_HISTORY' the number of last points the model keeps for update(), which decomposes them again with
+ *         the new points, so that an update costs O(STL_HISTORY) whatever the length of the series. By default
+ *         (STL_SEASONAL_CYCLES + 2) times the longest period, and at least 2 trend windows.
+ */
+public class StlModel extends TimeSeriesAbstractModel {
+
+    // The number of passes over the seasonal components and the trend per robustness iteration.
+    private static final int INNER_ITERATIONS = 2;
+
+    private int[] configuredPeriods;
+    private long[] seasonSeconds;
+    private int seasonalCycles = 7;
+    private int robustIterations = 2;
+    private int historySize;
+
+    // The periods in use.
+    private int[] periods;
+    // The points and their forecasts, and the values of the last ones, oldest first, for the updates.
+    private ForecastHistory history;
+    private double[] recent;
+    private int size;
+    // The trend and its slope at the last point, and the seasonal components of the last cycle of each period
+    // (seasonalCycle[s][j] at the j-th point of the last periods[s] points).
+    private double lastTrend;
+    private double lastSlope;
+    private double[][] seasonalCycle;
+
+    public StlModel(Properties config) {
+        super(config);
+        modelName = "StlModel";
+        String temp = config.getProperty("SEASONAL_PERIODS", "24");
+        String[] tokens = temp.split(",");
+        configuredPeriods = new int[tokens.length];
+        for (int i = 0; i < tokens.length; i++) {
+            configuredPeriods[i] = new Integer(tokens[i].trim());
+            if (configuredPeriods[i] < 2) {
+                throw new IllegalArgumentException("Invalid SEASONAL_PERIODS value");
+            }
+        }
+        if (config.getProperty("STL_SEASONAL_CYCLES") != null) {
+            seasonalCycles = new Integer(config.getProperty("STL_SEASONAL_CYCLES"));
+            if (seasonalCycles < 1) {
+                throw new IllegalArgumentException("Invalid STL_SEASONAL_CYCLES value");
+            }
+        }
+        if (config.getProperty("STL_ROBUST_ITERATIONS") != null) {
+            robustIterations = new Integer(config.getProperty("STL_ROBUST_ITERATIONS"));
+            if (robustIterations < 0) {
+                throw new IllegalArgumentException("Invalid STL_ROBUST_ITERATIONS value");
+            }
+        }
+        if (config.getProperty("STL_HISTORY") != null) {
+            historySize = new Integer(config.getProperty("STL_HISTORY"));
+            if (historySize < 1) {
+                throw new IllegalArgumentException("Invalid STL_HISTORY value");
+            }
+        }
+    }
+
+    /**
+     * Uses the seasons of the metric instead of SEASONAL_PERIODS.
+     * @param seasons The lengths of the seasons in seconds, converted to points with the median time step of the
+     *        training data. null to use SEASONAL_PERIODS.
+     */
+    public void setSeasons(long[] seasons) {
+        seasonSeconds = seasons;
+    }
+
+    public void reset() {
+        history = null;
+        recent = null;
+        size = 0;
+    }
+
+    public void train(DataSequence data) throws Exception {
+        reset();
+        int n = data.size();
+        if (n < 2) {
+            throw new IllegalArgumentException("At least 2 data points are required, only " + n + " provided.");
+        }
+        periods = periods(data);
+        int capacity = historySize > 0 ? historySize
+                        : Math.max((seasonalCycles + 2) * longest(), 2 * trendWindow(longest()));
+        recent = new double[Math.max(capacity, 2)];
+
+        double[] values = new double[n];
+        for (int i = 0; i < n; i++) {
+            values[i] = data.get(i).value;
+        }
+        double[] forecasts = decompose(values, n);
+        initForecastErrors(forecasts, values, 0);
+        history = new ForecastHistory(data, forecasts);
+        for (int i = Math.max(0, n - recent.length); i < n; i++) {
+            recent[size++] = values[i];
+        }
+    }
+
+    /**
+     * Appends the points of the sequence after the last one seen, decomposes the last STL_HISTORY points again and
+     * refreshes the forecasts of the points near the end that the new ones moved. With more new points than
+     * STL_HISTORY, all of them are decomposed with the kept ones, so that every new point gets its forecast.
+     * @throws IllegalStateException if the model was not trained.
+     */
+    public void update(DataSequence data) throws Exception {
+        if (history == null) {
+            throw new IllegalStateException("Model was empty. 'train()' may not have been called.");
+        }
+        double[] added = new double[data.size()];
+        int count = 0;
+        for (Entry e : data) {
+            if (e.time <= history.lastTime()) {
+                continue;
+            }
+            added[count++] = e.value;
+            history.append(e.time, e.value, 0);
+        }
+        if (count == 0) {
+            return;
+        }
+
+        // The kept points followed by the new ones, the last STL_HISTORY of them unless there are more new ones.
+        double[] window = recent;
+        int n = Math.min(size + count, recent.length);
+        if (count > recent.length) {
+            window = new double[size + count];
+            n = window.length;
+            System.arraycopy(recent, 0, window, 0, size);
+        } else if (size + count > recent.length) {
+            System.arraycopy(recent, size + count - n, recent, 0, n - count);
+        }
+        System.arraycopy(added, 0, window, n - count, count);
+
+        double[] forecasts = decompose(window, n);
+        int offset = history.size() - n;
+        for (int i = n - count; i < n; i++) {
+            addForecastError(forecasts[i], window[i]);
+        }
+        for (int i = Math.max(0, n - count - trendWindow(longest()) / 2); i < n; i++) {
+            history.setForecast(offset + i, forecasts[i]);
+        }
+        if (window != recent) {
+            System.arraycopy(window, n - recent.length, recent, 0, recent.length);
+        }
+        size = Math.min(n, recent.length);
+    }
+
+    public void predict(DataSequence sequence) throws Exception {
+        // The trend along its last slope, plus the seasonal components of the last cycles.
+        history.predict(sequence, new ForecastHistory.Horizon() {
+            public double forecast(int steps) {
+                double forecast = lastTrend + steps * lastSlope;
+                for (int s = 0; s < periods.length; s++) {
+                    forecast += seasonalCycle[s][(steps - 1) % periods[s]];
+                }
+                return forecast;
+            }
+        });
+    }
+
+    public boolean isIncremental() {
+        return true;
+    }
+
+    private int longest() {
+        return periods.length == 0 ? 2 : periods[periods.length - 1];
+    }
+
+    // The periods of the seasons of the metric, or of the config, that the data covers twice.
+    private int[] periods(DataSequence data) {
+        int n = data.size();
+        int[] candidates = configuredPeriods;
+        if (seasonSeconds != null) {
+            double[] steps = new double[n - 1];
+            for (int i = 1; i < n; i++) {
+                steps[i - 1] = data.get(i).time - data.get(i - 1).time;
+            }
+            double step = Math.max(1, WeightedValueBuffer.select(steps, n - 1, (n - 1) / 2));
+            candidates = new int[seasonSeconds.length];
+            for (int i = 0; i < candidates.length; i++) {
+                candidates[i] = (int) Math.round(seasonSeconds[i] / step);
+            }
+        }
+        int[] kept = new int[candidates.length];
+        int count = 0;
+        for (int p : candidates) {
+            if (p >= 2 && 2 * p <= n) {
+                kept[count++] = p;
+            }
+        }
+        kept = Arrays.copyOf(kept, count);
+        Arrays.sort(kept);
+        return kept;
+    }
+
+    private int trendWindow(int longest) {
+        int window = (int) Math.ceil(1.5 * Math.max(longest, 2) / (1 - 1.5 / Math.max(seasonalCycles, 2)));
+        if (seasonalCycles < 2) {
+            window = 3 * Math.max(longest, 2);
+        }
+        return window | 1;
+    }
+
+    // Decomposes the first n values, keeps the state to forecast after them and returns their forecasts, the trend
+    // plus the seasonal components.
+    private double[] decompose(double[] values, int n) {
+        int trendHalf = Math.min(trendWindow(longest()), 2 * n + 1) / 2;
+
+        double[] weights = new double[n];
+        Arrays.fill(weights, 1);
+        double[] trend = new double[n];
+        double[][] seasonals = new double[periods.length][n];
+        double[] work = new double[n];
+        double[] smooth = new double[n];
+
+        for (int robust = 0; robust <= robustIterations; robust++) {
+            ExecutionBudget.check();
+            for (int inner = 0; inner < INNER_ITERATIONS; inner++) {
+                for (int s = 0; s < periods.length; s++) {
+                    int p = periods[s];
+                    for (int i = 0; i < n; i++) {
+                        double other = trend[i];
+                        for (int o = 0; o < periods.length; o++) {
+                            if (o != s) {
+                                other += seasonals[o][i];
+                            }
+                        }
+                        work[i] = values[i] - other;
+                    }
+                    // The mean of each phase over the cycles, minus its low-pass filter.
+                    regress(work, weights, n, p, seasonalCycles / 2, false, smooth);
+                    double[] low = lowPass(smooth, n, p);
+                    for (int i = 0; i < n; i++) {
+                        seasonals[s][i] = smooth[i] - low[i];
+                    }
+                }
+                for (int i = 0; i < n; i++) {
+                    work[i] = values[i];
+                    for (int s = 0; s < periods.length; s++) {
+                        work[i] -= seasonals[s][i];
+                    }
+                }
+                regress(work, weights, n, 1, trendHalf, true, trend);
+            }
+            if (robust < robustIterations) {
+                robustnessWeights(values, trend, seasonals, n, weights, work);
+            }
+        }
+
+        double[] forecasts = new double[n];
+        for (int i = 0; i < n; i++) {
+            forecasts[i] = trend[i];
+            for (int s = 0; s < periods.length; s++) {
+                forecasts[i] += seasonals[s][i];
+            }
+        }
+        lastTrend = trend[n - 1];
+        lastSlope = n > 1 ? trend[n - 1] - trend[n - 2] : 0;
+        seasonalCycle = new double[periods.length][];
+        for (int s = 0; s < periods.length; s++) {
+            // the last cycle, from the point a period before the next one
+            int p = periods[s];
+            seasonalCycle[s] = Arrays.copyOfRange(seasonals[s], n - p, n);
+        }
+        return forecasts;
+    }
+
+    // The bisquare weights of the residuals over 6 times their median absolute value.
+    private static void robustnessWeights(double[] values, double[] trend, double[][] seasonals, int n,
+                    double[] weights, double[] work) {
+        for (int i = 0; i < n; i++) {
+            double residual = values[i] - trend[i];
+            for (double[] seasonal : seasonals) {
+                residual -= seasonal[i];
+            }
+            weights[i] = Math.abs(residual);
+            work[i] = weights[i];
+        }
+        double h = 6 * WeightedValueBuffer.select(Arrays.copyOf(work, n), n, n / 2);
+        for (int i = 0; i < n; i++) {
+            double u = h > 0 ? weights[i] / h : 0;
+            weights[i] = u < 1 ? (1 - u * u) * (1 - u * u) : 0;
+        }
+    }
+
+    /**
+     * The weighted least squares regression of each value on the values of the same phase (i % stride) within half
+     * strides of it, evaluated at it: a line if linear, else the weighted mean. The windows are truncated at the
+     * ends, and a window without weight (e.g. an outlier and the neighbors it pulled) falls back to the median of its
+     * values, never to the value itself, which would make it its own fit. O(n) with prefix sums whatever the window.
+     */
+    static void regress(double[] y, double[] w, int n, int stride, int half, boolean linear, double[] out) {
+        // Prefix sums per phase, with the cycle index t = i / stride, of w, w * t, w * t^2, w * y and w * t * y.
+        double[] sw = new double[n];
+        double[] st = new double[n];
+        double[] stt = new double[n];
+        double[] sy = new double[n];
+        double[] sty = new double[n];
+        for (int i = 0; i < n; i++) {
+            double t = i / stride;
+            double wi = w[i];
+            int prev = i - stride;
+            sw[i] = wi + (prev >= 0 ? sw[prev] : 0);
+            st[i] = wi * t + (prev >= 0 ? st[prev] : 0);
+            stt[i] = wi * t * t + (prev >= 0 ? stt[prev] : 0);
+            sy[i] = wi * y[i] + (prev >= 0 ? sy[prev] : 0);
+            sty[i] = wi * t * y[i] + (prev >= 0 ? sty[prev] : 0);
+        }
+        for (int i = 0; i < n; i++) {
+            int hi = i + half * stride;
+            if (hi >= n) {
+                hi = i + ((n - 1 - i) / stride) * stride;
+            }
+            int lo = i - (half + 1) * stride;
+            if (lo < 0) {
+                lo = -1;
+            }
+            double w0 = sw[hi] - (lo >= 0 ? sw[lo] : 0);
+            if (w0 <= 1e-9) {
+                int first = lo >= 0 ? lo + stride : i % stride;
+                double[] window = new double[(hi - first) / stride + 1];
+                for (int j = 0; j < window.length; j++) {
+                    window[j] = y[first + j * stride];
+                }
+                out[i] = WeightedValueBuffer.select(window, window.length, window.length / 2);
+                continue;
+            }
+            double meanY = (sy[hi] - (lo >= 0 ? sy[lo] : 0)) / w0;
+            if (!linear) {
+                out[i] = meanY;
+                continue;
+            }
+            double meanT = (st[hi] - (lo >= 0 ? st[lo] : 0)) / w0;
+            double varT = (stt[hi] - (lo >= 0 ? stt[lo] : 0)) / w0 - meanT * meanT;
+            double cov = (sty[hi] - (lo >= 0 ? sty[lo] : 0)) / w0 - meanT * meanY;
+            double slope = varT > 1e-9 ? cov / varT : 0;
+            out[i] = meanY + slope * (i / stride - meanT);
+        }
+    }
+
+    // The moving averages over p, p and 3 points of the cycle-subseries means, extended by a cycle at both ends with
+    // the means of the nearest cycle, so that every average covers whole periods and the seasonality cancels out.
+    static double[] lowPass(double[] smooth, int n, int p) {
+        double[] extended = new double[n + 2 * p];
+        for (int j = 0; j < extended.length; j++) {
+            int i = j - p;
+            extended[j] = smooth[i < 0 ? i + p : (i >= n ? i - p : i)];
+        }
+        return average(average(average(extended, p), p), 3);
+    }
+
+    // The moving averages of the values over length points, the i-th one of the values i to i + length - 1.
+    static double[] average(double[] y, int length) {
+        double[] out = new double[y.length - length + 1];
+        double sum = 0;
+        for (int i = 0; i < length - 1; i++) {
+            sum += y[i];
+        }
+        for (int i = 0; i < out.length; i++) {
+            sum += y[i + length - 1];
+            out[i] = sum / length;
+            sum -= y[i];
+        }
+        return out;
+    }
+}
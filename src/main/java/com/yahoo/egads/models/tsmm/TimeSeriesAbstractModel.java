@@ -38,6 +38,13 @@ public abstract class TimeSeriesAbstractModel implements TimeSeriesModel {
     protected boolean errorsInit = false;
     protected int dynamicParameters = 0;
 
+    // Running sums of the errors, see addForecastError().
+    private double sumErr = 0.0;
+    private double sumAbsErr = 0.0;
+    private double sumAbsPercentErr = 0.0;
+    private double sumErrSquared = 0.0;
+    private int processedPoints = 0;
+
     public String getModelName() {
 		return modelName;
 	}
@@ -45,6 +52,16 @@ public abstract class TimeSeriesAbstractModel implements TimeSeriesModel {
     public String getModelType() {
     	return "Forecast";
     }
+
+    // True if update() folds the new points into the trained state, so that a model
+    // trained once can follow a series instead of being trained again on all of it.
+    public boolean isIncremental() {
+        return false;
+    }
+
+    public boolean forecastsTimeStamps() {
+        return true;
+    }
     
     @Override
     public void toJson(JSONStringer json_out) throws Exception {
@@ -132,6 +149,50 @@ public abstract class TimeSeriesAbstractModel implements TimeSeriesModel {
         errorsInit = true;
     }
 
+    /**
+     * Initializes all errors given the one step ahead predictions of the points
+     * from index 'first' on, as OpenForecast computes its accuracy indicators.
+     */
+    protected void initForecastErrors(double[] predictions, double[] actual, int first) {
+        sumErr = 0.0;
+        sumAbsErr = 0.0;
+        sumAbsPercentErr = 0.0;
+        sumErrSquared = 0.0;
+        processedPoints = 0;
+
+        for (int i = first; i < actual.length; i++) {
+            accumulateError(predictions[i], actual[i]);
+        }
+        setForecastErrors();
+    }
+
+    /**
+     * Updates all errors with the one step ahead prediction of a new point,
+     * after initForecastErrors(double[], double[], int).
+     */
+    protected void addForecastError(double prediction, double actual) {
+        accumulateError(prediction, actual);
+        setForecastErrors();
+    }
+
+    private void accumulateError(double prediction, double actual) {
+        double error = prediction - actual;
+        sumErr += error;
+        sumAbsErr += Math.abs(error);
+        sumAbsPercentErr += Math.abs(error / actual);
+        sumErrSquared += error * error;
+        processedPoints++;
+    }
+
+    private void setForecastErrors() {
+        this.bias = sumErr / processedPoints;
+        this.mad = sumAbsErr / processedPoints;
+        this.mape = sumAbsPercentErr / processedPoints;
+        this.mse = sumErrSquared / processedPoints;
+        this.sae = sumAbsErr;
+        errorsInit = true;
+    }
+
     /**
      * Initializes all errors given the model.
      */
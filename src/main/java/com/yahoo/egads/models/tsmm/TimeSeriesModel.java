@@ -20,4 +20,8 @@ public interface TimeSeriesModel extends Model {
 
     // predicts the values of the time series specified by the 'time' fields of the sequence and sets the 'value' fields of the sequence
     public abstract void predict(TimeSeries.DataSequence sequence) throws Exception;
+
+    // true if predict() honors any time-stamps, e.g. a part of the training range or the points after it; false if
+    // it only replays its training range from the first entry of the sequence on
+    public boolean forecastsTimeStamps();
 }
@@ -27,27 +27,45 @@ import com.yahoo.egads.data.TimeSeries.Entry;
 import org.json.JSONObject;
 import org.json.JSONStringer;
 import java.util.Properties;
-import net.sourceforge.openforecast.DataSet;
-import net.sourceforge.openforecast.ForecastingModel;
-import net.sourceforge.openforecast.DataPoint;
-import net.sourceforge.openforecast.Observation;
-import java.util.*;
 
 // Triple exponential smoothing - also known as the Winters method - is a refinement of the popular double exponential
 // smoothing model but adds another component which takes into account any seasonality - or periodicity - in the data.
+// The smoothing is computed in a single pass over the values, with the same initialization, recursions and accuracy
+// indicators as the OpenForecast TripleExponentialSmoothingModel (seasons of 12 points, initialized on 2 seasons):
+//      B(t) = alpha * y(t) / I(t - 12) + (1 - alpha) * (B(t - 1) + T(t - 1))
+//      T(t) = beta * (B(t) - B(t - 1)) + (1 - beta) * T(t - 1)
+//      I(t) = gamma * y(t) / F(t) + (1 - gamma) * I(t - 12)
+//      F(t) = (B(t - 1) + T(t - 1)) * I(t - 12)
+// With TUNING_METHOD, the smoothing factors are searched on the training values (see HoltWintersTuner) instead of
+// taken from the config, starting from the ones a previous search found for the metric when a parameter store is set.
 public class TripleExponentialSmoothingModel extends TimeSeriesAbstractModel {
     // methods ////////////////////////////////////////////////
 
-    // The model that will be used for forecasting.
-    private ForecastingModel forecaster;
+    // Number of points in a season and number of seasons used to initialize the model.
+    private static final int PERIODS_PER_YEAR = 12;
+    private static final int NUMBER_OF_YEARS = 2;
 
-    // Stores the historical values.
-    private TimeSeries.DataSequence data;
+    // The historical values and their forecasts.
+    private ForecastHistory history;
+
+    // The base and trend at the last value, the trend at the value before it, the seasonal
+    // indices of the last season (at t % PERIODS_PER_YEAR) and the initial seasonal indices.
+    private double base;
+    private double trend;
+    private double previousTrend;
+    private double[] seasonalIndices;
+    private double[] initialIndices;
 
     //Store the smoothing factors for level, trend and seasonality
-    private final double alpha;
-    private final double beta;
-    private final double gamma;
+    private double alpha;
+    private double beta;
+    private double gamma;
+
+    // The search of the smoothing factors, null when they come from the config,
+    // and the store of the factors it found, see setParameterStore().
+    private HoltWintersTuner tuner;
+    private transient ModelStore parameterStore;
+    private String parameterTag;
 
     public TripleExponentialSmoothingModel(Properties config) {
         super(config);
@@ -70,6 +88,7 @@ public class TripleExponentialSmoothingModel extends TimeSeriesAbstractModel {
                     + "e.g. 0.2 or 0.5");
         }
         gamma = Double.parseDouble(temp);
+        tuner = HoltWintersTuner.fromConfig(config);
         modelName = "TripleExponentialSmoothingModel";
     }
 
@@ -77,55 +96,204 @@ public class TripleExponentialSmoothingModel extends TimeSeriesAbstractModel {
         // At this point, reset does nothing.
     }
 
+    /**
+     * Keeps the smoothing factors found by the tuning in a store, and starts the next
+     * tuning of the metric from them. Does nothing unless TUNING_METHOD is set.
+     * @param store The store of the factors.
+     * @param tag The tag of the factors of the metric in the store.
+     */
+    public void setParameterStore(ModelStore store, String tag) {
+        parameterStore = store;
+        parameterTag = tag;
+    }
+
+    public double getAlpha() {
+        return alpha;
+    }
+
+    public double getBeta() {
+        return beta;
+    }
+
+    public double getGamma() {
+        return gamma;
+    }
+
     public void train(TimeSeries.DataSequence data) {
-        this.data = data;
         int n = data.size();
-        DataPoint dp = null;
-        DataSet observedData = new DataSet();
+        int p = PERIODS_PER_YEAR;
+        if (n < NUMBER_OF_YEARS * p) {
+            throw new IllegalArgumentException("At least " + (NUMBER_OF_YEARS * p)
+                    + " data points are required, only " + n + " provided.");
+        }
+        double[] values = new double[n];
         for (int i = 0; i < n; i++) {
-            dp = new Observation(data.get(i).value);
-            dp.setIndependentValue("x", i);
-            observedData.add(dp);
+            values[i] = data.get(i).value;
         }
-        observedData.setTimeVariable("x");
-        observedData.setPeriodsPerYear(12);
 
-        forecaster = new net.sourceforge.openforecast.models.TripleExponentialSmoothingModel(alpha, beta, gamma);
-        forecaster.init(observedData);
-        initForecastErrors(forecaster, data);
+        double[] bases = new double[n];
+        double[] trends = new double[n];
+        double[] indices = new double[n];
+        double[] forecasts = new double[n];
+
+        // Initial trend and base: the difference and the mean of the first two seasons.
+        double initialTrend = 0;
+        for (int i = 0; i < p; i++) {
+            initialTrend -= values[i];
+        }
+        double initialBase = 0;
+        for (int i = 0; i < p; i++) {
+            initialTrend += values[p + i];
+            initialBase += values[p + i];
+        }
+        initialTrend = initialTrend / p;
+        initialTrend = initialTrend / p;
+        initialBase = initialBase / p;
+        for (int i = 0; i < p * NUMBER_OF_YEARS; i++) {
+            trends[i] = initialTrend;
+            if (i >= p) {
+                bases[i] = initialBase + ((i + 1 - p) - (p + 1) / 2.0) * initialTrend;
+            }
+        }
+
+        // Initial seasonal indices: the mean ratio of the values to their season average, set on the last season.
+        double[] seasonAverage = new double[NUMBER_OF_YEARS];
+        for (int year = 0; year < NUMBER_OF_YEARS; year++) {
+            double sum = 0;
+            for (int i = 0; i < p; i++) {
+                sum += values[year * p + i];
+            }
+            seasonAverage[year] = sum / p;
+        }
+        int last = (NUMBER_OF_YEARS - 1) * p;
+        for (int year = 0; year < NUMBER_OF_YEARS; year++) {
+            for (int i = 0; i < p; i++) {
+                indices[last + i] = indices[last + i] + values[year * p + i] / seasonAverage[year] / NUMBER_OF_YEARS;
+            }
+        }
+        // The indices before the last initialization season repeat it.
+        initialIndices = new double[p];
+        for (int t = last; t < last + p; t++) {
+            initialIndices[t % p] = indices[t];
+        }
+        if (tuner != null) {
+            tune(values, bases[NUMBER_OF_YEARS * p - 1], trends[NUMBER_OF_YEARS * p - 1]);
+        }
+
+        // Smoothing the rest of the values.
+        for (int t = NUMBER_OF_YEARS * p; t < n; t++) {
+            double season = indices[t - p];
+            forecasts[t] = (bases[t - 1] + trends[t - 1]) * season;
+            bases[t] = alpha * (values[t] / season) + (1 - alpha) * (bases[t - 1] + trends[t - 1]);
+            trends[t] = beta * (bases[t] - bases[t - 1]) + (1 - beta) * trends[t - 1];
+            indices[t] = gamma * (values[t] / forecasts[t]) + (1 - gamma) * indices[t - p];
+        }
+
+        // The forecasts of the last initialization seasons.
+        forecasts[0] = values[0];
+        for (int t = p + 1; t < NUMBER_OF_YEARS * p; t++) {
+            forecasts[t] = (bases[t - 1] + trends[t - 1]) * initialIndices[t % p];
+        }
+
+        // The accuracy is measured on the values after the initialization seasons.
+        double[] predictions = new double[n];
+        for (int t = NUMBER_OF_YEARS * p; t < n; t++) {
+            predictions[t] = forecasts[t - 1] + trends[t - 1];
+        }
+        initForecastErrors(predictions, values, NUMBER_OF_YEARS * p);
+
+        history = new ForecastHistory(data, forecasts);
+        base = bases[n - 1];
+        trend = trends[n - 1];
+        previousTrend = trends[n - 2];
+        seasonalIndices = new double[p];
+        for (int t = n - p; t < n; t++) {
+            seasonalIndices[t % p] = indices[t];
+        }
+        extrapolateFirstSeason();
 
         logger.debug(getBias() + "\t" + getMAD() + "\t" + getMAPE() + "\t" + getMSE() + "\t" + getSAE() + "\t" + 0 + "\t" + 0);
     }
 
+    // Sets the smoothing factors to the best ones the tuner finds from the state after
+    // the initialization seasons, and stores them.
+    private void tune(double[] values, double initialBase, double initialTrend) {
+        double[] warm = {alpha, beta, gamma};
+        boolean cached = false;
+        if (parameterStore != null) {
+            Model stored = parameterStore.retrieveModel(parameterTag);
+            if (stored instanceof Parameters) {
+                Parameters found = (Parameters) stored;
+                warm = new double[] {found.alpha, found.beta, found.gamma};
+                cached = true;
+            }
+        }
+        double[] best = tuner.tune(values, PERIODS_PER_YEAR, NUMBER_OF_YEARS * PERIODS_PER_YEAR,
+                        initialBase, initialTrend, initialIndices, warm, cached);
+        alpha = best[0];
+        beta = best[1];
+        gamma = best[2];
+        logger.debug("Tuned ALPHA " + alpha + ", BETA " + beta + ", GAMMA " + gamma + " in "
+                        + tuner.getEvaluations() + " evaluations");
+        if (parameterStore != null) {
+            parameterStore.storeModel(parameterTag, new Parameters(alpha, beta, gamma));
+        }
+    }
+
+    // The first season has no base, so as in OpenForecast its forecasts are
+    // extrapolated back from the last base and trend.
+    private void extrapolateFirstSeason() {
+        int n = history.size();
+        for (int t = 1; t <= PERIODS_PER_YEAR; t++) {
+            history.setForecast(t, (base + (t - (n - 1)) * previousTrend) * initialIndices[t % PERIODS_PER_YEAR]);
+        }
+    }
+
+    // Folds in the points after the last one seen, in O(1) each. The forecasts
+    // of the first season are extrapolated again once at the end.
     public void update(TimeSeries.DataSequence data) {
+        if (history == null) {
+            throw new IllegalStateException("Model was empty. 'train()' may not have been called.");
+        }
+        int before = history.size();
+        for (Entry e : data) {
+            if (e.time <= history.lastTime()) {
+                continue;
+            }
+            int t = history.size();
+            int k = t % PERIODS_PER_YEAR;
+            double season = seasonalIndices[k];
+            double forecast = (base + trend) * season;
+            addForecastError(history.forecast(t - 1) + trend, e.value);
 
+            double nextBase = alpha * (e.value / season) + (1 - alpha) * (base + trend);
+            previousTrend = trend;
+            trend = beta * (nextBase - base) + (1 - beta) * trend;
+            base = nextBase;
+            seasonalIndices[k] = gamma * (e.value / forecast) + (1 - gamma) * season;
+            history.append(e.time, e.value, forecast);
+        }
+        if (history.size() > before) {
+            extrapolateFirstSeason();
+        }
     }
 
     public String getModelName() {
         return modelName;
     }
 
-    public void predict(TimeSeries.DataSequence sequence) throws Exception {
-        int n = data.size();
-        DataSet requiredDataPoints = new DataSet();
-        DataPoint dp;
-
-        for (int count = 0; count < n; count++) {
-            dp = new Observation(0.0);
-            dp.setIndependentValue("x", count);
-            requiredDataPoints.add(dp);
-        }
-        forecaster.forecast(requiredDataPoints);
+    public boolean isIncremental() {
+        return true;
+    }
 
-        // Output the results
-        Iterator<DataPoint> it = requiredDataPoints.iterator();
-        int i = 0;
-        while (it.hasNext()) {
-            DataPoint pnt = ((DataPoint) it.next());
-            logger.info(data.get(i).time + "," + data.get(i).value + "," + pnt.getDependentValue());
-            sequence.set(i, (new Entry(data.get(i).time, (float) pnt.getDependentValue())));
-            i++;
-        }
+    public void predict(TimeSeries.DataSequence sequence) throws Exception {
+        // The base followed along the trend, times the seasonal index of the point.
+        history.predict(sequence, new ForecastHistory.Horizon() {
+            public double forecast(int steps) {
+                long t = history.size() - 1L + steps;
+                return (base + steps * trend) * seasonalIndices[(int) (t % PERIODS_PER_YEAR)];
+            }
+        });
     }
 
     public void toJson(JSONStringer json_out) {
@@ -135,4 +303,40 @@ public class TripleExponentialSmoothingModel extends TimeSeriesAbstractModel {
     public void fromJson(JSONObject json_obj) {
 
     }
+
+    // The smoothing factors found by the tuning of a metric, as kept in a ModelStore.
+    public static class Parameters implements Model {
+
+        private static final long serialVersionUID = 1L;
+
+        public double alpha;
+        public double beta;
+        public double gamma;
+
+        public Parameters(double alpha, double beta, double gamma) {
+            this.alpha = alpha;
+            this.beta = beta;
+            this.gamma = gamma;
+        }
+
+        public void reset() {
+            // The factors are kept across resets.
+        }
+
+        public String getModelName() {
+            return "TripleExponentialSmoothingParameters";
+        }
+
+        public String getModelType() {
+            return "Parameters";
+        }
+
+        public void toJson(JSONStringer json_out) throws Exception {
+            JsonEncoder.toJson(this, json_out);
+        }
+
+        public void fromJson(JSONObject json_obj) throws Exception {
+            JsonEncoder.fromJson(this, json_obj);
+        }
+    }
 }
@@ -23,7 +23,6 @@
 package com.yahoo.egads.models.tsmm;
 
 import com.yahoo.egads.data.*;
-import com.yahoo.egads.data.TimeSeries.Entry;
 import org.json.JSONObject;
 import org.json.JSONStringer;
 import java.util.Properties;
@@ -31,18 +30,18 @@ import net.sourceforge.openforecast.DataSet;
 import net.sourceforge.openforecast.ForecastingModel;
 import net.sourceforge.openforecast.DataPoint;
 import net.sourceforge.openforecast.Observation;
-import java.util.*;
 
 // A weighted moving average forecast model is based on an artificially constructed time series in which the value
 // for a given time period is replaced by the weighted mean of that value and the values for some number of preceding time periods.
 public class WeightedMovingAverageModel extends TimeSeriesAbstractModel {
     // methods ////////////////////////////////////////////////
 
-    // The model that will be used for forecasting.
-    private ForecastingModel forecaster;
+    // The model that will be used for forecasting. It is not serializable: a reloaded
+    // model trains it again on its history, see forecaster().
+    private transient ForecastingModel forecaster;
     
-    // Stores the historical values.
-    private TimeSeries.DataSequence data;
+    // The training values and their forecasts.
+    private ForecastHistory history;
 
     public WeightedMovingAverageModel(Properties config) {
         super(config);
@@ -54,7 +53,6 @@ public class WeightedMovingAverageModel extends TimeSeriesAbstractModel {
     }
     
     public void train(TimeSeries.DataSequence data) {
-        this.data = data;
         int n = data.size();
         DataPoint dp = null;
         DataSet observedData = new DataSet();
@@ -65,11 +63,11 @@ public class WeightedMovingAverageModel extends TimeSeriesAbstractModel {
         }
         observedData.setTimeVariable("x"); 
         
-        // TODO: Make weights configurable.
-        forecaster = new net.sourceforge.openforecast.models.WeightedMovingAverageModel(new double[]{0.75, 0.25});
+        forecaster = newForecaster();
         forecaster.init(observedData);
 
         initForecastErrors(forecaster, data);
+        history = new ForecastHistory(data, forecaster);
         
         logger.debug(getBias() + "\t" + getMAD() + "\t" + getMAPE() + "\t" + getMSE() + "\t" + getSAE() + "\t" + 0 + "\t" + 0);
     }
@@ -83,26 +81,20 @@ public class WeightedMovingAverageModel extends TimeSeriesAbstractModel {
     }
 
     public void predict(TimeSeries.DataSequence sequence) throws Exception {
-          int n = data.size();
-          DataSet requiredDataPoints = new DataSet();
-          DataPoint dp;
-
-          for (int count = 0; count < n; count++) {
-              dp = new Observation(0.0);
-              dp.setIndependentValue("x", count);
-              requiredDataPoints.add(dp);
-          }
-          forecaster.forecast(requiredDataPoints);
-
-          // Output the results
-          Iterator<DataPoint> it = requiredDataPoints.iterator();
-          int i = 0;
-          while (it.hasNext()) {
-              DataPoint pnt = ((DataPoint) it.next());
-              logger.info(data.get(i).time + "," + data.get(i).value + "," + pnt.getDependentValue());
-              sequence.set(i, (new Entry(data.get(i).time, (float) pnt.getDependentValue())));
-              i++;
-          }
+        history.predict(sequence, forecaster());
+    }
+
+    private static ForecastingModel newForecaster() {
+        // TODO: Make weights configurable.
+        return new net.sourceforge.openforecast.models.WeightedMovingAverageModel(new double[]{0.75, 0.25});
+    }
+
+    private ForecastingModel forecaster() {
+        if (forecaster == null) {
+            forecaster = newForecaster();
+            forecaster.init(history.observed());
+        }
+        return forecaster;
     }
 
     public void toJson(JSONStringer json_out) {
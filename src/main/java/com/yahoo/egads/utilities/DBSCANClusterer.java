@@ -149,6 +149,7 @@ public class DBSCANClusterer<T extends Clusterable> extends Clusterer<T> {
             if (visited.get(point) != null) {
                 continue;
             }
+            ExecutionBudget.check();
             final List<T> neighbors = getNeighbors(point, points);
             if (neighbors.size() >= minPts) {
                 // DBSCAN does not care about center points
@@ -189,6 +190,7 @@ public class DBSCANClusterer<T extends Clusterable> extends Clusterer<T> {
             PointStatus pStatus = visited.get(current);
             // only check non-visited points
             if (pStatus == null) {
+                ExecutionBudget.check();
                 final List<T> currentNeighbors = getNeighbors(current, points);
                 if (currentNeighbors.size() >= minPts) {
                     seeds = merge(seeds, currentNeighbors);
@@ -0,0 +1,63 @@
+/*
+ * Copyright 2016, Yahoo Inc.
+ * Copyrights licensed under the GPL License.
+ * See the accompanying LICENSE file for terms.
+ */
+
+/*
+ * Description: ExecutionBudget bounds the time a thread may spend on a unit of work (e.g. one time-series).
+ * The long running loops of the models call check() regularly, which aborts the work with a
+ * BudgetExceededException once the deadline of the thread passed or the thread was interrupted.
+ *
+ * Details:
+ *      1. The deadline is per thread: start() sets it, clear() removes it. Without a deadline check() only
+ *         reacts to interrupts, so the models behave as before outside of a budget.
+ *      2. check() is cheap (one thread-local read and one System.nanoTime()), but should still be called
+ *         once per outer iteration rather than in the innermost loops.
+ */
+
+package com.yahoo.egads.utilities;
+
+public class ExecutionBudget {
+
+    private static final ThreadLocal<Long> DEADLINE = new ThreadLocal<Long>();
+
+    private ExecutionBudget() {
+    }
+
+    // Gives the current thread millis milliseconds from now.
+    public static void start(long millis) {
+        DEADLINE.set(System.nanoTime() + millis * 1000000L);
+    }
+
+    // Removes the deadline of the current thread.
+    public static void clear() {
+        DEADLINE.remove();
+    }
+
+    // Returns true if the current thread has a deadline.
+    public static boolean isActive() {
+        return DEADLINE.get() != null;
+    }
+
+    // Milliseconds left before the deadline of the current thread, Long.MAX_VALUE without a deadline.
+    public static long remaining() {
+        Long deadline = DEADLINE.get();
+        if (deadline == null) {
+            return Long.MAX_VALUE;
+        }
+        return Math.max(0, (deadline - System.nanoTime()) / 1000000L);
+    }
+
+    // Throws a BudgetExceededException if the deadline of the current thread passed
+    // or if the thread was interrupted.
+    public static void check() {
+        if (Thread.currentThread().isInterrupted()) {
+            throw new BudgetExceededException("Interrupted.");
+        }
+        Long deadline = DEADLINE.get();
+        if (deadline != null && System.nanoTime() - deadline > 0) {
+            throw new BudgetExceededException("Time budget exceeded.");
+        }
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright 2016, Yahoo Inc.
+ * Copyrights licensed under the GPL License.
+ * See the accompanying LICENSE file for terms.
+ */
+
+/*
+ * Description: FFT is an in-place iterative radix-2 fast Fourier transform over separate arrays of real and
+ * imaginary parts, so that convolutions of long series run in O(N log(N)) without allocating a Complex per point.
+ *
+ * Details:
+ *      1. The length of the arrays must be a power of 2, see size() to pad a series.
+ *      2. The forward transform computes X[f] = sum_t x[t] * exp(-2 * pi * i * f * t / N). The inverse transform uses
+ *         the opposite sign and divides by N, so that it undoes the forward one.
+ *      3. The twiddle factors are computed once per call with Math.cos and Math.sin rather than by recurrence,
+ *         which keeps the rounding error of the transform at O(log(N)) ulps.
+ */
+
+package com.yahoo.egads.utilities;
+
+public class FFT {
+
+    // The smallest power of 2 that is at least n.
+    public static int size(int n) {
+        int size = 1;
+        while (size < n) {
+            size <<= 1;
+        }
+        return size;
+    }
+
+    /**
+     * Transforms the complex sequence (re, im) in place.
+     * @param re The real parts, of a power of 2 length.
+     * @param im The imaginary parts, of the same length.
+     * @param inverse true for the inverse transform, scaled by 1 / N.
+     */
+    public static void transform(double[] re, double[] im, boolean inverse) {
+        int n = re.length;
+        if (Integer.bitCount(n) != 1 || im.length != n) {
+            throw new IllegalArgumentException("FFT length " + n + " is not a power of 2");
+        }
+
+        // Bit reversal permutation.
+        for (int i = 1, j = 0; i < n; ++i) {
+            int bit = n >> 1;
+            for (; (j & bit) != 0; bit >>= 1) {
+                j ^= bit;
+            }
+            j ^= bit;
+            if (i < j) {
+                double t = re[i];
+                re[i] = re[j];
+                re[j] = t;
+                t = im[i];
+                im[i] = im[j];
+                im[j] = t;
+            }
+        }
+
+        double[] cos = new double[n / 2];
+        double[] sin = new double[n / 2];
+        double sign = inverse ? 1 : -1;
+        for (int i = 0; i < n / 2; ++i) {
+            cos[i] = Math.cos(2 * Math.PI * i / n);
+            sin[i] = sign * Math.sin(2 * Math.PI * i / n);
+        }
+
+        for (int len = 2; len <= n; len <<= 1) {
+            int half = len >> 1;
+            int step = n / len;
+            for (int i = 0; i < n; i += len) {
+                for (int j = 0; j < half; ++j) {
+                    double wr = cos[j * step];
+                    double wi = sin[j * step];
+                    int a = i + j;
+                    int b = a + half;
+                    double xr = re[b] * wr - im[b] * wi;
+                    double xi = re[b] * wi + im[b] * wr;
+                    re[b] = re[a] - xr;
+                    im[b] = im[a] - xi;
+                    re[a] += xr;
+                    im[a] += xi;
+                }
+            }
+        }
+
+        if (inverse) {
+            for (int i = 0; i < n; ++i) {
+                re[i] /= n;
+                im[i] /= n;
+            }
+        }
+    }
+}
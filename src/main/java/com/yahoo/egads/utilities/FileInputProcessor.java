@@ -8,8 +8,7 @@ package com.yahoo.egads.utilities;
 
 // Class that implements EGADS file input processing.
 
-import com.yahoo.egads.control.ProcessableObject;
-import com.yahoo.egads.control.ProcessableObjectFactory;
+import com.yahoo.egads.control.ProcessingPipeline;
 import java.util.Properties;
 import com.yahoo.egads.data.TimeSeries;
 import java.util.ArrayList;
@@ -26,9 +25,13 @@ public class FileInputProcessor implements InputProcessor {
         // Parse the input timeseries.
         ArrayList<TimeSeries> metrics = com.yahoo.egads.utilities.FileUtils
                 .createTimeSeries(this.file, p);
+        ProcessingPipeline pipeline = new ProcessingPipeline(p);
         for (TimeSeries ts : metrics) {
-            ProcessableObject po = ProcessableObjectFactory.create(ts, p);
-            po.process();
+            pipeline.submit(ts);
+        }
+        pipeline.close();
+        if (p.getProperty("SERIES_TIME_BUDGET") != null) {
+            System.err.println(pipeline.getSummary());
         }
     }
 }
@@ -0,0 +1,331 @@
+/*
+ * Copyright 2016, Yahoo Inc.
+ * Copyrights licensed under the GPL License.
+ * See the accompanying LICENSE file for terms.
+ */
+
+/*
+ * Description: HttpInputProcessor keeps EGADS running as a scoring server so that the callers do not pay the JVM
+ * startup and the JIT warm-up on every invocation. The anomalies are detected with the configured TS_MODEL and
+ * AD_MODEL.
+ *
+ * Endpoints:
+ *      POST /detect    Body is either JSON or the STDIN tuple format (one line per record):
+ *                          {"series": [{"name": "m1", "data": [[1412038800, 80.2], [1412042400, 78.2], ...]}, ...]}
+ *                          meta1\tmeta2\t{(1412038800,80.2),(1412042400,78.2),...}\t{(...)}
+ *                      All the series of a request are scored as one batch on the worker pool. The response lists
+ *                      the anomalies of every series in the request order.
+ *      GET  /stats     Request count and p50/p99 latency (ms) of every endpoint, and the hit rate of the forecast
+ *                      cache when FORECAST_CACHE_SIZE is set.
+ *
+ * Config:
+ *      SERVER_PORT         Port to listen on (default 8080, 0 picks a free port).
+ *      SERVER_THREADS      Number of scoring threads (default: number of processors).
+ *      SERVER_QUEUE_SIZE   Number of series waiting for a scoring thread before the server answers 503 (default 64).
+ *
+ * Connections are kept alive between requests: every response carries its Content-Length.
+ */
+
+package com.yahoo.egads.utilities;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import com.yahoo.egads.control.ProcessableObject;
+import com.yahoo.egads.control.ProcessableObjectFactory;
+import com.yahoo.egads.control.StagedProcessable;
+import com.yahoo.egads.data.Anomaly;
+import com.yahoo.egads.data.ForecastCache;
+import com.yahoo.egads.data.TimeSeries;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.json.JSONStringer;
+
+public class HttpInputProcessor implements InputProcessor {
+
+    private static final int LATENCY_SAMPLES = 4096;
+
+    private HttpServer server = null;
+    private ThreadPoolExecutor workers = null;
+    private ExecutorService dispatcher = null;
+    private final CountDownLatch stopped = new CountDownLatch(1);
+    private final Map<String, LatencyRecorder> latencies = new LinkedHashMap<String, LatencyRecorder>();
+
+    // Starts the server and blocks until it is stopped.
+    public void processInput(Properties p) throws Exception {
+        start(p);
+        Runtime.getRuntime().addShutdownHook(new Thread() {
+            public void run() {
+                HttpInputProcessor.this.stop();
+            }
+        });
+        System.err.println("EGADS listening on port " + getPort());
+        stopped.await();
+    }
+
+    // Starts the server without blocking.
+    public void start(Properties p) throws Exception {
+        int port = getInt(p, "SERVER_PORT", 8080);
+        int threads = getInt(p, "SERVER_THREADS", Runtime.getRuntime().availableProcessors());
+        int queueSize = getInt(p, "SERVER_QUEUE_SIZE", 64);
+
+        // The server only detects anomalies, whatever the OP_TYPE of the config.
+        final Properties config = new Properties();
+        config.putAll(p);
+        config.setProperty("OP_TYPE", "DETECT_ANOMALY");
+
+        workers = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                                         new ArrayBlockingQueue<Runnable>(queueSize));
+        dispatcher = Executors.newFixedThreadPool(threads);
+        server = HttpServer.create(new InetSocketAddress(port), 0);
+        server.setExecutor(dispatcher);
+        server.createContext("/detect", new TimedHandler("/detect") {
+            int serve(HttpExchange exchange) throws Exception {
+                if (!exchange.getRequestMethod().equals("POST")) {
+                    return respond(exchange, 405, error("Use POST."));
+                }
+                String body = read(exchange.getRequestBody());
+                List<TimeSeries> metrics;
+                try {
+                    metrics = parse(body, config);
+                } catch (Exception e) {
+                    return respond(exchange, 400, error("Cannot parse the series: " + e.getMessage()));
+                }
+                List<List<Anomaly>> anomalies;
+                try {
+                    anomalies = detect(metrics, config);
+                } catch (RejectedExecutionException e) {
+                    return respond(exchange, 503, error("Too many pending series, retry later."));
+                }
+                return respond(exchange, 200, toJson(metrics, anomalies));
+            }
+        });
+        server.createContext("/stats", new TimedHandler("/stats") {
+            int serve(HttpExchange exchange) throws Exception {
+                return respond(exchange, 200, stats(config));
+            }
+        });
+        server.start();
+    }
+
+    // Stops the server and its worker pool.
+    public void stop() {
+        if (server != null) {
+            server.stop(0);
+            workers.shutdownNow();
+            dispatcher.shutdownNow();
+        }
+        stopped.countDown();
+    }
+
+    // The port the server listens on.
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    // Parses the body of a /detect request.
+    static List<TimeSeries> parse(String body, Properties config) throws Exception {
+        Integer aggr = 1;
+        if (config.getProperty("AGGREGATION") != null) {
+            aggr = new Integer(config.getProperty("AGGREGATION"));
+        }
+        String trimmed = body.trim();
+        List<TimeSeries> output = new ArrayList<TimeSeries>();
+        if (trimmed.startsWith("[") || (trimmed.startsWith("{") && !trimmed.startsWith("{("))) {
+            JSONArray series;
+            if (trimmed.startsWith("[")) {
+                series = new JSONArray(trimmed);
+            } else {
+                JSONObject obj = new JSONObject(trimmed);
+                series = obj.has("series") ? obj.getJSONArray("series") : new JSONArray().put(obj);
+            }
+            for (int i = 0; i < series.length(); i++) {
+                JSONObject s = series.getJSONObject(i);
+                TimeSeries ts = new TimeSeries();
+                ts.meta.name = s.optString("name", "series-" + (i + 1));
+                ts.meta.fileName = ts.meta.name;
+                JSONArray data = s.getJSONArray("data");
+                for (int j = 0; j < data.length(); j++) {
+                    JSONArray point = data.getJSONArray(j);
+                    ts.append(point.getLong(0), (float) point.getDouble(1));
+                }
+                if (aggr > 1) {
+                    ts.data = ts.aggregate(aggr);
+                    ts.meta.name += "_aggr_" + aggr;
+                }
+                output.add(ts);
+            }
+        } else {
+            for (String line : trimmed.split("\n")) {
+                if (line.trim().length() != 0) {
+                    output.addAll(StdinProcessor.createTimeSeries(line.replace("\r", ""), aggr));
+                }
+            }
+        }
+        if (output.isEmpty()) {
+            throw new Exception("no series in the request");
+        }
+        return output;
+    }
+
+    // Scores every series of the batch on the worker pool and waits for all of them.
+    private List<List<Anomaly>> detect(List<TimeSeries> metrics, final Properties config) throws Exception {
+        List<Future<List<Anomaly>>> futures = new ArrayList<Future<List<Anomaly>>>();
+        try {
+            for (final TimeSeries ts : metrics) {
+                futures.add(workers.submit(new Callable<List<Anomaly>>() {
+                    @SuppressWarnings("unchecked")
+                    public List<Anomaly> call() throws Exception {
+                        ProcessableObject po = ProcessableObjectFactory.create(ts, config);
+                        StagedProcessable sp = (StagedProcessable) po;
+                        sp.train();
+                        sp.detect();
+                        return (List<Anomaly>) po.result();
+                    }
+                }));
+            }
+        } catch (RejectedExecutionException e) {
+            for (Future<List<Anomaly>> f : futures) {
+                f.cancel(true);
+            }
+            throw e;
+        }
+        List<List<Anomaly>> output = new ArrayList<List<Anomaly>>();
+        for (Future<List<Anomaly>> f : futures) {
+            output.add(f.get());
+        }
+        return output;
+    }
+
+    private static String toJson(List<TimeSeries> metrics, List<List<Anomaly>> anomalies) throws Exception {
+        JSONStringer json = new JSONStringer();
+        json.object().key("series").array();
+        for (int i = 0; i < metrics.size(); i++) {
+            json.object().key("name").value(metrics.get(i).meta.name).key("anomalies").array();
+            for (Anomaly a : anomalies.get(i)) {
+                for (Anomaly.Interval interval : a.intervals) {
+                    json.object()
+                        .key("model").value(a.modelName)
+                        .key("time").value(interval.utime)
+                        .key("actual").value(interval.actualVal)
+                        .key("expected").value(interval.expectedVal);
+                    if (interval.isAnomaly != null) {
+                        json.key("isAnomaly").value(interval.isAnomaly);
+                    }
+                    json.endObject();
+                }
+            }
+            json.endArray().endObject();
+        }
+        json.endArray().endObject();
+        return json.toString();
+    }
+
+    private String stats(Properties config) throws Exception {
+        JSONStringer json = new JSONStringer();
+        json.object();
+        synchronized (latencies) {
+            for (Map.Entry<String, LatencyRecorder> e : latencies.entrySet()) {
+                json.key(e.getKey()).object()
+                    .key("count").value(e.getValue().count())
+                    .key("p50").value(e.getValue().percentile(50))
+                    .key("p99").value(e.getValue().percentile(99))
+                    .endObject();
+            }
+        }
+        if (ForecastCache.isEnabled(config)) {
+            ForecastCache cache = ForecastCache.getInstance(config);
+            json.key("forecast_cache").object()
+                .key("hits").value(cache.getHits())
+                .key("disk_hits").value(cache.getDiskHits())
+                .key("misses").value(cache.getMisses())
+                .key("hit_rate").value(cache.getHitRate())
+                .key("size").value(cache.size())
+                .key("evictions").value(cache.getEvictions())
+                .endObject();
+        }
+        json.endObject();
+        return json.toString();
+    }
+
+    private static String error(String message) throws Exception {
+        return new JSONStringer().object().key("error").value(message).endObject().toString();
+    }
+
+    private static int respond(HttpExchange exchange, int code, String body) throws Exception {
+        byte[] bytes = body.getBytes("UTF-8");
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(code, bytes.length);
+        OutputStream os = exchange.getResponseBody();
+        os.write(bytes);
+        os.close();
+        return code;
+    }
+
+    private static String read(InputStream is) throws Exception {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        byte[] chunk = new byte[8192];
+        int n;
+        while ((n = is.read(chunk)) != -1) {
+            buffer.write(chunk, 0, n);
+        }
+        is.close();
+        return buffer.toString("UTF-8");
+    }
+
+    private static int getInt(Properties config, String key, int defaultValue) {
+        if (config.getProperty(key) == null) {
+            return defaultValue;
+        }
+        return new Integer(config.getProperty(key).trim());
+    }
+
+    // Records the latency of every request of an endpoint and answers 500 on failures.
+    private abstract class TimedHandler implements HttpHandler {
+        private final LatencyRecorder recorder = new LatencyRecorder(LATENCY_SAMPLES);
+
+        TimedHandler(String endpoint) {
+            synchronized (latencies) {
+                latencies.put(endpoint, recorder);
+            }
+        }
+
+        abstract int serve(HttpExchange exchange) throws Exception;
+
+        public void handle(HttpExchange exchange) {
+            long start = System.nanoTime();
+            try {
+                serve(exchange);
+            } catch (Exception e) {
+                e.printStackTrace();
+                try {
+                    respond(exchange, 500, error(String.valueOf(e.getMessage())));
+                } catch (Exception ignored) {
+                    exchange.close();
+                }
+            } finally {
+                recorder.record(System.nanoTime() - start);
+            }
+        }
+    }
+}
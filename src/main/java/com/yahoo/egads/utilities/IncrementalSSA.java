@@ -0,0 +1,217 @@
+/*
+ * Copyright 2016, Yahoo Inc.
+ * Copyrights licensed under the GPL License.
+ * See the accompanying LICENSE file for terms.
+ */
+
+/*
+ * Description: IncrementalSSA smooths a univariate series point by point with singular spectrum analysis, keeping
+ * the leading right singular vectors of its Hankel (trajectory) matrix up to date as new lagged vectors arrive
+ * instead of decomposing the whole matrix again.
+ *
+ * Details:
+ *      1. The initial series is filtered as SpectralMethods.mFilter() does with the FULL decomposition, which also
+ *         fixes the number of components the filtering method keeps.
+ *      2. Each new point completes a new row a of the Hankel matrix, the last windowSize values. With p = V' * a and
+ *         the residual e = a - V * p of norm rho, the row is folded into the decomposition through the SVD of the
+ *         small arrow matrix [[S, 0], [p', rho]] (Brand, "Fast low-rank modifications of the thin singular value
+ *         decomposition", 2006): V becomes [V, e / rho] times its right singular vectors, truncated to the rank.
+ *      3. The row is then projected on the subspace and its entries added to the anti-diagonal averages of the last
+ *         windowSize points, whose smoothed values are refined as the rows holding them arrive, the same way the
+ *         batch filter averages them.
+ *      4. V is orthonormalized again every windowSize points against the drift of rounding errors.
+ *
+ * A point costs O(windowSize * rank^2 + rank^3) instead of a full decomposition of the Hankel matrix. The subspace
+ * learnt from all the points so far differs from the one the batch filter would find over the same points, so the
+ * smoothed values after updates approximate the batch ones.
+ */
+
+package com.yahoo.egads.utilities;
+
+import java.io.Serializable;
+
+import org.apache.commons.math3.linear.MatrixUtils;
+import org.apache.commons.math3.linear.RealMatrix;
+import org.apache.commons.math3.linear.SingularValueDecomposition;
+
+import com.yahoo.egads.utilities.SpectralMethods.FilteringMethod;
+
+public class IncrementalSSA implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final int windowSize;
+    // The rank leading right singular vectors and singular values.
+    private double[][] v;
+    private double[] s;
+    // The last windowSize values, oldest first, with the sums and counts of their anti-diagonals so far.
+    private final double[] window;
+    private final double[] sums;
+    private final int[] counts;
+    private int updates;
+    // The smoothed values of the initial series, dropped after the first update.
+    private transient double[] initial;
+
+    /**
+     * Filters the initial values and keeps the decomposition for the updates.
+     * @param values The initial series, of at least windowSize values.
+     * @param windowSize The length of the rows of the Hankel matrix.
+     * @param method The filtering method that selects the components to keep.
+     * @param methodParameter The parameter of the filtering method.
+     */
+    public IncrementalSSA(double[] values, int windowSize, FilteringMethod method, double methodParameter) {
+        int n = values.length;
+        if (windowSize < 1 || n < windowSize) {
+            throw new IllegalArgumentException("The series of length " + n + " is shorter than the window "
+                            + windowSize);
+        }
+        this.windowSize = windowSize;
+        int k = n - windowSize + 1;
+
+        RealMatrix hankel = SpectralMethods.createHankelMatrix(MatrixUtils.createColumnRealMatrix(values), windowSize);
+        SingularValueDecomposition svd = new SingularValueDecomposition(hankel);
+        ExecutionBudget.check();
+        double[] singularValues = svd.getSingularValues();
+        int rank = SpectralMethods.selectComponents(singularValues, method, methodParameter) + 1;
+
+        RealMatrix mU = svd.getU();
+        RealMatrix mVT = svd.getVT();
+        double[][] u = new double[rank][];
+        v = new double[rank][];
+        s = new double[rank];
+        for (int r = 0; r < rank; ++r) {
+            u[r] = mU.getColumn(r);
+            v[r] = mVT.getRow(r);
+            s[r] = singularValues[r];
+        }
+        RealMatrix smoothed = SpectralMethods.averageReconstruction(u, v, s, windowSize);
+        initial = smoothed.getColumn(0);
+
+        window = new double[windowSize];
+        sums = new double[windowSize];
+        counts = new int[windowSize];
+        for (int j = 0; j < windowSize; ++j) {
+            int t = n - windowSize + j;
+            window[j] = values[t];
+            counts[j] = Math.min(t, k - 1) - Math.max(0, t - windowSize + 1) + 1;
+            sums[j] = initial[t] * counts[j];
+        }
+    }
+
+    // The smoothed values of the initial series.
+    public double[] getInitial() {
+        return initial;
+    }
+
+    public int getRank() {
+        return s.length;
+    }
+
+    public int getWindowSize() {
+        return windowSize;
+    }
+
+    /**
+     * Appends a value to the series.
+     * @param value The new value.
+     */
+    public void add(double value) {
+        initial = null;
+        int rank = s.length;
+        System.arraycopy(window, 1, window, 0, windowSize - 1);
+        System.arraycopy(sums, 1, sums, 0, windowSize - 1);
+        System.arraycopy(counts, 1, counts, 0, windowSize - 1);
+        window[windowSize - 1] = value;
+        sums[windowSize - 1] = 0;
+        counts[windowSize - 1] = 0;
+
+        // p = V' * a and the residual e = a - V * p.
+        double[] p = new double[rank];
+        double[] e = window.clone();
+        for (int r = 0; r < rank; ++r) {
+            p[r] = dot(v[r], window);
+            for (int j = 0; j < windowSize; ++j) {
+                e[j] -= p[r] * v[r][j];
+            }
+        }
+        double rho = Math.sqrt(dot(e, e));
+
+        RealMatrix arrow = MatrixUtils.createRealMatrix(rank + 1, rank + 1);
+        for (int r = 0; r < rank; ++r) {
+            arrow.setEntry(r, r, s[r]);
+            arrow.setEntry(rank, r, p[r]);
+        }
+        arrow.setEntry(rank, rank, rho);
+        SingularValueDecomposition svd = new SingularValueDecomposition(arrow);
+        RealMatrix rotation = svd.getV();
+
+        double[][] rotated = new double[rank][windowSize];
+        for (int c = 0; c < rank; ++c) {
+            double[] vc = rotated[c];
+            for (int r = 0; r < rank; ++r) {
+                double w = rotation.getEntry(r, c);
+                for (int j = 0; j < windowSize; ++j) {
+                    vc[j] += w * v[r][j];
+                }
+            }
+            if (rho > 0) {
+                double w = rotation.getEntry(rank, c) / rho;
+                for (int j = 0; j < windowSize; ++j) {
+                    vc[j] += w * e[j];
+                }
+            }
+            s[c] = svd.getSingularValues()[c];
+        }
+        v = rotated;
+        if (++updates % windowSize == 0) {
+            orthonormalize(v);
+        }
+
+        // The projection of the row on the subspace, averaged over the anti-diagonals.
+        for (int r = 0; r < rank; ++r) {
+            double pr = dot(v[r], window);
+            for (int j = 0; j < windowSize; ++j) {
+                sums[j] += pr * v[r][j];
+            }
+        }
+        for (int j = 0; j < windowSize; ++j) {
+            ++counts[j];
+        }
+    }
+
+    /**
+     * The smoothed value of one of the last windowSize points.
+     * @param age 0 for the last point, 1 for the one before and so on, less than windowSize.
+     */
+    public double getSmoothed(int age) {
+        int j = windowSize - 1 - age;
+        return sums[j] / counts[j];
+    }
+
+    private static double dot(double[] a, double[] b) {
+        double sum = 0;
+        for (int i = 0; i < a.length; ++i) {
+            sum += a[i] * b[i];
+        }
+        return sum;
+    }
+
+    // Modified Gram-Schmidt.
+    private static void orthonormalize(double[][] vectors) {
+        for (int c = 0; c < vectors.length; ++c) {
+            double[] vc = vectors[c];
+            for (int p = 0; p < c; ++p) {
+                double d = dot(vectors[p], vc);
+                for (int j = 0; j < vc.length; ++j) {
+                    vc[j] -= d * vectors[p][j];
+                }
+            }
+            double norm = Math.sqrt(dot(vc, vc));
+            if (norm > 0) {
+                for (int j = 0; j < vc.length; ++j) {
+                    vc[j] /= norm;
+                }
+            }
+        }
+    }
+}
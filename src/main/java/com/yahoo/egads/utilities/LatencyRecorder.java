@@ -0,0 +1,51 @@
+/*
+ * Copyright 2016, Yahoo Inc.
+ * Copyrights licensed under the GPL License.
+ * See the accompanying LICENSE file for terms.
+ */
+
+// Keeps the latencies of the most recent requests in a ring buffer
+// and reports their percentiles. Safe to use from several threads.
+
+package com.yahoo.egads.utilities;
+
+import java.util.Arrays;
+
+public class LatencyRecorder {
+
+    private final long[] samples;
+    private int next = 0;
+    private long count = 0;
+
+    public LatencyRecorder(int capacity) {
+        samples = new long[capacity];
+    }
+
+    // Records one latency in nanoseconds.
+    public synchronized void record(long nanos) {
+        samples[next] = nanos;
+        next = (next + 1) % samples.length;
+        count++;
+    }
+
+    // Total number of recorded latencies.
+    public synchronized long count() {
+        return count;
+    }
+
+    // Returns the given percentile (0-100) of the retained latencies in
+    // milliseconds, or 0 if nothing was recorded yet.
+    public double percentile(double p) {
+        long[] sorted;
+        synchronized (this) {
+            sorted = Arrays.copyOf(samples, (int) Math.min(count, samples.length));
+        }
+        if (sorted.length == 0) {
+            return 0;
+        }
+        Arrays.sort(sorted);
+        int index = (int) Math.ceil(p / 100.0 * sorted.length) - 1;
+        index = Math.max(0, Math.min(sorted.length - 1, index));
+        return sorted[index] / 1e6;
+    }
+}
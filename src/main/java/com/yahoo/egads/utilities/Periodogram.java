@@ -0,0 +1,167 @@
+/*
+ * Copyright 2016, Yahoo Inc.
+ * Copyrights licensed under the GPL License.
+ * See the accompanying LICENSE file for terms.
+ */
+
+/*
+ * Description: Periodogram finds the dominant periods of a series, the periodogram proposing the candidates and the
+ * autocorrelation validating them (as in AUTOPERIOD, Vlachos et al. 2005), both computed by FFT.
+ *
+ * Details:
+ *      1. The series is detrended by least squares and zero padded to twice its length, so that the inverse FFT of
+ *         its periodogram is the autocorrelation without wrap around. The candidates are taken from the periodogram
+ *         of the Hann windowed series instead, whose sidelobes are low enough not to pass for peaks.
+ *      2. The candidates are the local maxima of the periodogram above the level a peak of noise only exceeds with
+ *         probability SIGNIFICANCE, the noise power being estimated from the median of the whole periodogram, and
+ *         from the one of the octave on each side of the candidate.
+ *      3. A candidate only gives a frequency bin, i.e. a range of periods. Its period is the lag of the highest
+ *         autocorrelation in that range. The candidates whose range holds no positively correlated top of a hill of the
+ *         autocorrelation, e.g. the sidelobes of stronger peaks, are dropped.
+ *      4. The multiples of a shorter period are dropped unless they are clearly more autocorrelated than it, so that a
+ *         daily cycle does not also give 48, 72, ... while a weekly one (which repeats better than a day) is kept.
+ */
+
+package com.yahoo.egads.utilities;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+public class Periodogram {
+
+    // The probability that white noise has a peak above the significance level.
+    private static final double SIGNIFICANCE = 0.01;
+
+    /**
+     * The dominant periods of a series.
+     * @param values The values, at a regular step.
+     * @param max The maximum number of periods.
+     * @param minCycles The number of cycles the series covers at least, i.e. the periods are at most
+     *        values.length / minCycles.
+     * @return The periods in points, shortest first, empty if there is no significant one.
+     */
+    public static int[] periods(double[] values, int max, int minCycles) {
+        int n = values.length;
+        int maxLag = Math.min(n / Math.max(minCycles, 1), n - 2);
+        if (maxLag < 2 || max < 1) {
+            return new int[0];
+        }
+
+        // Least squares line.
+        double meanT = (n - 1) / 2.0;
+        double meanY = 0;
+        for (int t = 0; t < n; t++) {
+            meanY += values[t];
+        }
+        meanY /= n;
+        double stt = 0;
+        double sty = 0;
+        for (int t = 0; t < n; t++) {
+            stt += (t - meanT) * (t - meanT);
+            sty += (t - meanT) * (values[t] - meanY);
+        }
+        double slope = sty / stt;
+
+        // The periodogram of the Hann windowed series, whose sidelobes fall fast enough not to pass for peaks.
+        int size = FFT.size(2 * n);
+        double[] re = new double[size];
+        double[] im = new double[size];
+        for (int t = 0; t < n; t++) {
+            re[t] = (values[t] - meanY - slope * (t - meanT)) * (0.5 - 0.5 * Math.cos(2 * Math.PI * t / (n - 1)));
+        }
+        FFT.transform(re, im, false);
+        double[] power = new double[size];
+        for (int k = 0; k < size; k++) {
+            power[k] = re[k] * re[k] + im[k] * im[k];
+        }
+
+        // The autocorrelation of the series, the inverse transform of its own periodogram.
+        Arrays.fill(re, 0);
+        Arrays.fill(im, 0);
+        for (int t = 0; t < n; t++) {
+            re[t] = values[t] - meanY - slope * (t - meanT);
+        }
+        FFT.transform(re, im, false);
+        for (int k = 0; k < size; k++) {
+            re[k] = re[k] * re[k] + im[k] * im[k];
+            im[k] = 0;
+        }
+        FFT.transform(re, im, true);
+        if (!(re[0] > 0)) {
+            return new int[0];
+        }
+        // The unbiased autocorrelation, up to maxLag + 1 for the hills.
+        final double[] acf = new double[Math.min(maxLag + 2, n)];
+        for (int lag = 0; lag < acf.length; lag++) {
+            acf[lag] = re[lag] / re[0] * n / (n - lag);
+        }
+
+        // The power of noise is exponentially distributed, its mean is the median / ln(2). A candidate is above the
+        // level of the median of the whole periodogram, and of the one over the octave on each side of it, as the noise
+        // of real series is stronger at low frequencies.
+        int half = size / 2;
+        double level = (Math.log(n / 2.0) - Math.log(SIGNIFICANCE)) / Math.log(2);
+        double threshold = median(power, 1, half + 1) * level;
+        List<Integer> lags = new ArrayList<Integer>();
+        for (int k = 1; k < half; k++) {
+            if (power[k] <= threshold || power[k] < power[k - 1] || power[k] <= power[k + 1]
+                || power[k] <= median(power, Math.max(1, k / 2), Math.min(2 * k, half) + 1) * level) {
+                continue;
+            }
+            int lo = Math.max(2, (int) Math.floor((double) size / (k + 1)));
+            int hi = k == 1 ? maxLag : Math.min(maxLag, (int) Math.ceil((double) size / (k - 1)));
+            if (lo > hi) {
+                continue;
+            }
+            int lag = lo;
+            for (int l = lo + 1; l <= hi; l++) {
+                if (acf[l] > acf[lag]) {
+                    lag = l;
+                }
+            }
+            // The top of a hill, not the side of one whose top is out of the range.
+            if (acf[lag] > 0 && acf[lag] >= acf[lag - 1] && acf[lag] >= acf[lag + 1] && !lags.contains(lag)) {
+                lags.add(lag);
+            }
+        }
+
+        Collections.sort(lags);
+        double margin = 2 / Math.sqrt(n);
+        List<Integer> kept = new ArrayList<Integer>();
+        for (int lag : lags) {
+            boolean multiple = false;
+            for (int shorter : kept) {
+                if (lag % shorter == 0 && acf[lag] <= acf[shorter] + margin) {
+                    multiple = true;
+                    break;
+                }
+            }
+            if (!multiple) {
+                kept.add(lag);
+            }
+        }
+
+        // The most autocorrelated ones.
+        Collections.sort(kept, new Comparator<Integer>() {
+            public int compare(Integer a, Integer b) {
+                return Double.compare(acf[b], acf[a]);
+            }
+        });
+        int[] periods = new int[Math.min(max, kept.size())];
+        for (int i = 0; i < periods.length; i++) {
+            periods[i] = kept.get(i);
+        }
+        Arrays.sort(periods);
+        return periods;
+    }
+
+    // The median of a[from, to).
+    private static double median(double[] a, int from, int to) {
+        double[] sorted = Arrays.copyOfRange(a, from, to);
+        Arrays.sort(sorted);
+        return sorted[sorted.length / 2];
+    }
+}
@@ -0,0 +1,176 @@
+/*
+ * Copyright 2016, Yahoo Inc.
+ * Copyrights licensed under the GPL License.
+ * See the accompanying LICENSE file for terms.
+ */
+
+/*
+ * Description: RandomizedSVD computes the leading singular values and vectors of a matrix which it only accesses
+ * through products with vectors, following Halko, Martinsson and Tropp, "Finding structure with randomness" (2011).
+ *
+ * Details:
+ *      1. The matrix is multiplied by a block of 2 * rank + OVERSAMPLING Gaussian vectors and the result
+ *         orthonormalized, giving a basis Q that captures the leading column space. The generous oversampling keeps
+ *         the last requested triplets accurate when they are close to the noise floor of the spectrum.
+ *      2. Each power iteration multiplies the basis by the transpose and by the matrix again, which sharpens the decay
+ *         of the spectrum and so the accuracy of the basis when the singular values decay slowly.
+ *      3. The small matrix Q' * A is decomposed with the commons-math SVD and its left vectors mapped back through Q.
+ *      4. The random vectors come from a fixed seed, so the decomposition of a given matrix is reproducible.
+ *
+ * The cost is O((2 * powerIterations + 2) * (2 * rank + OVERSAMPLING)) products with the matrix, instead of the cubic
+ * cost of a full decomposition. The result is an approximation whose accuracy grows with the power iterations.
+ */
+
+package com.yahoo.egads.utilities;
+
+import java.util.Random;
+
+import org.apache.commons.math3.linear.MatrixUtils;
+import org.apache.commons.math3.linear.RealMatrix;
+import org.apache.commons.math3.linear.SingularValueDecomposition;
+
+public class RandomizedSVD {
+
+    // A matrix accessed through its products with vectors.
+    public interface Operator {
+        int getRowDimension();
+
+        int getColumnDimension();
+
+        // y = A * x
+        void operate(double[] x, double[] y);
+
+        // y = A' * x
+        void operateTranspose(double[] x, double[] y);
+    }
+
+    public static final int OVERSAMPLING = 10;
+    private static final long SEED = 42;
+
+    private final double[] singularValues;
+    private final double[][] u;
+    private final double[][] v;
+
+    /**
+     * Computes the leading singular triplets of the operator.
+     * @param a The operator to decompose.
+     * @param rank The number of singular triplets to compute, at most the smaller dimension of the operator.
+     * @param powerIterations The number of power iterations, 0 or more.
+     */
+    public RandomizedSVD(Operator a, int rank, int powerIterations) {
+        int rows = a.getRowDimension();
+        int columns = a.getColumnDimension();
+        int block = Math.min(2 * rank + OVERSAMPLING, Math.min(rows, columns));
+        rank = Math.min(rank, block);
+
+        Random random = new Random(SEED);
+        double[][] omega = new double[block][columns];
+        for (double[] o : omega) {
+            for (int j = 0; j < columns; ++j) {
+                o[j] = random.nextGaussian();
+            }
+        }
+
+        double[][] q = new double[block][rows];
+        double[][] z = new double[block][columns];
+        multiply(a, omega, q, false);
+        orthonormalize(q);
+        for (int it = 0; it < powerIterations; ++it) {
+            multiply(a, q, z, true);
+            orthonormalize(z);
+            multiply(a, z, q, false);
+            orthonormalize(q);
+        }
+
+        // B' = A' * Q is columns x block, B' = V * S * W' so that A ~ (Q * W) * S * V'.
+        multiply(a, q, z, true);
+        RealMatrix bt = MatrixUtils.createRealMatrix(columns, block);
+        for (int c = 0; c < block; ++c) {
+            bt.setColumn(c, z[c]);
+        }
+        SingularValueDecomposition svd = new SingularValueDecomposition(bt);
+        ExecutionBudget.check();
+        RealMatrix mV = svd.getU();
+        RealMatrix mW = svd.getV();
+        double[] s = svd.getSingularValues();
+
+        singularValues = new double[rank];
+        u = new double[rank][rows];
+        v = new double[rank][];
+        for (int i = 0; i < rank; ++i) {
+            singularValues[i] = s[i];
+            v[i] = mV.getColumn(i);
+            double[] ui = u[i];
+            for (int c = 0; c < block; ++c) {
+                double w = mW.getEntry(c, i);
+                double[] qc = q[c];
+                for (int t = 0; t < rows; ++t) {
+                    ui[t] += w * qc[t];
+                }
+            }
+        }
+    }
+
+    public int getRank() {
+        return singularValues.length;
+    }
+
+    // The singular values in decreasing order.
+    public double[] getSingularValues() {
+        return singularValues;
+    }
+
+    // The left singular vector of the i-th singular value.
+    public double[] getU(int i) {
+        return u[i];
+    }
+
+    // The right singular vector of the i-th singular value.
+    public double[] getV(int i) {
+        return v[i];
+    }
+
+    private static void multiply(Operator a, double[][] x, double[][] y, boolean transpose) {
+        for (int c = 0; c < x.length; ++c) {
+            ExecutionBudget.check();
+            if (transpose) {
+                a.operateTranspose(x[c], y[c]);
+            } else {
+                a.operate(x[c], y[c]);
+            }
+        }
+    }
+
+    // Modified Gram-Schmidt with a second pass for stability. Vectors in the span of the previous ones become 0.
+    private static void orthonormalize(double[][] vectors) {
+        for (int c = 0; c < vectors.length; ++c) {
+            double[] vc = vectors[c];
+            double norm0 = norm(vc);
+            for (int pass = 0; pass < 2; ++pass) {
+                for (int p = 0; p < c; ++p) {
+                    double[] vp = vectors[p];
+                    double dot = 0;
+                    for (int t = 0; t < vc.length; ++t) {
+                        dot += vp[t] * vc[t];
+                    }
+                    for (int t = 0; t < vc.length; ++t) {
+                        vc[t] -= dot * vp[t];
+                    }
+                }
+            }
+            double norm = norm(vc);
+            double scale = norm > 1e-12 * norm0 && norm > 0 ? 1 / norm : 0;
+            for (int t = 0; t < vc.length; ++t) {
+                vc[t] *= scale;
+            }
+        }
+    }
+
+    private static double norm(double[] x) {
+        double sum = 0;
+        for (double d : x) {
+            sum += d * d;
+        }
+        return Math.sqrt(sum);
+    }
+}
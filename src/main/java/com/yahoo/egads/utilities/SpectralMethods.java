@@ -9,7 +9,7 @@ package com.yahoo.egads.utilities;
 import java.util.Arrays;
 import java.util.Comparator;
 
-import org.apache.commons.lang.ArrayUtils;
+import org.apache.commons.math3.linear.Array2DRowRealMatrix;
 import org.apache.commons.math3.linear.RealMatrix;
 import org.apache.commons.math3.linear.MatrixUtils;
 import org.apache.commons.math3.linear.SingularValueDecomposition;
@@ -52,22 +52,19 @@ public class SpectralMethods {
         int n = data.getRowDimension();
         int m = data.getColumnDimension();
         int k = n - windowSize + 1;
-
-        RealMatrix res = MatrixUtils.createRealMatrix(k, m * windowSize);
-        double[] buffer = {};
-
-        for (int i = 0; i < n; ++i) {
-            double[] row = data.getRow(i);
-            buffer = ArrayUtils.addAll(buffer, row);
-
-            if (i >= windowSize - 1) {
-                RealMatrix mat = MatrixUtils.createRowRealMatrix(buffer);
-                res.setRowMatrix(i - windowSize + 1, mat);
-                buffer = ArrayUtils.subarray(buffer, m, buffer.length);
+        int width = m * windowSize;
+
+        // The i-th row of the Hankel matrix is the range [i * m, i * m + width) of the flattened series.
+        double[] values = flatten(data);
+        double[][] res = new double[k][];
+        for (int i = 0; i < k; ++i) {
+            if ((i & 1023) == 0) {
+                ExecutionBudget.check();
             }
+            res[i] = Arrays.copyOfRange(values, i * m, i * m + width);
         }
 
-        return res;
+        return new Array2DRowRealMatrix(res, false);
     }
 
     public static RealMatrix averageHankelMatrix(RealMatrix hankelMat, int windowSize) {
@@ -76,31 +73,95 @@ public class SpectralMethods {
         int m = hankelMat.getColumnDimension() / windowSize;
         int n = k + windowSize - 1;
 
-        RealMatrix result = MatrixUtils.createRealMatrix(n, m);
+        double[][] hankel = hankelMat instanceof Array2DRowRealMatrix ? ((Array2DRowRealMatrix) hankelMat).getDataRef()
+                        : hankelMat.getData();
+        double[][] result = new double[n][m];
 
         for (int t = 0; t < n; ++t) {
             int i = (t < windowSize) ? 0 : (t - windowSize + 1);
             int j = (t < windowSize) ? t : (windowSize - 1);
             int counter = 0;
+            double[] row = result[t];
 
             for (; i < k && j >= 0; ++i, --j, ++counter) {
+                double[] hankelRow = hankel[i];
                 for (int h = 0; h < m; ++h) {
-                    result.addToEntry(t, h, hankelMat.getEntry(i, j * m + h));
+                    row[h] += hankelRow[j * m + h];
                 }
             }
 
             for (int h = 0; h < m; ++h) {
-                result.setEntry(t, h, result.getEntry(t, h) / counter);
+                row[h] /= counter;
             }
         }
 
-        return result;
+        return new Array2DRowRealMatrix(result, false);
+    }
+
+    /**
+     * Averages the anti-diagonals of the truncated reconstruction sum_r s[r] * u[r] * v[r]' of a Hankel matrix without
+     * building it: each entry is summed over the components where it is averaged, in the order in which adding the
+     * rank-one matrices and averageHankelMatrix() would sum it, so the result is the same to the last bit in O(n * m)
+     * memory instead of O(n * m * windowSize).
+     */
+    static RealMatrix averageReconstruction(double[][] u, double[][] v, double[] s, int windowSize) {
+        int components = s.length;
+        int k = u[0].length;
+        int m = v[0].length / windowSize;
+        int n = k + windowSize - 1;
+        double[][] result = new double[n][m];
+
+        for (int t = 0; t < n; ++t) {
+            if ((t & 255) == 0) {
+                ExecutionBudget.check();
+            }
+            int i = (t < windowSize) ? 0 : (t - windowSize + 1);
+            int j = (t < windowSize) ? t : (windowSize - 1);
+            int counter = 0;
+            double[] row = result[t];
+
+            for (; i < k && j >= 0; ++i, --j, ++counter) {
+                for (int h = 0; h < m; ++h) {
+                    double entry = 0;
+                    for (int r = 0; r < components; ++r) {
+                        entry += (u[r][i] * v[r][j * m + h]) * s[r];
+                    }
+                    row[h] += entry;
+                }
+            }
+
+            for (int h = 0; h < m; ++h) {
+                row[h] /= counter;
+            }
+        }
+
+        return new Array2DRowRealMatrix(result, false);
+    }
+
+    // The rows of the data one after the other.
+    private static double[] flatten(RealMatrix data) {
+        int n = data.getRowDimension();
+        int m = data.getColumnDimension();
+        double[] values = new double[n * m];
+        for (int t = 0; t < n; ++t) {
+            for (int h = 0; h < m; ++h) {
+                values[t * m + h] = data.getEntry(t, h);
+            }
+        }
+        return values;
     }
 
     public enum FilteringMethod {
         K_GAP, VARIANCE, EXPLICIT, SMOOTHNESS, EIGEN_RATIO, GAP_RATIO
     }
 
+    public enum SvdMethod {
+        FULL, RANDOMIZED
+    }
+
+    // The number of singular triplets the randomized decomposition starts with for VARIANCE and K_GAP.
+    public static final int RANDOMIZED_INITIAL_RANK = 16;
+
     protected static double computeSmoothness(double[] variances) {
 
         double sum = 0;
@@ -118,18 +179,50 @@ public class SpectralMethods {
     }
 
     public static RealMatrix mFilter(RealMatrix data, int windowSize, FilteringMethod method, double methodParameter) {
+        return mFilter(data, windowSize, method, methodParameter, SvdMethod.FULL, 0);
+    }
 
-        int n = data.getRowDimension();
-        int m = data.getColumnDimension();
-        int k = n - windowSize + 1;
-        int i = 0, ind = 0;
-        double[] temp;
-        double sum = 0;
+    /**
+     * Filters the data through the SVD of its Hankel matrix with the given method. RANDOMIZED computes only the leading
+     * singular triplets for the VARIANCE, K_GAP and EXPLICIT methods, see mFilterRandomized(). The other methods need
+     * the whole spectrum and always use the FULL decomposition.
+     */
+    public static RealMatrix mFilter(RealMatrix data, int windowSize, FilteringMethod method, double methodParameter,
+                    SvdMethod svdMethod, int powerIterations) {
+        if (svdMethod == SvdMethod.RANDOMIZED
+                        && (method == FilteringMethod.VARIANCE || method == FilteringMethod.K_GAP
+                                        || method == FilteringMethod.EXPLICIT)) {
+            RealMatrix result = mFilterRandomized(data, windowSize, method, methodParameter, powerIterations);
+            if (result != null) {
+                return result;
+            }
+        }
 
         RealMatrix hankelMat = SpectralMethods.createHankelMatrix(data, windowSize);
+        ExecutionBudget.check();
         SingularValueDecomposition svd = new SingularValueDecomposition(hankelMat);
+        ExecutionBudget.check();
 
         double[] singularValues = svd.getSingularValues();
+        int ind = selectComponents(singularValues, method, methodParameter);
+
+        RealMatrix mU = svd.getU();
+        RealMatrix mVT = svd.getVT();
+        double[][] u = new double[ind + 1][];
+        double[][] v = new double[ind + 1][];
+        for (int i = 0; i <= ind; ++i) {
+            u[i] = mU.getColumn(i);
+            v[i] = mVT.getRow(i);
+        }
+
+        return averageReconstruction(u, v, Arrays.copyOf(singularValues, ind + 1), windowSize);
+    }
+
+    // Returns the index of the smallest singular value the method keeps.
+    static int selectComponents(double[] singularValues, FilteringMethod method, double methodParameter) {
+        int i = 0, ind = 0;
+        double[] temp;
+        double sum = 0;
 
         switch (method) {
             case VARIANCE:
@@ -272,22 +365,310 @@ public class SpectralMethods {
                 break;
         }
 
-        ind = Math.max(0, Math.min(ind, singularValues.length - 1));
-        RealMatrix truncatedHankelMatrix = MatrixUtils.createRealMatrix(k, m * windowSize);
-        RealMatrix mU = svd.getU();
-        RealMatrix mVT = svd.getVT();
+        return Math.max(0, Math.min(ind, singularValues.length - 1));
+    }
+
+    /**
+     * Filters the data from the leading singular triplets of its Hankel matrix only, computed by RandomizedSVD. The
+     * number of triplets starts at what EXPLICIT keeps, or RANDOMIZED_INITIAL_RANK for VARIANCE and K_GAP, and doubles
+     * until the leading singular values are enough to tell which ones the method keeps:
+     *      - VARIANCE once the kept variance is reached, the total variance being the squared Frobenius norm of the
+     *        Hankel matrix,
+     *      - K_GAP once the 'methodParameter' largest known eigen-gaps are larger than the smallest known singular
+     *        value, which bounds all the unknown gaps.
+     * The Hankel matrix is never built. Returns null when the rank grows too close to the size of the spectrum for the
+     * randomized decomposition to pay off, e.g. for K_GAP when the largest gaps are among the noise components. The
+     * result approximates the one of the full decomposition, closely for the components above the noise floor.
+     */
+    private static RealMatrix mFilterRandomized(RealMatrix data, int windowSize, FilteringMethod method,
+                    double methodParameter, int powerIterations) {
+        HankelOperator hankel = new HankelOperator(data, windowSize);
+        int size = Math.min(hankel.getRowDimension(), hankel.getColumnDimension());
+        int rank = RANDOMIZED_INITIAL_RANK;
+        if (method == FilteringMethod.EXPLICIT) {
+            rank = (int) Math.max(Math.min(methodParameter - 1, size - 1), 0) + 1;
+        }
+
+        while (2 * rank + RandomizedSVD.OVERSAMPLING <= size / 4) {
+            RandomizedSVD svd = new RandomizedSVD(hankel, rank, powerIterations);
+            int ind = selectLeadingComponents(svd.getSingularValues(), size, hankel.frobeniusNormSquared(), method,
+                            methodParameter);
+            if (ind >= 0) {
+                return hankel.average(svd, ind + 1);
+            }
+            rank *= 2;
+        }
+        return null;
+    }
+
+    // Returns the index of the smallest singular value the method keeps, or -1 if it may be past the known ones.
+    private static int selectLeadingComponents(double[] singularValues, int size, double frobeniusNormSquared,
+                    FilteringMethod method, double methodParameter) {
+        int r = singularValues.length;
+        switch (method) {
+            case EXPLICIT:
+                return (int) Math.max(Math.min(methodParameter - 1, size - 1), 0);
+
+            case VARIANCE:
+                // Keeps the components after the first one as long as their variance is within 'methodParameter'
+                // of the variance of all the components after the first one.
+                double rest = frobeniusNormSquared - singularValues[0] * singularValues[0];
+                if (rest <= 0) {
+                    return 0;
+                }
+                double cumsum = 0;
+                for (int i = 1; i < r; ++i) {
+                    cumsum += singularValues[i] * singularValues[i];
+                    if (cumsum > methodParameter * rest) {
+                        return i - 1;
+                    }
+                }
+                return -1;
+
+            case K_GAP:
+                int count = (int) methodParameter;
+                if (count <= 0) {
+                    return 0;
+                }
+                final double[] eigenGaps = new double[r - 1];
+                Integer[] index = new Integer[r - 1];
+                int larger = 0;
+                for (int i = 0; i < eigenGaps.length; ++i) {
+                    eigenGaps[i] = singularValues[i] - singularValues[i + 1];
+                    index[i] = i;
+                    if (eigenGaps[i] > singularValues[r - 1]) {
+                        ++larger;
+                    }
+                }
+                if (larger < count) {
+                    return -1;
+                }
+
+                Arrays.sort(index, new Comparator<Integer>() {
+                    @Override
+                    public int compare(Integer o1, Integer o2) {
+                        return Double.compare(eigenGaps[o1], eigenGaps[o2]);
+                    }
+                });
+
+                int maxIndex = 0;
+                for (int i = index.length - count; i < index.length; ++i) {
+                    if (index[i] > maxIndex) {
+                        maxIndex = index[i];
+                    }
+                }
+                return Math.min(maxIndex, size / 3);
+
+            default:
+                return -1;
+        }
+    }
+
+    /**
+     * The Hankel matrix of a series, never built: with the values of the series flattened row by row, each row of
+     * the Hankel matrix is a contiguous range of them. A product with the matrix or its transpose is then a
+     * cross-correlation of the flattened series with the vector, and the averaged anti-diagonals of a rank-one matrix
+     * u * v' the convolution of u with v. When the window is long enough for it to pay off, these are computed with
+     * FFTs in O(n * m * log(n * m)) rather than directly in O(n * m * windowSize).
+     */
+    static class HankelOperator implements RandomizedSVD.Operator {
+        // The ratio of the cost of one point of an FFT and log to one multiply-add of a direct product.
+        private static final int FFT_COST = 10;
+
+        private final double[] values;
+        private final int n;
+        private final int m;
+        private final int windowSize;
+        private final int k;
+        // The transform of the flattened series padded to a power of 2, null for direct products.
+        private final double[] spectrumRe;
+        private final double[] spectrumIm;
+
+        HankelOperator(RealMatrix data, int windowSize) {
+            this(data, windowSize, useFft(data.getRowDimension(), data.getColumnDimension(), windowSize));
+        }
+
+        HankelOperator(RealMatrix data, int windowSize, boolean fft) {
+            this.n = data.getRowDimension();
+            this.m = data.getColumnDimension();
+            this.windowSize = windowSize;
+            this.k = n - windowSize + 1;
+            this.values = flatten(data);
+            if (fft) {
+                spectrumRe = Arrays.copyOf(values, FFT.size(n * m));
+                spectrumIm = new double[spectrumRe.length];
+                FFT.transform(spectrumRe, spectrumIm, false);
+            } else {
+                spectrumRe = null;
+                spectrumIm = null;
+            }
+        }
+
+        // Whether a product through FFTs costs less than a direct product with the k x (windowSize * m) matrix.
+        static boolean useFft(int n, int m, int windowSize) {
+            long size = FFT.size(n * m);
+            long direct = (long) (n - windowSize + 1) * windowSize * m;
+            return direct > FFT_COST * size * Long.numberOfTrailingZeros(size);
+        }
+
+        @Override
+        public int getRowDimension() {
+            return k;
+        }
+
+        @Override
+        public int getColumnDimension() {
+            return windowSize * m;
+        }
+
+        @Override
+        public void operate(double[] x, double[] y) {
+            int width = windowSize * m;
+            if (spectrumRe != null) {
+                double[] r = correlate(x, width, 1);
+                for (int i = 0; i < k; ++i) {
+                    y[i] = r[i * m];
+                }
+                return;
+            }
+            for (int i = 0; i < k; ++i) {
+                double sum = 0;
+                int offset = i * m;
+                for (int c = 0; c < width; ++c) {
+                    sum += values[offset + c] * x[c];
+                }
+                y[i] = sum;
+            }
+        }
+
+        @Override
+        public void operateTranspose(double[] x, double[] y) {
+            int width = windowSize * m;
+            if (spectrumRe != null) {
+                System.arraycopy(correlate(x, k, m), 0, y, 0, width);
+                return;
+            }
+            Arrays.fill(y, 0, width, 0);
+            for (int i = 0; i < k; ++i) {
+                double xi = x[i];
+                int offset = i * m;
+                for (int c = 0; c < width; ++c) {
+                    y[c] += xi * values[offset + c];
+                }
+            }
+        }
+
+        // r[s] = sum_p values[s + p] * g[p] where g[p * stride] = x[p] for p < count and g is 0 elsewhere. The
+        // indices s + p stay below n * m, so the circular correlation of the padded transforms does not wrap.
+        private double[] correlate(double[] x, int count, int stride) {
+            int size = spectrumRe.length;
+            double[] re = new double[size];
+            double[] im = new double[size];
+            for (int p = 0; p < count; ++p) {
+                re[p * stride] = x[p];
+            }
+            FFT.transform(re, im, false);
+            for (int f = 0; f < size; ++f) {
+                double gr = re[f];
+                double gi = im[f];
+                re[f] = spectrumRe[f] * gr + spectrumIm[f] * gi;
+                im[f] = spectrumIm[f] * gr - spectrumRe[f] * gi;
+            }
+            FFT.transform(re, im, true);
+            return re;
+        }
+
+        // The number of Hankel entries holding the t-th row of the series.
+        private int count(int t) {
+            return Math.min(t, k - 1) - Math.max(0, t - windowSize + 1) + 1;
+        }
+
+        double frobeniusNormSquared() {
+            double sum = 0;
+            for (int t = 0; t < n; ++t) {
+                double row = 0;
+                for (int h = 0; h < m; ++h) {
+                    row += values[t * m + h] * values[t * m + h];
+                }
+                sum += count(t) * row;
+            }
+            return sum;
+        }
 
-        for (i = 0; i <= ind; ++i) {
-            truncatedHankelMatrix =
-                            truncatedHankelMatrix.add(mU.getColumnMatrix(i).multiply(mVT.getRowMatrix(i))
-                                            .scalarMultiply(singularValues[i]));
+        // Averages the anti-diagonals of the rank 'components' reconstruction of the Hankel matrix, without building it.
+        RealMatrix average(RandomizedSVD svd, int components) {
+            double[] sums = spectrumRe != null ? convolve(svd, components) : sum(svd, components);
+            double[][] result = new double[n][m];
+            for (int t = 0; t < n; ++t) {
+                int counter = count(t);
+                for (int h = 0; h < m; ++h) {
+                    result[t][h] = sums[t * m + h] / counter;
+                }
+            }
+            return new Array2DRowRealMatrix(result, false);
+        }
+
+        private double[] sum(RandomizedSVD svd, int components) {
+            int width = windowSize * m;
+            double[] sums = new double[n * m];
+            for (int r = 0; r < components; ++r) {
+                ExecutionBudget.check();
+                double[] u = svd.getU(r);
+                double[] v = svd.getV(r);
+                double s = svd.getSingularValues()[r];
+                for (int i = 0; i < k; ++i) {
+                    double a = s * u[i];
+                    int offset = i * m;
+                    for (int c = 0; c < width; ++c) {
+                        sums[offset + c] += a * v[c];
+                    }
+                }
+            }
+            return sums;
         }
 
-        return SpectralMethods.averageHankelMatrix(truncatedHankelMatrix, windowSize);
+        // sums[t * m + h] = sum_r s[r] * sum_i u[r][i] * v[r][(t - i) * m + h], the convolutions of the u's spread
+        // by m with the v's, added up in the frequency domain so that only one inverse transform is needed.
+        private double[] convolve(RandomizedSVD svd, int components) {
+            int size = spectrumRe.length;
+            int width = windowSize * m;
+            double[] sumRe = new double[size];
+            double[] sumIm = new double[size];
+            double[] uRe = new double[size];
+            double[] uIm = new double[size];
+            double[] vRe = new double[size];
+            double[] vIm = new double[size];
+            for (int r = 0; r < components; ++r) {
+                ExecutionBudget.check();
+                double[] u = svd.getU(r);
+                double s = svd.getSingularValues()[r];
+                Arrays.fill(uRe, 0);
+                Arrays.fill(uIm, 0);
+                for (int i = 0; i < k; ++i) {
+                    uRe[i * m] = s * u[i];
+                }
+                Arrays.fill(vIm, 0);
+                System.arraycopy(svd.getV(r), 0, vRe, 0, width);
+                Arrays.fill(vRe, width, size, 0);
+                FFT.transform(uRe, uIm, false);
+                FFT.transform(vRe, vIm, false);
+                for (int f = 0; f < size; ++f) {
+                    sumRe[f] += uRe[f] * vRe[f] - uIm[f] * vIm[f];
+                    sumIm[f] += uRe[f] * vIm[f] + uIm[f] * vRe[f];
+                }
+            }
+            FFT.transform(sumRe, sumIm, true);
+            return sumRe;
+        }
     }
 
     public static TimeSeries.DataSequence mFilter(TimeSeries.DataSequence data, int windowSize, FilteringMethod method,
                     double methodParameter) {
+        return mFilter(data, windowSize, method, methodParameter, SvdMethod.FULL, 0);
+    }
+
+    public static TimeSeries.DataSequence mFilter(TimeSeries.DataSequence data, int windowSize, FilteringMethod method,
+                    double methodParameter, SvdMethod svdMethod, int powerIterations) {
 
         TimeSeries.DataSequence result = new TimeSeries.DataSequence();
         RealMatrix dataMat = MatrixUtils.createRealMatrix(data.size(), 1);
@@ -300,7 +681,8 @@ public class SpectralMethods {
             result.add(eCopy);
         }
 
-        RealMatrix resultMat = SpectralMethods.mFilter(dataMat, windowSize, method, methodParameter);
+        RealMatrix resultMat =
+                        SpectralMethods.mFilter(dataMat, windowSize, method, methodParameter, svdMethod, powerIterations);
 
         i = 0;
         for (TimeSeries.Entry e : result) {
@@ -8,8 +8,7 @@ package com.yahoo.egads.utilities;
 
 // Class that implements EGADS STDIN input processor.
 
-import com.yahoo.egads.control.ProcessableObject;
-import com.yahoo.egads.control.ProcessableObjectFactory;
+import com.yahoo.egads.control.ProcessingPipeline;
 import java.util.Properties;
 import java.io.*;
 import java.util.ArrayList;
@@ -24,20 +23,25 @@ public class StdinProcessor implements InputProcessor {
         if (p.getProperty("AGGREGATION") != null) {
           aggr = new Integer(p.getProperty("AGGREGATION"));
         }
+        // Parsing the next line overlaps with the processing of the previous ones.
+        ProcessingPipeline pipeline = new ProcessingPipeline(p);
         while ((s = in.readLine()) != null && s.length() != 0) {
             // Parse the time-series.
             ArrayList<TimeSeries> metrics = createTimeSeries(s, aggr);
             for (TimeSeries ts : metrics) {
-                ProcessableObject po = ProcessableObjectFactory.create(ts, p);
-                po.process();
+                pipeline.submit(ts);
             }
         }
+        pipeline.close();
+        if (p.getProperty("SERIES_TIME_BUDGET") != null) {
+            System.err.println(pipeline.getSummary());
+        }
     }
     
     
     // Format of the time-series: meta1\tmeta\2{(2014120205,0),(2014122207,1)}\t{(2014120205,0),(2014122207,0)}...
     // Creates a time-series from a file.
-    private static ArrayList<TimeSeries> createTimeSeries(String s, Integer aggr) throws Exception {
+    static ArrayList<TimeSeries> createTimeSeries(String s, Integer aggr) throws Exception {
         ArrayList<TimeSeries> output = new ArrayList<TimeSeries>();
         String[] tokens = s.split("\t");
         String meta = "meta";
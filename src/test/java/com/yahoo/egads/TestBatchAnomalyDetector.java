@@ -0,0 +1,89 @@
+/*
+ * Copyright 2016, Yahoo Inc.
+ * Copyrights licensed under the GPL License.
+ * See the accompanying LICENSE file for terms.
+ */
+
+package com.yahoo.egads;
+
+import com.yahoo.egads.control.AnomalyDetector;
+import com.yahoo.egads.control.BatchAnomalyDetector;
+import com.yahoo.egads.data.Anomaly;
+import com.yahoo.egads.data.TimeSeries;
+import com.yahoo.egads.models.adm.KSigmaModel;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.Random;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+// Tests that the batch detection finds the same anomalies as KSigmaModel on every series.
+public class TestBatchAnomalyDetector {
+
+    @Test
+    public void testSameAnomaliesAsKSigma() throws Exception {
+        InputStream is = new FileInputStream("src/test/resources/sample_config.ini");
+        Properties p = new Properties();
+        p.load(is);
+        p.setProperty("AD_MODEL", "KSigmaModel");
+        p.setProperty("THRESHOLD", "mape#25");
+
+        int n = 200;
+        int w = 64;
+        Random random = new Random(7);
+        long[] times = new long[n];
+        String[] names = new String[w];
+        List<TimeSeries.DataSequence> observed = new ArrayList<TimeSeries.DataSequence>();
+        List<TimeSeries.DataSequence> expected = new ArrayList<TimeSeries.DataSequence>();
+        for (int t = 0; t < n; t++) {
+            times[t] = 1400000000L + t * 3600L;
+        }
+        for (int j = 0; j < w; j++) {
+            names[j] = "host-" + j;
+            TimeSeries.DataSequence o = new TimeSeries.DataSequence();
+            TimeSeries.DataSequence e = new TimeSeries.DataSequence();
+            for (int t = 0; t < n; t++) {
+                float base = (float) (50 + j + 10 * Math.sin(t / 4.0));
+                float value = base + (float) random.nextGaussian();
+                if (random.nextInt(50) == 0) {
+                    value += 30;
+                }
+                if (j == 0) {
+                    value = base;
+                }
+                o.add(new TimeSeries.Entry(times[t], value));
+                e.add(new TimeSeries.Entry(times[t], base));
+            }
+            observed.add(o);
+            expected.add(e);
+        }
+
+        float[][] observedMatrix = BatchAnomalyDetector.toMatrix(observed);
+        float[][] expectedMatrix = BatchAnomalyDetector.toMatrix(expected);
+        BatchAnomalyDetector batch = new BatchAnomalyDetector(p);
+        batch.tune(observedMatrix, expectedMatrix);
+        ArrayList<Anomaly> anomalies = batch.detect(names, times, observedMatrix, expectedMatrix);
+        Assert.assertEquals(anomalies.size(), w);
+
+        int total = 0;
+        for (int j = 0; j < w; j++) {
+            TimeSeries ts = new TimeSeries();
+            ts.meta.name = names[j];
+            ts.meta.fileName = names[j];
+            ts.data = observed.get(j);
+            AnomalyDetector ad = new AnomalyDetector(ts, -1);
+            ad.addModel(new KSigmaModel(p));
+            ad.tune(expected.get(j));
+            Anomaly single = ad.detect(ts, expected.get(j)).get(0);
+
+            Assert.assertEquals(anomalies.get(j).toPerlString(), single.toPerlString());
+            Assert.assertEquals(anomalies.get(j).intervals, single.intervals);
+            total += single.intervals.size();
+        }
+        Assert.assertTrue(total > 0);
+        Assert.assertTrue(anomalies.get(0).intervals.isEmpty());
+    }
+}
@@ -0,0 +1,148 @@
+/*
+ * Copyright 2016, Yahoo Inc.
+ * Copyrights licensed under the GPL License.
+ * See the accompanying LICENSE file for terms.
+ */
+
+package com.yahoo.egads;
+
+import com.yahoo.egads.control.ModelCheckpoint;
+import com.yahoo.egads.control.ProcessableObjectFactory;
+import com.yahoo.egads.control.StagedProcessable;
+import com.yahoo.egads.data.Anomaly;
+import com.yahoo.egads.data.FileModelStore;
+import com.yahoo.egads.data.ModelCache;
+import com.yahoo.egads.data.TimeSeries;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+// Tests the detection on the tail of a metric (OP_TYPE DETECT_TAIL).
+public class TestDetectTail {
+
+    private static List<Anomaly> run(TimeSeries ts, Properties p) throws Exception {
+        StagedProcessable po = (StagedProcessable) ProcessableObjectFactory.create(ts, p);
+        po.train();
+        po.detect();
+        @SuppressWarnings("unchecked")
+        List<Anomaly> result = (List<Anomaly>) po.result();
+        return result;
+    }
+
+    private static List<Long> times(List<Anomaly> anomalies) {
+        List<Long> output = new ArrayList<Long>();
+        for (Anomaly a : anomalies) {
+            for (Anomaly.Interval i : a.intervals) {
+                output.add(i.utime);
+            }
+        }
+        return output;
+    }
+
+    private static TimeSeries head(TimeSeries ts, int n) throws Exception {
+        TimeSeries output = new TimeSeries();
+        output.meta = ts.meta;
+        for (int i = 0; i < n; i++) {
+            output.append(ts.time(i), ts.value(i));
+        }
+        return output;
+    }
+
+    @Test
+    public void testTailOfTimeForecastingModel() throws Exception {
+        long start = 1477872000;
+        Properties p = new Properties();
+        p.setProperty("OP_TYPE", "DETECT_TAIL");
+        p.setProperty("TS_MODEL", "OlympicModel2");
+        p.setProperty("AD_MODEL", "ExtremeLowDensityModel");
+        p.setProperty("MAX_ANOMALY_TIME_AGO", "999999999");
+        p.setProperty("DETECTION_WINDOW_START_TIME", "0");
+        p.setProperty("THRESHOLD", "mapee#1000000,mae#100,smape#1000000,mape#1000000,mase#1000000");
+        p.setProperty("MODEL_CACHE_SIZE", "10");
+        p.setProperty("WINDOW_SIZE", "1");
+        p.setProperty("WINDOW_SIZE_UNITS", "DAYS");
+        p.setProperty("INTERVAL", "1");
+        p.setProperty("INTERVAL_UNITS", "HOURS");
+        p.setProperty("WINDOW_DISTANCE", "1");
+        p.setProperty("WINDOW_DISTANCE_UNITS", "DAYS");
+        p.setProperty("HISTORICAL_WINDOWS", "3");
+        p.setProperty("FUTURE_WINDOWS", "5");
+        p.setProperty("MODEL_START", Long.toString(start + 3 * 86400));
+
+        // 8 days of hourly data with a daily pattern and a spike on the last day.
+        TimeSeries ts = new TimeSeries();
+        ts.meta.name = "TestDetectTail";
+        ts.meta.fileName = "TestDetectTail";
+        for (int h = 0; h < 8 * 24; h++) {
+            ts.append(start + h * 3600, (h == 7 * 24 + 20) ? 1000 : 10 + h % 24);
+        }
+        long spike = start + (7 * 24 + 20) * 3600;
+
+        // The first run trains the models on the first 7.5 days.
+        List<Anomaly> first = run(head(ts, 7 * 24 + 12), p);
+        Assert.assertFalse(times(first).contains(spike));
+        String tag = ModelCache.tag(ts.meta.name, p) + "_checkpoint";
+        ModelCheckpoint checkpoint = (ModelCheckpoint) ModelCache.getInstance(p).retrieveModel(tag);
+        long trainedAt = checkpoint.trainedAt;
+        Assert.assertEquals(checkpoint.lastScored, ts.time(7 * 24 + 11));
+
+        // The second run only forecasts and scores the last 12 hours.
+        List<Long> second = times(run(ts, p));
+        Assert.assertEquals(second.size(), 1);
+        Assert.assertEquals(second.get(0).longValue(), spike);
+        checkpoint = (ModelCheckpoint) ModelCache.getInstance(p).retrieveModel(tag);
+        Assert.assertEquals(checkpoint.trainedAt, trainedAt);
+        Assert.assertEquals(checkpoint.lastScored, ts.lastTime());
+
+        // Nothing new to score.
+        Assert.assertTrue(times(run(ts, p)).isEmpty());
+
+        // The models are retrained once RETRAIN_INTERVAL elapsed.
+        p.setProperty("RETRAIN_INTERVAL", "3600");
+        TimeSeries later = head(ts, ts.size());
+        later.append(ts.lastTime() + 3600, 10);
+        later.append(ts.lastTime() + 7200, 11);
+        String retrainTag = ModelCache.tag(ts.meta.name, p) + "_checkpoint";
+        run(head(ts, 7 * 24 + 12), p);
+        run(later, p);
+        checkpoint = (ModelCheckpoint) ModelCache.getInstance(p).retrieveModel(retrainTag);
+        Assert.assertEquals(checkpoint.trainedAt, later.lastTime());
+    }
+
+    @Test
+    public void testTailOfRangeForecastingModel() throws Exception {
+        InputStream is = new FileInputStream("src/test/resources/sample_config.ini");
+        Properties p = new Properties();
+        p.load(is);
+        ArrayList<TimeSeries> metrics = com.yahoo.egads.utilities.FileUtils
+                .createTimeSeries("src/test/resources/sample_input.csv", p);
+        TimeSeries ts = metrics.get(0);
+        int split = ts.size() - 48;
+
+        // OlympicModel only replays its training range, so it is retrained on the
+        // whole metric on every run and only the anomalies of the new points are reported.
+        List<Long> expected = new ArrayList<Long>();
+        for (Long t : times(run(ts, p))) {
+            if (t > ts.time(split - 1)) {
+                expected.add(t);
+            }
+        }
+        Assert.assertFalse(expected.isEmpty());
+
+        p.setProperty("OP_TYPE", "DETECT_TAIL");
+        p.setProperty("MODEL_STORE_PATH", Files.createTempDirectory("egads-tail").toString());
+        // Not retrained for the interval, only because the model cannot forecast the tail.
+        p.setProperty("RETRAIN_INTERVAL", "1000000000");
+        FileModelStore store = new FileModelStore(p.getProperty("MODEL_STORE_PATH"));
+        String tag = ModelCache.tag(ts.meta.name, p) + "_checkpoint";
+        run(head(ts, split), p);
+        Assert.assertEquals(((ModelCheckpoint) store.retrieveModel(tag)).trainedAt, ts.time(split - 1));
+        Assert.assertEquals(times(run(ts, p)), expected);
+        Assert.assertEquals(((ModelCheckpoint) store.retrieveModel(tag)).trainedAt, ts.lastTime());
+    }
+}
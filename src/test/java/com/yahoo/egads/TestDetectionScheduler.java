@@ -0,0 +1,174 @@
+/*
+ * Copyright 2016, Yahoo Inc.
+ * Copyrights licensed under the GPL License.
+ * See the accompanying LICENSE file for terms.
+ */
+
+package com.yahoo.egads;
+
+import com.yahoo.egads.control.DetectionScheduler;
+import com.yahoo.egads.data.Anomaly;
+import com.yahoo.egads.data.TimeSeries;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+// Tests the scheduling of detections and retrains.
+public class TestDetectionScheduler {
+
+    private static final long START = 1477872000;
+
+    private static Properties config() {
+        Properties p = new Properties();
+        p.setProperty("TS_MODEL", "OlympicModel2");
+        p.setProperty("AD_MODEL", "ExtremeLowDensityModel");
+        p.setProperty("MAX_ANOMALY_TIME_AGO", "999999999");
+        p.setProperty("DETECTION_WINDOW_START_TIME", "0");
+        p.setProperty("THRESHOLD", "mapee#1000000,mae#100,smape#1000000,mape#1000000,mase#1000000");
+        p.setProperty("WINDOW_SIZE", "1");
+        p.setProperty("WINDOW_SIZE_UNITS", "DAYS");
+        p.setProperty("INTERVAL", "1");
+        p.setProperty("INTERVAL_UNITS", "HOURS");
+        p.setProperty("WINDOW_DISTANCE", "1");
+        p.setProperty("WINDOW_DISTANCE_UNITS", "DAYS");
+        p.setProperty("HISTORICAL_WINDOWS", "3");
+        p.setProperty("FUTURE_WINDOWS", "5");
+        p.setProperty("MODEL_START", Long.toString(START + 3 * 86400));
+        return p;
+    }
+
+    // Hourly data with a daily pattern and a spike at hour 188.
+    private static TimeSeries metric(int hours) throws Exception {
+        TimeSeries ts = new TimeSeries();
+        ts.meta.name = "TestDetectionScheduler";
+        ts.meta.fileName = "TestDetectionScheduler";
+        for (int h = 0; h < hours; h++) {
+            ts.append(START + h * 3600, (h == 7 * 24 + 20) ? 1000 : 10 + h % 24);
+        }
+        return ts;
+    }
+
+    private static List<Long> times(List<Anomaly> anomalies) {
+        List<Long> output = new ArrayList<Long>();
+        for (Anomaly a : anomalies) {
+            for (Anomaly.Interval i : a.intervals) {
+                output.add(i.utime);
+            }
+        }
+        return output;
+    }
+
+    // Waits for a training of the metric after the given one.
+    private static long awaitTraining(DetectionScheduler scheduler, String name, long trained) throws Exception {
+        long deadline = System.currentTimeMillis() + 10000;
+        while (scheduler.getLastTrained(name) == trained && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        Assert.assertTrue(scheduler.getLastTrained(name) > trained);
+        return scheduler.getLastTrained(name);
+    }
+
+    @Test
+    public void testDetectAndRetrain() throws Exception {
+        Properties p = config();
+        p.setProperty("RETRAIN_INTERVAL", "0");
+        DetectionScheduler scheduler = new DetectionScheduler(p);
+        String name = "TestDetectionScheduler";
+        try {
+            // The first detection is not ready, it queues the training and scores nothing.
+            TimeSeries head = metric(7 * 24 + 12);
+            Assert.assertTrue(scheduler.detect(head).get().isEmpty());
+            Assert.assertEquals(scheduler.getLastScored(name), Long.MIN_VALUE);
+            long trained = awaitTraining(scheduler, name, 0);
+
+            Assert.assertTrue(times(scheduler.detect(head).get()).isEmpty());
+            Assert.assertEquals(scheduler.getLastScored(name), head.lastTime());
+            trained = awaitTraining(scheduler, name, trained);
+
+            // The next one scores the new points and queues a retrain.
+            Thread.sleep(5);
+            TimeSeries full = metric(8 * 24);
+            List<Long> anomalies = times(scheduler.detect(full).get());
+            Assert.assertEquals(anomalies.size(), 1);
+            Assert.assertEquals(anomalies.get(0).longValue(), START + (7 * 24 + 20) * 3600);
+            Assert.assertEquals(scheduler.getLastScored(name), full.lastTime());
+            awaitTraining(scheduler, name, trained);
+
+            // Nothing left to score.
+            Assert.assertTrue(times(scheduler.detect(full).get()).isEmpty());
+        } finally {
+            scheduler.shutdown();
+        }
+    }
+
+    @Test
+    public void testReplayModel() throws Exception {
+        Properties p = config();
+        p.setProperty("TS_MODEL", "OlympicModel");
+        p.setProperty("BASE_WINDOWS", "24");
+        p.setProperty("TIME_SHIFTS", "0");
+        p.setProperty("NUM_WEEKS", "3");
+        p.setProperty("NUM_TO_DROP", "0");
+        p.setProperty("RETRAIN_INTERVAL", "1000000000");
+        DetectionScheduler scheduler = new DetectionScheduler(p);
+        String name = "TestDetectionScheduler";
+        try {
+            TimeSeries head = metric(7 * 24 + 12);
+            Assert.assertTrue(scheduler.detect(head).get().isEmpty());
+            long trained = awaitTraining(scheduler, name, 0);
+
+            // Only the training range is scored, from the forecast replayed at training time,
+            // and the points after it queue a retrain.
+            TimeSeries full = metric(8 * 24);
+            Assert.assertTrue(times(scheduler.detect(full).get()).isEmpty());
+            Assert.assertEquals(scheduler.getLastScored(name), head.lastTime());
+            awaitTraining(scheduler, name, trained);
+
+            List<Long> anomalies = times(scheduler.detect(full).get());
+            Assert.assertEquals(anomalies.size(), 1);
+            Assert.assertEquals(anomalies.get(0).longValue(), START + (7 * 24 + 20) * 3600);
+            Assert.assertEquals(scheduler.getLastScored(name), full.lastTime());
+        } finally {
+            scheduler.shutdown();
+        }
+    }
+
+    @Test
+    public void testScheduledDetection() throws Exception {
+        DetectionScheduler scheduler = new DetectionScheduler(config());
+        final CountDownLatch calls = new CountDownLatch(1);
+        final List<Integer> sizes = new ArrayList<Integer>();
+        try {
+            ScheduledFuture<?> f = scheduler.scheduleDetection(new Callable<TimeSeries>() {
+                public TimeSeries call() throws Exception {
+                    return metric(8 * 24);
+                }
+            }, 1, new DetectionScheduler.AnomalyListener() {
+                public void onAnomalies(TimeSeries metric, List<Anomaly> anomalies) {
+                    sizes.add(times(anomalies).size());
+                    // One more detection after the one reporting the spike.
+                    if (sizes.size() >= 2 && sizes.get(sizes.size() - 2) > 0) {
+                        calls.countDown();
+                    }
+                }
+            });
+            Assert.assertTrue(calls.await(10, TimeUnit.SECONDS));
+            f.cancel(false);
+            // The first detection is not ready, then the spike is reported once.
+            Assert.assertEquals(sizes.get(0).intValue(), 0);
+            int reported = 0;
+            for (int size : sizes) {
+                reported += size;
+            }
+            Assert.assertEquals(reported, 1);
+        } finally {
+            scheduler.shutdown();
+        }
+    }
+}
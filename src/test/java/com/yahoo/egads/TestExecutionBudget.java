@@ -0,0 +1,127 @@
+/*
+ * Copyright 2016, Yahoo Inc.
+ * Copyrights licensed under the GPL License.
+ * See the accompanying LICENSE file for terms.
+ */
+
+package com.yahoo.egads;
+
+import com.yahoo.egads.control.PipelineStage;
+import com.yahoo.egads.control.ProcessableObject;
+import com.yahoo.egads.control.ProcessingPipeline;
+import com.yahoo.egads.control.RunSummary;
+import com.yahoo.egads.data.Anomaly;
+import com.yahoo.egads.data.TimeSeries;
+import com.yahoo.egads.models.adm.DBScanModel;
+import com.yahoo.egads.utilities.BudgetExceededException;
+import com.yahoo.egads.utilities.ExecutionBudget;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+// Tests the per time-series time budgets.
+public class TestExecutionBudget {
+
+    @Test
+    public void testCheck() throws Exception {
+        ExecutionBudget.check();
+        ExecutionBudget.start(1);
+        Thread.sleep(5);
+        try {
+            ExecutionBudget.check();
+            Assert.fail("The budget was not enforced.");
+        } catch (BudgetExceededException e) {
+            // Expected.
+        } finally {
+            ExecutionBudget.clear();
+        }
+        Assert.assertFalse(ExecutionBudget.isActive());
+        ExecutionBudget.check();
+    }
+
+    @Test
+    public void testDBScanTimesOut() throws Exception {
+        TimeSeries ts = longSeries("long", 20000);
+        DBScanModel model = new DBScanModel(config());
+        ExecutionBudget.start(10);
+        long start = System.currentTimeMillis();
+        try {
+            model.tune(ts.data, ts.data);
+            Assert.fail("The tuning was not aborted.");
+        } catch (BudgetExceededException e) {
+            Assert.assertTrue(System.currentTimeMillis() - start < 1000);
+        } finally {
+            ExecutionBudget.clear();
+        }
+    }
+
+    @Test
+    public void testFallbacks() throws Exception {
+        Properties p = config();
+        p.setProperty("SERIES_TIME_BUDGET", "300");
+
+        List<String> models = run(p, longSeries("long", 20000), longSeries("short", 50));
+        Assert.assertEquals(models, Collections.singletonList("DBScanModel"));
+
+        p.setProperty("BUDGET_FALLBACK", "NULL_MODEL");
+        models = run(p, longSeries("long", 20000));
+        Assert.assertEquals(models, Collections.singletonList("SimpleThresholdModel"));
+    }
+
+    // A time-series timing out while it is trained is scored once, by the detect stage.
+    @Test
+    public void testFallbackInTrainStage() throws Exception {
+        Properties p = config();
+        p.setProperty("TS_MODEL", "OlympicModel");
+        p.setProperty("SERIES_TIME_BUDGET", "1");
+        p.setProperty("BUDGET_FALLBACK", "NULL_MODEL");
+        List<String> models = run(p, longSeries("long", 200000));
+        Assert.assertEquals(models, Collections.singletonList("SimpleThresholdModel"));
+    }
+
+    private static List<String> run(Properties p, TimeSeries... metrics) throws Exception {
+        final List<String> models = Collections.synchronizedList(new ArrayList<String>());
+        ProcessingPipeline pipeline = new ProcessingPipeline(p,
+            new PipelineStage.Handler<ProcessableObject, ProcessableObject>() {
+                @SuppressWarnings("unchecked")
+                public ProcessableObject handle(ProcessableObject po) throws Exception {
+                    for (Anomaly a : (List<Anomaly>) po.result()) {
+                        models.add(a.modelName);
+                    }
+                    return null;
+                }
+            });
+        for (TimeSeries ts : metrics) {
+            pipeline.submit(ts);
+        }
+        pipeline.close();
+
+        RunSummary summary = pipeline.getSummary();
+        Assert.assertEquals(summary.getTimedOut(), Collections.singletonList("long"));
+        Assert.assertEquals(summary.getProcessed(), metrics.length - (p.getProperty("BUDGET_FALLBACK") == null ? 1 : 0));
+        return models;
+    }
+
+    private static Properties config() throws Exception {
+        InputStream is = new FileInputStream("src/test/resources/sample_config.ini");
+        Properties p = new Properties();
+        p.load(is);
+        p.setProperty("TS_MODEL", "NullModel");
+        p.setProperty("AD_MODEL", "DBScanModel");
+        return p;
+    }
+
+    private static TimeSeries longSeries(String name, int n) throws Exception {
+        TimeSeries ts = new TimeSeries();
+        ts.meta.name = name;
+        for (int i = 0; i < n; i++) {
+            ts.append(1400000000L + i * 3600L, (float) (100 + 10 * Math.sin(i / 5.0) + (i % 7)));
+        }
+        return ts;
+    }
+}
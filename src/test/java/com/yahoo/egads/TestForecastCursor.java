@@ -0,0 +1,139 @@
+/*
+ * Copyright 2016, Yahoo Inc.
+ * Copyrights licensed under the GPL License.
+ * See the accompanying LICENSE file for terms.
+ */
+
+package com.yahoo.egads;
+
+import com.yahoo.egads.control.ForecastCursor;
+import com.yahoo.egads.control.ModelAdapter;
+import com.yahoo.egads.data.TimeSeries;
+import com.yahoo.egads.models.tsmm.NaiveForecastingModel;
+import com.yahoo.egads.models.tsmm.NullModel;
+import com.yahoo.egads.models.tsmm.OlympicModel;
+import com.yahoo.egads.models.tsmm.TimeSeriesModel;
+import com.yahoo.egads.models.tsmm.TripleExponentialSmoothingModel;
+import java.io.FileInputStream;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+// Tests that the forecasts streamed by chunks are the ones of a single prediction of the whole range.
+public class TestForecastCursor {
+
+    private static Properties config() throws Exception {
+        Properties p = new Properties();
+        p.load(new FileInputStream("src/test/resources/sample_config.ini"));
+        return p;
+    }
+
+    private static TimeSeries metric(Properties p) throws Exception {
+        return com.yahoo.egads.utilities.FileUtils.createTimeSeries("src/test/resources/sample_input.csv", p).get(0);
+    }
+
+    // Reads the whole cursor in chunks of the given length and compares it with the expected sequence.
+    private static void compare(ForecastCursor cursor, TimeSeries.DataSequence expected, int length)
+                    throws Exception {
+        Assert.assertEquals(cursor.size(), expected.size());
+        long[] times = new long[length + 3];
+        float[] values = new float[length + 3];
+        int i = 0;
+        int n;
+        while ((n = cursor.read(times, values, 3, length)) > 0) {
+            for (int k = 0; k < n; k++) {
+                Assert.assertEquals(times[3 + k], expected.get(i).time);
+                Assert.assertEquals(values[3 + k], expected.get(i).value);
+                i++;
+            }
+            Assert.assertEquals(cursor.position(), i);
+        }
+        Assert.assertEquals(i, expected.size());
+        Assert.assertFalse(cursor.hasNext());
+    }
+
+    @Test
+    public void testMetricTimes() throws Exception {
+        Properties p = config();
+        TimeSeries ts = metric(p);
+        TimeSeriesModel[] models = {new OlympicModel(p), new TripleExponentialSmoothingModel(p),
+                                    new NaiveForecastingModel(p)};
+        ModelAdapter ma = new ModelAdapter(ts, -1);
+        for (TimeSeriesModel model : models) {
+            ma.addModel(model);
+        }
+        ma.train();
+
+        for (int i = 0; i < models.length; i++) {
+            TimeSeries.DataSequence expected = new TimeSeries.DataSequence(ts.data.getTimes(), ts.data.getValues());
+            models[i].predict(expected);
+            // OlympicModel replays its training range, which does not fit in a chunk.
+            compare(ma.cursor(i, ts.startTime(), ts.lastTime()), expected, 100);
+            compare(ma.cursor(i, ts.startTime(), ts.lastTime()), expected, ts.size());
+            Assert.assertEquals(ma.forecast(i, ts.startTime(), ts.lastTime()).toString(), expected.toString());
+        }
+    }
+
+    @Test
+    public void testPeriod() throws Exception {
+        Properties p = config();
+        TimeSeries ts = metric(p);
+        ModelAdapter ma = new ModelAdapter(ts, 3600);
+        TimeSeriesModel model = new TripleExponentialSmoothingModel(p);
+        ma.addModel(model);
+        ma.train();
+
+        // Past the end of the metric.
+        long to = ts.lastTime() + 48 * 3600;
+        TimeSeries.DataSequence expected = new TimeSeries.DataSequence(ts.startTime(), to, 3600);
+        expected.setLogicalIndices(ts.startTime(), 3600);
+        model.predict(expected);
+        compare(ma.cursor(0, ts.startTime(), to), expected, 37);
+    }
+
+    @Test
+    public void testReplayPredictsOnce() throws Exception {
+        Properties p = config();
+        TimeSeries ts = metric(p);
+        final AtomicInteger predictions = new AtomicInteger();
+        ModelAdapter ma = new ModelAdapter(ts, -1);
+        ma.addModel(new NullModel(p) {
+            public void predict(TimeSeries.DataSequence sequence) throws Exception {
+                predictions.incrementAndGet();
+                super.predict(sequence);
+            }
+        });
+        ma.train();
+        Assert.assertFalse(ma.forecastsTimeStamps());
+        ForecastCursor cursor = ma.cursor(0, ts.startTime(), ts.lastTime());
+        float[] values = new float[10];
+        while (cursor.read(null, values, 0, values.length) > 0) {
+            Assert.assertEquals(values[0], 0f);
+        }
+        Assert.assertEquals(predictions.get(), 1);
+    }
+
+    // A model claiming to forecast time-stamps which does not is an error, not a replay.
+    @Test(expectedExceptions = Exception.class)
+    public void testTimeStampsNotHonored() throws Exception {
+        Properties p = config();
+        TimeSeries ts = metric(p);
+        ModelAdapter ma = new ModelAdapter(ts, -1);
+        ma.addModel(new NaiveForecastingModel(p) {
+            public void predict(TimeSeries.DataSequence sequence) throws Exception {
+                sequence.remove(sequence.size() - 1);
+            }
+        });
+        ma.train();
+        ma.cursor(0, ts.startTime(), ts.lastTime()).read(null, new float[10], 0, 10);
+    }
+
+    @Test(expectedExceptions = Exception.class)
+    public void testUntrained() throws Exception {
+        Properties p = config();
+        ModelAdapter ma = new ModelAdapter(metric(p), -1);
+        ma.addModel(new NaiveForecastingModel(p));
+        ma.cursor(0, 0, 1);
+    }
+}
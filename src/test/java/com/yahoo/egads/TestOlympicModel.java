@@ -114,4 +114,37 @@ public class TestOlympicModel {
         Assert.assertEquals(TimeSeriesAbstractModel.betterThan(olympicModel, movingAverageModel), false);
         Assert.assertEquals(TimeSeriesAbstractModel.betterThan(olympicModel, olympicModel), false);
     }
+
+    @Test
+    public void testAutoWindows() throws Exception {
+        Properties p = new Properties();
+        p.load(new FileInputStream("src/test/resources/sample_config.ini"));
+        // a cycle of 37 points, which the configured windows miss
+        java.util.Random random = new java.util.Random(1);
+        TimeSeries.DataSequence data = new TimeSeries.DataSequence();
+        for (int t = 0; t < 1500; t++) {
+            data.add(new TimeSeries.Entry(t * 3600L, (float) (100 + 10 * Math.sin(2 * Math.PI * t / 37)
+                            + random.nextGaussian())));
+        }
+        OlympicModel configured = new OlympicModel(p);
+        configured.train(data);
+
+        p.setProperty("BASE_WINDOWS", "AUTO");
+        p.setProperty("TIME_SHIFTS", "0,1,20");
+        OlympicModel auto = new OlympicModel(p);
+        auto.train(data);
+        Assert.assertEquals(auto.getBaseWindows(), new int[] {37});
+        Assert.assertEquals(auto.getTimeShifts(), new int[] {0, 1});
+        Assert.assertTrue(auto.getMSE() < configured.getMSE() / 10);
+
+        // no cycle at all, the average of the last NUM_WEEKS points
+        TimeSeries.DataSequence noise = new TimeSeries.DataSequence();
+        for (int t = 0; t < 500; t++) {
+            noise.add(new TimeSeries.Entry(t * 3600L, (float) random.nextGaussian()));
+        }
+        auto = new OlympicModel(p);
+        auto.train(noise);
+        Assert.assertEquals(auto.getBaseWindows(), new int[] {1});
+        Assert.assertEquals(auto.getTimeShifts(), new int[] {0});
+    }
 }
@@ -0,0 +1,189 @@
+/*
+ * Copyright 2016, Yahoo Inc.
+ * Copyrights licensed under the GPL License.
+ * See the accompanying LICENSE file for terms.
+ */
+
+package com.yahoo.egads;
+
+import com.yahoo.egads.control.PipelineStage;
+import com.yahoo.egads.control.ProcessableObject;
+import com.yahoo.egads.control.ProcessableObjectFactory;
+import com.yahoo.egads.control.ProcessingPipeline;
+import com.yahoo.egads.control.StagedProcessable;
+import com.yahoo.egads.data.Anomaly;
+import com.yahoo.egads.data.TimeSeries;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+// Tests the staged processing pipeline.
+public class TestProcessingPipeline {
+
+    @Test
+    public void testStageOrdering() throws Exception {
+        final List<Integer> out = Collections.synchronizedList(new ArrayList<Integer>());
+        PipelineStage<Integer, Integer> head = new PipelineStage<Integer, Integer>("square", 1, 2,
+            new PipelineStage.Handler<Integer, Integer>() {
+                public Integer handle(Integer i) {
+                    return i * i;
+                }
+            });
+        head.then("collect", 1, new PipelineStage.Handler<Integer, Object>() {
+            public Object handle(Integer i) {
+                out.add(i);
+                return null;
+            }
+        });
+        for (int i = 0; i < 100; i++) {
+            head.submit(i);
+        }
+        head.close();
+        Assert.assertEquals(out.size(), 100);
+        for (int i = 0; i < 100; i++) {
+            Assert.assertEquals(out.get(i).intValue(), i * i);
+        }
+    }
+
+    @Test
+    public void testBackpressure() throws Exception {
+        final AtomicInteger inFlight = new AtomicInteger();
+        final AtomicInteger maxInFlight = new AtomicInteger();
+        PipelineStage<Integer, Integer> head = new PipelineStage<Integer, Integer>("fast", 1, 2,
+            new PipelineStage.Handler<Integer, Integer>() {
+                public Integer handle(Integer i) {
+                    int n = inFlight.incrementAndGet();
+                    if (n > maxInFlight.get()) {
+                        maxInFlight.set(n);
+                    }
+                    return i;
+                }
+            });
+        head.then("slow", 1, new PipelineStage.Handler<Integer, Object>() {
+            public Object handle(Integer i) throws Exception {
+                Thread.sleep(2);
+                inFlight.decrementAndGet();
+                return null;
+            }
+        });
+        for (int i = 0; i < 50; i++) {
+            head.submit(i);
+        }
+        head.close();
+        // Buffer of the slow stage, the item it works on and the one the fast stage holds.
+        Assert.assertTrue(maxInFlight.get() <= 4);
+    }
+
+    @Test
+    public void testFailure() throws Exception {
+        PipelineStage<Integer, Integer> head = new PipelineStage<Integer, Integer>("fail", 2, 4,
+            new PipelineStage.Handler<Integer, Integer>() {
+                public Integer handle(Integer i) throws Exception {
+                    if (i == 7) {
+                        throw new Exception("Failed on 7");
+                    }
+                    return i;
+                }
+            });
+        head.then("sink", 1, new PipelineStage.Handler<Integer, Object>() {
+            public Object handle(Integer i) {
+                return null;
+            }
+        });
+        try {
+            for (int i = 0; i < 20; i++) {
+                head.submit(i);
+            }
+            head.close();
+            Assert.fail("The failure of the first stage was not reported.");
+        } catch (Exception e) {
+            Assert.assertEquals(e.getMessage(), "Failed on 7");
+        }
+    }
+
+    @Test
+    public void testErrorStopsTheChain() throws Exception {
+        PipelineStage<Integer, Integer> head = new PipelineStage<Integer, Integer>("error", 2, 1,
+            new PipelineStage.Handler<Integer, Integer>() {
+                public Integer handle(Integer i) {
+                    if (i == 3) {
+                        throw new AssertionError("Failed on 3");
+                    }
+                    return i;
+                }
+            });
+        head.then("error-sink", 1, new PipelineStage.Handler<Integer, Object>() {
+            public Object handle(Integer i) {
+                return null;
+            }
+        });
+        try {
+            for (int i = 0; i < 1000; i++) {
+                head.submit(i);
+            }
+            Assert.fail("The error of the first stage was not reported.");
+        } catch (AssertionError e) {
+            Assert.assertEquals(e.getMessage(), "Failed on 3");
+        }
+        // submit() closed the chain, whose threads are gone.
+        for (Thread t : Thread.getAllStackTraces().keySet()) {
+            if (t.getName().startsWith("egads-error")) {
+                t.join(1000);
+                Assert.assertFalse(t.isAlive(), t.getName());
+            }
+        }
+        try {
+            head.close();
+            Assert.fail("The error was not re-thrown.");
+        } catch (AssertionError e) {
+            Assert.assertEquals(e.getMessage(), "Failed on 3");
+        }
+    }
+
+    @Test
+    public void testSameResultsAsSequential() throws Exception {
+        InputStream is = new FileInputStream("src/test/resources/sample_config.ini");
+        Properties p = new Properties();
+        p.load(is);
+        p.setProperty("PIPELINE_BUFFER_SIZE", "1");
+        ArrayList<TimeSeries> metrics = com.yahoo.egads.utilities.FileUtils
+                .createTimeSeries("src/test/resources/sample_input.csv", p);
+
+        List<String> expected = new ArrayList<String>();
+        for (TimeSeries ts : metrics) {
+            StagedProcessable po = (StagedProcessable) ProcessableObjectFactory.create(ts, p);
+            po.train();
+            po.detect();
+            expected.add(toString(po.result()));
+        }
+
+        final List<String> actual = Collections.synchronizedList(new ArrayList<String>());
+        ProcessingPipeline pipeline = new ProcessingPipeline(p,
+            new PipelineStage.Handler<ProcessableObject, ProcessableObject>() {
+                public ProcessableObject handle(ProcessableObject po) throws Exception {
+                    actual.add(TestProcessingPipeline.toString(po.result()));
+                    return null;
+                }
+            });
+        for (TimeSeries ts : metrics) {
+            pipeline.submit(ts);
+        }
+        pipeline.close();
+        Assert.assertEquals(actual, expected);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static String toString(Object result) {
+        StringBuilder sb = new StringBuilder();
+        for (Anomaly a : (List<Anomaly>) result) {
+            sb.append(a.toPerlString());
+        }
+        return sb.toString();
+    }
+}
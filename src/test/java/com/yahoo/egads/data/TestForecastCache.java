@@ -0,0 +1,139 @@
+/*
+ * Copyright 2016, Yahoo Inc.
+ * Copyrights licensed under the GPL License.
+ * See the accompanying LICENSE file for terms.
+ */
+
+package com.yahoo.egads.data;
+
+import com.yahoo.egads.control.ProcessableObjectFactory;
+import com.yahoo.egads.control.StagedProcessable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Properties;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+public class TestForecastCache {
+
+    private static ArrayList<TimeSeries.DataSequence> forecasts(float value) {
+        ArrayList<TimeSeries.DataSequence> forecasts = new ArrayList<TimeSeries.DataSequence>();
+        forecasts.add(new TimeSeries.DataSequence(1, value));
+        return forecasts;
+    }
+
+    @Test
+    public void testLruEvictionAndDisk() throws Exception {
+        File dir = Files.createTempDirectory("egads-forecasts").toFile();
+        ForecastCache cache = new ForecastCache(2, dir.getPath());
+        cache.put("a", forecasts(1));
+        cache.put("b", forecasts(2));
+        // "a" becomes the most recently used entry, so "b" is evicted from memory.
+        Assert.assertEquals(cache.get("a").get(0).get(0).value, 1f);
+        cache.put("c", forecasts(3));
+        Assert.assertEquals(cache.size(), 2);
+        Assert.assertEquals(cache.getEvictions(), 1);
+
+        // "b" is read back from the directory, as by a new process.
+        Assert.assertEquals(cache.get("b").get(0).get(0).value, 2f);
+        Assert.assertEquals(new ForecastCache(2, dir.getPath()).get("c").get(0).get(0).value, 3f);
+        Assert.assertNull(cache.get("unknown"));
+        Assert.assertEquals(cache.getHits(), 2);
+        Assert.assertEquals(cache.getDiskHits(), 1);
+        Assert.assertEquals(cache.getMisses(), 1);
+        Assert.assertEquals(cache.getHitRate(), 2 / 3.0, 1e-9);
+
+        // The entries are copies.
+        cache.get("a").get(0).get(0).value = 10;
+        Assert.assertEquals(cache.get("a").get(0).get(0).value, 1f);
+    }
+
+    @Test
+    public void testDirectoryLimit() throws Exception {
+        File dir = Files.createTempDirectory("egads-forecasts").toFile();
+        ForecastCache cache = new ForecastCache(2, dir.getPath(), 4);
+        for (int i = 0; i < 10; i++) {
+            cache.put("k" + i, forecasts(i));
+        }
+        // No temporary file is left, and the oldest files are deleted past the limit.
+        Assert.assertTrue(dir.list().length >= 3 && dir.list().length <= 4);
+        for (String name : dir.list()) {
+            Assert.assertTrue(name.startsWith("k") && name.length() == 2, name);
+            Assert.assertNotNull(new ForecastCache(2, dir.getPath(), 4).get(name));
+        }
+        for (File f : dir.listFiles()) {
+            f.delete();
+        }
+        dir.delete();
+    }
+
+    @Test
+    public void testConflictingConfig() throws Exception {
+        Properties p = new Properties();
+        p.setProperty("FORECAST_CACHE_SIZE", "10");
+        ForecastCache cache = ForecastCache.getInstance(p);
+        p.setProperty("OUTPUT", "GUI");
+        Assert.assertSame(ForecastCache.getInstance(p), cache);
+        p.setProperty("FORECAST_CACHE_SIZE", "11");
+        try {
+            ForecastCache.getInstance(p);
+            Assert.fail("The conflicting config was not rejected.");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testKey() throws Exception {
+        Properties p = new Properties();
+        p.setProperty("TS_MODEL", "OlympicModel");
+        p.setProperty("OUTPUT", "STD_OUT");
+        TimeSeries ts = new TimeSeries();
+        for (int i = 0; i < 100; i++) {
+            ts.append(1000 + 60 * i, i % 7);
+        }
+        long fingerprint = ForecastCache.fingerprint(p);
+        String key = ForecastCache.key(fingerprint, ts.data, 1000, 6940, -1, 1000);
+
+        p.setProperty("OUTPUT", "GUI");
+        Assert.assertEquals(ForecastCache.key(ForecastCache.fingerprint(p), ts.data, 1000, 6940, -1, 1000), key);
+        p.setProperty("TS_MODEL", "NullModel");
+        Assert.assertFalse(ForecastCache.key(ForecastCache.fingerprint(p), ts.data, 1000, 6940, -1, 1000)
+                        .equals(key));
+        Assert.assertFalse(ForecastCache.key(fingerprint, ts.data, 1000, 6880, -1, 1000).equals(key));
+        ts.data.get(50).value += 0.5f;
+        Assert.assertFalse(ForecastCache.key(fingerprint, ts.data, 1000, 6940, -1, 1000).equals(key));
+    }
+
+    @Test
+    public void testRepeatedDetectionSkipsForecasting() throws Exception {
+        Properties p = new Properties();
+        p.load(new FileInputStream("src/test/resources/sample_config.ini"));
+        p.setProperty("FORECAST_CACHE_SIZE", "10");
+        p.setProperty("TS_MODEL", "OlympicModel");
+        p.setProperty("NUM_WEEKS", "6");
+        ArrayList<TimeSeries> metrics = com.yahoo.egads.utilities.FileUtils
+                .createTimeSeries("src/test/resources/sample_input.csv", p);
+
+        StagedProcessable first = (StagedProcessable) ProcessableObjectFactory.create(metrics.get(0), p);
+        first.train();
+        first.detect();
+        ForecastCache cache = ForecastCache.getInstance(p);
+        long hits = cache.getHits();
+
+        StagedProcessable second = (StagedProcessable) ProcessableObjectFactory.create(metrics.get(0), p);
+        second.train();
+        second.detect();
+        Assert.assertEquals(cache.getHits(), hits + 1);
+        Assert.assertEquals(second.result().toString(), first.result().toString());
+
+        // Changed data is forecast again.
+        metrics.get(0).data.get(10).value *= 2;
+        long misses = cache.getMisses();
+        StagedProcessable third = (StagedProcessable) ProcessableObjectFactory.create(metrics.get(0), p);
+        third.train();
+        Assert.assertEquals(cache.getMisses(), misses + 1);
+    }
+}
@@ -0,0 +1,313 @@
+/*
+ * Copyright 2016, Yahoo Inc.
+ * Copyrights licensed under the GPL License.
+ * See the accompanying LICENSE file for terms.
+ */
+
+package com.yahoo.egads.data;
+
+import com.yahoo.egads.control.AnomalyDetector;
+import com.yahoo.egads.control.ModelAdapter;
+import com.yahoo.egads.control.ProcessableObjectFactory;
+import com.yahoo.egads.control.StagedProcessable;
+import com.yahoo.egads.models.adm.DBScanModel;
+import com.yahoo.egads.models.tsmm.NullModel;
+import com.yahoo.egads.models.tsmm.OlympicModel;
+import com.yahoo.egads.models.tsmm.TimeSeriesModel;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Properties;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+public class TestModelCache {
+
+    private static Model model(long id) {
+        ArrayList<Model> models = new ArrayList<Model>();
+        models.add(new NullModel(new Properties()));
+        return new ModelBundle(models, id, 1);
+    }
+
+    private static long id(Model m) {
+        return ((ModelBundle) m).firstTimeStamp;
+    }
+
+    @Test
+    public void testLruEvictionAndSpill() throws Exception {
+        File dir = Files.createTempDirectory("egads-models").toFile();
+        ModelCache cache = new ModelCache(2, 0, new FileModelStore(dir.getPath()));
+        cache.storeModel("a", model(1));
+        cache.storeModel("b", model(2));
+        // "a" becomes the most recently used entry, so "b" is evicted.
+        Assert.assertEquals(id(cache.retrieveModel("a")), 1);
+        cache.storeModel("c", model(3));
+        Assert.assertEquals(cache.size(), 2);
+        Assert.assertEquals(cache.getEvictions(), 1);
+        Assert.assertTrue(new File(dir, "b").exists());
+
+        // "b" is reloaded from the spill store.
+        Assert.assertEquals(id(cache.retrieveModel("b")), 2);
+        Assert.assertEquals(cache.getHits(), 1);
+        Assert.assertEquals(cache.getMisses(), 1);
+        Assert.assertNull(cache.retrieveModel("unknown"));
+    }
+
+    // The spill store is written without the lock of the cache, which would otherwise block the hits forever.
+    @Test(timeOut = 10000)
+    public void testSpillOutsideLock() throws Exception {
+        final CountDownLatch writing = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final ModelCache cache = new ModelCache(2, 0, new ModelStore() {
+            public void storeModel(String tag, Model m) {
+                writing.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+
+            public Model retrieveModel(String tag) {
+                return null;
+            }
+        });
+        cache.storeModel("a", model(1));
+        cache.storeModel("b", model(2));
+        Thread evicting = new Thread() {
+            public void run() {
+                cache.storeModel("c", model(3));
+            }
+        };
+        evicting.start();
+        Assert.assertTrue(writing.await(10, TimeUnit.SECONDS));
+
+        // While "a" is being written to the spill store, the other entries are still served.
+        Assert.assertEquals(id(cache.retrieveModel("b")), 2);
+        Assert.assertEquals(id(cache.retrieveModel("c")), 3);
+        Assert.assertEquals(cache.size(), 2);
+        release.countDown();
+        evicting.join();
+        Assert.assertEquals(cache.getEvictions(), 1);
+    }
+
+    @Test
+    public void testAgeEviction() throws Exception {
+        ModelCache cache = new ModelCache(10, 1, null);
+        cache.storeModel("a", model(1));
+        Thread.sleep(1100);
+        cache.storeModel("b", model(2));
+        Assert.assertNull(cache.retrieveModel("a"));
+        Assert.assertNotNull(cache.retrieveModel("b"));
+    }
+
+    @Test
+    public void testSnapshots() throws Exception {
+        ModelCache cache = new ModelCache(10, 0, null);
+        ModelBundle bundle = (ModelBundle) model(1);
+        cache.storeModel("a", bundle);
+        bundle.firstTimeStamp = 2;
+        // Every caller gets its own copy of the model as it was stored.
+        Model first = cache.retrieveModel("a");
+        Model second = cache.retrieveModel("a");
+        Assert.assertEquals(id(first), 1);
+        Assert.assertNotSame(first, second);
+        Assert.assertNotSame(((ModelBundle) first).models.get(0), ((ModelBundle) second).models.get(0));
+    }
+
+    @Test
+    public void testChangedData() throws Exception {
+        InputStream is = new FileInputStream("src/test/resources/sample_config.ini");
+        Properties p = new Properties();
+        p.load(is);
+        TimeSeries ts = com.yahoo.egads.utilities.FileUtils
+                .createTimeSeries("src/test/resources/sample_input.csv", p).get(0);
+        ModelCache cache = new ModelCache(10, 0, null);
+        ModelAdapter ma = new ModelAdapter(ts, -1);
+        ma.setModelStore(cache, "metric");
+        ma.addModel(new OlympicModel(p));
+        ma.train();
+
+        // The same series followed by a new point.
+        TimeSeries longer = new TimeSeries();
+        for (TimeSeries.Entry e : ts.data) {
+            longer.append(e.time, e.value);
+        }
+        longer.append(ts.lastTime() + 3600, 1);
+        Assert.assertTrue(new ModelAdapter(longer, -1).setModelStore(cache, "metric"));
+
+        // A reloaded series whose history changed.
+        longer.data.get(10).value *= 2;
+        Assert.assertFalse(new ModelAdapter(longer, -1).setModelStore(cache, "metric"));
+    }
+
+    // The OpenForecast models and the DBSCAN clusterer held by some models are not serializable, they are
+    // built again once the models are reloaded.
+    @Test
+    public void testUnserializableParts() throws Exception {
+        InputStream is = new FileInputStream("src/test/resources/sample_config.ini");
+        Properties p = new Properties();
+        p.load(is);
+        TimeSeries ts = com.yahoo.egads.utilities.FileUtils
+                .createTimeSeries("src/test/resources/sample_input.csv", p).get(0);
+        // A random walk, which AutoForecastModel forecasts with NaiveForecastingModel.
+        TimeSeries walk = new TimeSeries();
+        Random random = new Random(1);
+        float value = 100;
+        for (int i = 0; i < 500; i++) {
+            value += (float) random.nextGaussian();
+            walk.append(1477872000L + i * 3600L, value);
+        }
+        TimeSeries.DataSequence future = new TimeSeries.DataSequence(walk.lastTime() + 3600,
+                                                                     walk.lastTime() + 48 * 3600, 3600);
+        File dir = Files.createTempDirectory("egads-models").toFile();
+        // Every entry is spilled to disk and read back.
+        ModelCache cache = new ModelCache(1, 0, new FileModelStore(dir.getPath()));
+        for (String name : new String[] {"MovingAverageModel", "NaiveForecastingModel", "WeightedMovingAverageModel",
+                                         "AutoForecastModel"}) {
+            ModelAdapter ma = new ModelAdapter(walk, -1);
+            ma.setModelStore(cache, name);
+            ma.addModel((TimeSeriesModel) Class.forName("com.yahoo.egads.models.tsmm." + name)
+                    .getConstructor(Properties.class).newInstance(p));
+            ma.train();
+            cache.storeModel("other", model(1));
+
+            ModelAdapter reloaded = new ModelAdapter(walk, -1);
+            Assert.assertTrue(reloaded.setModelStore(cache, name), name);
+            Assert.assertEquals(reloaded.forecast(future).toString(), ma.forecast(future).toString(), name);
+        }
+
+        TimeSeries.DataSequence expected = new TimeSeries.DataSequence(ts.data.getTimes(), ts.data.getValues());
+        OlympicModel olympic = new OlympicModel(p);
+        olympic.train(ts.data);
+        olympic.predict(expected);
+        AnomalyDetector ad = new AnomalyDetector(ts, -1);
+        ad.setModelStore(cache, "dbscan");
+        ad.addModel(new DBScanModel(p));
+        ad.tune(expected);
+        cache.storeModel("other", model(1));
+        AnomalyDetector reloaded = new AnomalyDetector(ts, -1);
+        Assert.assertTrue(reloaded.setModelStore(cache, "dbscan"));
+        Assert.assertEquals(reloaded.detect(ts, expected).toString(), ad.detect(ts, expected).toString());
+
+        for (File f : dir.listFiles()) {
+            f.delete();
+        }
+        dir.delete();
+    }
+
+    @Test
+    public void testConflictingConfig() throws Exception {
+        Properties p = new Properties();
+        p.setProperty("MODEL_CACHE_SIZE", "10");
+        ModelCache cache = ModelCache.getInstance(p);
+        p.setProperty("OUTPUT", "GUI");
+        Assert.assertSame(ModelCache.getInstance(p), cache);
+        p.setProperty("MODEL_CACHE_SIZE", "11");
+        try {
+            ModelCache.getInstance(p);
+            Assert.fail("The conflicting config was not rejected.");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testTag() throws Exception {
+        Properties p = new Properties();
+        p.setProperty("TS_MODEL", "OlympicModel");
+        p.setProperty("OUTPUT", "STD_OUT");
+        String tag = ModelCache.tag("metric", p);
+        p.setProperty("OUTPUT", "GUI");
+        Assert.assertEquals(ModelCache.tag("metric", p), tag);
+        p.setProperty("TS_MODEL", "NullModel");
+        Assert.assertFalse(ModelCache.tag("metric", p).equals(tag));
+    }
+
+    @Test
+    public void testRepeatedDetectionSkipsTraining() throws Exception {
+        InputStream is = new FileInputStream("src/test/resources/sample_config.ini");
+        Properties p = new Properties();
+        p.load(is);
+        p.setProperty("MODEL_CACHE_SIZE", "10");
+        p.setProperty("TS_MODEL", "OlympicModel");
+        ArrayList<TimeSeries> metrics = com.yahoo.egads.utilities.FileUtils
+                .createTimeSeries("src/test/resources/sample_input.csv", p);
+        metrics.get(0).meta.name = "TestModelCache";
+
+        StagedProcessable first = (StagedProcessable) ProcessableObjectFactory.create(metrics.get(0), p);
+        first.train();
+        first.detect();
+        ModelCache cache = ModelCache.getInstance(p);
+        long hits = cache.getHits();
+
+        StagedProcessable second = (StagedProcessable) ProcessableObjectFactory.create(metrics.get(0), p);
+        second.train();
+        second.detect();
+        // Both the time-series and the anomaly detection models come from the cache.
+        Assert.assertEquals(cache.getHits(), hits + 2);
+        Assert.assertEquals(second.result().toString(), first.result().toString());
+
+        // The string constructors load the cached models.
+        ModelAdapter ma = new ModelAdapter("TestModelCache", -1, p);
+        Assert.assertTrue(ma.isTrained());
+        Assert.assertEquals(ma.getModelNames()[0], "OlympicModel");
+        Assert.assertTrue(new AnomalyDetector("TestModelCache", -1, p).isTuned());
+    }
+
+    // Models cached for the beginning of a metric are brought up to date with its new points: updated when they
+    // are incremental, trained again otherwise, as if there were no cache.
+    @Test
+    public void testNewPoints() throws Exception {
+        for (String model : new String[] {"OlympicModel", "SimpleExponentialSmoothingModel"}) {
+            InputStream is = new FileInputStream("src/test/resources/sample_config.ini");
+            Properties p = new Properties();
+            p.load(is);
+            p.setProperty("TS_MODEL", model);
+            TimeSeries ts = com.yahoo.egads.utilities.FileUtils
+                    .createTimeSeries("src/test/resources/sample_input.csv", p).get(0);
+            ts.meta.name = "TestModelCache.newPoints." + model;
+            TimeSeries prefix = new TimeSeries();
+            prefix.meta.name = ts.meta.name;
+            for (int i = 0; i < ts.size() - 48; i++) {
+                prefix.append(ts.time(i), ts.data.get(i).value);
+            }
+
+            StagedProcessable uncached = (StagedProcessable) ProcessableObjectFactory.create(ts, p);
+            uncached.train();
+            uncached.detect();
+
+            p.setProperty("MODEL_CACHE_SIZE", "10");
+            StagedProcessable first = (StagedProcessable) ProcessableObjectFactory.create(prefix, p);
+            first.train();
+            first.detect();
+            StagedProcessable cached = (StagedProcessable) ProcessableObjectFactory.create(ts, p);
+            cached.train();
+            cached.detect();
+            Assert.assertEquals(cached.result().toString(), uncached.result().toString(), model);
+        }
+    }
+
+    @Test
+    public void testUnknownMetric() throws Exception {
+        Properties p = new Properties();
+        p.setProperty("MODEL_CACHE_SIZE", "10");
+        try {
+            new ModelAdapter("TestModelCache.unknown", -1, p);
+            Assert.fail("An adapter without models was created.");
+        } catch (Exception e) {
+            Assert.assertTrue(e.getMessage().startsWith("No trained models"), e.getMessage());
+        }
+        try {
+            new AnomalyDetector("TestModelCache.unknown", -1, p);
+            Assert.fail("A detector without models was created.");
+        } catch (Exception e) {
+            Assert.assertTrue(e.getMessage().startsWith("No tuned models"), e.getMessage());
+        }
+    }
+}
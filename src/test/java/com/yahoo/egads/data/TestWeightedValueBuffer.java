@@ -0,0 +1,115 @@
+/*
+ * Copyright 2016, Yahoo Inc.
+ * Copyrights licensed under the GPL License.
+ * See the accompanying LICENSE file for terms.
+ */
+package com.yahoo.egads.data;
+
+import static org.testng.AssertJUnit.assertEquals;
+
+import java.util.List;
+import java.util.Random;
+
+import org.testng.annotations.Test;
+
+import com.google.common.collect.Lists;
+
+public class TestWeightedValueBuffer {
+    private static final String[] AGGREGATORS = { "MIN", "MAX", "SUM",
+            "COUNT", "MEDIAN", "AVG", "WAVG" };
+
+    @Test
+    public void aggregate() throws Exception {
+        final WeightedValueBuffer buffer = new WeightedValueBuffer(2);
+        buffer.add(1.5D, 5);
+        buffer.add(42.5D, 1);
+        buffer.add(Double.NaN, 1);
+        buffer.add(-1.5D, 0);
+        buffer.add(3.5D, 1);
+
+        assertEquals(5, buffer.size());
+        assertEquals(-1.5D, buffer.aggregate("MIN"), 0.0001);
+        assertEquals(42.5D, buffer.aggregate("MAX"), 0.0001);
+        assertEquals(46.0D, buffer.aggregate("SUM"), 0.0001);
+        assertEquals(4D, buffer.aggregate("COUNT"), 0.0001);
+        assertEquals(3.5D, buffer.aggregate("MEDIAN"), 0.0001);
+        assertEquals(11.5D, buffer.aggregate("AVG"), 0.0001);
+        assertEquals(7.6428D, buffer.aggregate("WAVG"), 0.0001);
+
+        buffer.clear();
+        assertEquals(0, buffer.size());
+        assertEquals(0D, buffer.aggregate("COUNT"), 0.0001);
+        assertEquals(Double.valueOf(Double.NaN),
+                Double.valueOf(buffer.aggregate("AVG")));
+    }
+
+    @Test (expectedExceptions = IllegalArgumentException.class)
+    public void aggregateUnknown() throws Exception {
+        final WeightedValueBuffer buffer = new WeightedValueBuffer(1);
+        buffer.add(1, 1);
+        buffer.aggregate("NOSUCHAGG");
+    }
+
+    @Test
+    public void drop() throws Exception {
+        final WeightedValueBuffer buffer = new WeightedValueBuffer(4);
+        buffer.add(2, 1);
+        buffer.add(5, 2);
+        buffer.add(2, 3);
+        buffer.add(5, 4);
+        buffer.add(1, 5);
+
+        // the first of equal values goes first
+        buffer.drop(1, true);
+        assertEquals(4, buffer.size());
+        assertEquals(3, buffer.getWeight(1));
+        assertEquals(4, buffer.getWeight(2));
+
+        buffer.drop(2, false);
+        assertEquals(2, buffer.size());
+        assertEquals(2D, buffer.getValue(0), 0.0001);
+        assertEquals(3, buffer.getWeight(0));
+        assertEquals(5D, buffer.getValue(1), 0.0001);
+
+        // keeps one value
+        buffer.drop(10, true);
+        assertEquals(1, buffer.size());
+        assertEquals(3, buffer.getWeight(0));
+    }
+
+    @Test
+    public void sameAsList() throws Exception {
+        final Random random = new Random(11);
+        final WeightedValueBuffer buffer = new WeightedValueBuffer(1);
+        for (int run = 0; run < 2000; run++) {
+            final List<WeightedValue> values = Lists.newArrayList();
+            buffer.clear();
+            final int n = random.nextInt(12);
+            for (int i = 0; i < n; i++) {
+                // few distinct values for ties, signed zeros and NaNs
+                final double value = random.nextInt(8) == 0 ? Double.NaN
+                        : random.nextInt(5) == 0 ? -0.0D
+                        : random.nextInt(7) - 3;
+                values.add(new WeightedValue(value, i + 1));
+                buffer.add(value, i + 1);
+            }
+            final int highest = random.nextInt(4);
+            final int lowest = random.nextInt(4);
+            WeightedValue.drop(values, highest, true);
+            WeightedValue.drop(values, lowest, false);
+            buffer.drop(highest, true);
+            buffer.drop(lowest, false);
+
+            assertEquals(values.size(), buffer.size());
+            for (int i = 0; i < values.size(); i++) {
+                assertEquals(Double.valueOf(values.get(i).getValue()),
+                        Double.valueOf(buffer.getValue(i)));
+                assertEquals(values.get(i).getWeight(), buffer.getWeight(i));
+            }
+            for (final String agg : AGGREGATORS) {
+                assertEquals(Double.valueOf(WeightedValue.aggregate(values, agg)),
+                        Double.valueOf(buffer.aggregate(agg)));
+            }
+        }
+    }
+}
@@ -0,0 +1,159 @@
+/*
+ * Copyright 2016, Yahoo Inc.
+ * Copyrights licensed under the GPL License.
+ * See the accompanying LICENSE file for terms.
+ */
+
+package com.yahoo.egads.models.tsmm;
+
+import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertFalse;
+import static org.testng.AssertJUnit.assertNotNull;
+import static org.testng.AssertJUnit.assertNull;
+import static org.testng.AssertJUnit.assertSame;
+import static org.testng.AssertJUnit.assertTrue;
+
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Properties;
+import java.util.Random;
+import java.util.Set;
+
+import org.testng.annotations.Test;
+
+import com.yahoo.egads.data.TimeSeries;
+
+public class TestBacktester {
+
+    @Test
+    public void rollingOrigins() throws Exception {
+        TimeSeries.DataSequence data = series(200);
+        Properties p = new Properties();
+        p.setProperty("BACKTEST_FOLDS", "5");
+        p.setProperty("BACKTEST_HORIZON", "10");
+        p.setProperty("BACKTEST_THREADS", "3");
+        List<Backtester.Result> results = new Backtester(p).run(data,
+                        Arrays.asList("SimpleExponentialSmoothingModel", "NaiveForecastingModel"));
+
+        // the updated model forecasts as if trained again at each origin
+        for (Backtester.Result result : results) {
+            assertNull(result.failure);
+            assertEquals(5, result.folds);
+            assertEquals(50, result.points);
+            double sum = 0;
+            for (int origin = 150; origin < 200; origin += 10) {
+                TimeSeriesAbstractModel model = Backtester.build(result.model, p);
+                TimeSeries.DataSequence train = new TimeSeries.DataSequence();
+                TimeSeries.DataSequence forecast = new TimeSeries.DataSequence();
+                for (int i = 0; i < origin + 10; i++) {
+                    (i < origin ? train : forecast).add(new TimeSeries.Entry(data.get(i)));
+                }
+                model.train(train);
+                model.predict(forecast);
+                for (int i = 0; i < 10; i++) {
+                    double error = forecast.get(i).value - data.get(origin + i).value;
+                    sum += error * error;
+                }
+            }
+            assertEquals(result.model, Math.sqrt(sum / 50), result.rmse, 1e-3);
+        }
+        assertTrue(results.get(0).incremental);
+        assertFalse(results.get(1).incremental);
+        assertEquals(3, Backtester.table(results).split("\n").length);
+    }
+
+    // Records the threads training it.
+    public static class ThreadRecorder extends NaiveForecastingModel {
+        static final Set<Thread> THREADS = Collections.synchronizedSet(new HashSet<Thread>());
+
+        public ThreadRecorder(Properties config) {
+            super(config);
+        }
+
+        public void train(TimeSeries.DataSequence data) {
+            THREADS.add(Thread.currentThread());
+            super.train(data);
+        }
+    }
+
+    @Test
+    public void sharedThreads() throws Exception {
+        Properties p = new Properties();
+        p.setProperty("BACKTEST_FOLDS", "5");
+        p.setProperty("BACKTEST_HORIZON", "10");
+        p.setProperty("BACKTEST_THREADS", "3");
+        Backtester backtester = new Backtester(p);
+        TimeSeries.DataSequence data = series(200);
+        ThreadRecorder.THREADS.clear();
+        for (int run = 0; run < 10; run++) {
+            assertNull(backtester.run(data, Arrays.asList("TestBacktester$ThreadRecorder")).get(0).failure);
+        }
+        // the runs reuse the threads instead of creating 3 each
+        assertTrue(String.valueOf(ThreadRecorder.THREADS.size()), ThreadRecorder.THREADS.size() < 15);
+    }
+
+    @Test
+    public void selection() throws Exception {
+        Properties p = new Properties();
+        p.setProperty("BACKTEST_FOLDS", "2");
+        p.setProperty("BACKTEST_HORIZON", "6");
+        Backtester backtester = new Backtester(p);
+        List<Backtester.Result> results = backtester.run(series(30),
+                        Arrays.asList("TripleExponentialSmoothingModel", "NaiveForecastingModel"));
+        // 18 points are too few for the seasons of the triple exponential smoothing
+        assertNotNull(results.get(0).failure);
+        assertSame(results.get(1), backtester.select(results));
+
+        Backtester.Result accurate = result("accurate", 1.0, 100);
+        Backtester.Result cheap = result("cheap", 1.04, 10);
+        assertSame(accurate, backtester.select(Arrays.asList(accurate, cheap)));
+        p.setProperty("BACKTEST_TOLERANCE", "0.05");
+        assertSame(cheap, new Backtester(p).select(Arrays.asList(accurate, cheap)));
+    }
+
+    @Test
+    public void autoForecast() throws Exception {
+        TimeSeries.DataSequence data = series(200);
+        Properties p = new Properties();
+        InputStream is = new FileInputStream("src/test/resources/sample_config.ini");
+        p.load(is);
+        is.close();
+        p.setProperty("AUTO_SELECTION", "BACKTEST");
+        p.setProperty("BACKTEST_TOLERANCE", "0.1");
+        AutoForecastModel model = new AutoForecastModel(p);
+        model.train(data);
+
+        // the model picked is the cheapest of the most accurate ones on the last points
+        Backtester backtester = new Backtester(p);
+        List<Backtester.Result> results = backtester.run(data, Arrays.asList("NaiveForecastingModel",
+                        "TripleExponentialSmoothingModel"));
+        assertTrue(results.get(1).rmse < results.get(0).rmse);
+        TimeSeries.DataSequence forecast = new TimeSeries.DataSequence(data.getTimes(), data.getValues());
+        model.predict(forecast);
+        assertFalse(Float.isNaN(forecast.get(0).value));
+    }
+
+    private static Backtester.Result result(String model, double rmse, double millis) {
+        Backtester.Result r = new Backtester.Result(model, false);
+        r.rmse = rmse;
+        r.trainMillis = millis;
+        return r;
+    }
+
+    // A noisy daily cycle on hourly points.
+    private static TimeSeries.DataSequence series(int n) {
+        Random random = new Random(3);
+        TimeSeries.DataSequence data = new TimeSeries.DataSequence();
+        for (int i = 0; i < n; i++) {
+            TimeSeries.Entry e = new TimeSeries.Entry(i * 3600L,
+                            (float) (100 + 20 * Math.sin(2 * Math.PI * i / 24) + random.nextGaussian()));
+            e.logicalIndex = i;
+            data.add(e);
+        }
+        return data;
+    }
+}
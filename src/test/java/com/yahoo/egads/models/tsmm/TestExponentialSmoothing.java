@@ -0,0 +1,204 @@
+/*
+ * Copyright 2016, Yahoo Inc.
+ * Copyrights licensed under the GPL License.
+ * See the accompanying LICENSE file for terms.
+ */
+
+// Checks that the native exponential smoothing models produce the forecasts
+// and the accuracy indicators of the OpenForecast models they replace.
+
+package com.yahoo.egads.models.tsmm;
+
+import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.fail;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.Random;
+
+import net.sourceforge.openforecast.DataPoint;
+import net.sourceforge.openforecast.DataSet;
+import net.sourceforge.openforecast.ForecastingModel;
+import net.sourceforge.openforecast.Observation;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.Test;
+
+import com.yahoo.egads.data.FileModelStore;
+import com.yahoo.egads.data.TimeSeries;
+import com.yahoo.egads.utilities.FileUtils;
+
+public class TestExponentialSmoothing {
+
+    // The model store of testUpdate().
+    private File store;
+
+    @AfterMethod
+    public void deleteStore() {
+        if (store != null) {
+            File[] files = store.listFiles();
+            if (files != null) {
+                for (File f : files) {
+                    f.delete();
+                }
+            }
+            store.delete();
+            store = null;
+        }
+    }
+
+    @Test
+    public void testSimple() throws Exception {
+        for (TimeSeries.DataSequence data : series()) {
+            compare(new SimpleExponentialSmoothingModel(new Properties()),
+                    new net.sourceforge.openforecast.models.SimpleExponentialSmoothingModel(0.75), data, false);
+        }
+    }
+
+    @Test
+    public void testDouble() throws Exception {
+        for (TimeSeries.DataSequence data : series()) {
+            compare(new DoubleExponentialSmoothingModel(new Properties()),
+                    new net.sourceforge.openforecast.models.DoubleExponentialSmoothingModel(0.75, 0.1), data, false);
+        }
+    }
+
+    @Test
+    public void testTriple() throws Exception {
+        double[][] weights = {{0.75, 0.001, 0.001}, {0.3, 0.2, 0.5}};
+        for (double[] w : weights) {
+            Properties p = new Properties();
+            p.setProperty("ALPHA", String.valueOf(w[0]));
+            p.setProperty("BETA", String.valueOf(w[1]));
+            p.setProperty("GAMMA", String.valueOf(w[2]));
+            for (TimeSeries.DataSequence data : series()) {
+                compare(new TripleExponentialSmoothingModel(p),
+                        new net.sourceforge.openforecast.models.TripleExponentialSmoothingModel(w[0], w[1], w[2]),
+                        data, true);
+            }
+        }
+    }
+
+    @Test
+    public void testUpdate() throws Exception {
+        Properties p = new Properties();
+        p.setProperty("ALPHA", "0.3");
+        p.setProperty("BETA", "0.2");
+        p.setProperty("GAMMA", "0.5");
+        store = Files.createTempDirectory("egads-es").toFile();
+        for (TimeSeries.DataSequence data : series()) {
+            TimeSeriesAbstractModel[][] models = {
+                {new SimpleExponentialSmoothingModel(p), new SimpleExponentialSmoothingModel(p)},
+                {new DoubleExponentialSmoothingModel(p), new DoubleExponentialSmoothingModel(p)},
+                {new TripleExponentialSmoothingModel(p), new TripleExponentialSmoothingModel(p)}};
+            for (TimeSeriesAbstractModel[] m : models) {
+                m[0].train(data);
+
+                // Trained on the first points, then updated with overlapping chunks and saved in between.
+                int split = data.size() / 3;
+                m[1].train(slice(data, 0, split));
+                m[1].update(slice(data, split - 5, 2 * split));
+                FileModelStore files = new FileModelStore(store.getPath());
+                files.storeModel(m[1].getModelName(), m[1]);
+                TimeSeriesAbstractModel restored = (TimeSeriesAbstractModel) files.retrieveModel(m[1].getModelName());
+                restored.update(slice(data, 2 * split, data.size()));
+                restored.update(slice(data, 0, data.size()));
+
+                assertEquals(Double.valueOf(m[0].getBias()), Double.valueOf(restored.getBias()));
+                assertEquals(Double.valueOf(m[0].getMAD()), Double.valueOf(restored.getMAD()));
+                assertEquals(Double.valueOf(m[0].getMAPE()), Double.valueOf(restored.getMAPE()));
+                assertEquals(Double.valueOf(m[0].getMSE()), Double.valueOf(restored.getMSE()));
+                assertEquals(Double.valueOf(m[0].getSAE()), Double.valueOf(restored.getSAE()));
+
+                TimeSeries.DataSequence expected = new TimeSeries.DataSequence(data.getTimes(), data.getValues());
+                TimeSeries.DataSequence actual = new TimeSeries.DataSequence(data.getTimes(), data.getValues());
+                m[0].predict(expected);
+                restored.predict(actual);
+                assertEquals(expected.size(), actual.size());
+                for (int i = 0; i < expected.size(); i++) {
+                    assertEquals(expected.get(i).time, actual.get(i).time);
+                    assertEquals(Float.valueOf(expected.get(i).value), Float.valueOf(actual.get(i).value));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testUpdateUntrained() throws Exception {
+        TimeSeriesAbstractModel[] models = {new SimpleExponentialSmoothingModel(new Properties()),
+                                            new DoubleExponentialSmoothingModel(new Properties()),
+                                            new TripleExponentialSmoothingModel(new Properties())};
+        for (TimeSeriesAbstractModel model : models) {
+            try {
+                model.update(series().get(0));
+                fail(model.getModelName() + " updated before train()");
+            } catch (IllegalStateException e) {
+                // Expected.
+            }
+        }
+    }
+
+    private static TimeSeries.DataSequence slice(TimeSeries.DataSequence data, int from, int to) {
+        TimeSeries.DataSequence slice = new TimeSeries.DataSequence();
+        for (int i = from; i < to; i++) {
+            slice.add(new TimeSeries.Entry(data.get(i)));
+        }
+        return slice;
+    }
+
+    private static void compare(TimeSeriesAbstractModel model, ForecastingModel reference,
+                                TimeSeries.DataSequence data, boolean seasonal) throws Exception {
+        DataSet observed = new DataSet();
+        for (int i = 0; i < data.size(); i++) {
+            DataPoint dp = new Observation(data.get(i).value);
+            dp.setIndependentValue("x", i);
+            observed.add(dp);
+        }
+        observed.setTimeVariable("x");
+        if (seasonal) {
+            observed.setPeriodsPerYear(12);
+        }
+        reference.init(observed);
+        model.train(data);
+
+        assertEquals(Double.valueOf(reference.getBias()), Double.valueOf(model.getBias()));
+        assertEquals(Double.valueOf(reference.getMAD()), Double.valueOf(model.getMAD()));
+        assertEquals(Double.valueOf(reference.getMAPE()), Double.valueOf(model.getMAPE()));
+        assertEquals(Double.valueOf(reference.getMSE()), Double.valueOf(model.getMSE()));
+        assertEquals(Double.valueOf(reference.getSAE()), Double.valueOf(model.getSAE()));
+
+        TimeSeries.DataSequence sequence = new TimeSeries.DataSequence(data.getTimes(), data.getValues());
+        model.predict(sequence);
+        for (int i = 0; i < data.size(); i++) {
+            DataPoint dp = new Observation(0.0);
+            dp.setIndependentValue("x", i);
+            assertEquals(data.get(i).time, sequence.get(i).time);
+            assertEquals((float) reference.forecast(dp), sequence.get(i).value);
+        }
+    }
+
+    // The sample input, a noisy seasonal series with a trend and a series with zeros.
+    private static List<TimeSeries.DataSequence> series() throws Exception {
+        List<TimeSeries.DataSequence> series = new ArrayList<TimeSeries.DataSequence>();
+        Properties p = new Properties();
+        p.setProperty("MAX_ANOMALY_TIME_AGO", "999999999");
+        for (TimeSeries ts : FileUtils.createTimeSeries("src/test/resources/sample_input.csv", p)) {
+            series.add(ts.data);
+        }
+
+        Random random = new Random(7);
+        TimeSeries seasonal = new TimeSeries();
+        TimeSeries zeros = new TimeSeries();
+        for (int i = 0; i < 500; i++) {
+            long time = 1400000000L + i * 3600L;
+            seasonal.append(time, (float) (100 + 0.1 * i + 20 * Math.sin(2 * Math.PI * i / 12) + random.nextGaussian()));
+            zeros.append(time, i % 5 == 0 ? 0 : random.nextInt(10));
+        }
+        series.add(seasonal.data);
+        series.add(zeros.data);
+        return series;
+    }
+}
@@ -0,0 +1,124 @@
+/*
+ * Copyright 2016, Yahoo Inc.
+ * Copyrights licensed under the GPL License.
+ * See the accompanying LICENSE file for terms.
+ */
+
+package com.yahoo.egads.models.tsmm;
+
+import static org.testng.AssertJUnit.assertEquals;
+
+import java.util.Properties;
+import java.util.Random;
+
+import org.testng.annotations.Test;
+
+import com.yahoo.egads.data.TimeSeries;
+
+public class TestForecastHistory {
+
+    @Test
+    public void requestedTimes() throws Exception {
+        TimeSeries.DataSequence data = new TimeSeries.DataSequence();
+        for (int i = 0; i < 10; i++) {
+            data.add(new TimeSeries.Entry(1000 + i * 60, i));
+        }
+        double[] forecasts = new double[10];
+        for (int i = 0; i < 10; i++) {
+            forecasts[i] = 100 + i;
+        }
+        ForecastHistory history = new ForecastHistory(data, forecasts);
+
+        // before, at, between and after the points, out of order
+        long[] times = {1540, 1120, 1130, 900, 1540 + 60, 1540 + 150, 1000};
+        TimeSeries.DataSequence sequence = new TimeSeries.DataSequence();
+        for (long time : times) {
+            sequence.add(new TimeSeries.Entry(time, 0));
+        }
+        history.predict(sequence, new ForecastHistory.Horizon() {
+            public double forecast(int steps) {
+                return -steps;
+            }
+        });
+        float[] expected = {109, 102, 102, 100, -1, -3, 100};
+        assertEquals(times.length, sequence.size());
+        for (int i = 0; i < times.length; i++) {
+            assertEquals(times[i], sequence.get(i).time);
+            assertEquals(expected[i], sequence.get(i).value, 0);
+        }
+    }
+
+    @Test
+    public void bounded() throws Exception {
+        TimeSeries.DataSequence data = new TimeSeries.DataSequence();
+        double[] forecasts = new double[5];
+        for (int i = 0; i < 5; i++) {
+            data.add(new TimeSeries.Entry(1000 + i * 60, i));
+            forecasts[i] = 100 + i;
+        }
+        ForecastHistory history = new ForecastHistory(data, forecasts, 8);
+        for (int i = 5; i < 25; i++) {
+            history.append(1000 + i * 60, i, 100 + i);
+        }
+        // the indices are those of all the points seen
+        assertEquals(25, history.size());
+        assertEquals(1000 + 24 * 60, history.lastTime());
+        assertEquals(124.0, history.forecast(24), 0);
+        history.setForecast(23, -1);
+        assertEquals(-1.0, history.forecast(23), 0);
+
+        // at most 8 points are kept, the older time-stamps get the forecast of the oldest one
+        TimeSeries.DataSequence sequence = new TimeSeries.DataSequence();
+        sequence.add(new TimeSeries.Entry(1000, 0));
+        sequence.add(new TimeSeries.Entry(1000 + 20 * 60, 0));
+        history.predict(sequence, new ForecastHistory.Horizon() {
+            public double forecast(int steps) {
+                return -steps;
+            }
+        });
+        assertEquals(true, sequence.get(0).value >= 100 + 25 - 8);
+        assertEquals(120, sequence.get(1).value, 0);
+
+        // trained on more points than it keeps
+        history = new ForecastHistory(data, forecasts, 2);
+        assertEquals(5, history.size());
+        assertEquals(103.0, history.forecast(0), 0);
+        assertEquals(104.0, history.forecast(4), 0);
+    }
+
+    @Test
+    public void horizons() throws Exception {
+        Random random = new Random(5);
+        TimeSeries ts = new TimeSeries();
+        for (int i = 0; i < 100; i++) {
+            ts.append(1400000000L + i * 3600L, (float) (50 + 0.5 * i + random.nextGaussian()));
+        }
+        Properties p = new Properties();
+        TimeSeriesAbstractModel[] models = {new RegressionModel(p), new MovingAverageModel(p),
+                new NaiveForecastingModel(p), new SimpleExponentialSmoothingModel(p),
+                new DoubleExponentialSmoothingModel(p), new TripleExponentialSmoothingModel(p)};
+        for (TimeSeriesAbstractModel model : models) {
+            model.train(ts.data);
+            TimeSeries.DataSequence all = new TimeSeries.DataSequence(ts.data.getTimes(), ts.data.getValues());
+            model.predict(all);
+
+            // the next day alone, and a sample of the training range
+            TimeSeries.DataSequence next = new TimeSeries.DataSequence(1400000000L + 100 * 3600L,
+                            1400000000L + 123 * 3600L, 3600L);
+            model.predict(next);
+            assertEquals(24, next.size());
+            TimeSeries.DataSequence some = new TimeSeries.DataSequence();
+            some.add(new TimeSeries.Entry(ts.data.get(42)));
+            some.add(new TimeSeries.Entry(ts.data.get(7)));
+            model.predict(some);
+            assertEquals(all.get(42).value, some.get(0).value, 0);
+            assertEquals(all.get(7).value, some.get(1).value, 0);
+
+            // the trend carries on past the training range
+            if (!(model instanceof NaiveForecastingModel || model instanceof SimpleExponentialSmoothingModel
+                            || model instanceof MovingAverageModel)) {
+                assertEquals(50 + 0.5 * 123, next.get(23).value, 3);
+            }
+        }
+    }
+}
@@ -0,0 +1,148 @@
+/*
+ * Copyright 2016, Yahoo Inc.
+ * Copyrights licensed under the GPL License.
+ * See the accompanying LICENSE file for terms.
+ */
+
+package com.yahoo.egads.models.tsmm;
+
+import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertNotNull;
+import static org.testng.AssertJUnit.assertTrue;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Random;
+
+import org.testng.annotations.Test;
+
+import com.yahoo.egads.data.Model;
+import com.yahoo.egads.data.ModelStore;
+import com.yahoo.egads.data.TimeSeries;
+import com.yahoo.egads.utilities.BudgetExceededException;
+import com.yahoo.egads.utilities.ExecutionBudget;
+
+public class TestHoltWintersTuner {
+
+    @Test
+    public void tuning() throws Exception {
+        TimeSeries.DataSequence data = series(0.4, 0.05, 0.3);
+        TripleExponentialSmoothingModel fixed = new TripleExponentialSmoothingModel(config("NONE"));
+        fixed.train(data);
+
+        for (String method : new String[] {"GRID", "NELDER_MEAD"}) {
+            for (String threads : new String[] {"1", "4"}) {
+                Properties p = config(method);
+                p.setProperty("TUNING_THREADS", threads);
+                TripleExponentialSmoothingModel tuned = new TripleExponentialSmoothingModel(p);
+                tuned.train(data);
+                // the search does better than the configured factors, and close to the true ones
+                assertTrue(method, tuned.getMSE() < fixed.getMSE());
+                assertEquals(method, 0.4, tuned.getAlpha(), 0.15);
+            }
+        }
+    }
+
+    @Test
+    public void budget() throws Exception {
+        TimeSeries.DataSequence data = series(0.4, 0.05, 0.3);
+        double[] values = new double[data.size()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = data.get(i).value;
+        }
+        double[] indices = new double[12];
+        Arrays.fill(indices, 1);
+        for (HoltWintersTuner.Method method : HoltWintersTuner.Method.values()) {
+            for (int budget : new int[] {10, 70, 150}) {
+                HoltWintersTuner tuner = new HoltWintersTuner(method, budget, 48, 2);
+                tuner.tune(values, 12, 24, 100, 0, indices, new double[] {0.5, 0.5, 0.5}, false);
+                assertTrue(method + " " + budget, tuner.getEvaluations() <= Math.max(budget, 4));
+            }
+        }
+    }
+
+    @Test
+    public void deadline() throws Exception {
+        Random random = new Random(3);
+        double[] values = new double[2000000];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = 100 + random.nextGaussian();
+        }
+        double[] indices = new double[12];
+        Arrays.fill(indices, 1);
+        HoltWintersTuner tuner = new HoltWintersTuner(HoltWintersTuner.Method.GRID, 1000, 0, 2);
+        // the evaluations on the threads of the pool stop at the deadline of the caller, not after the grid level
+        ExecutionBudget.start(50);
+        long start = System.currentTimeMillis();
+        try {
+            tuner.tune(values, 12, 24, 100, 0, indices, new double[] {0.5, 0.5, 0.5}, false);
+            assertTrue("The search was not aborted.", false);
+        } catch (BudgetExceededException e) {
+            assertTrue(System.currentTimeMillis() - start < 400);
+        } finally {
+            ExecutionBudget.clear();
+        }
+    }
+
+    @Test
+    public void parameterStore() throws Exception {
+        final Map<String, Model> models = new HashMap<String, Model>();
+        ModelStore store = new ModelStore() {
+            public void storeModel(String tag, Model m) {
+                models.put(tag, m);
+            }
+
+            public Model retrieveModel(String tag) {
+                return models.get(tag);
+            }
+        };
+        TimeSeries.DataSequence data = series(0.4, 0.05, 0.3);
+        TripleExponentialSmoothingModel first = new TripleExponentialSmoothingModel(config("NELDER_MEAD"));
+        first.setParameterStore(store, "metric_hw");
+        first.train(data);
+        TripleExponentialSmoothingModel.Parameters found =
+                        (TripleExponentialSmoothingModel.Parameters) models.get("metric_hw");
+        assertNotNull(found);
+        assertEquals(first.getAlpha(), found.alpha, 0);
+        assertEquals(first.getBeta(), found.beta, 0);
+        assertEquals(first.getGamma(), found.gamma, 0);
+
+        // started from the stored factors, the next search does not do worse
+        TripleExponentialSmoothingModel second = new TripleExponentialSmoothingModel(config("NELDER_MEAD"));
+        second.setParameterStore(store, "metric_hw");
+        second.train(data);
+        assertTrue(second.getMSE() <= first.getMSE() * (1 + 1e-9));
+    }
+
+    private static Properties config(String method) {
+        Properties p = new Properties();
+        p.setProperty("TUNING_METHOD", method);
+        return p;
+    }
+
+    // A seasonal series following the Holt-Winters recursions with the factors, with noise.
+    private static TimeSeries.DataSequence series(double alpha, double beta, double gamma) throws Exception {
+        Random random = new Random(5);
+        int n = 12 * 30;
+        double base = 100;
+        double trend = 0.5;
+        double[] seasons = new double[12];
+        for (int k = 0; k < 12; k++) {
+            seasons[k] = 1 + 0.3 * Math.sin(2 * Math.PI * k / 12);
+        }
+        TimeSeries.DataSequence data = new TimeSeries.DataSequence();
+        for (int t = 0; t < n; t++) {
+            int k = t % 12;
+            double forecast = (base + trend) * seasons[k];
+            double value = forecast * (1 + 0.05 * random.nextGaussian());
+            double nextBase = alpha * value / seasons[k] + (1 - alpha) * (base + trend);
+            trend = beta * (nextBase - base) + (1 - beta) * trend;
+            base = nextBase;
+            seasons[k] = gamma * value / forecast + (1 - gamma) * seasons[k];
+            data.add(new TimeSeries.Entry(t * 3600L, (float) value));
+        }
+        return data;
+    }
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright 2016, Yahoo Inc.
+ * Copyrights licensed under the GPL License.
+ * See the accompanying LICENSE file for terms.
+ */
+
+package com.yahoo.egads.models.tsmm;
+
+import static org.testng.AssertJUnit.assertEquals;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Random;
+
+import org.testng.annotations.Test;
+
+import com.yahoo.egads.data.TimeSeries;
+import com.yahoo.egads.utilities.SpectralMethods;
+import com.yahoo.egads.utilities.SpectralMethods.FilteringMethod;
+
+public class TestIndexedValues {
+
+    @Test
+    public void sameAsMap() {
+        Random random = new Random(13);
+        IndexedValues values = new IndexedValues();
+        for (int run = 0; run < 200; run++) {
+            Map<Long, Float> expected = new HashMap<Long, Float>();
+            values.clear();
+            long base = random.nextInt(100000) - 50000;
+            for (int i = 0; i < 3000; i++) {
+                // mostly contiguous runs, going forward or backward, with far away jumps
+                long index;
+                switch (random.nextInt(10)) {
+                    case 0:
+                        index = base + random.nextInt(2000000) - 1000000;
+                        break;
+                    case 1:
+                        index = base - i;
+                        break;
+                    default:
+                        index = base + i;
+                }
+                float value = random.nextFloat();
+                expected.put(index, value);
+                values.put(index, value);
+            }
+            for (Map.Entry<Long, Float> e : expected.entrySet()) {
+                assertEquals(e.getValue(), values.get(e.getKey()), 0);
+            }
+            for (int i = 0; i < 1000; i++) {
+                long index = base + random.nextInt(4000000) - 2000000;
+                Float value = expected.get(index);
+                assertEquals(value == null ? 0 : value, values.get(index), 0);
+            }
+        }
+    }
+
+    @Test
+    public void smootherLogicalIndices() throws Exception {
+        Properties p = new Properties();
+        p.setProperty("WINDOW_SIZE", "12");
+        p.setProperty("FILTERING_METHOD", "EXPLICIT");
+        p.setProperty("FILTERING_PARAM", "3");
+        SpectralSmoother model = new SpectralSmoother(p);
+
+        TimeSeries ts = new TimeSeries();
+        for (int i = 0; i < 200; i++) {
+            ts.append(1400000000L + i * 60L, (float) Math.sin(i / 5.0));
+        }
+        ts.data.setLogicalIndices(1400000000L, 60L);
+        model.train(ts.data);
+        TimeSeries.DataSequence smoothed = SpectralMethods.mFilter(ts.data, 12, FilteringMethod.EXPLICIT, 3);
+
+        // shifted by one index, the index past the end is unknown
+        TimeSeries.DataSequence sequence = new TimeSeries.DataSequence(ts.data.getTimes(), ts.data.getValues());
+        sequence.setLogicalIndices(1400000000L - 60L, 60L);
+        model.predict(sequence);
+        for (int i = 0; i < 199; i++) {
+            assertEquals(smoothed.get(i + 1).value, sequence.get(i).value, 0);
+        }
+        assertEquals(0f, sequence.get(199).value, 0);
+    }
+}
@@ -10,11 +10,13 @@ import static org.testng.AssertJUnit.assertFalse;
 import static org.testng.AssertJUnit.assertTrue;
 import static org.testng.AssertJUnit.fail;
 
+import java.time.Instant;
 import java.time.ZoneId;
+import java.time.ZonedDateTime;
 import java.time.temporal.ChronoUnit;
 import java.util.Properties;
+import java.util.Random;
 
-import org.apache.commons.lang.NotImplementedException;
 import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
 
@@ -1454,13 +1456,71 @@ public class TestOlympicModel2 {
         assertTrue(Double.isNaN(model.model.get(53).getValue()));
     }
     
-    @Test (expectedExceptions = NotImplementedException.class)
-    public void update() throws Exception {
+    @Test (expectedExceptions = IllegalStateException.class)
+    public void updateNotTrained() throws Exception {
         final OlympicModel2 model = new OlympicModel2(config);
         final TimeSeries ts = new TimeSeries();
         model.update(ts.data);
     }
     
+    @Test
+    public void update() throws Exception {
+        config.put("FUTURE_WINDOWS", "2");
+        config.put("NUM_TO_DROP_HIGHEST", "1");
+        config.put("WINDOW_DISTANCE", "1");
+        config.put("WINDOW_DISTANCE_UNITS", "DAYS");
+        final TimeSeries ts = new TimeSeries();
+        final Random random = new Random(42);
+        for (long t = start - 86400 * 10; t < start + 3600 * 3; t += 60) {
+            ts.append(t, random.nextInt(10) == 0 ? Float.NaN 
+                    : random.nextInt(100));
+        }
+        
+        // trained up to the model start, then rolled forward in chunks
+        final OlympicModel2 model = new OlympicModel2(config);
+        final TimeSeries.DataSequence first = new TimeSeries.DataSequence();
+        int i = 0;
+        while (ts.data.get(i).time < start) {
+            first.add(ts.data.get(i++));
+        }
+        model.train(first);
+        
+        // nothing new
+        model.update(first);
+        assertEquals(26, model.model.size());
+        assertEquals(start, (long) model.model.get(0).getKey());
+        
+        while (i < ts.data.size()) {
+            final TimeSeries.DataSequence chunk = 
+                    new TimeSeries.DataSequence();
+            // overlapping the previous chunk
+            for (int j = Math.max(0, i - 3); 
+                    j < Math.min(i + 7, ts.data.size()); j++) {
+                chunk.add(ts.data.get(j));
+            }
+            i = Math.min(i + 7, ts.data.size());
+            model.update(chunk);
+            
+            final long rolled = (ts.data.get(i - 1).time / 300 + 1) * 300;
+            config.put("MODEL_START", Long.toString(rolled));
+            final OlympicModel2 trained = new OlympicModel2(config);
+            final TimeSeries.DataSequence seen = 
+                    new TimeSeries.DataSequence();
+            for (int j = 0; j < i; j++) {
+                seen.add(ts.data.get(j));
+            }
+            trained.train(seen);
+            
+            assertEquals(trained.model.size(), model.model.size());
+            for (int j = 0; j < model.model.size(); j++) {
+                assertEquals(trained.model.get(j).getKey(), 
+                        model.model.get(j).getKey());
+                assertEquals(trained.model.get(j).getValue(), 
+                        model.model.get(j).getValue());
+            }
+        }
+    }
+    
     @Test
     public void predict() throws Exception {
         OlympicModel2 model = new OlympicModel2(config);
@@ -1553,6 +1613,36 @@ public class TestOlympicModel2 {
         
     }
 
+    @Test
+    public void epochSteps() throws Exception {
+        // crosses the end of DST in Lord Howe, a 30 minute shift, on 2017-04-02
+        config.put("TIMEZONE", "Australia/Lord_Howe");
+        final ZonedDateTime from = Instant.ofEpochSecond(1490961600L)
+                .atZone(ZoneId.of("Australia/Lord_Howe"));
+        final String[][] intervals = { { "5", "MINUTES" }, { "1", "HOURS" }, 
+                { "1", "DAYS" }, { "90", "SECONDS" } };
+        for (final String[] interval : intervals) {
+            config.put("INTERVAL", interval[0]);
+            config.put("INTERVAL_UNITS", interval[1]);
+            OlympicModel2 model = new OlympicModel2(config);
+            final long[] steps = model.epochSteps(from, 64);
+            assertEquals(64, steps.length);
+            ZonedDateTime ts = from;
+            for (int k = 0; k < steps.length; k++) {
+                ts = ts.plus(model.interval, model.intervalUnits);
+                assertEquals(ts.toEpochSecond(), steps[k]);
+            }
+            
+            final long end = steps[40];
+            final long[] times = model.modelTimes(from, end);
+            assertEquals(42, times.length);
+            assertEquals(from.toEpochSecond(), times[0]);
+            for (int k = 1; k < times.length; k++) {
+                assertEquals(steps[k - 1], times[k]);
+            }
+        }
+    }
+    
     /** Helper that sets some defaults in the config for testing. */
     private void setConfig() {
         config = new Properties();
@@ -0,0 +1,146 @@
+/*
+ * Copyright 2016, Yahoo Inc.
+ * Copyrights licensed under the GPL License.
+ * See the accompanying LICENSE file for terms.
+ */
+
+// Checks that the regression models fit as the OpenForecast models they replace, and that
+// their sufficient statistics can be updated and merged.
+
+package com.yahoo.egads.models.tsmm;
+
+import static org.testng.AssertJUnit.assertEquals;
+
+import java.util.Properties;
+import java.util.Random;
+
+import net.sourceforge.openforecast.DataPoint;
+import net.sourceforge.openforecast.DataSet;
+import net.sourceforge.openforecast.ForecastingModel;
+import net.sourceforge.openforecast.Observation;
+
+import org.testng.annotations.Test;
+
+import com.yahoo.egads.data.TimeSeries;
+
+public class TestRegression {
+
+    @Test
+    public void testFit() throws Exception {
+        TimeSeries.DataSequence data = series(500);
+        compare(new RegressionModel(new Properties()),
+                new net.sourceforge.openforecast.models.RegressionModel("x"), data);
+        compare(new MultipleLinearRegressionModel(new Properties()),
+                new net.sourceforge.openforecast.models.MultipleLinearRegressionModel(), data);
+        compare(new PolynomialRegressionModel(new Properties()),
+                new net.sourceforge.openforecast.models.PolynomialRegressionModel("x", 3), data);
+    }
+
+    @Test
+    public void testUpdate() throws Exception {
+        TimeSeries.DataSequence data = series(600);
+        TimeSeriesAbstractModel[][] models = {
+            {new RegressionModel(new Properties()), new RegressionModel(new Properties())},
+            {new PolynomialRegressionModel(new Properties()), new PolynomialRegressionModel(new Properties())}};
+        for (TimeSeriesAbstractModel[] m : models) {
+            m[0].train(data);
+            m[1].train(slice(data, 0, 200));
+            for (int from = 150; from < data.size(); from += 50) {
+                m[1].update(slice(data, from, Math.min(from + 100, data.size())));
+            }
+
+            // the same fit after the last point
+            TimeSeries.DataSequence expected = future(data, 24);
+            TimeSeries.DataSequence actual = future(data, 24);
+            m[0].predict(expected);
+            m[1].predict(actual);
+            for (int i = 0; i < expected.size(); i++) {
+                assertEquals(expected.get(i).value, actual.get(i).value, 1e-3);
+            }
+        }
+    }
+
+    @Test(expectedExceptions = IllegalStateException.class)
+    public void testUpdateUntrained() throws Exception {
+        new RegressionModel(new Properties()).update(series(10));
+    }
+
+    @Test
+    public void testMerge() {
+        TimeSeries.DataSequence data = series(1000);
+        double[] values = new double[data.size()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = data.get(i).value;
+        }
+        RegressionStatistics whole = RegressionStatistics.of(3, values, 0, values.length);
+        RegressionStatistics first = new RegressionStatistics(3, 499.5, 500);
+        RegressionStatistics second = new RegressionStatistics(3, 499.5, 500);
+        for (int i = 0; i < values.length; i++) {
+            (i < 300 ? first : second).add(i, values[i]);
+        }
+        first.merge(second);
+        first.fit();
+        assertEquals(whole.count(), first.count());
+        for (int x = 0; x < 1100; x += 100) {
+            assertEquals(whole.forecast(x), first.forecast(x), 1e-6);
+        }
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testMergeBases() {
+        new RegressionStatistics(2, 0, 1).merge(new RegressionStatistics(2, 0, 2));
+    }
+
+    private static void compare(TimeSeriesAbstractModel model, ForecastingModel reference,
+                                TimeSeries.DataSequence data) throws Exception {
+        DataSet observed = new DataSet();
+        for (int i = 0; i < data.size(); i++) {
+            DataPoint dp = new Observation(data.get(i).value);
+            dp.setIndependentValue("x", i);
+            observed.add(dp);
+        }
+        observed.setTimeVariable("x");
+        reference.init(observed);
+        model.train(data);
+
+        assertEquals(reference.getBias(), model.getBias(), 1e-6);
+        assertEquals(reference.getMAD(), model.getMAD(), 1e-6);
+        assertEquals(reference.getMSE(), model.getMSE(), 1e-6 * reference.getMSE());
+
+        TimeSeries.DataSequence sequence = future(data, 10);
+        model.predict(sequence);
+        for (int i = 0; i < sequence.size(); i++) {
+            DataPoint dp = new Observation(0.0);
+            dp.setIndependentValue("x", data.size() + i);
+            assertEquals(reference.forecast(dp), sequence.get(i).value, 1e-3);
+        }
+    }
+
+    private static TimeSeries.DataSequence slice(TimeSeries.DataSequence data, int from, int to) {
+        TimeSeries.DataSequence slice = new TimeSeries.DataSequence();
+        for (int i = from; i < to; i++) {
+            slice.add(new TimeSeries.Entry(data.get(i)));
+        }
+        return slice;
+    }
+
+    // The points after the last one of the series.
+    private static TimeSeries.DataSequence future(TimeSeries.DataSequence data, int n) {
+        TimeSeries.DataSequence future = new TimeSeries.DataSequence();
+        for (int i = 0; i < n; i++) {
+            future.add(new TimeSeries.Entry(data.get(data.size() - 1).time + (i + 1) * 3600L, 0));
+        }
+        return future;
+    }
+
+    // A noisy parabola.
+    private static TimeSeries.DataSequence series(int n) {
+        Random random = new Random(3);
+        TimeSeries.DataSequence data = new TimeSeries.DataSequence();
+        for (int i = 0; i < n; i++) {
+            data.add(new TimeSeries.Entry(1400000000L + i * 3600L,
+                            (float) (100 + 0.2 * i - 0.0003 * i * i + 5 * random.nextGaussian())));
+        }
+        return data;
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright 2016, Yahoo Inc.
+ * Copyrights licensed under the GPL License.
+ * See the accompanying LICENSE file for terms.
+ */
+
+package com.yahoo.egads.models.tsmm;
+
+import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertTrue;
+
+import java.util.Properties;
+import java.util.Random;
+
+import org.testng.annotations.Test;
+
+import com.yahoo.egads.data.TimeSeries;
+import com.yahoo.egads.utilities.SpectralMethods;
+import com.yahoo.egads.utilities.SpectralMethods.FilteringMethod;
+
+public class TestSpectralSmoother {
+
+    @Test
+    public void incrementalUpdate() throws Exception {
+        Random random = new Random(3);
+        TimeSeries ts = new TimeSeries();
+        for (int i = 0; i < 600; i++) {
+            ts.append(1400000000L + i * 3600L, (float) (100 + 0.02 * i + 20 * Math.sin(2 * Math.PI * i / 24)
+                            + 5 * Math.sin(2 * Math.PI * i / 168) + 2 * random.nextGaussian()));
+        }
+        ts.data.setLogicalIndices(1400000000L, 3600L);
+        Properties p = new Properties();
+        p.setProperty("WINDOW_SIZE", "48");
+        p.setProperty("FILTERING_METHOD", "EXPLICIT");
+        p.setProperty("FILTERING_PARAM", "5");
+        p.setProperty("UPDATE_METHOD", "INCREMENTAL");
+        SpectralSmoother whole = new SpectralSmoother(p);
+        SpectralSmoother chunks = new SpectralSmoother(p);
+
+        // trained on the same points, the smoothing is the batch one
+        whole.train(slice(ts.data, 0, 300));
+        TimeSeries.DataSequence batch = SpectralMethods.mFilter(slice(ts.data, 0, 300), 48,
+                        FilteringMethod.EXPLICIT, 5);
+        TimeSeries.DataSequence sequence = slice(ts.data, 0, 300);
+        whole.predict(sequence);
+        for (int i = 0; i < 300; i++) {
+            assertEquals(batch.get(i).value, sequence.get(i).value, 0);
+        }
+
+        // updated in one go or in overlapping chunks, close to the batch smoothing of all the points
+        whole.update(ts.data);
+        chunks.train(slice(ts.data, 0, 300));
+        chunks.update(slice(ts.data, 250, 420));
+        chunks.update(slice(ts.data, 420, 421));
+        chunks.update(slice(ts.data, 400, 600));
+        batch = SpectralMethods.mFilter(ts.data, 48, FilteringMethod.EXPLICIT, 5);
+        TimeSeries.DataSequence expected = slice(ts.data, 0, 600);
+        TimeSeries.DataSequence actual = slice(ts.data, 0, 600);
+        whole.predict(expected);
+        chunks.predict(actual);
+        double error = 0;
+        for (int i = 0; i < 600; i++) {
+            assertEquals(expected.get(i).value, actual.get(i).value, 0);
+            double e = Math.abs(batch.get(i).value - actual.get(i).value);
+            assertTrue(e < 0.1);
+            error += e;
+        }
+        assertTrue(error / 600 < 0.02);
+    }
+
+    @Test(expectedExceptions = IllegalStateException.class)
+    public void updateNotTrained() throws Exception {
+        Properties p = new Properties();
+        p.setProperty("WINDOW_SIZE", "12");
+        p.setProperty("FILTERING_METHOD", "EXPLICIT");
+        p.setProperty("UPDATE_METHOD", "INCREMENTAL");
+        new SpectralSmoother(p).update(new TimeSeries.DataSequence(1400000000L, 1));
+    }
+
+    private static TimeSeries.DataSequence slice(TimeSeries.DataSequence data, int from, int to) {
+        TimeSeries.DataSequence slice = new TimeSeries.DataSequence();
+        for (int i = from; i < to; i++) {
+            slice.add(new TimeSeries.Entry(data.get(i)));
+        }
+        return slice;
+    }
+}
@@ -0,0 +1,156 @@
+/*
+ * Copyright 2016, Yahoo Inc.
+ * Copyrights licensed under the GPL License.
+ * See the accompanying LICENSE file for terms.
+ */
+
+package com.yahoo.egads.models.tsmm;
+
+import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertTrue;
+
+import java.util.Properties;
+import java.util.Random;
+
+import org.testng.annotations.Test;
+
+import com.yahoo.egads.data.TimeSeries;
+
+public class TestStlModel {
+
+    private static final long STEP = 3600;
+
+    @Test
+    public void decomposition() throws Exception {
+        // a daily season on a slow trend, with large outliers the fit ignores
+        TimeSeries.DataSequence data = series(0, 24 * 30, 1, true);
+        StlModel model = new StlModel(config("24"));
+        model.train(data);
+        TimeSeries.DataSequence fit = empty(0, 24 * 30);
+        model.predict(fit);
+        assertTrue(rmse(fit, series(0, 24 * 30, 1, false)) < 1);
+    }
+
+    @Test
+    public void forecast() throws Exception {
+        StlModel model = new StlModel(config("24,168"));
+        model.train(series(0, 24 * 35, 1, true));
+        TimeSeries.DataSequence forecast = empty(24 * 35, 24 * 37);
+        model.predict(forecast);
+        assertTrue(rmse(forecast, series(24 * 35, 24 * 37, 1, false)) < 1.5);
+    }
+
+    @Test
+    public void update() throws Exception {
+        int n = 24 * 30;
+        StlModel model = new StlModel(config("24"));
+        model.train(series(0, n, 1, true));
+        for (int from = n; from < n + 48; from += 4) {
+            model.update(series(from, from + 4, 1, true));
+        }
+        TimeSeries.DataSequence fit = empty(n, n + 48);
+        model.predict(fit);
+        assertTrue(rmse(fit, series(n, n + 48, 1, false)) < 1.5);
+
+        // the points already seen are skipped
+        model.update(series(0, n + 48, 1, true));
+        TimeSeries.DataSequence again = empty(n, n + 48);
+        model.predict(again);
+        for (int i = 0; i < fit.size(); i++) {
+            assertEquals(fit.get(i).value, again.get(i).value, 1e-6);
+        }
+    }
+
+    @Test
+    public void updateLongerThanHistory() throws Exception {
+        Properties p = config("24");
+        p.setProperty("STL_HISTORY", "100");
+        StlModel model = new StlModel(p);
+        model.train(series(0, 150, 1, true));
+        model.update(series(150, 450, 1, true));
+
+        // every new point has its forecast, not only the last STL_HISTORY ones
+        TimeSeries.DataSequence fit = empty(150, 450);
+        model.predict(fit);
+        assertTrue(rmse(fit, series(150, 450, 1, false)) < 1.5);
+
+        // and the next updates decompose the last STL_HISTORY points again
+        model.update(series(450, 460, 1, true));
+        TimeSeries.DataSequence forecast = empty(460, 484);
+        model.predict(forecast);
+        assertTrue(rmse(forecast, series(460, 484, 1, false)) < 1.5);
+    }
+
+    @Test
+    public void seasons() throws Exception {
+        TimeSeries.DataSequence data = series(0, 24 * 20, 1, true);
+        StlModel points = new StlModel(config("24"));
+        points.train(data);
+        StlModel seconds = new StlModel(config("5"));
+        seconds.setSeasons(new long[] {24 * STEP});
+        seconds.train(data);
+
+        TimeSeries.DataSequence a = empty(0, 24 * 22);
+        TimeSeries.DataSequence b = empty(0, 24 * 22);
+        points.predict(a);
+        seconds.predict(b);
+        for (int i = 0; i < a.size(); i++) {
+            assertEquals(a.get(i).value, b.get(i).value, 1e-6);
+        }
+    }
+
+    @Test
+    public void shortSeries() throws Exception {
+        // less than two cycles, the trend alone
+        StlModel model = new StlModel(config("24"));
+        model.train(series(0, 30, 0, false));
+        TimeSeries.DataSequence forecast = empty(30, 33);
+        model.predict(forecast);
+        for (TimeSeries.Entry e : forecast) {
+            assertTrue(!Float.isNaN(e.value) && !Float.isInfinite(e.value));
+        }
+    }
+
+    @Test(expectedExceptions = IllegalStateException.class)
+    public void updateUntrained() throws Exception {
+        new StlModel(config("24")).update(series(0, 10, 1, false));
+    }
+
+    private static Properties config(String periods) {
+        Properties p = new Properties();
+        p.setProperty("SEASONAL_PERIODS", periods);
+        return p;
+    }
+
+    // A trend, a daily and a weekly season, optionally with noise and an outlier every 50 points.
+    private static TimeSeries.DataSequence series(int from, int to, double season, boolean noisy) {
+        Random random = new Random(from);
+        TimeSeries.DataSequence data = new TimeSeries.DataSequence();
+        for (int i = from; i < to; i++) {
+            double value = 100 + 0.01 * i + season * (10 * Math.sin(2 * Math.PI * i / 24)
+                            + 4 * Math.cos(2 * Math.PI * i / 168));
+            if (noisy) {
+                value += random.nextGaussian() * 0.5 + (i % 50 == 7 ? 60 : 0);
+            }
+            data.add(new TimeSeries.Entry(i * STEP, (float) value));
+        }
+        return data;
+    }
+
+    private static TimeSeries.DataSequence empty(int from, int to) {
+        TimeSeries.DataSequence data = new TimeSeries.DataSequence();
+        for (int i = from; i < to; i++) {
+            data.add(new TimeSeries.Entry(i * STEP, 0));
+        }
+        return data;
+    }
+
+    private static double rmse(TimeSeries.DataSequence forecast, TimeSeries.DataSequence actual) {
+        double sum = 0;
+        for (int i = 0; i < actual.size(); i++) {
+            double error = forecast.get(i).value - actual.get(i).value;
+            sum += error * error;
+        }
+        return Math.sqrt(sum / actual.size());
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright 2016, Yahoo Inc.
+ * Copyrights licensed under the GPL License.
+ * See the accompanying LICENSE file for terms.
+ */
+
+package com.yahoo.egads.utilities;
+
+import com.yahoo.egads.control.ProcessableObjectFactory;
+import com.yahoo.egads.control.StagedProcessable;
+import com.yahoo.egads.data.Anomaly;
+import com.yahoo.egads.data.TimeSeries;
+import java.io.ByteArrayOutputStream;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+// Tests the HTTP scoring server against localhost.
+public class TestHttpInputProcessor {
+
+    @Test
+    public void testDetect() throws Exception {
+        InputStream is = new FileInputStream("src/test/resources/sample_config.ini");
+        Properties p = new Properties();
+        p.load(is);
+        p.setProperty("SERVER_PORT", "0");
+        p.setProperty("SERVER_THREADS", "2");
+        TimeSeries ts = FileUtils.createTimeSeries("src/test/resources/sample_input.csv", p).get(0);
+
+        // The anomalies detected without the server.
+        StagedProcessable po = (StagedProcessable) ProcessableObjectFactory.create(ts, p);
+        po.train();
+        po.detect();
+        @SuppressWarnings("unchecked")
+        List<Anomaly> expected = (List<Anomaly>) po.result();
+        List<Long> expectedTimes = new ArrayList<Long>();
+        for (Anomaly a : expected) {
+            for (Anomaly.Interval i : a.intervals) {
+                expectedTimes.add(i.utime);
+            }
+        }
+        Assert.assertTrue(expectedTimes.size() > 0);
+
+        StringBuilder json = new StringBuilder("{\"series\": [{\"name\": \"m1\", \"data\": [");
+        StringBuilder tuples = new StringBuilder("meta\t{");
+        for (int i = 0; i < ts.size(); i++) {
+            json.append(i == 0 ? "" : ",").append("[" + ts.time(i) + "," + ts.value(i) + "]");
+            tuples.append(i == 0 ? "" : ",").append("(" + ts.time(i) + "," + ts.value(i) + ")");
+        }
+        json.append("]}, {\"name\": \"m2\", \"data\": [[1, 1.0], [2, 1.0], [3, 1.0]]}]}");
+        tuples.append("}");
+
+        HttpInputProcessor server = new HttpInputProcessor();
+        server.start(p);
+        try {
+            String base = "http://localhost:" + server.getPort();
+
+            JSONArray series = new JSONObject(request(base + "/detect", "POST", json.toString(), 200))
+                .getJSONArray("series");
+            Assert.assertEquals(series.length(), 2);
+            Assert.assertEquals(series.getJSONObject(0).getString("name"), "m1");
+            Assert.assertEquals(times(series.getJSONObject(0)), expectedTimes);
+
+            series = new JSONObject(request(base + "/detect", "POST", tuples.toString(), 200))
+                .getJSONArray("series");
+            Assert.assertEquals(series.length(), 1);
+            Assert.assertEquals(times(series.getJSONObject(0)), expectedTimes);
+
+            request(base + "/detect", "POST", "{\"series\": [{\"name\": \"bad\"}]}", 400);
+            request(base + "/detect", "GET", null, 405);
+
+            JSONObject stats = new JSONObject(request(base + "/stats", "GET", null, 200));
+            Assert.assertEquals(stats.getJSONObject("/detect").getLong("count"), 4);
+            Assert.assertTrue(stats.getJSONObject("/detect").getDouble("p99")
+                              >= stats.getJSONObject("/detect").getDouble("p50"));
+            Assert.assertTrue(stats.getJSONObject("/detect").getDouble("p50") > 0);
+        } finally {
+            server.stop();
+        }
+    }
+
+    private static List<Long> times(JSONObject series) throws Exception {
+        List<Long> output = new ArrayList<Long>();
+        JSONArray anomalies = series.getJSONArray("anomalies");
+        for (int i = 0; i < anomalies.length(); i++) {
+            output.add(anomalies.getJSONObject(i).getLong("time"));
+        }
+        return output;
+    }
+
+    private static String request(String url, String method, String body, int code) throws Exception {
+        HttpURLConnection conn = (HttpURLConnection) new URL(url).openConnection();
+        conn.setRequestMethod(method);
+        if (body != null) {
+            conn.setDoOutput(true);
+            OutputStream os = conn.getOutputStream();
+            os.write(body.getBytes("UTF-8"));
+            os.close();
+        }
+        Assert.assertEquals(conn.getResponseCode(), code);
+        InputStream is = code < 400 ? conn.getInputStream() : conn.getErrorStream();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] chunk = new byte[4096];
+        int n;
+        while ((n = is.read(chunk)) != -1) {
+            out.write(chunk, 0, n);
+        }
+        is.close();
+        return out.toString("UTF-8");
+    }
+}
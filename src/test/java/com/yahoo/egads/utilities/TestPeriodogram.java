@@ -0,0 +1,49 @@
+/*
+ * Copyright 2016, Yahoo Inc.
+ * Copyrights licensed under the GPL License.
+ * See the accompanying LICENSE file for terms.
+ */
+
+package com.yahoo.egads.utilities;
+
+import static org.testng.AssertJUnit.assertEquals;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.testng.annotations.Test;
+
+public class TestPeriodogram {
+
+    @Test
+    public void periods() {
+        assertEquals("[]", Arrays.toString(Periodogram.periods(series(2000), 3, 3)));
+        assertEquals("[24]", Arrays.toString(Periodogram.periods(series(2000, 24), 3, 3)));
+        assertEquals("[37]", Arrays.toString(Periodogram.periods(series(2000, 37), 3, 3)));
+        assertEquals("[24, 168]", Arrays.toString(Periodogram.periods(series(2000, 24, 168), 3, 3)));
+        // the most autocorrelated one only, where both cycles repeat, and the ones the series covers 3 times
+        assertEquals("[168]", Arrays.toString(Periodogram.periods(series(2000, 24, 168), 1, 3)));
+        assertEquals("[24]", Arrays.toString(Periodogram.periods(series(400, 24, 168), 3, 3)));
+    }
+
+    @Test
+    public void constant() {
+        double[] values = new double[100];
+        Arrays.fill(values, 5);
+        assertEquals(0, Periodogram.periods(values, 3, 3).length);
+        assertEquals(0, Periodogram.periods(new double[3], 3, 3).length);
+    }
+
+    // A trend and noise, plus cycles of the periods with a harmonic each.
+    private static double[] series(int n, int... periods) {
+        Random random = new Random(1);
+        double[] values = new double[n];
+        for (int t = 0; t < n; t++) {
+            values[t] = 100 + 0.05 * t + random.nextGaussian();
+            for (int p : periods) {
+                values[t] += 5 * Math.sin(2 * Math.PI * t / p) + 2 * Math.sin(4 * Math.PI * t / p);
+            }
+        }
+        return values;
+    }
+}
@@ -6,12 +6,19 @@
 
 package com.yahoo.egads.utilities;
 
+import static org.testng.AssertJUnit.assertEquals;
+
 import java.util.Arrays;
+import java.util.Random;
 
 import org.apache.commons.math3.linear.MatrixUtils;
 import org.apache.commons.math3.linear.RealMatrix;
+import org.apache.commons.math3.linear.SingularValueDecomposition;
 import org.testng.annotations.Test;
 
+import com.yahoo.egads.utilities.SpectralMethods.FilteringMethod;
+import com.yahoo.egads.utilities.SpectralMethods.SvdMethod;
+
 public class TestSpectralMethods {
     @Test
     public void f() {
@@ -28,4 +35,201 @@ public class TestSpectralMethods {
             System.out.println(Arrays.toString(data2.getRow(i)));
         }
     }
+
+    @Test
+    public void hankelReconstruction() {
+        Random random = new Random(7);
+        RealMatrix data = MatrixUtils.createRealMatrix(40, 3);
+        for (int t = 0; t < 40; ++t) {
+            for (int h = 0; h < 3; ++h) {
+                data.setEntry(t, h, random.nextGaussian());
+            }
+        }
+
+        RealMatrix hankel = SpectralMethods.createHankelMatrix(data, 7);
+        assertEquals(34, hankel.getRowDimension());
+        assertEquals(21, hankel.getColumnDimension());
+        for (int i = 0; i < 34; ++i) {
+            for (int j = 0; j < 7; ++j) {
+                for (int h = 0; h < 3; ++h) {
+                    assertEquals(data.getEntry(i + j, h), hankel.getEntry(i, j * 3 + h), 0);
+                }
+            }
+        }
+        RealMatrix averaged = SpectralMethods.averageHankelMatrix(hankel, 7);
+        for (int t = 0; t < 40; ++t) {
+            for (int h = 0; h < 3; ++h) {
+                assertEquals(data.getEntry(t, h), averaged.getEntry(t, h), 1e-12);
+            }
+        }
+
+        // the fused reconstruction is the sum of the rank-one matrices, averaged, to the last bit
+        SingularValueDecomposition svd = new SingularValueDecomposition(hankel);
+        double[][] u = new double[4][];
+        double[][] v = new double[4][];
+        RealMatrix truncated = MatrixUtils.createRealMatrix(34, 21);
+        for (int r = 0; r < 4; ++r) {
+            u[r] = svd.getU().getColumn(r);
+            v[r] = svd.getVT().getRow(r);
+            truncated = truncated.add(svd.getU().getColumnMatrix(r).multiply(svd.getVT().getRowMatrix(r))
+                            .scalarMultiply(svd.getSingularValues()[r]));
+        }
+        RealMatrix expected = SpectralMethods.averageHankelMatrix(truncated, 7);
+        RealMatrix actual = SpectralMethods.averageReconstruction(u, v,
+                        Arrays.copyOf(svd.getSingularValues(), 4), 7);
+        for (int t = 0; t < 40; ++t) {
+            for (int h = 0; h < 3; ++h) {
+                assertEquals(Double.valueOf(expected.getEntry(t, h)), Double.valueOf(actual.getEntry(t, h)));
+            }
+        }
+    }
+
+    @Test
+    public void fft() {
+        Random random = new Random(9);
+        double[] re = new double[64];
+        double[] im = new double[64];
+        for (int t = 0; t < 64; ++t) {
+            re[t] = random.nextGaussian();
+            im[t] = random.nextGaussian();
+        }
+        double[] re2 = re.clone();
+        double[] im2 = im.clone();
+        FFT.transform(re2, im2, false);
+        for (int f = 0; f < 64; ++f) {
+            double sr = 0, si = 0;
+            for (int t = 0; t < 64; ++t) {
+                double a = -2 * Math.PI * f * t / 64;
+                sr += re[t] * Math.cos(a) - im[t] * Math.sin(a);
+                si += re[t] * Math.sin(a) + im[t] * Math.cos(a);
+            }
+            assertEquals(sr, re2[f], 1e-10);
+            assertEquals(si, im2[f], 1e-10);
+        }
+        FFT.transform(re2, im2, true);
+        for (int t = 0; t < 64; ++t) {
+            assertEquals(re[t], re2[t], 1e-12);
+            assertEquals(im[t], im2[t], 1e-12);
+        }
+        assertEquals(64, FFT.size(33));
+        assertEquals(64, FFT.size(64));
+    }
+
+    @Test
+    public void hankelOperatorFft() {
+        Random random = new Random(11);
+        RealMatrix data = MatrixUtils.createRealMatrix(61, 2);
+        for (int t = 0; t < 61; ++t) {
+            data.setEntry(t, 0, Math.sin(t / 3.0) + random.nextGaussian());
+            data.setEntry(t, 1, random.nextGaussian());
+        }
+        SpectralMethods.HankelOperator direct = new SpectralMethods.HankelOperator(data, 13, false);
+        SpectralMethods.HankelOperator fft = new SpectralMethods.HankelOperator(data, 13, true);
+
+        double[] x = new double[26];
+        double[] z = new double[49];
+        for (int c = 0; c < x.length; ++c) {
+            x[c] = random.nextGaussian();
+        }
+        for (int i = 0; i < z.length; ++i) {
+            z[i] = random.nextGaussian();
+        }
+        double[] y1 = new double[49];
+        double[] y2 = new double[49];
+        direct.operate(x, y1);
+        fft.operate(x, y2);
+        for (int i = 0; i < 49; ++i) {
+            assertEquals(y1[i], y2[i], 1e-10);
+        }
+        double[] w1 = new double[26];
+        double[] w2 = new double[26];
+        direct.operateTranspose(z, w1);
+        fft.operateTranspose(z, w2);
+        for (int c = 0; c < 26; ++c) {
+            assertEquals(w1[c], w2[c], 1e-10);
+        }
+
+        RandomizedSVD svd = new RandomizedSVD(direct, 3, 1);
+        RealMatrix a1 = direct.average(svd, 3);
+        RealMatrix a2 = fft.average(svd, 3);
+        for (int t = 0; t < 61; ++t) {
+            for (int h = 0; h < 2; ++h) {
+                assertEquals(a1.getEntry(t, h), a2.getEntry(t, h), 1e-10);
+            }
+        }
+    }
+
+    @Test
+    public void randomizedSVD() {
+        // a rank 5 matrix plus a little noise
+        Random random = new Random(3);
+        final RealMatrix a = MatrixUtils.createRealMatrix(300, 80);
+        for (int r = 0; r < 5; ++r) {
+            double[] x = new double[300];
+            double[] y = new double[80];
+            for (int i = 0; i < x.length; ++i) {
+                x[i] = random.nextGaussian();
+            }
+            for (int j = 0; j < y.length; ++j) {
+                y[j] = random.nextGaussian() * (5 - r);
+            }
+            a.setSubMatrix(a.add(MatrixUtils.createColumnRealMatrix(x).multiply(MatrixUtils.createRowRealMatrix(y)))
+                            .getData(), 0, 0);
+        }
+        for (int i = 0; i < 300; ++i) {
+            for (int j = 0; j < 80; ++j) {
+                a.addToEntry(i, j, random.nextGaussian() * 0.01);
+            }
+        }
+
+        RandomizedSVD svd = new RandomizedSVD(new RandomizedSVD.Operator() {
+            public int getRowDimension() {
+                return 300;
+            }
+
+            public int getColumnDimension() {
+                return 80;
+            }
+
+            public void operate(double[] x, double[] y) {
+                System.arraycopy(a.operate(x), 0, y, 0, 300);
+            }
+
+            public void operateTranspose(double[] x, double[] y) {
+                System.arraycopy(a.preMultiply(x), 0, y, 0, 80);
+            }
+        }, 5, 2);
+        double[] expected = new SingularValueDecomposition(a).getSingularValues();
+
+        assertEquals(5, svd.getRank());
+        for (int i = 0; i < 5; ++i) {
+            assertEquals(expected[i], svd.getSingularValues()[i], 1e-8 * expected[0]);
+            // A * v = s * u
+            double[] av = a.operate(svd.getV(i));
+            for (int t = 0; t < 300; ++t) {
+                assertEquals(av[t], svd.getSingularValues()[i] * svd.getU(i)[t], 1e-8 * expected[0]);
+            }
+        }
+    }
+
+    @Test
+    public void randomizedFilter() {
+        Random random = new Random(5);
+        RealMatrix data = MatrixUtils.createRealMatrix(700, 1);
+        for (int t = 0; t < 700; ++t) {
+            data.setEntry(t, 0, 100 + 0.05 * t + 20 * Math.sin(2 * Math.PI * t / 24)
+                            + 8 * Math.sin(2 * Math.PI * t / 168) + random.nextGaussian());
+        }
+
+        double[][] cases = { {FilteringMethod.VARIANCE.ordinal(), 0.5}, {FilteringMethod.EXPLICIT.ordinal(), 5},
+                {FilteringMethod.SMOOTHNESS.ordinal(), 0.97}};
+        for (double[] c : cases) {
+            FilteringMethod method = FilteringMethod.values()[(int) c[0]];
+            RealMatrix full = SpectralMethods.mFilter(data, 200, method, c[1]);
+            RealMatrix randomized = SpectralMethods.mFilter(data, 200, method, c[1], SvdMethod.RANDOMIZED, 2);
+            for (int t = 0; t < 700; ++t) {
+                assertEquals(full.getEntry(t, 0), randomized.getEntry(t, 0), 1e-6);
+            }
+        }
+    }
 }
@@ -0,0 +1,66 @@
+/*
+ * Copyright 2016, Yahoo Inc.
+ * Copyrights licensed under the GPL License.
+ * See the accompanying LICENSE file for terms.
+ */
+
+// Compares the full and the randomized SVD paths of SpectralMethods.mFilter on an hourly series with daily and
+// weekly seasonality: both filter the same, and the randomized path is at least twice as fast on the largest
+// window. A benchmark, in the "benchmark" group which the default build excludes (see pom.xml). The window
+// sizes default to a quick set, run e.g. -Degads.spectral.windows=24,48,96,192,384,768,1024 for the whole range.
+
+package com.yahoo.egads.utilities;
+
+import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertTrue;
+
+import java.util.Random;
+
+import org.apache.commons.math3.linear.MatrixUtils;
+import org.apache.commons.math3.linear.RealMatrix;
+import org.testng.annotations.Test;
+
+import com.yahoo.egads.utilities.SpectralMethods.FilteringMethod;
+import com.yahoo.egads.utilities.SpectralMethods.SvdMethod;
+
+public class TestSpectralMethodsSpeed {
+
+    // The best of a few runs, to leave out the JIT warm-up.
+    private static final int RUNS = 3;
+
+    @Test(groups = "benchmark")
+    public void testSpeed() {
+        String windows = System.getProperty("egads.spectral.windows", "24,96,192");
+        double ratio = 0;
+        for (String window : windows.split(",")) {
+            int windowSize = Integer.parseInt(window.trim());
+            int n = 2 * windowSize + 200;
+            Random random = new Random(5);
+            RealMatrix data = MatrixUtils.createRealMatrix(n, 1);
+            for (int t = 0; t < n; ++t) {
+                data.setEntry(t, 0, 100 + 20 * Math.sin(2 * Math.PI * t / 24) + 8 * Math.sin(2 * Math.PI * t / 168)
+                                + random.nextGaussian() * 3);
+            }
+
+            RealMatrix full = null;
+            RealMatrix randomized = null;
+            long fullTime = Long.MAX_VALUE;
+            long randomizedTime = Long.MAX_VALUE;
+            for (int run = 0; run < RUNS; ++run) {
+                long start = System.nanoTime();
+                full = SpectralMethods.mFilter(data, windowSize, FilteringMethod.VARIANCE, 0.5);
+                fullTime = Math.min(fullTime, System.nanoTime() - start);
+                start = System.nanoTime();
+                randomized = SpectralMethods.mFilter(data, windowSize, FilteringMethod.VARIANCE, 0.5,
+                                SvdMethod.RANDOMIZED, 2);
+                randomizedTime = Math.min(randomizedTime, System.nanoTime() - start);
+            }
+            ratio = (double) randomizedTime / fullTime;
+
+            for (int t = 0; t < n; ++t) {
+                assertEquals(full.getEntry(t, 0), randomized.getEntry(t, 0), 1e-6);
+            }
+        }
+        assertTrue("randomized / full time: " + ratio, ratio < 0.5);
+    }
+}